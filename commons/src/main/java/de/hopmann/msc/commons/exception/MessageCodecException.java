@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.exception;
+
+/**
+ * Signals that a message content could not be encoded or decoded
+ * 
+ */
+public class MessageCodecException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public MessageCodecException(String msg) {
+		super(msg);
+	}
+
+	public MessageCodecException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+}
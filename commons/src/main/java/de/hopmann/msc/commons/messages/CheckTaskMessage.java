@@ -38,6 +38,19 @@ public class CheckTaskMessage implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Priority of bulk checks, such as repository sweeps
+	 */
+	public static final int PRIORITY_LOW = 1;
+	/**
+	 * Default priority, equal to the JMS default priority
+	 */
+	public static final int PRIORITY_NORMAL = 4;
+	/**
+	 * Priority of checks a user waits for
+	 */
+	public static final int PRIORITY_HIGH = 8;
+
 	public CheckTaskMessage() {
 
 	}
@@ -45,6 +58,18 @@ public class CheckTaskMessage implements Serializable {
 	@XmlAttribute
 	private Long contextIdRef;
 
+	/**
+	 * Identifies the task for cancellation, assigned when queued
+	 */
+	@XmlAttribute
+	private String taskId;
+
+	/**
+	 * Priority from 0 (lowest) to 9 (highest), as for JMS messages
+	 */
+	@XmlAttribute
+	private int priority = PRIORITY_NORMAL;
+
 	@NotNull
 	@NotEmpty
 	@XmlElementRef
@@ -116,4 +141,24 @@ public class CheckTaskMessage implements Serializable {
 	public void setContextIdRef(Long contextIdRef) {
 		this.contextIdRef = contextIdRef;
 	}
+
+	public String getTaskId() {
+		return taskId;
+	}
+
+	public void setTaskId(String taskId) {
+		this.taskId = taskId;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public void setPriority(int priority) {
+		if (priority < 0 || priority > 9) {
+			throw new IllegalArgumentException("Priority " + priority
+					+ " out of range 0-9");
+		}
+		this.priority = priority;
+	}
 }
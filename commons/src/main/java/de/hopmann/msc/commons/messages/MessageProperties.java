@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages;
+
+import java.math.BigInteger;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import de.hopmann.msc.commons.exception.VersionFormatException;
+import de.hopmann.msc.commons.util.VersionHelper;
+
+/**
+ * JMS message properties of exchanged messages, allowing consumers to select
+ * messages without parsing their content.
+ * 
+ */
+public class MessageProperties {
+
+	/**
+	 * Version number of the requested package installer, as decimal string
+	 */
+	public static final String INSTALLER_VERSION = "installerVersion";
+	public static final String INSTALLER_FLAVOR = "installerFlavor";
+	public static final String INSTALLER_ARCHITECTURE = "installerArchitecture";
+
+	/**
+	 * Encoding of the message content, messages without this property are XML
+	 * encoded
+	 */
+	public static final String ENCODING = "encoding";
+	/**
+	 * Comma separated list of encodings the sender of a check task accepts for
+	 * its results
+	 */
+	public static final String ACCEPT_ENCODING = "acceptEncoding";
+
+	private MessageProperties() {
+
+	}
+
+	/**
+	 * Sets the properties describing the package installer required to
+	 * process a check task
+	 * 
+	 * @param message
+	 * @param packageInstaller
+	 * @throws JMSException
+	 * @throws VersionFormatException
+	 */
+	public static void setInstallerProperties(Message message,
+			PackageInstallerMessage packageInstaller) throws JMSException,
+			VersionFormatException {
+		BigInteger versionNumber = VersionHelper
+				.getVersionNumber(packageInstaller.getVersionString());
+		if (versionNumber == null) {
+			throw new VersionFormatException("Package installer has no version");
+		}
+		message.setStringProperty(INSTALLER_VERSION, versionNumber.toString());
+		if (packageInstaller.getFlavor() != null) {
+			message.setStringProperty(INSTALLER_FLAVOR,
+					packageInstaller.getFlavor());
+		}
+		if (packageInstaller.getArchitecture() != null) {
+			message.setStringProperty(INSTALLER_ARCHITECTURE,
+					packageInstaller.getArchitecture());
+		}
+	}
+
+	/**
+	 * Creates a message selector for check tasks which can be processed by a
+	 * package installer. Tasks without flavor or architecture match any
+	 * installer of the requested version.
+	 * 
+	 * @param versionNumber
+	 *            version number of the installer
+	 * @param flavor
+	 *            flavor of the installer, or null
+	 * @param architecture
+	 *            architecture of the installer, or null
+	 * @return message selector
+	 */
+	public static String createInstallerSelector(BigInteger versionNumber,
+			String flavor, String architecture) {
+		return INSTALLER_VERSION + " = " + quote(versionNumber.toString())
+				+ " AND " + createOptionalSelector(INSTALLER_FLAVOR, flavor)
+				+ " AND "
+				+ createOptionalSelector(INSTALLER_ARCHITECTURE, architecture);
+	}
+
+	private static String createOptionalSelector(String property, String value) {
+		if (value == null) {
+			return property + " IS NULL";
+		}
+		return "(" + property + " IS NULL OR " + property + " = "
+				+ quote(value) + ")";
+	}
+
+	private static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Control message reporting outputs the master stored, which slaves may send
+ * by hash only from then on, and outputs referenced by hash the master does
+ * not store, which slaves have to send again
+ * 
+ */
+@XmlRootElement(name = "OutputStatus")
+@XmlAccessorType(XmlAccessType.NONE)
+public class OutputStatusMessage {
+
+	@XmlElement(name = "stored")
+	private List<String> storedHashes = new ArrayList<>();
+
+	@XmlElement(name = "missing")
+	private List<String> missingHashes = new ArrayList<>();
+
+	public OutputStatusMessage() {
+
+	}
+
+	public List<String> getStoredHashes() {
+		return storedHashes;
+	}
+
+	public List<String> getMissingHashes() {
+		return missingHashes;
+	}
+
+	public boolean isEmpty() {
+		return storedHashes.isEmpty() && missingHashes.isEmpty();
+	}
+}
@@ -19,6 +19,7 @@ import java.util.List;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementRef;
 import javax.xml.bind.annotation.XmlElementWrapper;
@@ -57,6 +58,9 @@ public class PackageResultMessage {
 	@XmlElementWrapper(name = "messages")
 	private List<CMDOutputMessage> cMDOutputMessages;
 
+	@XmlAttribute
+	private String outputHash;
+
 	public void setName(String name) {
 		this.name = name;
 	}
@@ -109,4 +113,21 @@ public class PackageResultMessage {
 		this.cMDOutputMessages = cMDOutputMessages;
 	}
 
+	public List<CMDOutputMessage> getOutputMessages() {
+		return cMDOutputMessages;
+	}
+
+	/**
+	 * @param outputHash
+	 *            hash of the output messages, which may be omitted if the
+	 *            receiver already stores output with this hash
+	 */
+	public void setOutputHash(String outputHash) {
+		this.outputHash = outputHash;
+	}
+
+	public String getOutputHash() {
+		return outputHash;
+	}
+
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Envelope for publishing the progress of all running check tasks within a
+ * single message
+ * 
+ */
+@XmlRootElement(name = "ProgressBatch")
+@XmlAccessorType(XmlAccessType.NONE)
+public class ProgressBatchMessage {
+
+	@XmlElementRef
+	private List<ProgressMessage> progress = new ArrayList<ProgressMessage>();
+
+	public ProgressBatchMessage() {
+
+	}
+
+	public void addProgress(ProgressMessage progressMessage) {
+		progress.add(progressMessage);
+	}
+
+	public List<ProgressMessage> getProgress() {
+		return progress;
+	}
+
+}
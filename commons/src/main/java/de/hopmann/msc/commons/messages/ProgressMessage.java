@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+
+/**
+ * Steps a running check task passed since its last progress message
+ * 
+ */
+@XmlRootElement(name = "Progress")
+@XmlAccessorType(XmlAccessType.NONE)
+public class ProgressMessage {
+
+	/**
+	 * Single step of a check task, such as an R CMD stars message
+	 * 
+	 */
+	@XmlAccessorType(XmlAccessType.NONE)
+	public static class ProgressStep {
+
+		@XmlAttribute
+		private long time;
+
+		@XmlAttribute
+		private CMDOutputStatus status;
+
+		@XmlElementWrapper
+		@XmlElement
+		private String[] starsLevels;
+
+		protected ProgressStep() {
+
+		}
+
+		public ProgressStep(long time, String[] starsLevels,
+				CMDOutputStatus status) {
+			this.time = time;
+			this.starsLevels = starsLevels;
+			this.status = status;
+		}
+
+		/**
+		 * @return time of the step in ms, according to the sender clock
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public String[] getStarsLevels() {
+			return starsLevels;
+		}
+
+		public CMDOutputStatus getStatus() {
+			return status;
+		}
+	}
+
+	@XmlAttribute
+	private Long contextIdRef;
+
+	@XmlAttribute
+	private String packageName;
+
+	@XmlAttribute
+	private String taskId;
+
+	@XmlElement(name = "step")
+	private List<ProgressStep> steps = new ArrayList<ProgressStep>();
+
+	public ProgressMessage() {
+
+	}
+
+	public ProgressMessage(Long contextIdRef, String packageName) {
+		this.contextIdRef = contextIdRef;
+		this.packageName = packageName;
+	}
+
+	public Long getContextIdRef() {
+		return contextIdRef;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * @return id of the check task, null if not assigned by the master
+	 */
+	public String getTaskId() {
+		return taskId;
+	}
+
+	public void setTaskId(String taskId) {
+		this.taskId = taskId;
+	}
+
+	public void addStep(ProgressStep step) {
+		steps.add(step);
+	}
+
+	public List<ProgressStep> getSteps() {
+		return steps;
+	}
+
+}
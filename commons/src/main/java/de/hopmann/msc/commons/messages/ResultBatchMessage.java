@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Envelope for publishing multiple results within a single message
+ * 
+ */
+@XmlRootElement(name = "ResultBatch")
+@XmlAccessorType(XmlAccessType.NONE)
+public class ResultBatchMessage {
+
+	@XmlElementRef
+	private List<ResultMessage> results = new ArrayList<ResultMessage>();
+
+	public ResultBatchMessage() {
+
+	}
+
+	public ResultBatchMessage(List<ResultMessage> results) {
+		this.results.addAll(results);
+	}
+
+	public void addResult(ResultMessage resultMessage) {
+		results.add(resultMessage);
+	}
+
+	public List<ResultMessage> getResults() {
+		return results;
+	}
+
+}
@@ -33,6 +33,8 @@ public abstract class ResultMessage {
 
 	@XmlAttribute
 	private Long contextIdRef;
+	@XmlAttribute
+	private String taskId;
 
 	@NotNull
 	@NotEmpty
@@ -43,6 +45,10 @@ public abstract class ResultMessage {
 	@XmlElementRef
 	@XmlElementWrapper(name = "messages")
 	private List<CMDOutputMessage> cMDOutputMessages;
+	@XmlAttribute
+	private String outputHash;
+	@XmlAttribute
+	private boolean replayed;
 
 	public ResultMessage() {
 		super();
@@ -68,6 +74,23 @@ public abstract class ResultMessage {
 		this.cMDOutputMessages = cMDOutputMessages;
 	}
 
+	public List<CMDOutputMessage> getOutputMessages() {
+		return cMDOutputMessages;
+	}
+
+	/**
+	 * @param outputHash
+	 *            hash of the output messages, which may be omitted if the
+	 *            receiver already stores output with this hash
+	 */
+	public void setOutputHash(String outputHash) {
+		this.outputHash = outputHash;
+	}
+
+	public String getOutputHash() {
+		return outputHash;
+	}
+
 	public void setContextIdRef(Long contextIdRef) {
 		this.contextIdRef = contextIdRef;
 	}
@@ -76,4 +99,29 @@ public abstract class ResultMessage {
 		return contextIdRef;
 	}
 
+	/**
+	 * @param taskId
+	 *            id of the check task this is the result of
+	 */
+	public void setTaskId(String taskId) {
+		this.taskId = taskId;
+	}
+
+	public String getTaskId() {
+		return taskId;
+	}
+
+	/**
+	 * @param replayed
+	 *            whether this is a copy of an earlier result with the same
+	 *            inputs rather than the result of a new check
+	 */
+	public void setReplayed(boolean replayed) {
+		this.replayed = replayed;
+	}
+
+	public boolean isReplayed() {
+		return replayed;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,676 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.messages.CancelTaskMessage;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.OutputStatusMessage;
+import de.hopmann.msc.commons.messages.ExceptionResultMessage;
+import de.hopmann.msc.commons.messages.PackageInstallerMessage;
+import de.hopmann.msc.commons.messages.PackageMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.messages.ProgressBatchMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage.ProgressStep;
+import de.hopmann.msc.commons.messages.ResultBatchMessage;
+import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.model.CheckResult;
+import de.hopmann.msc.commons.model.InstallationResult;
+import de.hopmann.msc.commons.model.SourceIdentifier;
+import de.hopmann.msc.commons.model.SourceIdentifier.SourceRepositoryIdentifier;
+import de.hopmann.msc.commons.model.Version;
+
+/**
+ * Compact binary encoding, carried in bytes messages. Numbers are written as
+ * variable-length integers and repeated strings, such as package names and
+ * check output, as references to their first occurrence.
+ * 
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+	public static final String ENCODING = "binary";
+
+	/**
+	 * Version 2 added the check task priority, version 3 the task id, version 4
+	 * output hashes, version 5 the task id of results, version 6 the replayed
+	 * flag of results. Previous versions are still decoded.
+	 */
+	private static final int FORMAT_VERSION = 6;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int TYPE_CHECK_TASK = 1;
+	private static final int TYPE_CHECK_RESULT = 2;
+	private static final int TYPE_EXCEPTION_RESULT = 3;
+	private static final int TYPE_RESULT_BATCH = 4;
+	private static final int TYPE_PROGRESS_BATCH = 5;
+	private static final int TYPE_CANCEL_TASK = 6;
+	private static final int TYPE_OUTPUT_STATUS = 7;
+
+	private static final int SOURCE_IDENTIFIER = 1;
+	private static final int SOURCE_REPOSITORY_IDENTIFIER = 2;
+
+	@Override
+	public String getEncoding() {
+		return ENCODING;
+	}
+
+	@Override
+	public byte[] encode(Object content) throws MessageCodecException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			Writer writer = new Writer(new DataOutputStream(outputStream));
+			writer.out.writeByte(FORMAT_VERSION);
+			writer.writeContent(content);
+			writer.out.flush();
+		} catch (IOException e) {
+			throw new MessageCodecException("Could not encode message content",
+					e);
+		}
+		return outputStream.toByteArray();
+	}
+
+	@Override
+	public Object decode(byte[] data) throws MessageCodecException {
+		try {
+			Reader reader = new Reader(new DataInputStream(
+					new ByteArrayInputStream(data)));
+			reader.formatVersion = reader.in.readUnsignedByte();
+			if (reader.formatVersion < 1
+					|| reader.formatVersion > FORMAT_VERSION) {
+				throw new MessageCodecException("Unsupported format version "
+						+ reader.formatVersion);
+			}
+			return reader.readContent();
+		} catch (IOException | RuntimeException e) {
+			throw new MessageCodecException("Could not decode message content",
+					e);
+		}
+	}
+
+	private static class Writer {
+
+		private final DataOutputStream out;
+		private final Map<String, Integer> stringTable = new HashMap<>();
+
+		public Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		private void writeContent(Object content) throws IOException {
+			if (content instanceof CheckTaskMessage) {
+				writeVarInt(TYPE_CHECK_TASK);
+				writeCheckTask((CheckTaskMessage) content);
+			} else if (content instanceof ResultBatchMessage) {
+				writeVarInt(TYPE_RESULT_BATCH);
+				List<ResultMessage> results = ((ResultBatchMessage) content)
+						.getResults();
+				writeVarInt(results.size());
+				for (ResultMessage result : results) {
+					writeContent(result);
+				}
+			} else if (content instanceof CheckResultMessage) {
+				writeVarInt(TYPE_CHECK_RESULT);
+				CheckResultMessage checkResult = (CheckResultMessage) content;
+				writeResult(checkResult);
+				writePackageResults(checkResult.getInstallationDependencies());
+				writePackageResults(checkResult.getCheckDependencies());
+				writeCheckResult(checkResult.getCheckResult());
+			} else if (content instanceof ExceptionResultMessage) {
+				writeVarInt(TYPE_EXCEPTION_RESULT);
+				ExceptionResultMessage exceptionResult = (ExceptionResultMessage) content;
+				writeResult(exceptionResult);
+				writePackageResult(exceptionResult.getFailedPackage());
+				writePackageResults(exceptionResult.getInstalledPackages());
+			} else if (content instanceof ProgressBatchMessage) {
+				writeVarInt(TYPE_PROGRESS_BATCH);
+				writeProgressBatch((ProgressBatchMessage) content);
+			} else if (content instanceof CancelTaskMessage) {
+				writeVarInt(TYPE_CANCEL_TASK);
+				writeString(((CancelTaskMessage) content).getTaskId());
+			} else if (content instanceof OutputStatusMessage) {
+				writeVarInt(TYPE_OUTPUT_STATUS);
+				OutputStatusMessage outputStatus = (OutputStatusMessage) content;
+				writeStringList(outputStatus.getStoredHashes());
+				writeStringList(outputStatus.getMissingHashes());
+			} else {
+				throw new IOException("Unsupported message content "
+						+ content);
+			}
+		}
+
+		private void writeCheckTask(CheckTaskMessage checkTask)
+				throws IOException {
+			writeLong(checkTask.getContextIdRef());
+			writeVarInt(checkTask.getPriority());
+			writeString(checkTask.getTaskId());
+			writePackage(checkTask.getPackageDescription());
+			writeSourceIdentifier(checkTask.getDefaultRepository());
+			writePackageInstaller(checkTask.getPackageInstaller());
+			writeVarInt(checkTask.getDependencies().size());
+			for (PackageMessage dependency : checkTask.getDependencies()) {
+				writePackage(dependency);
+			}
+		}
+
+		private void writeProgressBatch(ProgressBatchMessage progressBatch)
+				throws IOException {
+			writeVarInt(progressBatch.getProgress().size());
+			for (ProgressMessage progress : progressBatch.getProgress()) {
+				writeLong(progress.getContextIdRef());
+				writeString(progress.getPackageName());
+				writeString(progress.getTaskId());
+				writeVarInt(progress.getSteps().size());
+				for (ProgressStep step : progress.getSteps()) {
+					writeVarLong(step.getTime());
+					writeStrings(step.getStarsLevels());
+					CMDOutputStatus status = step.getStatus();
+					writeVarInt(status == null ? 0 : status.ordinal() + 1);
+				}
+			}
+		}
+
+		private void writeResult(ResultMessage result) throws IOException {
+			writeLong(result.getContextIdRef());
+			writePackageResult(result.getPackageDescription());
+			writePackageInstaller(result.getPackageInstaller());
+			writeOutputMessages(result.getOutputMessages());
+			writeString(result.getOutputHash());
+			writeString(result.getTaskId());
+			writeVarInt(result.isReplayed() ? 1 : 0);
+		}
+
+		private void writePackage(PackageMessage packageMessage)
+				throws IOException {
+			if (writeNull(packageMessage)) {
+				return;
+			}
+			writeString(packageMessage.getName());
+			writeVersion(packageMessage.getPackageVersion());
+			writeSourceIdentifier(packageMessage.getSourceDescription());
+		}
+
+		private void writePackageResults(
+				Collection<PackageResultMessage> packageResults)
+				throws IOException {
+			writeVarInt(packageResults.size());
+			for (PackageResultMessage packageResult : packageResults) {
+				writePackageResult(packageResult);
+			}
+		}
+
+		private void writePackageResult(PackageResultMessage packageResult)
+				throws IOException {
+			if (writeNull(packageResult)) {
+				return;
+			}
+			writeString(packageResult.getPackageName());
+			writeVersion(packageResult.getPackageVersion());
+			writeString(packageResult.getSourceType());
+			writeString(packageResult.getSourceLocation());
+			writeVersion(packageResult.getSourceVersion());
+			InstallationResult installationResult = packageResult
+					.getInstallationResult();
+			writeVarInt(installationResult == null ? 0 : (installationResult
+					.isFailed() ? 2 : 1));
+			writeOutputMessages(packageResult.getOutputMessages());
+			writeString(packageResult.getOutputHash());
+		}
+
+		private void writePackageInstaller(
+				PackageInstallerMessage packageInstaller) throws IOException {
+			if (writeNull(packageInstaller)) {
+				return;
+			}
+			writeString(packageInstaller.getVersionString());
+			writeString(packageInstaller.getFlavor());
+			writeString(packageInstaller.getArchitecture());
+		}
+
+		private void writeSourceIdentifier(SourceIdentifier sourceIdentifier)
+				throws IOException {
+			if (sourceIdentifier == null) {
+				writeVarInt(0);
+				return;
+			}
+			writeVarInt(sourceIdentifier instanceof SourceRepositoryIdentifier ? SOURCE_REPOSITORY_IDENTIFIER
+					: SOURCE_IDENTIFIER);
+			writeString(sourceIdentifier.getSourceType());
+			writeString(sourceIdentifier.getSourceLocation());
+			writeVersion(sourceIdentifier.getSourceVersion());
+		}
+
+		private void writeCheckResult(CheckResult checkResult)
+				throws IOException {
+			if (writeNull(checkResult)) {
+				return;
+			}
+			writeVarInt(checkResult.getCheckErrorCount());
+			writeVarInt(checkResult.getCheckWarningCount());
+			writeVarInt(checkResult.getCheckNoteCount());
+			writeVarInt(checkResult.getCheckSkippedCount());
+		}
+
+		private void writeOutputMessages(List<CMDOutputMessage> outputMessages)
+				throws IOException {
+			if (outputMessages == null) {
+				writeVarInt(0);
+				return;
+			}
+			writeVarInt(outputMessages.size() + 1);
+			for (CMDOutputMessage outputMessage : outputMessages) {
+				writeStrings(outputMessage.getStarsLevels());
+				writeStrings(outputMessage.getMessages());
+				CMDOutputStatus status = outputMessage.getStatus();
+				writeVarInt(status == null ? 0 : status.ordinal() + 1);
+			}
+		}
+
+		private void writeVersion(Version version) throws IOException {
+			if (writeNull(version)) {
+				return;
+			}
+			writeString(version.getVersionString());
+			BigInteger versionNumber = version.getVersionNumber();
+			if (versionNumber == null) {
+				writeVarInt(0);
+			} else {
+				byte[] numberBytes = versionNumber.toByteArray();
+				writeVarInt(numberBytes.length);
+				out.write(numberBytes);
+			}
+		}
+
+		private void writeStrings(String[] strings) throws IOException {
+			if (strings == null) {
+				writeVarInt(0);
+				return;
+			}
+			writeVarInt(strings.length + 1);
+			for (String string : strings) {
+				writeString(string);
+			}
+		}
+
+		private void writeStringList(List<String> strings) throws IOException {
+			writeVarInt(strings.size());
+			for (String string : strings) {
+				writeString(string);
+			}
+		}
+
+		/**
+		 * Writes null as 0, a new string as 1 followed by its length and UTF-8
+		 * bytes, and a repeated string as 2 + index of its first occurrence
+		 */
+		private void writeString(String string) throws IOException {
+			if (string == null) {
+				writeVarInt(0);
+				return;
+			}
+			Integer index = stringTable.get(string);
+			if (index != null) {
+				writeVarInt(index + 2);
+				return;
+			}
+			stringTable.put(string, stringTable.size());
+			byte[] stringBytes = string.getBytes(UTF8);
+			writeVarInt(1);
+			writeVarInt(stringBytes.length);
+			out.write(stringBytes);
+		}
+
+		private void writeLong(Long value) throws IOException {
+			if (writeNull(value)) {
+				return;
+			}
+			writeVarLong(value);
+		}
+
+		/**
+		 * @return whether the value is null, writes presence flag
+		 */
+		private boolean writeNull(Object value) throws IOException {
+			out.writeByte(value == null ? 0 : 1);
+			return value == null;
+		}
+
+		private void writeVarInt(int value) throws IOException {
+			writeVarLong(value & 0xFFFFFFFFL);
+		}
+
+		private void writeVarLong(long value) throws IOException {
+			while ((value & ~0x7FL) != 0) {
+				out.writeByte((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			out.writeByte((int) value);
+		}
+	}
+
+	private static class Reader {
+
+		private final DataInputStream in;
+		private final List<String> stringTable = new ArrayList<>();
+		private int formatVersion;
+
+		public Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		private Object readContent() throws IOException {
+			int type = readVarInt();
+			switch (type) {
+			case TYPE_CHECK_TASK:
+				return readCheckTask();
+			case TYPE_RESULT_BATCH:
+				int resultCount = readVarInt();
+				ResultBatchMessage resultBatch = new ResultBatchMessage();
+				for (int i = 0; i < resultCount; i++) {
+					resultBatch.addResult((ResultMessage) readContent());
+				}
+				return resultBatch;
+			case TYPE_CHECK_RESULT:
+				CheckResultMessage checkResult = new CheckResultMessage();
+				readResult(checkResult);
+				for (PackageResultMessage dependency : readPackageResults()) {
+					checkResult.addInstallationDependency(dependency);
+				}
+				for (PackageResultMessage dependency : readPackageResults()) {
+					checkResult.addCheckDependency(dependency);
+				}
+				checkResult.setCheckResult(readCheckResult());
+				return checkResult;
+			case TYPE_EXCEPTION_RESULT:
+				ExceptionResultMessage exceptionResult = new ExceptionResultMessage();
+				readResult(exceptionResult);
+				exceptionResult.setFailedPackage(readPackageResult());
+				for (PackageResultMessage installedPackage : readPackageResults()) {
+					exceptionResult.addInstalledPackage(installedPackage);
+				}
+				return exceptionResult;
+			case TYPE_PROGRESS_BATCH:
+				return readProgressBatch();
+			case TYPE_CANCEL_TASK:
+				return new CancelTaskMessage(readString());
+			case TYPE_OUTPUT_STATUS:
+				OutputStatusMessage outputStatus = new OutputStatusMessage();
+				readStringList(outputStatus.getStoredHashes());
+				readStringList(outputStatus.getMissingHashes());
+				return outputStatus;
+			default:
+				throw new IOException("Unknown message type " + type);
+			}
+		}
+
+		private CheckTaskMessage readCheckTask() throws IOException {
+			CheckTaskMessage checkTask = new CheckTaskMessage();
+			checkTask.setContextIdRef(readLong());
+			if (formatVersion >= 2) {
+				checkTask.setPriority(readVarInt());
+			}
+			if (formatVersion >= 3) {
+				checkTask.setTaskId(readString());
+			}
+			checkTask.setPackage(readPackage());
+			checkTask
+					.setDefaultRepository((SourceRepositoryIdentifier) readSourceIdentifier());
+			checkTask.setPackageInstaller(readPackageInstaller());
+			int dependencyCount = readVarInt();
+			for (int i = 0; i < dependencyCount; i++) {
+				checkTask.addDependency(readPackage());
+			}
+			return checkTask;
+		}
+
+		private ProgressBatchMessage readProgressBatch() throws IOException {
+			ProgressBatchMessage progressBatch = new ProgressBatchMessage();
+			int progressCount = readVarInt();
+			for (int i = 0; i < progressCount; i++) {
+				ProgressMessage progress = new ProgressMessage(readLong(),
+						readString());
+				if (formatVersion >= 3) {
+					progress.setTaskId(readString());
+				}
+				int stepCount = readVarInt();
+				for (int j = 0; j < stepCount; j++) {
+					long time = readVarLong();
+					String[] starsLevels = readStrings();
+					progress.addStep(new ProgressStep(time, starsLevels,
+							readStatus()));
+				}
+				progressBatch.addProgress(progress);
+			}
+			return progressBatch;
+		}
+
+		private void readResult(ResultMessage result) throws IOException {
+			result.setContextIdRef(readLong());
+			result.setPackage(readPackageResult());
+			result.setPackageInstaller(readPackageInstaller());
+			result.setOutputMessages(readOutputMessages());
+			if (formatVersion >= 4) {
+				result.setOutputHash(readString());
+			}
+			if (formatVersion >= 5) {
+				result.setTaskId(readString());
+			}
+			if (formatVersion >= 6) {
+				result.setReplayed(readVarInt() != 0);
+			}
+		}
+
+		private PackageMessage readPackage() throws IOException {
+			if (readNull()) {
+				return null;
+			}
+			PackageMessage packageMessage = new PackageMessage();
+			packageMessage.setName(readString());
+			packageMessage.setPackageVersion(readVersion());
+			packageMessage.setSourceDescription(readSourceIdentifier());
+			return packageMessage;
+		}
+
+		private List<PackageResultMessage> readPackageResults()
+				throws IOException {
+			int count = readVarInt();
+			List<PackageResultMessage> packageResults = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				packageResults.add(readPackageResult());
+			}
+			return packageResults;
+		}
+
+		private PackageResultMessage readPackageResult() throws IOException {
+			if (readNull()) {
+				return null;
+			}
+			PackageResultMessage packageResult = new PackageResultMessage();
+			packageResult.setName(readString());
+			packageResult.setPackageVersion(readVersion());
+			packageResult.setSourceType(readString());
+			packageResult.setSourceLocation(readString());
+			packageResult.setSourceVersion(readVersion());
+			int installationResult = readVarInt();
+			if (installationResult != 0) {
+				packageResult.setInstallationResult(new InstallationResult(
+						installationResult == 2));
+			}
+			packageResult.setOutputMessages(readOutputMessages());
+			if (formatVersion >= 4) {
+				packageResult.setOutputHash(readString());
+			}
+			return packageResult;
+		}
+
+		private PackageInstallerMessage readPackageInstaller()
+				throws IOException {
+			if (readNull()) {
+				return null;
+			}
+			PackageInstallerMessage packageInstaller = new PackageInstallerMessage(
+					readString());
+			packageInstaller.setFlavor(readString());
+			packageInstaller.setArchitecture(readString());
+			return packageInstaller;
+		}
+
+		private SourceIdentifier readSourceIdentifier() throws IOException {
+			int type = readVarInt();
+			if (type == 0) {
+				return null;
+			}
+			String sourceType = readString();
+			SourceIdentifier sourceIdentifier = type == SOURCE_REPOSITORY_IDENTIFIER ? new SourceRepositoryIdentifier(
+					sourceType) : new SourceIdentifier(sourceType);
+			sourceIdentifier.setSourceLocation(readString());
+			sourceIdentifier.setSourceVersion(readVersion());
+			return sourceIdentifier;
+		}
+
+		private CheckResult readCheckResult() throws IOException {
+			if (readNull()) {
+				return null;
+			}
+			CheckResult checkResult = new CheckResult();
+			checkResult.setErrorCount(readVarInt());
+			checkResult.setWarningCount(readVarInt());
+			checkResult.setNoteCount(readVarInt());
+			checkResult.setSkippedCount(readVarInt());
+			return checkResult;
+		}
+
+		private List<CMDOutputMessage> readOutputMessages() throws IOException {
+			int count = readVarInt();
+			if (count == 0) {
+				return null;
+			}
+			List<CMDOutputMessage> outputMessages = new ArrayList<>(count - 1);
+			for (int i = 0; i < count - 1; i++) {
+				String[] starsLevels = readStrings();
+				String[] messages = readStrings();
+				outputMessages.add(new CMDOutputMessage(
+						messages == null ? Collections.<String> emptyList()
+								: Arrays.asList(messages), starsLevels,
+						readStatus()));
+			}
+			return outputMessages;
+		}
+
+		private CMDOutputStatus readStatus() throws IOException {
+			int status = readVarInt();
+			return status == 0 ? null : CMDOutputStatus.values()[status - 1];
+		}
+
+		private Version readVersion() throws IOException {
+			if (readNull()) {
+				return null;
+			}
+			String versionString = readString();
+			int numberLength = readVarInt();
+			BigInteger versionNumber = null;
+			if (numberLength > 0) {
+				byte[] numberBytes = new byte[numberLength];
+				in.readFully(numberBytes);
+				versionNumber = new BigInteger(numberBytes);
+			}
+			return new Version(versionString, versionNumber);
+		}
+
+		private String[] readStrings() throws IOException {
+			int count = readVarInt();
+			if (count == 0) {
+				return null;
+			}
+			String[] strings = new String[count - 1];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = readString();
+			}
+			return strings;
+		}
+
+		private void readStringList(List<String> strings) throws IOException {
+			int count = readVarInt();
+			for (int i = 0; i < count; i++) {
+				strings.add(readString());
+			}
+		}
+
+		private String readString() throws IOException {
+			int tag = readVarInt();
+			if (tag == 0) {
+				return null;
+			}
+			if (tag > 1) {
+				return stringTable.get(tag - 2);
+			}
+			byte[] stringBytes = new byte[readVarInt()];
+			in.readFully(stringBytes);
+			String string = new String(stringBytes, UTF8);
+			stringTable.add(string);
+			return string;
+		}
+
+		private Long readLong() throws IOException {
+			if (readNull()) {
+				return null;
+			}
+			return readVarLong();
+		}
+
+		private boolean readNull() throws IOException {
+			return in.readUnsignedByte() == 0;
+		}
+
+		private int readVarInt() throws IOException {
+			return (int) readVarLong();
+		}
+
+		private long readVarLong() throws IOException {
+			long value = 0;
+			int shift = 0;
+			while (true) {
+				int b = in.readUnsignedByte();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+				shift += 7;
+				if (shift > 63) {
+					throw new IOException("Malformed variable-length integer");
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages.codec;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+
+/**
+ * Wire format of messages exchanged between master and slaves. The encoding
+ * name is transmitted as message property, so that peers using different
+ * encodings can coexist.
+ * 
+ */
+public interface MessageCodec {
+
+	/**
+	 * @return name of the encoding, as set in the encoding message property
+	 */
+	String getEncoding();
+
+	byte[] encode(Object content) throws MessageCodecException;
+
+	Object decode(byte[] data) throws MessageCodecException;
+}
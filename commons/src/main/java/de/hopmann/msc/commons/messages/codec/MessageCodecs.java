@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages.codec;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.MessageProperties;
+
+/**
+ * Registry of supported message codecs, creating and reading JMS messages
+ * according to their encoding property.
+ * 
+ */
+public class MessageCodecs {
+
+	private static final Map<String, MessageCodec> codecs;
+
+	static {
+		Map<String, MessageCodec> codecMap = new LinkedHashMap<>();
+		codecMap.put(XmlMessageCodec.ENCODING, new XmlMessageCodec());
+		codecMap.put(BinaryMessageCodec.ENCODING, new BinaryMessageCodec());
+		codecs = Collections.unmodifiableMap(codecMap);
+	}
+
+	private MessageCodecs() {
+
+	}
+
+	public static MessageCodec getCodec(String encoding)
+			throws MessageCodecException {
+		MessageCodec codec = codecs.get(encoding == null ? XmlMessageCodec.ENCODING
+				: encoding);
+		if (codec == null) {
+			throw new MessageCodecException("Unsupported message encoding "
+					+ encoding);
+		}
+		return codec;
+	}
+
+	/**
+	 * @return comma separated list of all supported encodings, as used for the
+	 *         accept encoding property
+	 */
+	public static String getSupportedEncodings() {
+		StringBuilder builder = new StringBuilder();
+		for (String encoding : codecs.keySet()) {
+			if (builder.length() > 0) {
+				builder.append(',');
+			}
+			builder.append(encoding);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Negotiates the encoding to use for a peer
+	 * 
+	 * @param preferredEncoding
+	 *            locally configured encoding, or null
+	 * @param acceptedEncodings
+	 *            comma separated encodings accepted by the peer, or null if
+	 *            unknown
+	 * @return preferred encoding if supported by both sides, XML otherwise
+	 */
+	public static String selectEncoding(String preferredEncoding,
+			String acceptedEncodings) {
+		if (preferredEncoding == null || acceptedEncodings == null
+				|| !codecs.containsKey(preferredEncoding)) {
+			return XmlMessageCodec.ENCODING;
+		}
+		List<String> accepted = Arrays.asList(acceptedEncodings.split("\\s*,\\s*"));
+		return accepted.contains(preferredEncoding) ? preferredEncoding
+				: XmlMessageCodec.ENCODING;
+	}
+
+	/**
+	 * Creates messages of either a {@link Session} or a {@link JMSContext}
+	 */
+	private interface MessageFactory {
+
+		TextMessage createTextMessage(String text) throws JMSException;
+
+		BytesMessage createBytesMessage() throws JMSException;
+	}
+
+	/**
+	 * Creates a message with encoded content, XML as text message, other
+	 * encodings as bytes message
+	 */
+	public static Message createMessage(final Session session,
+			Object content, String encoding) throws MessageCodecException,
+			JMSException {
+		return createMessage(new MessageFactory() {
+			@Override
+			public TextMessage createTextMessage(String text)
+					throws JMSException {
+				return session.createTextMessage(text);
+			}
+
+			@Override
+			public BytesMessage createBytesMessage() throws JMSException {
+				return session.createBytesMessage();
+			}
+		}, content, encoding);
+	}
+
+	/**
+	 * @see #createMessage(Session, Object, String)
+	 */
+	public static Message createMessage(final JMSContext context,
+			Object content, String encoding) throws MessageCodecException,
+			JMSException {
+		return createMessage(new MessageFactory() {
+			@Override
+			public TextMessage createTextMessage(String text) {
+				return context.createTextMessage(text);
+			}
+
+			@Override
+			public BytesMessage createBytesMessage() {
+				return context.createBytesMessage();
+			}
+		}, content, encoding);
+	}
+
+	private static Message createMessage(MessageFactory factory,
+			Object content, String encoding) throws MessageCodecException,
+			JMSException {
+		MessageCodec codec = getCodec(encoding);
+		Message message;
+		if (codec instanceof XmlMessageCodec) {
+			message = factory.createTextMessage(((XmlMessageCodec) codec)
+					.encodeString(content));
+		} else {
+			BytesMessage bytesMessage = factory.createBytesMessage();
+			bytesMessage.writeBytes(codec.encode(content));
+			message = bytesMessage;
+		}
+		message.setStringProperty(MessageProperties.ENCODING,
+				codec.getEncoding());
+		return message;
+	}
+
+	/**
+	 * Decodes the content of a message created by
+	 * {@link #createMessage(Session, Object, String)}, or of a plain XML text
+	 * message
+	 */
+	public static Object readMessage(Message message)
+			throws MessageCodecException, JMSException {
+		MessageCodec codec = getCodec(message
+				.getStringProperty(MessageProperties.ENCODING));
+		if (message instanceof TextMessage) {
+			String text = ((TextMessage) message).getText();
+			if (codec instanceof XmlMessageCodec) {
+				return ((XmlMessageCodec) codec).decodeString(text);
+			}
+			throw new MessageCodecException("Text message with encoding "
+					+ codec.getEncoding());
+		} else if (message instanceof BytesMessage) {
+			BytesMessage bytesMessage = (BytesMessage) message;
+			byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+			bytesMessage.readBytes(data);
+			return codec.decode(data);
+		}
+		throw new MessageCodecException("Unsupported message type "
+				+ message.getClass().getName());
+	}
+}
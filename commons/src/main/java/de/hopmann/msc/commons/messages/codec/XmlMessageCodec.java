@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.CancelTaskMessage;
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.OutputStatusMessage;
+import de.hopmann.msc.commons.messages.ProgressBatchMessage;
+import de.hopmann.msc.commons.messages.ResultBatchMessage;
+import de.hopmann.msc.commons.messages.ResultMessage;
+
+/**
+ * JAXB based XML encoding, carried in text messages. Default encoding of
+ * messages without encoding property.
+ * 
+ */
+public class XmlMessageCodec implements MessageCodec {
+
+	public static final String ENCODING = "xml";
+
+	private static JAXBContext jaxbContext;
+
+	private static synchronized JAXBContext getJAXBContext()
+			throws JAXBException {
+		// Thread-safe and expensive to create, so shared
+		if (jaxbContext == null) {
+			jaxbContext = JAXBContext.newInstance(CheckTaskMessage.class,
+					ResultBatchMessage.class, ResultMessage.class,
+					ProgressBatchMessage.class, CancelTaskMessage.class,
+					OutputStatusMessage.class);
+		}
+		return jaxbContext;
+	}
+
+	@Override
+	public String getEncoding() {
+		return ENCODING;
+	}
+
+	public String encodeString(Object content) throws MessageCodecException {
+		try {
+			StringWriter stringWriter = new StringWriter();
+			getJAXBContext().createMarshaller().marshal(content, stringWriter);
+			return stringWriter.toString();
+		} catch (JAXBException e) {
+			throw new MessageCodecException("Could not encode message content",
+					e);
+		}
+	}
+
+	public Object decodeString(String text) throws MessageCodecException {
+		try {
+			return getJAXBContext().createUnmarshaller().unmarshal(
+					new StringReader(text));
+		} catch (JAXBException e) {
+			throw new MessageCodecException("Could not decode message content",
+					e);
+		}
+	}
+
+	@Override
+	public byte[] encode(Object content) throws MessageCodecException {
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			getJAXBContext().createMarshaller().marshal(content, outputStream);
+			return outputStream.toByteArray();
+		} catch (JAXBException e) {
+			throw new MessageCodecException("Could not encode message content",
+					e);
+		}
+	}
+
+	@Override
+	public Object decode(byte[] data) throws MessageCodecException {
+		try {
+			return getJAXBContext().createUnmarshaller().unmarshal(
+					new ByteArrayInputStream(data));
+		} catch (JAXBException e) {
+			throw new MessageCodecException("Could not decode message content",
+					e);
+		}
+	}
+
+}
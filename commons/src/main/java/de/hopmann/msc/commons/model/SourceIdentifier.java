@@ -71,6 +71,10 @@ public class SourceIdentifier {
 		return sourceVersion;
 	}
 
+	public void setSourceVersion(Version sourceVersion) {
+		this.sourceVersion = sourceVersion;
+	}
+
 	public String getSourceLocation() {
 		return sourceLocation;
 	}
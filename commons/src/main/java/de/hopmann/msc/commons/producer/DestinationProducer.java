@@ -46,4 +46,18 @@ public class DestinationProducer {
 		return lookup;
 	}
 
+	@Produces
+	@JMSDestination(DestinationType.PROGRESS)
+	public static Topic createProgressTopic() throws NamingException {
+		InitialContext context = new InitialContext();
+		return (Topic) context.lookup("jms/ProgressTopic");
+	}
+
+	@Produces
+	@JMSDestination(DestinationType.CONTROL)
+	public static Topic createControlTopic() throws NamingException {
+		InitialContext context = new InitialContext();
+		return (Topic) context.lookup("jms/ControlTopic");
+	}
+
 }
@@ -29,8 +29,8 @@ import javax.inject.Qualifier;
 public @interface JMSDestination {
 
 	public enum DestinationType {
-		SLAVE, MASTER;
+		SLAVE, MASTER, PROGRESS, CONTROL;
 	}
 
 	DestinationType value();
-}
\ No newline at end of file
+}
\ No newline at end of file
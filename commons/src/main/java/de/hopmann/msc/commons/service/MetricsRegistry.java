@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Registry of operational metrics of an application, written in the
+ * Prometheus text format to be scraped over HTTP. Metrics are identified by
+ * name and label pairs, registering an existing metric again returns it.
+ * 
+ */
+@ApplicationScoped
+public class MetricsRegistry {
+
+	/**
+	 * Content type of {@link #write(Writer)}
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+	/**
+	 * Default histogram buckets in seconds, suited to package installations
+	 * and checks
+	 */
+	public static final double[] DURATION_BUCKETS = { 0.1, 0.5, 1, 5, 10, 30,
+			60, 120, 300, 600, 1800, 3600 };
+
+	/**
+	 * Histogram buckets in seconds for short operations
+	 */
+	public static final double[] SHORT_DURATION_BUCKETS = { 0.005, 0.01,
+			0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+	/**
+	 * Current value of a gauge, obtained when written
+	 */
+	public interface Gauge {
+		double getValue();
+	}
+
+	public static class Counter {
+		private final AtomicLong count = new AtomicLong();
+
+		public void inc() {
+			count.incrementAndGet();
+		}
+
+		public void inc(long amount) {
+			count.addAndGet(amount);
+		}
+
+		public long get() {
+			return count.get();
+		}
+	}
+
+	public static class Histogram {
+		private final double[] buckets;
+		private final long[] bucketCounts;
+		private long count;
+		private double sum;
+
+		private Histogram(double[] buckets) {
+			this.buckets = buckets.clone();
+			Arrays.sort(this.buckets);
+			this.bucketCounts = new long[this.buckets.length];
+		}
+
+		public synchronized void observe(double value) {
+			for (int i = 0; i < buckets.length; i++) {
+				if (value <= buckets[i]) {
+					bucketCounts[i]++;
+				}
+			}
+			count++;
+			sum += value;
+		}
+
+		/**
+		 * Observes the time passed since the start time in seconds
+		 * 
+		 * @param startNanos
+		 *            as returned by {@link System#nanoTime()}
+		 */
+		public void observeSince(long startNanos) {
+			observe((System.nanoTime() - startNanos)
+					/ (double) TimeUnit.SECONDS.toNanos(1));
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized double getSum() {
+			return sum;
+		}
+
+		private synchronized void write(Writer writer, String name,
+				String labels) throws IOException {
+			for (int i = 0; i < buckets.length; i++) {
+				writeSample(writer, name + "_bucket",
+						appendLabel(labels, "le", formatValue(buckets[i])),
+						Long.toString(bucketCounts[i]));
+			}
+			writeSample(writer, name + "_bucket",
+					appendLabel(labels, "le", "+Inf"), Long.toString(count));
+			writeSample(writer, name + "_sum", labels, formatValue(sum));
+			writeSample(writer, name + "_count", labels, Long.toString(count));
+		}
+	}
+
+	private static class Family {
+		private final String type;
+		private final String help;
+		/**
+		 * Metrics by formatted labels
+		 */
+		private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+		public Family(String type, String help) {
+			this.type = type;
+			this.help = help;
+		}
+	}
+
+	private static final String TYPE_COUNTER = "counter";
+	private static final String TYPE_GAUGE = "gauge";
+	private static final String TYPE_HISTOGRAM = "histogram";
+
+	private final Map<String, Family> families = new TreeMap<>();
+
+	/**
+	 * @param labels
+	 *            pairs of label name and value
+	 */
+	public synchronized Counter counter(String name, String help,
+			String... labels) {
+		Map<String, Object> metrics = getMetrics(name, TYPE_COUNTER, help);
+		String key = formatLabels(labels);
+		Object counter = metrics.get(key);
+		if (!(counter instanceof Counter)) {
+			counter = new Counter();
+			metrics.put(key, counter);
+		}
+		return (Counter) counter;
+	}
+
+	/**
+	 * Registers a counter maintained elsewhere, replacing a previously
+	 * registered one
+	 * 
+	 * @param total
+	 *            monotonically increasing total
+	 * @param labels
+	 *            pairs of label name and value
+	 */
+	public synchronized void counter(String name, String help, Gauge total,
+			String... labels) {
+		getMetrics(name, TYPE_COUNTER, help).put(formatLabels(labels), total);
+	}
+
+	/**
+	 * Registers a gauge, replacing a previously registered one
+	 * 
+	 * @param labels
+	 *            pairs of label name and value
+	 */
+	public synchronized void gauge(String name, String help, Gauge gauge,
+			String... labels) {
+		getMetrics(name, TYPE_GAUGE, help).put(formatLabels(labels), gauge);
+	}
+
+	/**
+	 * @return histogram with {@link #DURATION_BUCKETS}
+	 */
+	public Histogram histogram(String name, String help, String... labels) {
+		return histogram(name, help, DURATION_BUCKETS, labels);
+	}
+
+	/**
+	 * @param buckets
+	 *            upper bounds of the buckets, only used when the histogram
+	 *            is created
+	 * @param labels
+	 *            pairs of label name and value
+	 */
+	public synchronized Histogram histogram(String name, String help,
+			double[] buckets, String... labels) {
+		Map<String, Object> metrics = getMetrics(name, TYPE_HISTOGRAM, help);
+		String key = formatLabels(labels);
+		Object histogram = metrics.get(key);
+		if (histogram == null) {
+			histogram = new Histogram(buckets);
+			metrics.put(key, histogram);
+		}
+		return (Histogram) histogram;
+	}
+
+	/**
+	 * Writes all metrics in the Prometheus text format
+	 */
+	public void write(Writer writer) throws IOException {
+		Map<String, Family> snapshot = new TreeMap<>();
+		synchronized (this) {
+			for (Map.Entry<String, Family> entry : families.entrySet()) {
+				Family family = new Family(entry.getValue().type,
+						entry.getValue().help);
+				family.metrics.putAll(entry.getValue().metrics);
+				snapshot.put(entry.getKey(), family);
+			}
+		}
+		for (Map.Entry<String, Family> entry : snapshot.entrySet()) {
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			writer.write("# HELP " + name + " "
+					+ family.help.replace("\\", "\\\\").replace("\n", "\\n")
+					+ "\n");
+			writer.write("# TYPE " + name + " " + family.type + "\n");
+			for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+				Object value = metric.getValue();
+				if (value instanceof Counter) {
+					writeSample(writer, name, metric.getKey(),
+							Long.toString(((Counter) value).get()));
+				} else if (value instanceof Histogram) {
+					((Histogram) value).write(writer, name, metric.getKey());
+				} else {
+					double gaugeValue;
+					try {
+						gaugeValue = ((Gauge) value).getValue();
+					} catch (RuntimeException e) {
+						// Source not available
+						continue;
+					}
+					writeSample(writer, name, metric.getKey(),
+							formatValue(gaugeValue));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return all metrics in the Prometheus text format
+	 */
+	public String scrape() {
+		StringWriter writer = new StringWriter();
+		try {
+			write(writer);
+		} catch (IOException e) {
+			// Not thrown by StringWriter
+			throw new IllegalStateException(e);
+		}
+		return writer.toString();
+	}
+
+	private Map<String, Object> getMetrics(String name, String type,
+			String help) {
+		Family family = families.get(name);
+		if (family == null) {
+			family = new Family(type, help);
+			families.put(name, family);
+		} else if (!family.type.equals(type)) {
+			throw new IllegalArgumentException("Metric " + name
+					+ " already registered as " + family.type);
+		}
+		return family.metrics;
+	}
+
+	private static String formatLabels(String... labels) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException(
+					"Labels must be pairs of name and value");
+		}
+		String formatted = "";
+		for (int i = 0; i < labels.length; i += 2) {
+			formatted = appendLabel(formatted, labels[i], labels[i + 1]);
+		}
+		return formatted;
+	}
+
+	private static String appendLabel(String labels, String name, String value) {
+		String label = name
+				+ "=\""
+				+ value.replace("\\", "\\\\").replace("\"", "\\\"")
+						.replace("\n", "\\n") + "\"";
+		return labels.isEmpty() ? label : labels + "," + label;
+	}
+
+	private static void writeSample(Writer writer, String name, String labels,
+			String value) throws IOException {
+		writer.write(name);
+		if (!labels.isEmpty()) {
+			writer.write("{" + labels + "}");
+		}
+		writer.write(" " + value + "\n");
+	}
+
+	private static String formatValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.hopmann.msc.commons.model.Version;
+
+/**
+ * Canonical fingerprint of the inputs of a package check: the checked package
+ * source, the sources of the dependencies the check library consists of and
+ * the installer. Checks with equal fingerprints produce the same result.
+ * 
+ */
+public class CheckFingerprint {
+
+	private final String packageEntry;
+	private final Set<String> dependencyEntries = new TreeSet<String>();
+	private String installerEntry = "";
+
+	public CheckFingerprint(String packageName, String sourceType,
+			String sourceLocation, Version sourceVersion) {
+		packageEntry = getEntry(packageName, sourceType, sourceLocation,
+				sourceVersion);
+	}
+
+	public CheckFingerprint addDependency(String packageName,
+			String sourceType, String sourceLocation, Version sourceVersion) {
+		dependencyEntries.add(getEntry(packageName, sourceType,
+				sourceLocation, sourceVersion));
+		return this;
+	}
+
+	public CheckFingerprint setInstaller(String versionString, String flavor,
+			String architecture) {
+		installerEntry = versionString + "\t" + flavor + "\t" + architecture;
+		return this;
+	}
+
+	/**
+	 * @return hex encoded SHA-256 hash, independent of the order dependencies
+	 *         have been added in
+	 */
+	public String getFingerprint() {
+		StringBuilder canonical = new StringBuilder(packageEntry);
+		canonical.append('\n').append(installerEntry);
+		for (String dependencyEntry : dependencyEntries) {
+			canonical.append('\n').append(dependencyEntry);
+		}
+		return OutputBlobStore.hash(canonical.toString().getBytes(
+				StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public String toString() {
+		return getFingerprint();
+	}
+
+	private static String getEntry(String packageName, String sourceType,
+			String sourceLocation, Version sourceVersion) {
+		return packageName + "\t" + sourceType + "\t" + sourceLocation + "\t"
+				+ (sourceVersion != null ? sourceVersion.getVersionString()
+						: null);
+	}
+}
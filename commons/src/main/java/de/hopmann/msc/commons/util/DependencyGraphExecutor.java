@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes interdependent tasks forming a directed acyclic graph. A node is
+ * started as soon as all of its dependencies have completed, triggered by
+ * completion callbacks instead of threads waiting for the results of other
+ * nodes. The degree of parallelism is thus only bounded by the executions
+ * returned from {@link #execute(Object, Map)}, independent of the depth of the
+ * graph.
+ * 
+ * @param <Node>
+ * @param <Result>
+ */
+public abstract class DependencyGraphExecutor<Node, Result> {
+
+	private class GraphNode {
+		private final Node node;
+		private final SettableFuture<Result> resultFuture;
+		private final List<GraphNode> dependencies = new ArrayList<GraphNode>();
+		private final List<GraphNode> dependents = new ArrayList<GraphNode>();
+		private final AtomicInteger pendingDependencies = new AtomicInteger();
+		private volatile ListenableFuture<Result> execution;
+
+		public GraphNode(Node node, SettableFuture<Result> resultFuture) {
+			this.node = node;
+			this.resultFuture = resultFuture;
+		}
+	}
+
+	private class GraphExecution extends SettableFuture<Result> {
+
+		private final Map<Node, GraphNode> graphNodes = new LinkedHashMap<Node, GraphNode>();
+
+		@Override
+		protected void cancelled(boolean mayInterruptIfRunning) {
+			for (GraphNode graphNode : graphNodes.values()) {
+				graphNode.resultFuture.cancel(false);
+				ListenableFuture<Result> execution = graphNode.execution;
+				if (execution != null && !execution.isDone()) {
+					execution.cancel(mayInterruptIfRunning);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes the given target node after all of its direct and indirect
+	 * dependencies have been executed.
+	 * 
+	 * @param target
+	 *            node to execute
+	 * @param dependencyMap
+	 *            direct dependencies of each node, nodes without entry have no
+	 *            dependencies
+	 * @return future of the result of the target node, canceling it cancels
+	 *         all pending executions of the graph
+	 * @throws IllegalArgumentException
+	 *             if the graph contains a cycle
+	 */
+	public ListenableFuture<Result> submit(Node target,
+			Map<Node, ? extends Collection<Node>> dependencyMap) {
+		GraphExecution graphExecution = new GraphExecution();
+		GraphNode targetNode = new GraphNode(target, graphExecution);
+		graphExecution.graphNodes.put(target, targetNode);
+		addDependencies(graphExecution, targetNode, dependencyMap,
+				new HashSet<Node>());
+
+		List<GraphNode> readyNodes = new ArrayList<GraphNode>();
+		for (GraphNode graphNode : graphExecution.graphNodes.values()) {
+			graphNode.pendingDependencies.set(graphNode.dependencies.size());
+			if (graphNode.dependencies.isEmpty()) {
+				readyNodes.add(graphNode);
+			}
+		}
+		for (GraphNode readyNode : readyNodes) {
+			start(readyNode);
+		}
+
+		return graphExecution;
+	}
+
+	private void addDependencies(GraphExecution graphExecution,
+			GraphNode graphNode,
+			Map<Node, ? extends Collection<Node>> dependencyMap,
+			Set<Node> currentPath) {
+		Collection<Node> dependencies = dependencyMap.get(graphNode.node);
+		if (dependencies == null) {
+			dependencies = Collections.emptySet();
+		}
+		currentPath.add(graphNode.node);
+		for (Node dependency : dependencies) {
+			if (currentPath.contains(dependency)) {
+				throw new IllegalArgumentException("Cyclic dependency between "
+						+ graphNode.node + " and " + dependency);
+			}
+			GraphNode dependencyNode = graphExecution.graphNodes
+					.get(dependency);
+			if (dependencyNode == null) {
+				dependencyNode = new GraphNode(dependency,
+						new SettableFuture<Result>());
+				graphExecution.graphNodes.put(dependency, dependencyNode);
+				addDependencies(graphExecution, dependencyNode, dependencyMap,
+						currentPath);
+			}
+			if (!graphNode.dependencies.contains(dependencyNode)) {
+				graphNode.dependencies.add(dependencyNode);
+				dependencyNode.dependents.add(graphNode);
+			}
+		}
+		currentPath.remove(graphNode.node);
+	}
+
+	private void start(final GraphNode graphNode) {
+		if (graphNode.resultFuture.isDone()) {
+			// Canceled
+			return;
+		}
+
+		Map<Node, Result> dependencyResults = new LinkedHashMap<Node, Result>();
+		final ListenableFuture<Result> execution;
+		try {
+			for (GraphNode dependency : graphNode.dependencies) {
+				// Completed successfully, does not block
+				dependencyResults.put(dependency.node,
+						dependency.resultFuture.get());
+			}
+			execution = execute(graphNode.node, dependencyResults);
+		} catch (Exception e) {
+			fail(graphNode, e);
+			return;
+		}
+
+		graphNode.execution = execution;
+		if (graphNode.resultFuture.isCancelled()) {
+			execution.cancel(true);
+		}
+
+		execution.addListener(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					complete(graphNode, execution.get());
+				} catch (ExecutionException e) {
+					fail(graphNode, e.getCause());
+				} catch (CancellationException | InterruptedException e) {
+					fail(graphNode, e);
+				}
+			}
+		});
+	}
+
+	private void complete(GraphNode graphNode, Result result) {
+		if (graphNode.resultFuture.isDone()) {
+			return;
+		}
+		try {
+			completed(graphNode.node, result);
+		} catch (RuntimeException e) {
+			fail(graphNode, e);
+			return;
+		}
+		if (!graphNode.resultFuture.set(result)) {
+			return;
+		}
+		for (GraphNode dependent : graphNode.dependents) {
+			if (dependent.pendingDependencies.decrementAndGet() == 0) {
+				start(dependent);
+			}
+		}
+	}
+
+	private void fail(GraphNode graphNode, Throwable cause) {
+		while (cause instanceof ExecutionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if (!graphNode.resultFuture.setException(cause)) {
+			return;
+		}
+		for (GraphNode dependent : graphNode.dependents) {
+			fail(dependent,
+					dependencyFailed(dependent.node, graphNode.node, cause));
+		}
+	}
+
+	/**
+	 * Starts the execution of a node whose dependencies have all completed
+	 * successfully. Implementations must not block until the execution has
+	 * finished.
+	 * 
+	 * @param node
+	 * @param dependencyResults
+	 *            results of the direct dependencies of the node
+	 * @return future of the execution
+	 * @throws Exception
+	 */
+	protected abstract ListenableFuture<Result> execute(Node node,
+			Map<Node, Result> dependencyResults) throws Exception;
+
+	/**
+	 * Invoked after a node completed successfully, before any of its dependents
+	 * gets started
+	 * 
+	 * @param node
+	 * @param result
+	 */
+	protected void completed(Node node, Result result) {
+	}
+
+	/**
+	 * Creates the failure of a node whose dependency has failed, by default
+	 * the cause of the failed dependency
+	 * 
+	 * @param node
+	 * @param failedDependency
+	 * @param cause
+	 * @return exception the node fails with
+	 */
+	protected Throwable dependencyFailed(Node node, Node failedDependency,
+			Throwable cause) {
+		return cause;
+	}
+}
@@ -19,7 +19,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -34,7 +33,10 @@ import java.util.concurrent.TimeoutException;
  * @param <Input>
  * @param <LoadResult>
  * @param <DispatchResult>
+ * @deprecated not safe for concurrent submissions, use
+ *             {@link SingleFlightExecutor}
  */
+@Deprecated
 public abstract class DispatchingExecutor<Input, LoadResult, DispatchResult> {
 
 	public abstract static class SimpleDispatchingExecutor<Input, Result>
@@ -54,17 +56,26 @@ public abstract class DispatchingExecutor<Input, LoadResult, DispatchResult> {
 
 		private final Input inputValue;
 		private List<Future<DispatchResult>> dispatchFutureList = new ArrayList<>();
-		private Future<LoadResult> loadFuture;
-		private final Callable<LoadResult> loadCallable;
+		private SettableFuture<LoadResult> loadFuture;
+		private Future<?> loadExecution;
 
 		public Task(Input value) {
 			this.inputValue = value;
-			loadCallable = new Callable<LoadResult>() {
+		}
+
+		private void startLoading() {
+			final SettableFuture<LoadResult> resultFuture = new SettableFuture<LoadResult>();
+			loadFuture = resultFuture;
+			loadExecution = executor.submit(new Runnable() {
 				@Override
-				public LoadResult call() throws Exception {
-					return load(inputValue);
+				public void run() {
+					try {
+						resultFuture.set(load(inputValue));
+					} catch (Exception e) {
+						resultFuture.setException(e);
+					}
 				}
-			};
+			});
 		}
 
 		private void removeDispatchFuture(Future<DispatchResult> taskHolder) {
@@ -73,6 +84,7 @@ public abstract class DispatchingExecutor<Input, LoadResult, DispatchResult> {
 				if (dispatchFutureList.isEmpty()) {
 					// No more holders waiting for result -> canceling execution
 					if (!loadFuture.isDone()) {
+						loadExecution.cancel(true);
 						loadFuture.cancel(true);
 					}
 					removeTask(this);
@@ -84,13 +96,13 @@ public abstract class DispatchingExecutor<Input, LoadResult, DispatchResult> {
 			synchronized (dispatchFutureList) {
 				dispatchFutureList.add(taskHolder);
 				if (dispatchFutureList.size() == 1) {
-					loadFuture = executor.submit(loadCallable);
+					startLoading();
 				}
 			}
 		}
 
-		public Future<DispatchResult> createTaskDispatchFuture() {
-			Future<DispatchResult> taskDispatchFuture = new Future<DispatchResult>() {
+		public ListenableFuture<DispatchResult> createTaskDispatchFuture() {
+			ListenableFuture<DispatchResult> taskDispatchFuture = new ListenableFuture<DispatchResult>() {
 
 				@Override
 				public boolean cancel(boolean mayInterruptIfRunning) {
@@ -132,6 +144,11 @@ public abstract class DispatchingExecutor<Input, LoadResult, DispatchResult> {
 				public boolean isDone() {
 					return loadFuture.isDone();
 				}
+
+				@Override
+				public void addListener(Runnable listener) {
+					loadFuture.addListener(listener);
+				}
 			};
 
 			addDispatchFuture(taskDispatchFuture);
@@ -147,7 +164,7 @@ public abstract class DispatchingExecutor<Input, LoadResult, DispatchResult> {
 		this.executor = executor;
 	}
 
-	public Future<DispatchResult> submit(Input value) {
+	public ListenableFuture<DispatchResult> submit(Input value) {
 
 		Task task = taskMap.get(value);
 		if (task == null) {
@@ -26,7 +26,7 @@ import java.util.concurrent.TimeoutException;
  */
 public class FutureHelper {
 
-	private static class ImmediateFuture<V> implements Future<V> {
+	private static class ImmediateFuture<V> implements ListenableFuture<V> {
 
 		private V value;
 
@@ -60,9 +60,14 @@ public class FutureHelper {
 			return true;
 		}
 
+		@Override
+		public void addListener(Runnable listener) {
+			listener.run();
+		}
+
 	}
 
-	private static class ExceptionFuture<V> implements Future<V> {
+	private static class ExceptionFuture<V> implements ListenableFuture<V> {
 
 		private Exception cause;
 
@@ -96,13 +101,18 @@ public class FutureHelper {
 			return true;
 		}
 
+		@Override
+		public void addListener(Runnable listener) {
+			listener.run();
+		}
+
 	}
 
-	public static <T> Future<T> createImmediateFuture(T value) {
+	public static <T> ListenableFuture<T> createImmediateFuture(T value) {
 		return new ImmediateFuture<T>(value);
 	}
 
-	public static <T> Future<T> createExceptionFuture(Exception cause) {
+	public static <T> ListenableFuture<T> createExceptionFuture(Exception cause) {
 		return new ExceptionFuture<T>(cause);
 	}
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.util.concurrent.Future;
+
+/**
+ * {@link Future} which notifies registered listeners on its completion, thus
+ * allowing to continue processing without blocking a thread in
+ * {@link #get()}.
+ * 
+ * @param <V>
+ */
+public interface ListenableFuture<V> extends Future<V> {
+
+	/**
+	 * Registers a listener which is run once this future is done, i.e.
+	 * completed, failed or canceled. Listeners registered on an already
+	 * completed future are run immediately by the calling thread.
+	 * 
+	 * @param listener
+	 */
+	void addListener(Runnable listener);
+}
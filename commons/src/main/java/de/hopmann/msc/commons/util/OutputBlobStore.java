@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+
+/**
+ * Content-addressed store of R CMD output. Outputs are stored compressed in a
+ * file named by the SHA-256 hash of their canonical encoding, so that
+ * identical outputs, e.g. installation logs of unchanged dependencies, are
+ * stored once.
+ * 
+ */
+public class OutputBlobStore {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String SUFFIX = ".gz";
+
+	private final File directory;
+
+	public OutputBlobStore(File directory) throws IOException {
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create blob directory "
+					+ directory);
+		}
+	}
+
+	/**
+	 * Stores the output unless an identical one is stored already
+	 * 
+	 * @return hash referencing the output
+	 */
+	public String put(List<CMDOutputMessage> outputMessages)
+			throws IOException {
+		byte[] encoded = encode(outputMessages);
+		String hash = hash(encoded);
+		File file = getFile(hash);
+		if (file.exists()) {
+			return hash;
+		}
+
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create blob directory " + parent);
+		}
+		// Concurrent writers of the same blob write identical content
+		File tempFile = File.createTempFile(hash, ".tmp", parent);
+		try {
+			try (OutputStream out = new GZIPOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				out.write(encoded);
+			}
+			if (!tempFile.renameTo(file) && !file.exists()) {
+				throw new IOException("Could not store blob " + file);
+			}
+		} finally {
+			if (tempFile.exists() && !tempFile.delete()) {
+				tempFile.deleteOnExit();
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * @return stored output, null if not stored
+	 */
+	public List<CMDOutputMessage> get(String hash) throws IOException {
+		File file = getFile(hash);
+		try (InputStream in = new GZIPInputStream(new BufferedInputStream(
+				new FileInputStream(file)))) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			return decode(out.toByteArray());
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	public boolean contains(String hash) {
+		return getFile(hash).exists();
+	}
+
+	/**
+	 * @return hash referencing the output, as returned by
+	 *         {@link #put(List)}
+	 */
+	public static String hash(List<CMDOutputMessage> outputMessages) {
+		try {
+			return hash(encode(outputMessages));
+		} catch (IOException e) {
+			// Not thrown by in-memory streams
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String hash(byte[] encoded) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		StringBuilder hash = new StringBuilder(64);
+		for (byte b : digest.digest(encoded)) {
+			hash.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hash.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * @return true if the hash may reference a stored output
+	 */
+	public static boolean isValidHash(String hash) {
+		return hash != null && hash.length() >= 3 && hash.matches("[0-9a-f]+");
+	}
+
+	private File getFile(String hash) {
+		if (!isValidHash(hash)) {
+			throw new IllegalArgumentException("Invalid blob hash " + hash);
+		}
+		return new File(new File(directory, hash.substring(0, 2)), hash
+				+ SUFFIX);
+	}
+
+	static byte[] encode(List<CMDOutputMessage> outputMessages)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(outputMessages.size());
+		for (CMDOutputMessage outputMessage : outputMessages) {
+			writeStrings(out, outputMessage.getStarsLevels());
+			writeStrings(out, outputMessage.getMessages());
+			CMDOutputStatus status = outputMessage.getStatus();
+			out.writeInt(status == null ? -1 : status.ordinal());
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	static List<CMDOutputMessage> decode(byte[] encoded) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				encoded));
+		int count = in.readInt();
+		List<CMDOutputMessage> outputMessages = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String[] starsLevels = readStrings(in);
+			String[] messages = readStrings(in);
+			int status = in.readInt();
+			outputMessages.add(new CMDOutputMessage(
+					messages == null ? Collections.<String> emptyList()
+							: Arrays.asList(messages), starsLevels,
+					status < 0 ? null : CMDOutputStatus.values()[status]));
+		}
+		return outputMessages;
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] values)
+			throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (String value : values) {
+			byte[] bytes = (value != null ? value : "").getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String[] readStrings(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		String[] values = new String[length];
+		for (int i = 0; i < length; i++) {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			values[i] = new String(bytes, UTF8);
+		}
+		return values;
+	}
+}
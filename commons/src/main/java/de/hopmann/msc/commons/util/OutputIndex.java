@@ -0,0 +1,1006 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+
+/**
+ * Inverted index of R CMD output messages stored within a directory. Outputs
+ * are appended to a document log and become searchable on {@link #commit()}.
+ * Their terms are collected in memory and written to immutable segments,
+ * which are merged once too many exist. Searches intersect the postings of
+ * all query terms.
+ * 
+ */
+public class OutputIndex implements Closeable {
+
+	/**
+	 * Output of a single stars level step of a package result
+	 * 
+	 */
+	public static class IndexedOutput {
+
+		private final int documentId;
+		private final long contextId;
+		private final String packageName;
+		private final long revision;
+		private final String kind;
+		private final CMDOutputStatus status;
+		private final String[] starsLevels;
+		private final String[] messages;
+
+		IndexedOutput(int documentId, long contextId, String packageName,
+				long revision, String kind, CMDOutputStatus status,
+				String[] starsLevels, String[] messages) {
+			this.documentId = documentId;
+			this.contextId = contextId;
+			this.packageName = packageName;
+			this.revision = revision;
+			this.kind = kind;
+			this.status = status;
+			this.starsLevels = starsLevels;
+			this.messages = messages;
+		}
+
+		public int getDocumentId() {
+			return documentId;
+		}
+
+		public long getContextId() {
+			return contextId;
+		}
+
+		public String getPackageName() {
+			return packageName;
+		}
+
+		public long getRevision() {
+			return revision;
+		}
+
+		/**
+		 * @return kind of result, e.g. check or installation
+		 */
+		public String getKind() {
+			return kind;
+		}
+
+		public CMDOutputStatus getStatus() {
+			return status;
+		}
+
+		public String[] getStarsLevels() {
+			return starsLevels;
+		}
+
+		public String[] getMessages() {
+			return messages;
+		}
+	}
+
+	/**
+	 * Criteria of a search, all of which have to match
+	 * 
+	 */
+	public static class OutputQuery {
+
+		private String text;
+		private String step;
+		private CMDOutputStatus status;
+		private String kind;
+		private Long contextId;
+		private String packageName;
+		private int latestRevisions = 0;
+		private int maxHits = 100;
+
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * @param text
+		 *            phrase to be contained in a message line, ignoring case
+		 */
+		public void setText(String text) {
+			this.text = text;
+		}
+
+		public String getStep() {
+			return step;
+		}
+
+		/**
+		 * @param step
+		 *            words of the stars level, e.g. "checking examples"
+		 */
+		public void setStep(String step) {
+			this.step = step;
+		}
+
+		public CMDOutputStatus getStatus() {
+			return status;
+		}
+
+		public void setStatus(CMDOutputStatus status) {
+			this.status = status;
+		}
+
+		public String getKind() {
+			return kind;
+		}
+
+		public void setKind(String kind) {
+			this.kind = kind;
+		}
+
+		public Long getContextId() {
+			return contextId;
+		}
+
+		public void setContextId(Long contextId) {
+			this.contextId = contextId;
+		}
+
+		public String getPackageName() {
+			return packageName;
+		}
+
+		public void setPackageName(String packageName) {
+			this.packageName = packageName;
+		}
+
+		public int getLatestRevisions() {
+			return latestRevisions;
+		}
+
+		/**
+		 * @param latestRevisions
+		 *            number of latest revisions of each package to consider, 0
+		 *            for all
+		 */
+		public void setLatestRevisions(int latestRevisions) {
+			this.latestRevisions = latestRevisions;
+		}
+
+		public int getMaxHits() {
+			return maxHits;
+		}
+
+		public void setMaxHits(int maxHits) {
+			this.maxHits = maxHits;
+		}
+	}
+
+	/**
+	 * Growable list of document ids
+	 * 
+	 */
+	private static class IntList {
+		private int[] values = new int[4];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Immutable postings of a contiguous range of documents. The term
+	 * dictionary is held in memory, postings are read on demand.
+	 * 
+	 */
+	private static class Segment implements Closeable {
+
+		private final File file;
+		private final int firstDocument;
+		private final int documentCount;
+		private final String[] terms;
+		private final long[] offsets;
+		private final int[] lengths;
+		private final int[] counts;
+		private final RandomAccessFile data;
+
+		Segment(File file) throws IOException {
+			this.file = file;
+			data = new RandomAccessFile(file, "r");
+			try {
+				if (data.readInt() != SEGMENT_MAGIC
+						|| data.readInt() != SEGMENT_VERSION) {
+					throw new IOException("Invalid segment " + file);
+				}
+				firstDocument = data.readInt();
+				documentCount = data.readInt();
+
+				data.seek(data.length() - 8);
+				data.seek(data.readLong());
+				DataInputStream in = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(
+								data.getFD())));
+				int termCount = in.readInt();
+				terms = new String[termCount];
+				offsets = new long[termCount];
+				lengths = new int[termCount];
+				counts = new int[termCount];
+				for (int i = 0; i < termCount; i++) {
+					terms[i] = readString(in);
+					offsets[i] = in.readLong();
+					lengths[i] = in.readInt();
+					counts[i] = in.readInt();
+				}
+			} catch (IOException e) {
+				data.close();
+				throw e;
+			}
+		}
+
+		int[] getPostings(String term) throws IOException {
+			int i = Arrays.binarySearch(terms, term);
+			if (i < 0) {
+				return EMPTY;
+			}
+			byte[] bytes = new byte[lengths[i]];
+			synchronized (data) {
+				data.seek(offsets[i]);
+				data.readFully(bytes);
+			}
+			return decodePostings(bytes, counts[i]);
+		}
+
+		@Override
+		public void close() throws IOException {
+			data.close();
+		}
+	}
+
+	private static final int[] EMPTY = new int[0];
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String DOCUMENT_LOG = "documents.log";
+	private static final String DOCUMENT_INDEX = "documents.idx";
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".idx";
+
+	private static final int SEGMENT_MAGIC = 0x4d534349;
+	private static final int SEGMENT_VERSION = 1;
+
+	/**
+	 * Bytes per entry of the document index, offset and revision
+	 */
+	private static final int DOCUMENT_INDEX_ENTRY = 16;
+
+	private static final int MAX_TOKEN_LENGTH = 64;
+	private static final int DEFAULT_BUFFERED_DOCUMENTS = 4096;
+	private static final int MAX_SEGMENTS = 8;
+	private static final int MERGE_SEGMENTS = 4;
+
+	private final File directory;
+	private final int maxBufferedDocuments;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final RandomAccessFile documentLog;
+	private final RandomAccessFile documentIndex;
+
+	private long[] documentOffsets = new long[1024];
+	private long[] documentRevisions = new long[1024];
+	private int documentCount = 0;
+	private int committedCount = 0;
+
+	private final List<Segment> segments = new ArrayList<>();
+
+	/**
+	 * Postings of documents not yet written to a segment
+	 */
+	private final Map<String, IntList> buffer = new HashMap<>();
+	private int bufferedFrom = 0;
+
+	public OutputIndex(File directory) throws IOException {
+		this(directory, DEFAULT_BUFFERED_DOCUMENTS);
+	}
+
+	/**
+	 * Opens or creates the index, indexing committed documents which have not
+	 * been written to a segment before
+	 * 
+	 * @param maxBufferedDocuments
+	 *            documents to collect in memory before writing a segment
+	 */
+	public OutputIndex(File directory, int maxBufferedDocuments)
+			throws IOException {
+		this.directory = directory;
+		this.maxBufferedDocuments = maxBufferedDocuments;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create index directory "
+					+ directory);
+		}
+
+		documentLog = new RandomAccessFile(new File(directory, DOCUMENT_LOG),
+				"rw");
+		documentIndex = new RandomAccessFile(new File(directory,
+				DOCUMENT_INDEX), "rw");
+		try {
+			readDocumentIndex();
+			openSegments();
+			for (int documentId = bufferedFrom; documentId < committedCount; documentId++) {
+				bufferTerms(documentId, readDocument(documentId));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the output of a result, searchable after {@link #commit()}
+	 * 
+	 * @param kind
+	 *            kind of result, e.g. check or installation
+	 */
+	public void add(long contextId, String packageName, long revision,
+			String kind, CMDOutputMessage output) throws IOException {
+		lock.writeLock().lock();
+		try {
+			int documentId = documentCount;
+			IndexedOutput document = new IndexedOutput(documentId, contextId,
+					packageName, revision, kind, output.getStatus(),
+					nonNull(output.getStarsLevels()),
+					nonNull(output.getMessages()));
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0);
+			writeDocument(out, document);
+			out.flush();
+			byte[] record = bytes.toByteArray();
+			int recordLength = record.length - 4;
+			record[0] = (byte) (recordLength >>> 24);
+			record[1] = (byte) (recordLength >>> 16);
+			record[2] = (byte) (recordLength >>> 8);
+			record[3] = (byte) recordLength;
+
+			long offset;
+			synchronized (documentLog) {
+				offset = documentLog.length();
+				documentLog.seek(offset);
+				documentLog.write(record);
+			}
+
+			if (documentCount == documentOffsets.length) {
+				documentOffsets = Arrays.copyOf(documentOffsets,
+						documentCount * 2);
+				documentRevisions = Arrays.copyOf(documentRevisions,
+						documentCount * 2);
+			}
+			documentOffsets[documentId] = offset;
+			documentRevisions[documentId] = revision;
+			documentCount++;
+
+			bufferTerms(documentId, document);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Makes added documents searchable and durable, writes a segment once
+	 * enough documents are buffered
+	 */
+	public void commit() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (committedCount == documentCount) {
+				return;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			for (int i = committedCount; i < documentCount; i++) {
+				out.writeLong(documentOffsets[i]);
+				out.writeLong(documentRevisions[i]);
+			}
+			out.flush();
+			documentLog.getFD().sync();
+			documentIndex.seek((long) committedCount * DOCUMENT_INDEX_ENTRY);
+			documentIndex.write(bytes.toByteArray());
+			documentIndex.getFD().sync();
+			committedCount = documentCount;
+
+			if (committedCount - bufferedFrom >= maxBufferedDocuments) {
+				flushBuffer();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return matching outputs, newest first
+	 */
+	public List<IndexedOutput> search(OutputQuery query) throws IOException {
+		List<String> terms = getQueryTerms(query);
+		if (terms.isEmpty()) {
+			throw new IllegalArgumentException("Query without terms");
+		}
+		String phrase = getPhrase(query.getText());
+
+		lock.readLock().lock();
+		try {
+			int[] candidates = null;
+			for (String term : terms) {
+				int[] postings = getPostings(term);
+				candidates = candidates == null ? postings : intersect(
+						candidates, postings);
+				if (candidates.length == 0) {
+					break;
+				}
+			}
+
+			Map<String, Long> minRevisions = new HashMap<>();
+			List<IndexedOutput> hits = new ArrayList<>();
+			for (int i = candidates.length - 1; i >= 0
+					&& hits.size() < query.getMaxHits(); i--) {
+				int documentId = candidates[i];
+				if (documentId >= committedCount) {
+					continue;
+				}
+				IndexedOutput output = readDocument(documentId);
+				if (query.getLatestRevisions() > 0
+						&& output.getRevision() < getMinRevision(output,
+								query.getLatestRevisions(), minRevisions)) {
+					continue;
+				}
+				if (phrase != null && !containsPhrase(output, phrase)) {
+					continue;
+				}
+				hits.add(output);
+			}
+			return hits;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return number of searchable documents
+	 */
+	public int getDocumentCount() {
+		lock.readLock().lock();
+		try {
+			return committedCount;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Discards uncommitted documents, buffered postings are rebuilt on the
+	 * next start
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			for (Segment segment : segments) {
+				segment.close();
+			}
+			segments.clear();
+			if (documentLog != null) {
+				documentLog.close();
+			}
+			if (documentIndex != null) {
+				documentIndex.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void readDocumentIndex() throws IOException {
+		int count = (int) (documentIndex.length() / DOCUMENT_INDEX_ENTRY);
+		documentIndex.setLength((long) count * DOCUMENT_INDEX_ENTRY);
+
+		documentOffsets = new long[Math.max(1024, count)];
+		documentRevisions = new long[Math.max(1024, count)];
+		documentIndex.seek(0);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(documentIndex.getFD())));
+		for (int i = 0; i < count; i++) {
+			documentOffsets[i] = in.readLong();
+			documentRevisions[i] = in.readLong();
+		}
+		documentCount = count;
+		committedCount = count;
+
+		// Drop uncommitted documents
+		long logLength = 0;
+		if (count > 0) {
+			documentLog.seek(documentOffsets[count - 1]);
+			logLength = documentOffsets[count - 1] + 4
+					+ documentLog.readInt();
+		}
+		documentLog.setLength(logLength);
+	}
+
+	/**
+	 * Opens the chain of segments covering committed documents from the
+	 * first one, deleting segments left over from interrupted merges
+	 */
+	private void openSegments() throws IOException {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX)
+						&& name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		List<Segment> available = new ArrayList<>();
+		for (File file : files) {
+			available.add(new Segment(file));
+		}
+		// Larger segments first, they replace merged ones
+		Collections.sort(available, new Comparator<Segment>() {
+			@Override
+			public int compare(Segment o1, Segment o2) {
+				if (o1.firstDocument != o2.firstDocument) {
+					return Integer.compare(o1.firstDocument, o2.firstDocument);
+				}
+				return -Integer.compare(o1.documentCount, o2.documentCount);
+			}
+		});
+
+		bufferedFrom = 0;
+		for (Segment segment : available) {
+			if (segment.firstDocument == bufferedFrom
+					&& segment.firstDocument + segment.documentCount <= committedCount) {
+				segments.add(segment);
+				bufferedFrom += segment.documentCount;
+			} else {
+				segment.close();
+				if (!segment.file.delete()) {
+					throw new IOException("Could not delete segment "
+							+ segment.file);
+				}
+			}
+		}
+	}
+
+	private void bufferTerms(int documentId, IndexedOutput document) {
+		for (String term : getTerms(document)) {
+			IntList postings = buffer.get(term);
+			if (postings == null) {
+				postings = new IntList();
+				buffer.put(term, postings);
+			}
+			postings.add(documentId);
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		TreeMap<String, int[]> postings = new TreeMap<>();
+		for (Map.Entry<String, IntList> entry : buffer.entrySet()) {
+			postings.put(entry.getKey(), entry.getValue().toArray());
+		}
+		segments.add(writeSegment(bufferedFrom, committedCount - bufferedFrom,
+				postings));
+		buffer.clear();
+		bufferedFrom = committedCount;
+
+		if (segments.size() > MAX_SEGMENTS) {
+			mergeSegments(segments.size() - MERGE_SEGMENTS);
+		}
+	}
+
+	/**
+	 * Merges all segments starting at the given position into one
+	 */
+	private void mergeSegments(int from) throws IOException {
+		List<Segment> merged = new ArrayList<>(segments.subList(from,
+				segments.size()));
+		Set<String> terms = new TreeSet<>();
+		int documentCount = 0;
+		for (Segment segment : merged) {
+			terms.addAll(Arrays.asList(segment.terms));
+			documentCount += segment.documentCount;
+		}
+
+		TreeMap<String, int[]> postings = new TreeMap<>();
+		for (String term : terms) {
+			IntList termPostings = new IntList();
+			// Document ranges ascending, so postings stay ordered
+			for (Segment segment : merged) {
+				for (int documentId : segment.getPostings(term)) {
+					termPostings.add(documentId);
+				}
+			}
+			postings.put(term, termPostings.toArray());
+		}
+
+		Segment segment = writeSegment(merged.get(0).firstDocument,
+				documentCount, postings);
+		segments.subList(from, segments.size()).clear();
+		segments.add(segment);
+		for (Segment oldSegment : merged) {
+			oldSegment.close();
+			if (!oldSegment.file.delete()) {
+				throw new IOException("Could not delete segment "
+						+ oldSegment.file);
+			}
+		}
+	}
+
+	private Segment writeSegment(int firstDocument, int documentCount,
+			TreeMap<String, int[]> postings) throws IOException {
+		File file = new File(directory, SEGMENT_PREFIX + firstDocument + "-"
+				+ documentCount + SEGMENT_SUFFIX);
+		File tempFile = new File(directory, file.getName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(SEGMENT_MAGIC);
+			out.writeInt(SEGMENT_VERSION);
+			out.writeInt(firstDocument);
+			out.writeInt(documentCount);
+			long position = 16;
+
+			long[] offsets = new long[postings.size()];
+			int[] lengths = new int[postings.size()];
+			int i = 0;
+			for (int[] termPostings : postings.values()) {
+				byte[] bytes = encodePostings(termPostings);
+				out.write(bytes);
+				offsets[i] = position;
+				lengths[i] = bytes.length;
+				position += bytes.length;
+				i++;
+			}
+
+			out.writeInt(postings.size());
+			i = 0;
+			for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+				writeString(out, entry.getKey());
+				out.writeLong(offsets[i]);
+				out.writeInt(lengths[i]);
+				out.writeInt(entry.getValue().length);
+				i++;
+			}
+			out.writeLong(position);
+		}
+
+		if (!tempFile.renameTo(file)) {
+			throw new IOException("Could not write segment " + file);
+		}
+		return new Segment(file);
+	}
+
+	private int[] getPostings(String term) throws IOException {
+		IntList postings = new IntList();
+		for (Segment segment : segments) {
+			for (int documentId : segment.getPostings(term)) {
+				postings.add(documentId);
+			}
+		}
+		IntList buffered = buffer.get(term);
+		if (buffered != null) {
+			for (int documentId : buffered.toArray()) {
+				postings.add(documentId);
+			}
+		}
+		return postings.toArray();
+	}
+
+	/**
+	 * @return lowest of the latest revisions of the package of the output
+	 */
+	private long getMinRevision(IndexedOutput output, int latestRevisions,
+			Map<String, Long> minRevisions) throws IOException {
+		String packageKey = getPackageKey(output.getContextId(),
+				output.getPackageName());
+		Long minRevision = minRevisions.get(packageKey);
+		if (minRevision == null) {
+			TreeSet<Long> revisions = new TreeSet<>();
+			for (int documentId : getPostings("package:" + packageKey)) {
+				if (documentId < committedCount) {
+					revisions.add(documentRevisions[documentId]);
+					if (revisions.size() > latestRevisions) {
+						revisions.pollFirst();
+					}
+				}
+			}
+			minRevision = revisions.isEmpty() ? Long.MIN_VALUE : revisions
+					.first();
+			minRevisions.put(packageKey, minRevision);
+		}
+		return minRevision;
+	}
+
+	private IndexedOutput readDocument(int documentId) throws IOException {
+		byte[] record;
+		synchronized (documentLog) {
+			documentLog.seek(documentOffsets[documentId]);
+			record = new byte[documentLog.readInt()];
+			documentLog.readFully(record);
+		}
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(record));
+		long contextId = in.readLong();
+		String packageName = readString(in);
+		long revision = in.readLong();
+		String kind = readString(in);
+		String status = readString(in);
+		String[] starsLevels = readStrings(in);
+		String[] messages = readStrings(in);
+		return new IndexedOutput(documentId, contextId, packageName, revision,
+				kind, status != null ? CMDOutputStatus.valueOf(status) : null,
+				starsLevels, messages);
+	}
+
+	private static void writeDocument(DataOutput out, IndexedOutput document)
+			throws IOException {
+		out.writeLong(document.getContextId());
+		writeString(out, document.getPackageName());
+		out.writeLong(document.getRevision());
+		writeString(out, document.getKind());
+		writeString(out, document.getStatus() != null ? document.getStatus()
+				.name() : null);
+		writeStrings(out, document.getStarsLevels());
+		writeStrings(out, document.getMessages());
+	}
+
+	private static Set<String> getTerms(IndexedOutput document) {
+		Set<String> terms = new LinkedHashSet<>();
+		for (String message : document.getMessages()) {
+			tokenize(message, "", terms);
+		}
+		for (String starsLevel : document.getStarsLevels()) {
+			tokenize(starsLevel, "step:", terms);
+		}
+		if (document.getStatus() != null) {
+			terms.add("status:" + document.getStatus().name().toLowerCase());
+		}
+		if (document.getKind() != null) {
+			terms.add("kind:" + document.getKind().toLowerCase());
+		}
+		terms.add("context:" + document.getContextId());
+		terms.add("name:" + document.getPackageName());
+		terms.add("package:"
+				+ getPackageKey(document.getContextId(),
+						document.getPackageName()));
+		return terms;
+	}
+
+	private static List<String> getQueryTerms(OutputQuery query) {
+		Set<String> terms = new LinkedHashSet<>();
+		// Selective criteria first to keep intersections small
+		if (query.getContextId() != null && query.getPackageName() != null) {
+			terms.add("package:"
+					+ getPackageKey(query.getContextId(),
+							query.getPackageName()));
+		} else if (query.getPackageName() != null) {
+			terms.add("name:" + query.getPackageName());
+		}
+		if (query.getText() != null) {
+			tokenize(query.getText(), "", terms);
+		}
+		if (query.getStep() != null) {
+			tokenize(query.getStep(), "step:", terms);
+		}
+		if (query.getStatus() != null) {
+			terms.add("status:" + query.getStatus().name().toLowerCase());
+		}
+		if (query.getKind() != null) {
+			terms.add("kind:" + query.getKind().toLowerCase());
+		}
+		if (query.getContextId() != null) {
+			terms.add("context:" + query.getContextId());
+		}
+		return new ArrayList<>(terms);
+	}
+
+	/**
+	 * Adds lower case words of letters, digits and underscores
+	 */
+	static void tokenize(String text, String prefix, Set<String> terms) {
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean wordChar = i < text.length()
+					&& (Character.isLetterOrDigit(text.charAt(i)) || text
+							.charAt(i) == '_');
+			if (wordChar && start < 0) {
+				start = i;
+			} else if (!wordChar && start >= 0) {
+				if (i - start <= MAX_TOKEN_LENGTH) {
+					terms.add(prefix + text.substring(start, i).toLowerCase());
+				}
+				start = -1;
+			}
+		}
+	}
+
+	/**
+	 * @return normalized text if it consists of multiple words, which have to
+	 *         be matched as a phrase
+	 */
+	private static String getPhrase(String text) {
+		if (text == null) {
+			return null;
+		}
+		Set<String> words = new LinkedHashSet<>();
+		tokenize(text, "", words);
+		if (words.size() < 2) {
+			return null;
+		}
+		return normalize(text);
+	}
+
+	private static boolean containsPhrase(IndexedOutput output, String phrase) {
+		for (String message : output.getMessages()) {
+			if (normalize(message).contains(phrase)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String normalize(String text) {
+		return text.trim().replaceAll("\\s+", " ").toLowerCase();
+	}
+
+	private static String getPackageKey(long contextId, String packageName) {
+		return contextId + "/" + packageName;
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[k++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, k);
+	}
+
+	/**
+	 * Encodes ascending document ids as variable length deltas
+	 */
+	static byte[] encodePostings(int[] postings) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(postings.length);
+		int previous = 0;
+		for (int documentId : postings) {
+			int delta = documentId - previous;
+			previous = documentId;
+			while ((delta & ~0x7f) != 0) {
+				out.write((delta & 0x7f) | 0x80);
+				delta >>>= 7;
+			}
+			out.write(delta);
+		}
+		return out.toByteArray();
+	}
+
+	static int[] decodePostings(byte[] bytes, int count) {
+		int[] postings = new int[count];
+		int position = 0;
+		int previous = 0;
+		for (int i = 0; i < count; i++) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[position++];
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			previous += delta;
+			postings[i] = previous;
+		}
+		return postings;
+	}
+
+	private static String[] nonNull(String[] values) {
+		return values != null ? values : new String[0];
+	}
+
+	private static void writeString(DataOutput out, String value)
+			throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeStrings(DataOutput out, String[] values)
+			throws IOException {
+		out.writeInt(values.length);
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	private static String[] readStrings(DataInput in) throws IOException {
+		String[] values = new String[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = readString(in);
+		}
+		return values;
+	}
+}
@@ -36,6 +36,22 @@ import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
  */
 public class RCMDOutputReader implements AutoCloseable {
 
+	/**
+	 * Receives stars messages as soon as they are read, while the process is
+	 * still running.
+	 * 
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * @param starsLevels
+		 *            current stars levels, the last one being the new message
+		 * @param status
+		 *            status designated by the message, or null
+		 */
+		void progress(String[] starsLevels, CMDOutputStatus status);
+	}
+
 	private static final String DONE = "DONE";
 
 	private BufferedReader processOutReader;
@@ -46,6 +62,7 @@ public class RCMDOutputReader implements AutoCloseable {
 	private CMDOutputStatus starsMessageStatus;
 	private PrintStream logPrintStream;
 	private int[] statusCount = new int[CMDOutputStatus.values().length];
+	private ProgressListener progressListener;
 
 	private static Pattern starsMessagePattern = Pattern
 			.compile("^\\s*(\\*++)\\s*(.+)");
@@ -99,6 +116,14 @@ public class RCMDOutputReader implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Stops the producer of the output, so that reading ends early. May be
+	 * called from another thread while reading. Does nothing by default.
+	 */
+	public void abort() {
+
+	}
+
 	public boolean isDone() {
 		return isDone;
 	}
@@ -166,6 +191,16 @@ public class RCMDOutputReader implements AutoCloseable {
 			starsLevels[level] = message;
 		}
 		maxLevel = level;
+
+		if (progressListener != null) {
+			progressListener.progress(Arrays.copyOfRange(starsLevels, 0,
+					Math.min(level + 1, starsLevels.length)),
+					starsMessageStatus);
+		}
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
 	}
 
 	public int getStatusCount(CMDOutputStatus status) {
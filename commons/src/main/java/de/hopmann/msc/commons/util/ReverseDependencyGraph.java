@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Dependency graph indexed in reverse direction, used to determine the
+ * packages affected by changes of other packages. Not thread-safe.
+ * 
+ * @param <Node>
+ */
+public class ReverseDependencyGraph<Node> {
+
+	private final Map<Node, Set<Node>> dependencies = new HashMap<Node, Set<Node>>();
+	private final Map<Node, Set<Node>> dependents = new HashMap<Node, Set<Node>>();
+
+	public void addDependency(Node node, Node dependency) {
+		if (node.equals(dependency)) {
+			return;
+		}
+		getOrCreate(dependencies, node).add(dependency);
+		getOrCreate(dependents, dependency).add(node);
+	}
+
+	/**
+	 * @param dependencyMap
+	 *            direct dependencies of each node
+	 */
+	public void addDependencies(
+			Map<Node, ? extends Collection<Node>> dependencyMap) {
+		for (Map.Entry<Node, ? extends Collection<Node>> entry : dependencyMap
+				.entrySet()) {
+			for (Node dependency : entry.getValue()) {
+				addDependency(entry.getKey(), dependency);
+			}
+		}
+	}
+
+	/**
+	 * @return direct dependencies of the node
+	 */
+	public Set<Node> getDependencies(Node node) {
+		Set<Node> result = dependencies.get(node);
+		return result != null ? Collections.unmodifiableSet(result)
+				: Collections.<Node> emptySet();
+	}
+
+	/**
+	 * @return nodes directly depending on the node
+	 */
+	public Set<Node> getDependents(Node node) {
+		Set<Node> result = dependents.get(node);
+		return result != null ? Collections.unmodifiableSet(result)
+				: Collections.<Node> emptySet();
+	}
+
+	/**
+	 * @return the changed nodes and all nodes depending on them directly or
+	 *         indirectly
+	 */
+	public Set<Node> getAffected(Collection<Node> changedNodes) {
+		Set<Node> affected = new LinkedHashSet<Node>(changedNodes);
+		Deque<Node> queue = new ArrayDeque<Node>(changedNodes);
+		while (!queue.isEmpty()) {
+			for (Node dependent : getDependents(queue.poll())) {
+				if (affected.add(dependent)) {
+					queue.add(dependent);
+				}
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 * Orders the affected nodes such that each node follows the affected nodes
+	 * it depends on. Nodes of dependency cycles are appended in the order of
+	 * discovery.
+	 * 
+	 * @return the nodes of {@link #getAffected(Collection)} in topological
+	 *         order
+	 */
+	public List<Node> getRecheckOrder(Collection<Node> changedNodes) {
+		Set<Node> affected = getAffected(changedNodes);
+
+		Map<Node, Integer> pendingDependencies = new LinkedHashMap<Node, Integer>();
+		Deque<Node> readyNodes = new ArrayDeque<Node>();
+		for (Node node : affected) {
+			int count = 0;
+			for (Node dependency : getDependencies(node)) {
+				if (affected.contains(dependency)) {
+					count++;
+				}
+			}
+			pendingDependencies.put(node, count);
+			if (count == 0) {
+				readyNodes.add(node);
+			}
+		}
+
+		List<Node> order = new ArrayList<Node>(affected.size());
+		while (order.size() < affected.size()) {
+			if (readyNodes.isEmpty()) {
+				// Cycle, release the first remaining node
+				for (Map.Entry<Node, Integer> entry : pendingDependencies
+						.entrySet()) {
+					if (entry.getValue() > 0) {
+						entry.setValue(0);
+						readyNodes.add(entry.getKey());
+						break;
+					}
+				}
+			}
+			Node node = readyNodes.poll();
+			order.add(node);
+			pendingDependencies.put(node, -1);
+			for (Node dependent : getDependents(node)) {
+				Integer count = pendingDependencies.get(dependent);
+				if (count != null && count > 0) {
+					pendingDependencies.put(dependent, count - 1);
+					if (count == 1) {
+						readyNodes.add(dependent);
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Orders the given nodes such that each node follows the given nodes it
+	 * depends on. Of the nodes whose dependencies are satisfied, those with
+	 * the most dependents come first. Cycles are broken at the node with the
+	 * most dependents.
+	 * 
+	 * @return the given nodes in topological order
+	 */
+	public List<Node> getSweepOrder(Collection<Node> nodes) {
+		final Map<Node, Integer> dependentCounts = new HashMap<Node, Integer>();
+		final Map<Node, Integer> positions = new HashMap<Node, Integer>();
+		for (Node node : nodes) {
+			if (!positions.containsKey(node)) {
+				positions.put(node, positions.size());
+			}
+		}
+		Map<Node, Integer> pendingDependencies = new LinkedHashMap<Node, Integer>();
+		for (Node node : positions.keySet()) {
+			int dependentCount = 0;
+			for (Node dependent : getDependents(node)) {
+				if (positions.containsKey(dependent)) {
+					dependentCount++;
+				}
+			}
+			dependentCounts.put(node, dependentCount);
+			int count = 0;
+			for (Node dependency : getDependencies(node)) {
+				if (positions.containsKey(dependency)) {
+					count++;
+				}
+			}
+			pendingDependencies.put(node, count);
+		}
+
+		PriorityQueue<Node> readyNodes = new PriorityQueue<Node>(
+				Math.max(1, positions.size()), new Comparator<Node>() {
+					@Override
+					public int compare(Node o1, Node o2) {
+						int result = dependentCounts.get(o2).compareTo(
+								dependentCounts.get(o1));
+						return result != 0 ? result : positions.get(o1)
+								.compareTo(positions.get(o2));
+					}
+				});
+		for (Map.Entry<Node, Integer> entry : pendingDependencies.entrySet()) {
+			if (entry.getValue() == 0) {
+				readyNodes.add(entry.getKey());
+			}
+		}
+
+		List<Node> order = new ArrayList<Node>(positions.size());
+		while (order.size() < positions.size()) {
+			if (readyNodes.isEmpty()) {
+				// Cycle, release the remaining node with the most dependents
+				Node released = null;
+				for (Map.Entry<Node, Integer> entry : pendingDependencies
+						.entrySet()) {
+					if (entry.getValue() > 0
+							&& (released == null || readyNodes.comparator()
+									.compare(entry.getKey(), released) < 0)) {
+						released = entry.getKey();
+					}
+				}
+				pendingDependencies.put(released, 0);
+				readyNodes.add(released);
+			}
+			Node node = readyNodes.poll();
+			order.add(node);
+			pendingDependencies.put(node, -1);
+			for (Node dependent : getDependents(node)) {
+				Integer count = pendingDependencies.get(dependent);
+				if (count != null && count > 0) {
+					pendingDependencies.put(dependent, count - 1);
+					if (count == 1) {
+						readyNodes.add(dependent);
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	private static <Node> Set<Node> getOrCreate(Map<Node, Set<Node>> map,
+			Node node) {
+		Set<Node> set = map.get(node);
+		if (set == null) {
+			set = new LinkedHashSet<Node>();
+			map.put(node, set);
+		}
+		return set;
+	}
+}
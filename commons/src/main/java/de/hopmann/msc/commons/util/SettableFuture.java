@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link ListenableFuture} whose result is explicitly set by the producing
+ * side. Only the first completion is effective, later attempts are ignored.
+ * 
+ * @param <V>
+ */
+public class SettableFuture<V> implements ListenableFuture<V> {
+
+	private static final Logger LOG = Logger.getLogger(SettableFuture.class
+			.getName());
+
+	private List<Runnable> listeners = new ArrayList<Runnable>();
+	private boolean done;
+	private boolean cancelled;
+	private V value;
+	private Throwable cause;
+
+	/**
+	 * Completes this future with the given value
+	 * 
+	 * @param value
+	 * @return true if this call completed the future
+	 */
+	public boolean set(V value) {
+		return complete(value, null, false);
+	}
+
+	/**
+	 * Completes this future exceptionally
+	 * 
+	 * @param cause
+	 * @return true if this call completed the future
+	 */
+	public boolean setException(Throwable cause) {
+		return complete(null, cause, false);
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (complete(null, null, true)) {
+			cancelled(mayInterruptIfRunning);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Invoked after this future got canceled, subclasses may abort the
+	 * associated computation
+	 * 
+	 * @param mayInterruptIfRunning
+	 */
+	protected void cancelled(boolean mayInterruptIfRunning) {
+	}
+
+	private boolean complete(V value, Throwable cause, boolean cancel) {
+		List<Runnable> completionListeners;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			this.value = value;
+			this.cause = cause;
+			this.cancelled = cancel;
+			this.done = true;
+			completionListeners = listeners;
+			listeners = null;
+			notifyAll();
+		}
+		for (Runnable listener : completionListeners) {
+			runListener(listener);
+		}
+		return true;
+	}
+
+	@Override
+	public void addListener(Runnable listener) {
+		synchronized (this) {
+			if (!done) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		runListener(listener);
+	}
+
+	private void runListener(Runnable listener) {
+		try {
+			listener.run();
+		} catch (RuntimeException e) {
+			LOG.log(Level.SEVERE, "Future listener failed", e);
+		}
+	}
+
+	@Override
+	public synchronized V get() throws InterruptedException,
+			ExecutionException {
+		while (!done) {
+			wait();
+		}
+		return getValue();
+	}
+
+	@Override
+	public synchronized V get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!done) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getValue();
+	}
+
+	private V getValue() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		if (cause != null) {
+			throw new ExecutionException(cause);
+		}
+		return value;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+}
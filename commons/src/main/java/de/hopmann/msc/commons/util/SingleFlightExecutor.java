@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Threading facility which ensures that each input value is loaded at most
+ * once at a time. Threads submitting an input value which is currently loaded
+ * join the running load and receive their own dispatched result of it. The
+ * load is canceled as soon as all of its waiters have canceled.
+ * 
+ * @param <Input>
+ * @param <LoadResult>
+ * @param <DispatchResult>
+ */
+public abstract class SingleFlightExecutor<Input, LoadResult, DispatchResult> {
+
+	public abstract static class SimpleSingleFlightExecutor<Input, Result>
+			extends SingleFlightExecutor<Input, Result, Result> {
+		public SimpleSingleFlightExecutor(ExecutorService executor) {
+			super(executor);
+		}
+
+		@Override
+		protected Result dispatch(Result value) throws Exception {
+			return value;
+		}
+
+	}
+
+	/**
+	 * Snapshot of the counters summed up over all input values
+	 * 
+	 */
+	public static class Statistics {
+		private final long hits;
+		private final long misses;
+		private final int inFlight;
+
+		public Statistics(long hits, long misses, int inFlight) {
+			this.hits = hits;
+			this.misses = misses;
+			this.inFlight = inFlight;
+		}
+
+		/**
+		 * @return number of submissions which joined a running load
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return number of submissions which started a new load
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return number of running loads
+		 */
+		public int getInFlight() {
+			return inFlight;
+		}
+	}
+
+	private static class Counters {
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+	}
+
+	/**
+	 * A single load of an input value shared by its waiters
+	 */
+	private class Flight {
+
+		private final Input inputValue;
+		private final SettableFuture<LoadResult> loadFuture = new SettableFuture<LoadResult>();
+		// Zero once all waiters left, the flight cannot be joined anymore
+		private final AtomicInteger waiters = new AtomicInteger(1);
+		private volatile Future<?> loadExecution;
+
+		public Flight(Input inputValue) {
+			this.inputValue = inputValue;
+		}
+
+		private void start() {
+			loadExecution = executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					LoadResult loadResult;
+					try {
+						loadResult = load(inputValue);
+					} catch (Exception e) {
+						flightMap.remove(inputValue, Flight.this);
+						loadFuture.setException(e);
+						return;
+					}
+					flightMap.remove(inputValue, Flight.this);
+					loadFuture.set(loadResult);
+				}
+			});
+		}
+
+		private boolean join() {
+			while (true) {
+				int currentWaiters = waiters.get();
+				if (currentWaiters == 0) {
+					return false;
+				}
+				if (waiters.compareAndSet(currentWaiters, currentWaiters + 1)) {
+					return true;
+				}
+			}
+		}
+
+		private void leave(boolean mayInterruptIfRunning) {
+			if (waiters.decrementAndGet() == 0) {
+				// No more waiters -> canceling execution
+				flightMap.remove(inputValue, this);
+				if (!loadFuture.isDone()) {
+					Future<?> execution = loadExecution;
+					if (execution != null) {
+						execution.cancel(mayInterruptIfRunning);
+					}
+					loadFuture.cancel(false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Future handed out to a single waiter of a flight. The result is
+	 * dispatched once for each waiter.
+	 */
+	private class WaiterFuture implements ListenableFuture<DispatchResult> {
+
+		private final Flight flight;
+		private final SettableFuture<LoadResult> waiterLoadFuture = new SettableFuture<LoadResult>();
+		private boolean dispatched;
+		private DispatchResult dispatchResult;
+		private Exception dispatchException;
+
+		public WaiterFuture(Flight flight) {
+			this.flight = flight;
+			final SettableFuture<LoadResult> loadFuture = flight.loadFuture;
+			loadFuture.addListener(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						waiterLoadFuture.set(loadFuture.get());
+					} catch (ExecutionException e) {
+						waiterLoadFuture.setException(e.getCause());
+					} catch (CancellationException | InterruptedException e) {
+						waiterLoadFuture.cancel(false);
+					}
+				}
+			});
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (waiterLoadFuture.cancel(mayInterruptIfRunning)) {
+				flight.leave(mayInterruptIfRunning);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public DispatchResult get() throws InterruptedException,
+				ExecutionException {
+			return dispatchResult(waiterLoadFuture.get());
+		}
+
+		@Override
+		public DispatchResult get(long timeout, TimeUnit unit)
+				throws InterruptedException, ExecutionException,
+				TimeoutException {
+			return dispatchResult(waiterLoadFuture.get(timeout, unit));
+		}
+
+		private synchronized DispatchResult dispatchResult(LoadResult value)
+				throws ExecutionException {
+			if (!dispatched) {
+				try {
+					dispatchResult = dispatch(value);
+				} catch (Exception e) {
+					dispatchException = e;
+				}
+				dispatched = true;
+			}
+			if (dispatchException != null) {
+				throw new ExecutionException(dispatchException);
+			}
+			return dispatchResult;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return waiterLoadFuture.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return waiterLoadFuture.isDone();
+		}
+
+		@Override
+		public void addListener(Runnable listener) {
+			waiterLoadFuture.addListener(listener);
+		}
+	}
+
+	private final ConcurrentMap<Input, Flight> flightMap = new ConcurrentHashMap<Input, Flight>();
+	private final Counters totalCounters = new Counters();
+	private final ExecutorService executor;
+
+	public SingleFlightExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public ListenableFuture<DispatchResult> submit(Input value) {
+		while (true) {
+			Flight flight = flightMap.get(value);
+			if (flight != null) {
+				if (flight.join()) {
+					totalCounters.hits.incrementAndGet();
+					return new WaiterFuture(flight);
+				}
+				// Flight got canceled meanwhile
+				flightMap.remove(value, flight);
+			} else {
+				flight = new Flight(value);
+				if (flightMap.putIfAbsent(value, flight) == null) {
+					totalCounters.misses.incrementAndGet();
+					WaiterFuture waiterFuture = new WaiterFuture(flight);
+					flight.start();
+					return waiterFuture;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Input values are only kept while being loaded, no state remains for
+	 * completed loads
+	 * 
+	 * @return number of waiters of the running load of the input value, 0 if
+	 *         it is not being loaded
+	 */
+	public int getWaiters(Input value) {
+		Flight flight = flightMap.get(value);
+		return flight == null ? 0 : flight.waiters.get();
+	}
+
+	/**
+	 * @return counters summed up over all input values
+	 */
+	public Statistics getStatistics() {
+		return new Statistics(totalCounters.hits.get(),
+				totalCounters.misses.get(), flightMap.size());
+	}
+
+	protected abstract LoadResult load(Input value) throws Exception;
+
+	protected abstract DispatchResult dispatch(LoadResult value)
+			throws Exception;
+
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages.codec;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.messages.CancelTaskMessage;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.ExceptionResultMessage;
+import de.hopmann.msc.commons.messages.OutputStatusMessage;
+import de.hopmann.msc.commons.messages.PackageMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.messages.ProgressBatchMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage.ProgressStep;
+import de.hopmann.msc.commons.messages.ResultBatchMessage;
+import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.model.SourceIdentifier;
+import de.hopmann.msc.commons.model.Version;
+
+public class BinaryMessageCodecTest {
+
+	private final BinaryMessageCodec codec = new BinaryMessageCodec();
+
+	@Test
+	public void testCheckTaskRoundTrip() throws MessageCodecException {
+		CheckTaskMessage original = TestMessages.createCheckTask(5);
+		original.setPriority(CheckTaskMessage.PRIORITY_HIGH);
+		original.setTaskId("a1b2c3");
+
+		CheckTaskMessage decoded = (CheckTaskMessage) codec.decode(codec
+				.encode(original));
+
+		assertEquals(original.getContextIdRef(), decoded.getContextIdRef());
+		assertEquals(CheckTaskMessage.PRIORITY_HIGH, decoded.getPriority());
+		assertEquals("a1b2c3", decoded.getTaskId());
+		assertTrue(decoded.getDefaultRepository() instanceof SourceIdentifier.SourceRepositoryIdentifier);
+		assertEquals("CRAN", decoded.getDefaultRepository().getSourceType());
+		assertPackageEquals(original.getPackageDescription(),
+				decoded.getPackageDescription());
+		assertEquals("3.0.2", decoded.getPackageInstaller().getVersionString());
+		assertEquals("release", decoded.getPackageInstaller().getFlavor());
+		assertEquals("x86_64", decoded.getPackageInstaller().getArchitecture());
+
+		assertEquals(5, decoded.getDependencies().size());
+		for (PackageMessage dependency : original.getDependencies()) {
+			assertPackageEquals(dependency,
+					decoded.getDependency(dependency.getName()));
+		}
+	}
+
+	@Test
+	public void testCheckResultRoundTrip() throws MessageCodecException {
+		CheckResultMessage original = TestMessages.createCheckResult(5);
+
+		CheckResultMessage decoded = (CheckResultMessage) codec.decode(codec
+				.encode(original));
+
+		assertResultEquals(original, decoded);
+		assertPackageResultsEquals(original.getInstallationDependencies(),
+				decoded.getInstallationDependencies());
+		assertPackageResultsEquals(original.getCheckDependencies(),
+				decoded.getCheckDependencies());
+		assertEquals(2, decoded.getCheckResult().getCheckWarningCount());
+		assertEquals(3, decoded.getCheckResult().getCheckNoteCount());
+		assertEquals(1, decoded.getCheckResult().getCheckSkippedCount());
+		assertEquals(0, decoded.getCheckResult().getCheckErrorCount());
+	}
+
+	@Test
+	public void testOutputHashRoundTrip() throws MessageCodecException {
+		CheckResultMessage original = TestMessages.createCheckResult(2);
+		original.setOutputHash("ab12");
+		PackageResultMessage dependency = original
+				.getInstallationDependencies().iterator().next();
+		// Output referenced by hash only
+		dependency.setOutputMessages(null);
+		dependency.setOutputHash("cd34");
+
+		CheckResultMessage decoded = (CheckResultMessage) codec.decode(codec
+				.encode(original));
+
+		assertEquals("ab12", decoded.getOutputHash());
+		assertNull(decoded.getPackageDescription().getOutputHash());
+		for (PackageResultMessage decodedDependency : decoded
+				.getInstallationDependencies()) {
+			if (decodedDependency.getPackageName().equals(
+					dependency.getPackageName())) {
+				assertEquals("cd34", decodedDependency.getOutputHash());
+				assertNull(decodedDependency.getOutputMessages());
+			}
+		}
+	}
+
+	@Test
+	public void testBatchRoundTrip() throws MessageCodecException {
+		ExceptionResultMessage exceptionResult = new ExceptionResultMessage();
+		exceptionResult.setContextIdRef(7L);
+		exceptionResult.setPackage(TestMessages.createPackageResult("Matrix",
+				2, false));
+		exceptionResult.setFailedPackage(TestMessages.createPackageResult(
+				"lattice", 3, true));
+		exceptionResult.addInstalledPackage(TestMessages.createPackageResult(
+				"grid", 1, false));
+
+		List<ResultMessage> results = new ArrayList<>();
+		results.add(TestMessages.createCheckResult(3));
+		results.add(exceptionResult);
+
+		ResultBatchMessage decoded = (ResultBatchMessage) codec.decode(codec
+				.encode(new ResultBatchMessage(results)));
+
+		assertEquals(2, decoded.getResults().size());
+		assertResultEquals(results.get(0), decoded.getResults().get(0));
+		ExceptionResultMessage decodedException = (ExceptionResultMessage) decoded
+				.getResults().get(1);
+		assertResultEquals(exceptionResult, decodedException);
+		assertPackageResultEquals(exceptionResult.getFailedPackage(),
+				decodedException.getFailedPackage());
+		assertPackageResultsEquals(exceptionResult.getInstalledPackages(),
+				decodedException.getInstalledPackages());
+	}
+
+	@Test
+	public void testSmallerThanXml() throws MessageCodecException {
+		XmlMessageCodec xmlCodec = new XmlMessageCodec();
+		List<ResultMessage> results = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			results.add(TestMessages.createCheckResult(15));
+		}
+		ResultBatchMessage batch = new ResultBatchMessage(results);
+
+		byte[] xml = xmlCodec.encode(batch);
+		byte[] binary = codec.encode(batch);
+		assertTrue("Binary encoding should be smaller than XML",
+				binary.length < xml.length);
+
+		ResultBatchMessage fromXml = (ResultBatchMessage) xmlCodec.decode(xml);
+		ResultBatchMessage fromBinary = (ResultBatchMessage) codec
+				.decode(binary);
+		assertEquals(results.size(), fromBinary.getResults().size());
+		for (int i = 0; i < results.size(); i++) {
+			assertResultEquals(fromXml.getResults().get(i), fromBinary
+					.getResults().get(i));
+		}
+	}
+
+	@Test
+	public void testProgressRoundTrip() throws MessageCodecException {
+		ProgressMessage progress = new ProgressMessage(42L, "lme4");
+		progress.setTaskId("a1b2c3");
+		progress.addStep(new ProgressStep(1000L,
+				new String[] { "checking package" }, null));
+		progress.addStep(new ProgressStep(2500L, new String[] {
+				"checking examples", "running examples" },
+				CMDOutputStatus.NOTE));
+		ProgressBatchMessage original = new ProgressBatchMessage();
+		original.addProgress(progress);
+
+		ProgressBatchMessage decoded = (ProgressBatchMessage) codec
+				.decode(codec.encode(original));
+
+		assertEquals(1, decoded.getProgress().size());
+		ProgressMessage decodedProgress = decoded.getProgress().get(0);
+		assertEquals(Long.valueOf(42L), decodedProgress.getContextIdRef());
+		assertEquals("lme4", decodedProgress.getPackageName());
+		assertEquals("a1b2c3", decodedProgress.getTaskId());
+		assertEquals(2, decodedProgress.getSteps().size());
+		ProgressStep step = decodedProgress.getSteps().get(1);
+		assertEquals(2500L, step.getTime());
+		assertArrayEquals(new String[] { "checking examples",
+				"running examples" }, step.getStarsLevels());
+		assertEquals(CMDOutputStatus.NOTE, step.getStatus());
+		assertNull(decodedProgress.getSteps().get(0).getStatus());
+	}
+
+	@Test
+	public void testCancelTaskRoundTrip() throws MessageCodecException {
+		CancelTaskMessage decoded = (CancelTaskMessage) codec.decode(codec
+				.encode(new CancelTaskMessage("a1b2c3")));
+
+		assertEquals("a1b2c3", decoded.getTaskId());
+	}
+
+	@Test
+	public void testOutputStatusRoundTrip() throws MessageCodecException {
+		OutputStatusMessage outputStatus = new OutputStatusMessage();
+		outputStatus.getStoredHashes().add("a1b2");
+		outputStatus.getStoredHashes().add("c3d4");
+		outputStatus.getMissingHashes().add("e5f6");
+
+		OutputStatusMessage decoded = (OutputStatusMessage) codec
+				.decode(codec.encode(outputStatus));
+
+		assertEquals(outputStatus.getStoredHashes(), decoded.getStoredHashes());
+		assertEquals(outputStatus.getMissingHashes(),
+				decoded.getMissingHashes());
+	}
+
+	@Test
+	public void testNullFields() throws MessageCodecException {
+		CheckTaskMessage original = new CheckTaskMessage();
+		PackageMessage packageMessage = new PackageMessage();
+		packageMessage.setName("Matrix");
+		original.setPackage(packageMessage);
+
+		CheckTaskMessage decoded = (CheckTaskMessage) codec.decode(codec
+				.encode(original));
+
+		assertNull(decoded.getContextIdRef());
+		assertNull(decoded.getTaskId());
+		assertEquals(CheckTaskMessage.PRIORITY_NORMAL, decoded.getPriority());
+		assertNull(decoded.getDefaultRepository());
+		assertNull(decoded.getPackageInstaller());
+		assertPackageEquals(packageMessage, decoded.getPackageDescription());
+	}
+
+	@Test(expected = MessageCodecException.class)
+	public void testTruncatedData() throws MessageCodecException {
+		byte[] data = codec.encode(TestMessages.createCheckTask(2));
+		byte[] truncated = new byte[data.length / 2];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		codec.decode(truncated);
+	}
+
+	@Test
+	public void testSelectEncoding() {
+		assertEquals("binary",
+				MessageCodecs.selectEncoding("binary", "xml,binary"));
+		assertEquals("xml", MessageCodecs.selectEncoding("binary", "xml"));
+		assertEquals("xml", MessageCodecs.selectEncoding("binary", null));
+		assertEquals("xml", MessageCodecs.selectEncoding(null, "xml,binary"));
+		assertEquals("xml", MessageCodecs.selectEncoding("json", "json"));
+	}
+
+	private static void assertPackageEquals(PackageMessage expected,
+			PackageMessage actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertVersionEquals(expected.getPackageVersion(),
+				actual.getPackageVersion());
+		SourceIdentifier expectedSource = expected.getSourceDescription();
+		SourceIdentifier actualSource = actual.getSourceDescription();
+		if (expectedSource == null) {
+			assertNull(actualSource);
+			return;
+		}
+		assertEquals(expectedSource.getClass(), actualSource.getClass());
+		assertEquals(expectedSource.getSourceType(),
+				actualSource.getSourceType());
+		assertEquals(expectedSource.getSourceLocation(),
+				actualSource.getSourceLocation());
+		assertVersionEquals(expectedSource.getSourceVersion(),
+				actualSource.getSourceVersion());
+	}
+
+	private static void assertResultEquals(ResultMessage expected,
+			ResultMessage actual) {
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getContextIdRef(), actual.getContextIdRef());
+		assertEquals(expected.getTaskId(), actual.getTaskId());
+		assertEquals(expected.isReplayed(), actual.isReplayed());
+		assertPackageResultEquals(expected.getPackageDescription(),
+				actual.getPackageDescription());
+		assertOutputEquals(expected.getOutputMessages(),
+				actual.getOutputMessages());
+	}
+
+	private static void assertPackageResultsEquals(
+			Collection<PackageResultMessage> expected,
+			Collection<PackageResultMessage> actual) {
+		assertEquals(expected.size(), actual.size());
+		List<PackageResultMessage> expectedList = sortedByName(expected);
+		List<PackageResultMessage> actualList = sortedByName(actual);
+		for (int i = 0; i < expectedList.size(); i++) {
+			assertPackageResultEquals(expectedList.get(i), actualList.get(i));
+		}
+	}
+
+	private static void assertPackageResultEquals(
+			PackageResultMessage expected, PackageResultMessage actual) {
+		assertEquals(expected.getPackageName(), actual.getPackageName());
+		assertVersionEquals(expected.getPackageVersion(),
+				actual.getPackageVersion());
+		assertEquals(expected.getSourceType(), actual.getSourceType());
+		assertEquals(expected.getSourceLocation(), actual.getSourceLocation());
+		assertVersionEquals(expected.getSourceVersion(),
+				actual.getSourceVersion());
+		assertEquals(expected.getInstallationResult().isFailed(), actual
+				.getInstallationResult().isFailed());
+		assertOutputEquals(expected.getOutputMessages(),
+				actual.getOutputMessages());
+	}
+
+	private static void assertOutputEquals(List<CMDOutputMessage> expected,
+			List<CMDOutputMessage> actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i).getMessages(), actual.get(i)
+					.getMessages());
+			assertArrayEquals(expected.get(i).getStarsLevels(), actual.get(i)
+					.getStarsLevels());
+			assertEquals(expected.get(i).getStatus(), actual.get(i)
+					.getStatus());
+		}
+	}
+
+	private static void assertVersionEquals(Version expected, Version actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.getVersionString(), actual.getVersionString());
+		assertEquals(expected.getVersionNumber(), actual.getVersionNumber());
+	}
+
+	private static List<PackageResultMessage> sortedByName(
+			Collection<PackageResultMessage> packageResults) {
+		List<PackageResultMessage> sorted = new ArrayList<>(packageResults);
+		Collections.sort(sorted, new Comparator<PackageResultMessage>() {
+			@Override
+			public int compare(PackageResultMessage o1, PackageResultMessage o2) {
+				return o1.getPackageName().compareTo(o2.getPackageName());
+			}
+		});
+		return sorted;
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages.codec;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.ResultBatchMessage;
+import de.hopmann.msc.commons.messages.ResultMessage;
+
+/**
+ * Compares size and throughput of the binary encoding with the XML encoding
+ * on messages of realistic shape. Skipped unless run with
+ * {@code -Dmsc.benchmark=true}.
+ */
+public class MessageCodecBenchmarkTest {
+
+	private static final Logger log = Logger
+			.getLogger(MessageCodecBenchmarkTest.class.getName());
+
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 50;
+
+	private final XmlMessageCodec xmlCodec = new XmlMessageCodec();
+	private final BinaryMessageCodec binaryCodec = new BinaryMessageCodec();
+
+	@Before
+	public void assumeEnabled() {
+		Assume.assumeTrue(Boolean.getBoolean("msc.benchmark"));
+	}
+
+	@Test
+	public void testCheckTask() throws MessageCodecException {
+		compare("check task", TestMessages.createCheckTask(15));
+	}
+
+	@Test
+	public void testCheckResult() throws MessageCodecException {
+		compare("check result", TestMessages.createCheckResult(15));
+	}
+
+	@Test
+	public void testResultBatch() throws MessageCodecException {
+		List<ResultMessage> results = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			results.add(TestMessages.createCheckResult(15));
+		}
+		compare("result batch", new ResultBatchMessage(results));
+	}
+
+	private void compare(String name, Object content)
+			throws MessageCodecException {
+		int xmlSize = xmlCodec.encode(content).length;
+		int binarySize = binaryCodec.encode(content).length;
+
+		long xmlNanos = measure(xmlCodec, content);
+		long binaryNanos = measure(binaryCodec, content);
+
+		log.info(String.format(
+				"%s: xml %d bytes %d us, binary %d bytes %d us (%.1fx smaller)",
+				name, xmlSize, xmlNanos / 1000, binarySize,
+				binaryNanos / 1000, (double) xmlSize / binarySize));
+
+		assertTrue("Binary encoding should be smaller than XML",
+				binarySize < xmlSize);
+	}
+
+	/**
+	 * @return average time in ns to encode and decode the content
+	 */
+	private static long measure(MessageCodec codec, Object content)
+			throws MessageCodecException {
+		for (int i = 0; i < WARMUP; i++) {
+			codec.decode(codec.encode(content));
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			codec.decode(codec.encode(content));
+		}
+		return (System.nanoTime() - start) / ITERATIONS;
+	}
+}
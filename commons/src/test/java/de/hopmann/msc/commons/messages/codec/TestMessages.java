@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.messages.codec;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.PackageInstallerMessage;
+import de.hopmann.msc.commons.messages.PackageMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.model.CheckResult;
+import de.hopmann.msc.commons.model.InstallationResult;
+import de.hopmann.msc.commons.model.SourceIdentifier;
+import de.hopmann.msc.commons.model.Version;
+
+/**
+ * Messages resembling those exchanged while checking CRAN packages
+ */
+class TestMessages {
+
+	private static final String[] CHECK_STEPS = { "checking for file",
+			"checking extension type", "checking package namespace information",
+			"checking package dependencies", "checking if this is a source package",
+			"checking if there is a namespace", "checking for executable files",
+			"checking whether package can be installed",
+			"checking installed package size", "checking package directory",
+			"checking DESCRIPTION meta-information",
+			"checking top-level files", "checking R code for possible problems",
+			"checking Rd files", "checking Rd cross-references",
+			"checking for missing documentation entries",
+			"checking examples", "checking tests", "checking PDF version of manual" };
+
+	private TestMessages() {
+
+	}
+
+	static CheckTaskMessage createCheckTask(int dependencies) {
+		CheckTaskMessage checkTask = new CheckTaskMessage();
+		checkTask.setContextIdRef(42L);
+		checkTask
+				.setDefaultRepository(new SourceIdentifier.SourceRepositoryIdentifier(
+						"CRAN"));
+		checkTask.setPackage(createPackage("lme4", 0));
+		PackageInstallerMessage packageInstaller = new PackageInstallerMessage(
+				"3.0.2");
+		packageInstaller.setFlavor("release");
+		packageInstaller.setArchitecture("x86_64");
+		checkTask.setPackageInstaller(packageInstaller);
+		for (int i = 0; i < dependencies; i++) {
+			checkTask.addDependency(createPackage("dependency" + i, i));
+		}
+		return checkTask;
+	}
+
+	static CheckResultMessage createCheckResult(int dependencies) {
+		CheckResultMessage checkResult = new CheckResultMessage();
+		checkResult.setContextIdRef(42L);
+		checkResult.setTaskId("0b5a3c1e-task");
+		checkResult.setReplayed(true);
+		checkResult.setPackage(createPackageResult("lme4", 0, true));
+		checkResult.setPackageInstaller(new PackageInstallerMessage("3.0.2"));
+		checkResult.setOutputMessages(createOutputMessages("lme4"));
+		for (int i = 0; i < dependencies; i++) {
+			checkResult.addInstallationDependency(createPackageResult(
+					"dependency" + i, i, true));
+		}
+		checkResult.addCheckDependency(createPackageResult("testthat", 1,
+				false));
+		CheckResult result = new CheckResult();
+		result.setErrorCount(0);
+		result.setWarningCount(2);
+		result.setNoteCount(3);
+		result.setSkippedCount(1);
+		checkResult.setCheckResult(result);
+		return checkResult;
+	}
+
+	static PackageMessage createPackage(String name, int minor) {
+		PackageMessage packageMessage = new PackageMessage();
+		packageMessage.setName(name);
+		packageMessage.setPackageVersion(new Version("1." + minor + "-5",
+				BigInteger.valueOf(1000000 + minor * 1000 + 5)));
+		SourceIdentifier sourceIdentifier = new SourceIdentifier("Subversion");
+		sourceIdentifier.setSourceLocation("svn://svn.r-forge.r-project.org/svnroot/"
+				+ name + "/pkg");
+		sourceIdentifier.setSourceVersion(new Version("r" + (2000 + minor),
+				BigInteger.valueOf(2000 + minor)));
+		packageMessage.setSourceDescription(sourceIdentifier);
+		return packageMessage;
+	}
+
+	static PackageResultMessage createPackageResult(String name, int minor,
+			boolean withOutput) {
+		PackageResultMessage packageResult = new PackageResultMessage();
+		packageResult.setName(name);
+		packageResult.setPackageVersion(new Version("1." + minor + "-5",
+				BigInteger.valueOf(1000000 + minor * 1000 + 5)));
+		packageResult.setSourceType("CRAN");
+		packageResult.setSourceLocation("http://cran.r-project.org");
+		packageResult.setInstallationResult(new InstallationResult(false));
+		if (withOutput) {
+			packageResult.setOutputMessages(Arrays.asList(new CMDOutputMessage(
+					Arrays.asList("installing *source* package '" + name
+							+ "' ...", "** R", "** preparing package for lazy loading",
+							"** help", "*** installing help indices",
+							"** building package indices", "* DONE (" + name
+									+ ")"), new String[] { "*" },
+					CMDOutputStatus.OK)));
+		}
+		return packageResult;
+	}
+
+	static List<CMDOutputMessage> createOutputMessages(String name) {
+		List<CMDOutputMessage> outputMessages = new ArrayList<>();
+		for (int i = 0; i < CHECK_STEPS.length; i++) {
+			CMDOutputStatus status = i % 7 == 3 ? CMDOutputStatus.NOTE
+					: CMDOutputStatus.OK;
+			List<String> messages = new ArrayList<>();
+			messages.add(CHECK_STEPS[i] + " ... " + status);
+			if (status == CMDOutputStatus.NOTE) {
+				messages.add("Package in Depends field not imported from: '"
+						+ name + "'");
+				messages.add("These packages need to be imported from (in the NAMESPACE file)");
+			}
+			outputMessages.add(new CMDOutputMessage(messages, new String[] {
+					"*", "**" }, status));
+		}
+		return outputMessages;
+	}
+}
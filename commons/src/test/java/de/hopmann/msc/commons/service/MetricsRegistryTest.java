@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.hopmann.msc.commons.service.MetricsRegistry.Gauge;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void testCounter() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("msc_requests_total", "Requests", "result", "hit")
+				.inc();
+		registry.counter("msc_requests_total", "Requests", "result", "hit")
+				.inc(2);
+		registry.counter("msc_requests_total", "Requests", "result", "miss")
+				.inc();
+
+		assertEquals("# HELP msc_requests_total Requests\n"
+				+ "# TYPE msc_requests_total counter\n"
+				+ "msc_requests_total{result=\"hit\"} 3\n"
+				+ "msc_requests_total{result=\"miss\"} 1\n",
+				registry.scrape());
+	}
+
+	@Test
+	public void testGauge() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.gauge("msc_ratio", "Ratio", new Gauge() {
+			@Override
+			public double getValue() {
+				return 0.5;
+			}
+		});
+		registry.gauge("msc_failing", "Not available", new Gauge() {
+			@Override
+			public double getValue() {
+				throw new IllegalStateException();
+			}
+		});
+
+		assertEquals("# HELP msc_failing Not available\n"
+				+ "# TYPE msc_failing gauge\n" + "# HELP msc_ratio Ratio\n"
+				+ "# TYPE msc_ratio gauge\n" + "msc_ratio 0.5\n",
+				registry.scrape());
+	}
+
+	@Test
+	public void testHistogram() {
+		MetricsRegistry registry = new MetricsRegistry();
+		MetricsRegistry.Histogram histogram = registry.histogram(
+				"msc_seconds", "Duration", new double[] { 1, 10 }, "phase",
+				"check");
+		assertSame(histogram, registry.histogram("msc_seconds", "Duration",
+				"phase", "check"));
+		histogram.observe(0.5);
+		histogram.observe(5);
+		histogram.observe(20);
+
+		String scrape = registry.scrape();
+		assertTrue(scrape
+				.contains("msc_seconds_bucket{phase=\"check\",le=\"1\"} 1\n"));
+		assertTrue(scrape
+				.contains("msc_seconds_bucket{phase=\"check\",le=\"10\"} 2\n"));
+		assertTrue(scrape
+				.contains("msc_seconds_bucket{phase=\"check\",le=\"+Inf\"} 3\n"));
+		assertTrue(scrape.contains("msc_seconds_sum{phase=\"check\"} 25.5\n"));
+		assertTrue(scrape.contains("msc_seconds_count{phase=\"check\"} 3\n"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTypeMismatch() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("msc_metric", "Metric");
+		registry.histogram("msc_metric", "Metric");
+	}
+}
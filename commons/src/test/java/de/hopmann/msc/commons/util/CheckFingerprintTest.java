@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import de.hopmann.msc.commons.exception.VersionFormatException;
+import de.hopmann.msc.commons.model.Version;
+
+public class CheckFingerprintTest {
+
+	private static CheckFingerprint fingerprint(String version,
+			String... dependencies) throws VersionFormatException {
+		CheckFingerprint fingerprint = new CheckFingerprint("pkg", "CRAN",
+				null, Version.fromRVersion(version));
+		for (String dependency : dependencies) {
+			String[] parts = dependency.split(" ");
+			fingerprint.addDependency(parts[0], "CRAN", null,
+					Version.fromRVersion(parts[1]));
+		}
+		return fingerprint.setInstaller("3.0.2", null, "x86_64");
+	}
+
+	@Test
+	public void testDependencyOrder() throws VersionFormatException {
+		assertEquals(fingerprint("1.0", "a 1.0", "b 2.0").getFingerprint(),
+				fingerprint("1.0", "b 2.0", "a 1.0").getFingerprint());
+	}
+
+	@Test
+	public void testChangedInputs() throws VersionFormatException {
+		String fingerprint = fingerprint("1.0", "a 1.0").getFingerprint();
+
+		assertNotEquals(fingerprint, fingerprint("1.1", "a 1.0")
+				.getFingerprint());
+		assertNotEquals(fingerprint, fingerprint("1.0", "a 1.1")
+				.getFingerprint());
+		assertNotEquals(fingerprint, fingerprint("1.0", "a 1.0", "b 1.0")
+				.getFingerprint());
+		assertNotEquals(fingerprint,
+				fingerprint("1.0", "a 1.0").setInstaller("3.1.0", null,
+						"x86_64").getFingerprint());
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DependencyGraphExecutorTest {
+
+	/**
+	 * Executes each node on the given executor, failing for node names
+	 * starting with "fail"
+	 */
+	private static class TestGraphExecutor extends
+			DependencyGraphExecutor<String, String> {
+
+		private final ExecutorService executor;
+		private final long duration;
+		private final List<String> executed = new CopyOnWriteArrayList<String>();
+
+		public TestGraphExecutor(ExecutorService executor, long duration) {
+			this.executor = executor;
+			this.duration = duration;
+		}
+
+		@Override
+		protected ListenableFuture<String> execute(final String node,
+				final Map<String, String> dependencyResults) {
+			final SettableFuture<String> future = new SettableFuture<String>();
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(duration);
+					} catch (InterruptedException e) {
+						future.setException(e);
+						return;
+					}
+					executed.add(node);
+					if (node.startsWith("fail")) {
+						future.setException(new IllegalStateException(node));
+					} else {
+						future.set(node + dependencyResults.keySet());
+					}
+				}
+			});
+			return future;
+		}
+	}
+
+	private static Map<String, Collection<String>> graph(String... edges) {
+		Map<String, Collection<String>> dependencyMap = new HashMap<String, Collection<String>>();
+		for (String edge : edges) {
+			String[] nodes = edge.split(">");
+			dependencyMap.put(nodes[0], Arrays.asList(nodes[1].split(",")));
+		}
+		return dependencyMap;
+	}
+
+	/**
+	 * Ensures that nodes are executed after all of their dependencies, each
+	 * shared dependency only once
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDependencyOrder() throws Exception {
+		TestGraphExecutor graphExecutor = new TestGraphExecutor(
+				Executors.newFixedThreadPool(2), 50);
+
+		String result = graphExecutor.submit("a",
+				graph("a>b,c", "b>d", "c>d")).get(5, TimeUnit.SECONDS);
+
+		assertEquals("a[b, c]", result);
+		assertEquals(4, graphExecutor.executed.size());
+		assertEquals("d", graphExecutor.executed.get(0));
+		assertEquals("a", graphExecutor.executed.get(3));
+	}
+
+	/**
+	 * Ensures that a graph deeper than the number of available threads
+	 * completes, since no thread waits for the execution of another node
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDeepGraphOnSingleThread() throws Exception {
+		TestGraphExecutor graphExecutor = new TestGraphExecutor(
+				Executors.newSingleThreadExecutor(), 0);
+
+		String[] edges = new String[50];
+		for (int i = 0; i < edges.length; i++) {
+			edges[i] = i + ">" + (i + 1);
+		}
+
+		assertEquals("0[1]", graphExecutor.submit("0", graph(edges))
+				.get(5, TimeUnit.SECONDS));
+		assertEquals(51, graphExecutor.executed.size());
+	}
+
+	/**
+	 * Ensures that a failure is propagated to all dependents without executing
+	 * them
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailurePropagation() throws Exception {
+		TestGraphExecutor graphExecutor = new TestGraphExecutor(
+				Executors.newFixedThreadPool(2), 10);
+
+		try {
+			graphExecutor.submit("a", graph("a>b,c", "b>fail")).get(5,
+					TimeUnit.SECONDS);
+			fail("Failure of dependency not propagated");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertFalse(graphExecutor.executed.contains("a"));
+		assertFalse(graphExecutor.executed.contains("b"));
+	}
+
+	/**
+	 * Ensures that cyclic graphs are rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testCycle() {
+		new TestGraphExecutor(Executors.newSingleThreadExecutor(), 0).submit(
+				"a", graph("a>b", "b>c", "c>a"));
+	}
+
+	/**
+	 * Ensures that canceling the result stops pending nodes from being
+	 * executed
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testCancelation() throws InterruptedException {
+		TestGraphExecutor graphExecutor = new TestGraphExecutor(
+				Executors.newCachedThreadPool(), 500);
+
+		ListenableFuture<String> future = graphExecutor.submit("a",
+				graph("a>b", "b>c"));
+		Thread.sleep(100);
+		assertTrue(future.cancel(true));
+		Thread.sleep(1000);
+
+		assertTrue(future.isCancelled());
+		assertFalse(graphExecutor.executed.contains("b"));
+		assertFalse(graphExecutor.executed.contains("a"));
+	}
+}
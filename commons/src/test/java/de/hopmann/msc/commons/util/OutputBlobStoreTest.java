@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+
+public class OutputBlobStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<CMDOutputMessage> createOutput(String suffix) {
+		List<CMDOutputMessage> output = new ArrayList<>();
+		output.add(new CMDOutputMessage(Arrays.asList("installing to library",
+				"done " + suffix), new String[] { "* installing *source* package" },
+				CMDOutputStatus.OK));
+		output.add(new CMDOutputMessage(new ArrayList<String>(), null, null));
+		return output;
+	}
+
+	@Test
+	public void testPutAndGet() throws IOException {
+		OutputBlobStore store = new OutputBlobStore(folder.getRoot());
+		List<CMDOutputMessage> output = createOutput("a");
+
+		String hash = store.put(output);
+		assertEquals(64, hash.length());
+		assertEquals(OutputBlobStore.hash(output), hash);
+		assertTrue(store.contains(hash));
+
+		List<CMDOutputMessage> stored = store.get(hash);
+		assertEquals(output.size(), stored.size());
+		for (int i = 0; i < output.size(); i++) {
+			assertArrayEquals(output.get(i).getMessages(), stored.get(i)
+					.getMessages());
+			assertArrayEquals(output.get(i).getStarsLevels(), stored.get(i)
+					.getStarsLevels());
+			assertEquals(output.get(i).getStatus(), stored.get(i).getStatus());
+		}
+	}
+
+	@Test
+	public void testDeduplication() throws IOException {
+		OutputBlobStore store = new OutputBlobStore(folder.getRoot());
+
+		String hash = store.put(createOutput("a"));
+		assertEquals(hash, store.put(createOutput("a")));
+		String otherHash = store.put(createOutput("b"));
+		assertFalse(hash.equals(otherHash));
+
+		String unknownHash = OutputBlobStore.hash(createOutput("c"));
+		assertFalse(store.contains(unknownHash));
+		assertNull(store.get(unknownHash));
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.util.OutputIndex.IndexedOutput;
+import de.hopmann.msc.commons.util.OutputIndex.OutputQuery;
+
+public class OutputIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static CMDOutputMessage output(String step,
+			CMDOutputStatus status, String... messages) {
+		return new CMDOutputMessage(Arrays.asList(messages),
+				new String[] { step }, status);
+	}
+
+	private static OutputQuery query(String text) {
+		OutputQuery query = new OutputQuery();
+		query.setText(text);
+		return query;
+	}
+
+	@Test
+	public void testPostingsRoundTrip() {
+		int[] postings = new int[] { 0, 1, 127, 128, 20000, 3000000 };
+		assertArrayEquals(postings, OutputIndex.decodePostings(
+				OutputIndex.encodePostings(postings), postings.length));
+	}
+
+	@Test
+	public void testSearchPhraseAndFilters() throws IOException {
+		try (OutputIndex index = new OutputIndex(folder.getRoot())) {
+			index.add(1, "rgdal", 3, "check",
+					output("checking whether package 'rgdal' can be installed",
+							CMDOutputStatus.ERROR,
+							"Error: unable to load shared object",
+							"undefined symbol: GDALOpen"));
+			index.add(1, "sp", 3, "check",
+					output("checking examples", CMDOutputStatus.OK,
+							"symbol undefined in example"));
+			index.add(2, "rgdal", 4, "installation",
+					output("installing", CMDOutputStatus.ERROR,
+							"undefined symbol: OGROpen"));
+
+			// Not searchable before commit
+			assertTrue(index.search(query("undefined symbol")).isEmpty());
+			index.commit();
+
+			List<IndexedOutput> hits = index.search(query("Undefined  Symbol"));
+			assertEquals(2, hits.size());
+			// Newest first
+			assertEquals(2, hits.get(0).getContextId());
+			assertEquals("rgdal", hits.get(1).getPackageName());
+
+			OutputQuery query = query("undefined symbol");
+			query.setKind("check");
+			query.setStatus(CMDOutputStatus.ERROR);
+			hits = index.search(query);
+			assertEquals(1, hits.size());
+			assertEquals(3, hits.get(0).getRevision());
+
+			query = query("symbol");
+			query.setStep("checking examples");
+			hits = index.search(query);
+			assertEquals(1, hits.size());
+			assertEquals("sp", hits.get(0).getPackageName());
+		}
+	}
+
+	@Test
+	public void testLatestRevisions() throws IOException {
+		try (OutputIndex index = new OutputIndex(folder.getRoot())) {
+			for (long revision = 1; revision <= 5; revision++) {
+				index.add(1, "pkg", revision, "check",
+						output("checking tests", CMDOutputStatus.ERROR,
+								"undefined symbol in revision " + revision));
+				index.add(1, "other", revision, "check",
+						output("checking tests", CMDOutputStatus.OK,
+								"all fine"));
+			}
+			index.commit();
+
+			OutputQuery query = query("undefined symbol");
+			query.setLatestRevisions(3);
+			List<IndexedOutput> hits = index.search(query);
+			assertEquals(3, hits.size());
+			assertEquals(5, hits.get(0).getRevision());
+			assertEquals(3, hits.get(2).getRevision());
+		}
+	}
+
+	@Test
+	public void testSegmentsAndReopen() throws IOException {
+		File directory = folder.getRoot();
+		try (OutputIndex index = new OutputIndex(directory, 2)) {
+			for (int i = 0; i < 40; i++) {
+				index.add(1, "pkg" + i, i, "check",
+						output("checking", CMDOutputStatus.NOTE, "note " + i,
+								"shared text"));
+				index.commit();
+			}
+			// Segments are merged once too many exist
+			assertTrue(index.getSegmentCount() <= 8);
+			index.add(1, "uncommitted", 41, "check",
+					output("checking", CMDOutputStatus.NOTE, "shared text"));
+			assertEquals(40, index.search(query("shared text")).size());
+		}
+
+		try (OutputIndex index = new OutputIndex(directory, 2)) {
+			assertEquals(40, index.getDocumentCount());
+			OutputQuery query = query("shared text");
+			query.setMaxHits(1000);
+			assertEquals(40, index.search(query).size());
+
+			query = query("note 17");
+			query.setPackageName("pkg17");
+			List<IndexedOutput> hits = index.search(query);
+			assertEquals(1, hits.size());
+			assertEquals(17, hits.get(0).getRevision());
+		}
+	}
+}
@@ -26,6 +26,7 @@ import org.junit.Test;
 
 import de.hopmann.msc.commons.messages.CMDOutputMessage;
 import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.util.RCMDOutputReader.ProgressListener;
 
 public class RCMDOutputReaderTest {
 
@@ -81,4 +82,39 @@ public class RCMDOutputReaderTest {
 		assertEquals(CMDOutputStatus.NOTE, firstMsg.getStatus());
 		assertEquals(2, rcmdOutputReader.getStatusCount(CMDOutputStatus.NOTE));
 	}
+
+	@Test
+	public void testProgress() throws Exception {
+
+		InputStream cmdInstallLog = getClass().getResourceAsStream(
+				"/cmdCheckSpam.log");
+
+		RCMDOutputReader rcmdOutputReader = new RCMDOutputReader(cmdInstallLog);
+
+		final List<String[]> steps = new ArrayList<>();
+		final List<CMDOutputStatus> notes = new ArrayList<>();
+		rcmdOutputReader.setProgressListener(new ProgressListener() {
+			@Override
+			public void progress(String[] starsLevels, CMDOutputStatus status) {
+				steps.add(starsLevels);
+				if (status == CMDOutputStatus.NOTE) {
+					notes.add(status);
+				}
+			}
+		});
+
+		int messageCount = 0;
+		while (rcmdOutputReader.readMessage() != null) {
+			messageCount++;
+		}
+
+		rcmdOutputReader.close();
+
+		// Every stars message is reported, not only those returned
+		assertEquals(53, steps.size());
+		assertTrue(steps.size() > messageCount);
+		assertEquals("using log directory 'C:/Users/Pfogel/Desktop/RTest/work/4/spam.Rcheck'",
+				steps.get(0)[0]);
+		assertEquals(2, notes.size());
+	}
 }
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReverseDependencyGraphTest {
+
+	/**
+	 * Edges given as "node>dependency"
+	 */
+	private static ReverseDependencyGraph<String> graph(String... edges) {
+		ReverseDependencyGraph<String> graph = new ReverseDependencyGraph<String>();
+		for (String edge : edges) {
+			String[] nodes = edge.split(">");
+			graph.addDependency(nodes[0], nodes[1]);
+		}
+		return graph;
+	}
+
+	@Test
+	public void testAffected() {
+		ReverseDependencyGraph<String> graph = graph("b>a", "c>b", "d>c",
+				"e>x");
+
+		assertEquals(new HashSet<String>(Arrays.asList("b", "c", "d")),
+				graph.getAffected(Collections.singleton("b")));
+		assertEquals(Collections.singleton("unknown"),
+				graph.getAffected(Collections.singleton("unknown")));
+	}
+
+	@Test
+	public void testRecheckOrder() {
+		// Diamond with an additional indirect edge
+		ReverseDependencyGraph<String> graph = graph("d>b", "d>c", "c>a",
+				"b>a", "e>d", "e>a", "f>x");
+
+		List<String> order = graph.getRecheckOrder(Collections.singleton("a"));
+
+		assertEquals(5, order.size());
+		assertEquals("a", order.get(0));
+		assertTrue(order.indexOf("b") < order.indexOf("d"));
+		assertTrue(order.indexOf("c") < order.indexOf("d"));
+		assertEquals("e", order.get(4));
+	}
+
+	@Test
+	public void testRecheckOrderWithCycle() {
+		ReverseDependencyGraph<String> graph = graph("b>a", "c>b", "b>c",
+				"d>c");
+
+		List<String> order = graph.getRecheckOrder(Collections.singleton("a"));
+
+		assertEquals(Arrays.asList("a", "b", "c", "d"), order);
+	}
+
+	@Test
+	public void testSweepOrder() {
+		// a is depended on by most packages, x not at all
+		ReverseDependencyGraph<String> graph = graph("b>a", "c>a", "d>a",
+				"d>b", "e>y");
+
+		List<String> order = graph.getSweepOrder(Arrays.asList("x", "d",
+				"c", "b", "a", "y", "e", "z"));
+
+		assertEquals(Arrays.asList("a", "b", "y", "x", "d", "c", "e", "z"),
+				order);
+	}
+
+	@Test
+	public void testSweepOrderWithCycle() {
+		ReverseDependencyGraph<String> graph = graph("a>b", "b>a", "c>b");
+
+		assertEquals(Arrays.asList("b", "a", "c"),
+				graph.getSweepOrder(Arrays.asList("a", "b", "c")));
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.commons.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import de.hopmann.msc.commons.util.SingleFlightExecutor.SimpleSingleFlightExecutor;
+import de.hopmann.msc.commons.util.SingleFlightExecutor.Statistics;
+
+public class SingleFlightExecutorTest {
+
+	private static final int THREADS = 32;
+
+	/**
+	 * Counts loads per input value and tracks the maximum number of
+	 * concurrent loads of the same input value
+	 */
+	private static class CountingExecutor extends
+			SimpleSingleFlightExecutor<String, String> {
+
+		private final long duration;
+		private final ConcurrentMap<String, AtomicInteger> runningLoads = new ConcurrentHashMap<String, AtomicInteger>();
+		private final AtomicInteger loadCounter = new AtomicInteger();
+		private final AtomicInteger maxConcurrentLoads = new AtomicInteger();
+		private final AtomicInteger interruptedLoads = new AtomicInteger();
+
+		public CountingExecutor(ExecutorService executor, long duration) {
+			super(executor);
+			this.duration = duration;
+		}
+
+		@Override
+		protected String load(String value) throws Exception {
+			runningLoads.putIfAbsent(value, new AtomicInteger());
+			int running = runningLoads.get(value).incrementAndGet();
+			try {
+				loadCounter.incrementAndGet();
+				synchronized (maxConcurrentLoads) {
+					maxConcurrentLoads.set(Math.max(running,
+							maxConcurrentLoads.get()));
+				}
+				Thread.sleep(duration);
+				return value;
+			} catch (InterruptedException e) {
+				interruptedLoads.incrementAndGet();
+				throw e;
+			} finally {
+				runningLoads.get(value).decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Runs the callable concurrently on all threads, released at the same time
+	 */
+	private static <T> List<T> runConcurrently(final Callable<T> callable)
+			throws Exception {
+		ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(threads.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					startLatch.await();
+					return callable.call();
+				}
+			}));
+		}
+		startLatch.countDown();
+		List<T> results = new ArrayList<T>();
+		for (Future<T> future : futures) {
+			results.add(future.get(30, TimeUnit.SECONDS));
+		}
+		threads.shutdown();
+		return results;
+	}
+
+	/**
+	 * Ensures that concurrent submissions of the same input value trigger a
+	 * single load whose result is received by all of them
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentSingleLoading() throws Exception {
+		final CountingExecutor executor = new CountingExecutor(
+				Executors.newCachedThreadPool(), 500);
+
+		List<String> results = runConcurrently(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return executor.submit("Test").get();
+			}
+		});
+
+		for (String result : results) {
+			assertEquals("Test", result);
+		}
+		assertEquals(1, executor.loadCounter.get());
+		Statistics statistics = executor.getStatistics();
+		assertEquals(1, statistics.getMisses());
+		assertEquals(THREADS - 1, statistics.getHits());
+		assertEquals(0, statistics.getInFlight());
+	}
+
+	/**
+	 * Submits overlapping input values from many threads and ensures that an
+	 * input value is never loaded concurrently and no submission gets lost
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentSubmissionStress() throws Exception {
+		final int iterations = 200;
+		final CountingExecutor executor = new CountingExecutor(
+				Executors.newFixedThreadPool(8), 1);
+		final AtomicInteger counter = new AtomicInteger();
+
+		List<Integer> results = runConcurrently(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				int received = 0;
+				for (int i = 0; i < iterations; i++) {
+					String key = "Key" + (counter.incrementAndGet() % 8);
+					if (key.equals(executor.submit(key).get(10,
+							TimeUnit.SECONDS))) {
+						received++;
+					}
+				}
+				return received;
+			}
+		});
+
+		for (Integer received : results) {
+			assertEquals(iterations, received.intValue());
+		}
+		assertEquals(1, executor.maxConcurrentLoads.get());
+		Statistics statistics = executor.getStatistics();
+		assertEquals(THREADS * iterations,
+				statistics.getHits() + statistics.getMisses());
+		assertEquals(executor.loadCounter.get(), statistics.getMisses());
+		assertEquals(0, statistics.getInFlight());
+	}
+
+	/**
+	 * Ensures that no state is kept for input values once their loads
+	 * completed, as inputs may be distinct objects for each submission
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNoStateAfterCompletion() throws Exception {
+		CountingExecutor executor = new CountingExecutor(
+				Executors.newCachedThreadPool(), 1);
+
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(executor.submit("Key" + i));
+		}
+		for (Future<String> future : futures) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+
+		assertEquals(0, executor.getStatistics().getInFlight());
+		assertEquals(0, executor.getWaiters("Key0"));
+		assertEquals(100, executor.getStatistics().getMisses());
+	}
+
+	/**
+	 * Ensures that a load is only canceled after all of its waiters canceled,
+	 * while canceling from many threads concurrently
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentCancelation() throws Exception {
+		final CountingExecutor executor = new CountingExecutor(
+				Executors.newCachedThreadPool(), 2000);
+
+		final List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < THREADS; i++) {
+			futures.add(executor.submit("Test"));
+		}
+		Future<String> remainingFuture = executor.submit("Test");
+		assertEquals(THREADS + 1, executor.getWaiters("Test"));
+
+		final AtomicInteger index = new AtomicInteger();
+		runConcurrently(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return futures.get(index.getAndIncrement()).cancel(true);
+			}
+		});
+
+		assertEquals(1, executor.getWaiters("Test"));
+		assertEquals("Test", remainingFuture.get(5, TimeUnit.SECONDS));
+		assertEquals(0, executor.interruptedLoads.get());
+		for (Future<String> future : futures) {
+			assertTrue(future.isCancelled());
+		}
+	}
+
+	/**
+	 * Ensures that canceling all waiters interrupts the load and that a
+	 * subsequent submission starts a new one
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancelationOfAllWaiters() throws Exception {
+		CountingExecutor executor = new CountingExecutor(
+				Executors.newCachedThreadPool(), 1000);
+
+		Future<String> submit = executor.submit("Test");
+		Future<String> submit2 = executor.submit("Test");
+		Thread.sleep(200);
+		submit.cancel(true);
+		submit2.cancel(true);
+		Thread.sleep(200);
+
+		assertEquals(1, executor.interruptedLoads.get());
+		assertEquals(0, executor.getStatistics().getInFlight());
+
+		assertEquals("Test", executor.submit("Test").get(5, TimeUnit.SECONDS));
+		assertEquals(2, executor.loadCounter.get());
+	}
+
+	/**
+	 * Ensures that listeners are notified once the shared load completes
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testListener() throws Exception {
+		CountingExecutor executor = new CountingExecutor(
+				Executors.newCachedThreadPool(), 200);
+		final CountDownLatch listenerLatch = new CountDownLatch(2);
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				listenerLatch.countDown();
+			}
+		};
+
+		executor.submit("Test").addListener(listener);
+		executor.submit("Test").addListener(listener);
+
+		assertTrue(listenerLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, executor.loadCounter.get());
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * Cell of the check matrix of a package source, referencing a result shown at
+ * a revision. Cells are derived from check results and their dependencies, so
+ * that the matrix can be read by a single range scan.
+ * 
+ */
+@Entity
+@Table(indexes = @Index(columnList = "packageSource_id,checkRevision"))
+public class CheckMatrixCell implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue
+	private Long id;
+
+	/**
+	 * Checked package source the matrix belongs to
+	 */
+	@ManyToOne
+	private PackageSource packageSource;
+
+	/**
+	 * Revision of the check result this cell has been derived from
+	 */
+	private long checkRevision;
+
+	private long revision;
+
+	@ManyToOne
+	private PackageResult packageResult;
+
+	protected CheckMatrixCell() {
+
+	}
+
+	public CheckMatrixCell(PackageSource packageSource, long checkRevision,
+			PackageResult packageResult) {
+		this.packageSource = packageSource;
+		this.checkRevision = checkRevision;
+		this.packageResult = packageResult;
+		this.revision = packageResult.getRevision();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public PackageSource getPackageSource() {
+		return packageSource;
+	}
+
+	public long getCheckRevision() {
+		return checkRevision;
+	}
+
+	public long getRevision() {
+		return revision;
+	}
+
+	public PackageResult getPackageResult() {
+		return packageResult;
+	}
+
+}
@@ -0,0 +1,15 @@
+package de.hopmann.msc.master.ejb.entity;
+
+import javax.annotation.Generated;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.StaticMetamodel;
+
+@Generated(value="Dali", date="2026-10-18T11:20:41.512+0200")
+@StaticMetamodel(CheckMatrixCell.class)
+public class CheckMatrixCell_ {
+	public static volatile SingularAttribute<CheckMatrixCell, Long> id;
+	public static volatile SingularAttribute<CheckMatrixCell, PackageSource> packageSource;
+	public static volatile SingularAttribute<CheckMatrixCell, Long> checkRevision;
+	public static volatile SingularAttribute<CheckMatrixCell, Long> revision;
+	public static volatile SingularAttribute<CheckMatrixCell, PackageResult> packageResult;
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.entity;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OrderColumn;
+
+/**
+ * Check of all packages of the package listing within a context, with the
+ * progress checkpointed to resume it after a restart.
+ * 
+ */
+@Entity
+public class CheckSweep implements Serializable {
+
+	public enum SweepState {
+		RUNNING, FINISHED, CANCELLED
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	@GeneratedValue
+	private Long id;
+
+	@ManyToOne
+	private PackageContext packageContext;
+
+	private String installerVersion;
+
+	/**
+	 * Packages to check, in the order of dispatch
+	 */
+	@ElementCollection(fetch = FetchType.LAZY)
+	@OrderColumn
+	private List<String> packageNames = new ArrayList<String>(0);
+
+	private int packageCount;
+
+	/**
+	 * Position of the next package to dispatch
+	 */
+	private int position;
+
+	private int completedCount;
+
+	/**
+	 * Packages skipped since they could not be queued
+	 */
+	@ElementCollection(fetch = FetchType.LAZY)
+	@OrderColumn
+	private List<String> failedPackages = new ArrayList<String>(0);
+
+	private long startTime;
+
+	private SweepState state;
+
+	protected CheckSweep() {
+
+	}
+
+	public CheckSweep(PackageContext packageContext, String installerVersion,
+			List<String> packageNames) {
+		this.packageContext = packageContext;
+		this.installerVersion = installerVersion;
+		this.packageNames = packageNames;
+		this.packageCount = packageNames.size();
+		this.startTime = System.currentTimeMillis();
+		this.state = SweepState.RUNNING;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public PackageContext getPackageContext() {
+		return packageContext;
+	}
+
+	public String getInstallerVersion() {
+		return installerVersion;
+	}
+
+	public List<String> getPackageNames() {
+		return packageNames;
+	}
+
+	public int getPackageCount() {
+		return packageCount;
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	public void setPosition(int position) {
+		this.position = position;
+	}
+
+	public int getCompletedCount() {
+		return completedCount;
+	}
+
+	public void setCompletedCount(int completedCount) {
+		this.completedCount = completedCount;
+	}
+
+	public List<String> getFailedPackages() {
+		return failedPackages;
+	}
+
+	public void addFailedPackage(String packageName) {
+		failedPackages.add(packageName);
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public SweepState getState() {
+		return state;
+	}
+
+	public void setState(SweepState state) {
+		this.state = state;
+	}
+
+}
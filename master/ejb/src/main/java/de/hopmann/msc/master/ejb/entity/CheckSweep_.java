@@ -0,0 +1,22 @@
+package de.hopmann.msc.master.ejb.entity;
+
+import de.hopmann.msc.master.ejb.entity.CheckSweep.SweepState;
+import javax.annotation.Generated;
+import javax.persistence.metamodel.ListAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.StaticMetamodel;
+
+@Generated(value="Dali", date="2026-10-18T14:05:12.731+0200")
+@StaticMetamodel(CheckSweep.class)
+public class CheckSweep_ {
+	public static volatile SingularAttribute<CheckSweep, Long> id;
+	public static volatile SingularAttribute<CheckSweep, PackageContext> packageContext;
+	public static volatile SingularAttribute<CheckSweep, String> installerVersion;
+	public static volatile ListAttribute<CheckSweep, String> packageNames;
+	public static volatile SingularAttribute<CheckSweep, Integer> packageCount;
+	public static volatile SingularAttribute<CheckSweep, Integer> position;
+	public static volatile SingularAttribute<CheckSweep, Integer> completedCount;
+	public static volatile ListAttribute<CheckSweep, String> failedPackages;
+	public static volatile SingularAttribute<CheckSweep, Long> startTime;
+	public static volatile SingularAttribute<CheckSweep, SweepState> state;
+}
@@ -58,6 +58,21 @@ public class PackageResult implements Serializable {
 	@ManyToOne(cascade = { CascadeType.PERSIST, CascadeType.MERGE })
 	private PackageSource packageSource;
 
+	/**
+	 * Hash of the stored installation output
+	 */
+	private String installationOutputHash;
+
+	/**
+	 * Hash of the stored check output
+	 */
+	private String checkOutputHash;
+
+	/**
+	 * Fingerprint of the inputs of the check
+	 */
+	private String checkFingerprint;
+
 	private long revision;
 	private String sourceLocation;
 
@@ -89,10 +104,22 @@ public class PackageResult implements Serializable {
 		return dependencies;
 	}
 
+	public String getCheckFingerprint() {
+		return checkFingerprint;
+	}
+
+	public String getCheckOutputHash() {
+		return checkOutputHash;
+	}
+
 	public Long getId() {
 		return this.id;
 	}
 
+	public String getInstallationOutputHash() {
+		return installationOutputHash;
+	}
+
 	public InstallationResult getInstallationResult() {
 		return installationResult;
 	}
@@ -125,6 +152,18 @@ public class PackageResult implements Serializable {
 		this.checkResult = checkResult;
 	}
 
+	public void setCheckFingerprint(String checkFingerprint) {
+		this.checkFingerprint = checkFingerprint;
+	}
+
+	public void setCheckOutputHash(String checkOutputHash) {
+		this.checkOutputHash = checkOutputHash;
+	}
+
+	public void setInstallationOutputHash(String installationOutputHash) {
+		this.installationOutputHash = installationOutputHash;
+	}
+
 	public void setInstallationResult(InstallationResult installationResult) {
 		this.installationResult = installationResult;
 	}
@@ -13,8 +13,11 @@ import javax.persistence.metamodel.StaticMetamodel;
 @StaticMetamodel(PackageResult.class)
 public class PackageResult_ {
 	public static volatile SingularAttribute<PackageResult, CheckResult> checkResult;
+	public static volatile SingularAttribute<PackageResult, String> checkOutputHash;
+	public static volatile SingularAttribute<PackageResult, String> checkFingerprint;
 	public static volatile ListAttribute<PackageResult, PackageResult> dependencies;
 	public static volatile SingularAttribute<PackageResult, Long> id;
+	public static volatile SingularAttribute<PackageResult, String> installationOutputHash;
 	public static volatile SingularAttribute<PackageResult, InstallationResult> installationResult;
 	public static volatile SingularAttribute<PackageResult, PackageResultType> installationType;
 	public static volatile SingularAttribute<PackageResult, PackageSource> packageSource;
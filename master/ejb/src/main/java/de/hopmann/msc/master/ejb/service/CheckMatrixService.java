@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.transaction.Transactional;
+
+import de.hopmann.msc.master.ejb.entity.CheckMatrixCell;
+import de.hopmann.msc.master.ejb.entity.CheckMatrixCell_;
+import de.hopmann.msc.master.ejb.entity.PackageResult;
+import de.hopmann.msc.master.ejb.entity.PackageResult.PackageResultType;
+import de.hopmann.msc.master.ejb.entity.PackageResult_;
+import de.hopmann.msc.master.ejb.entity.PackageSource;
+
+/**
+ * Maintains the check matrix of package sources. For each check result, the
+ * matrix contains the check itself and the installations of its dependencies
+ * since the previous check of the same package source.
+ * 
+ */
+@ApplicationScoped
+@Transactional
+public class CheckMatrixService implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@PersistenceContext(unitName = "master")
+	private EntityManager entityManager;
+
+	/**
+	 * @param maxRevisions
+	 *            number of latest revisions to load cells for
+	 * @return cells of the package source, ordered by descending revision
+	 */
+	public List<CheckMatrixCell> getCheckMatrix(PackageSource packageSource,
+			int maxRevisions) {
+		List<Long> revisions = getRevisions(packageSource, maxRevisions);
+		if (revisions.isEmpty() && rebuildCheckMatrix(packageSource)) {
+			// Checks added before the matrix has been maintained
+			revisions = getRevisions(packageSource, maxRevisions);
+		}
+		if (revisions.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return queryCheckMatrix(packageSource,
+				revisions.get(revisions.size() - 1));
+	}
+
+	/**
+	 * Updates the matrix for a check result added or promoted within the
+	 * current transaction. Only the cells of this check and of the next newer
+	 * check, whose range of previous installations shrinks, are replaced.
+	 */
+	public void updateCheckMatrix(PackageResult checkResult) {
+		PackageSource packageSource = checkResult.getPackageSource();
+		NavigableMap<Long, PackageResult> checks = getChecks(packageSource);
+		checks.put(checkResult.getRevision(), checkResult);
+
+		if (!hasCheckMatrix(packageSource) && checks.size() > 1) {
+			// Previous checks not yet contained
+			rebuildCheckMatrix(packageSource, checks);
+			return;
+		}
+
+		long revision = checkResult.getRevision();
+		replaceCells(packageSource, checks, revision);
+		Long nextRevision = checks.higherKey(revision);
+		if (nextRevision != null) {
+			replaceCells(packageSource, checks, nextRevision);
+		}
+	}
+
+	/**
+	 * @return true if the package source has any checks
+	 */
+	public boolean rebuildCheckMatrix(PackageSource packageSource) {
+		NavigableMap<Long, PackageResult> checks = getChecks(packageSource);
+		rebuildCheckMatrix(packageSource, checks);
+		return !checks.isEmpty();
+	}
+
+	private void rebuildCheckMatrix(PackageSource packageSource,
+			NavigableMap<Long, PackageResult> checks) {
+		deleteCells(packageSource, null);
+		for (Long checkRevision : checks.keySet()) {
+			addCells(packageSource, checks, checkRevision);
+		}
+	}
+
+	private void replaceCells(PackageSource packageSource,
+			NavigableMap<Long, PackageResult> checks, long checkRevision) {
+		deleteCells(packageSource, checkRevision);
+		addCells(packageSource, checks, checkRevision);
+	}
+
+	private void addCells(PackageSource packageSource,
+			NavigableMap<Long, PackageResult> checks, long checkRevision) {
+		PackageResult checkResult = checks.get(checkRevision);
+		Long previousRevision = checks.lowerKey(checkRevision);
+		long minRevision = previousRevision != null ? previousRevision + 1 : 0;
+
+		entityManager.persist(new CheckMatrixCell(packageSource,
+				checkRevision, checkResult));
+
+		List<PackageSource> dependencySources = new ArrayList<>();
+		for (PackageResult dependency : checkResult.getDependencies()) {
+			dependencySources.add(dependency.getPackageSource());
+		}
+		if (dependencySources.isEmpty()) {
+			return;
+		}
+
+		// Installations of all dependencies within a single range query
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<PackageResult> query = cb
+				.createQuery(PackageResult.class);
+		Root<PackageResult> pr = query.from(PackageResult.class);
+		query.select(pr).where(
+				pr.get(PackageResult_.packageSource).in(dependencySources),
+				cb.between(pr.get(PackageResult_.revision), minRevision,
+						checkRevision));
+
+		for (PackageResult installation : entityManager.createQuery(query)
+				.getResultList()) {
+			entityManager.persist(new CheckMatrixCell(packageSource,
+					checkRevision, installation));
+		}
+	}
+
+	/**
+	 * @param checkRevision
+	 *            null to delete all cells of the package source
+	 */
+	private void deleteCells(PackageSource packageSource, Long checkRevision) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaDelete<CheckMatrixCell> delete = cb
+				.createCriteriaDelete(CheckMatrixCell.class);
+		Root<CheckMatrixCell> c = delete.from(CheckMatrixCell.class);
+
+		List<Predicate> predicates = new ArrayList<>();
+		predicates.add(cb.equal(c.get(CheckMatrixCell_.packageSource),
+				packageSource));
+		if (checkRevision != null) {
+			predicates.add(cb.equal(c.get(CheckMatrixCell_.checkRevision),
+					checkRevision));
+		}
+		delete.where(predicates.toArray(new Predicate[0]));
+		entityManager.createQuery(delete).executeUpdate();
+	}
+
+	/**
+	 * @return distinct revisions of the matrix, newest first
+	 */
+	private List<Long> getRevisions(PackageSource packageSource,
+			int maxRevisions) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> query = cb.createQuery(Long.class);
+		Root<CheckMatrixCell> c = query.from(CheckMatrixCell.class);
+
+		query.select(c.get(CheckMatrixCell_.revision))
+				.distinct(true)
+				.where(cb.equal(c.get(CheckMatrixCell_.packageSource),
+						packageSource))
+				.orderBy(cb.desc(c.get(CheckMatrixCell_.revision)));
+
+		return entityManager.createQuery(query).setMaxResults(maxRevisions)
+				.getResultList();
+	}
+
+	private List<CheckMatrixCell> queryCheckMatrix(
+			PackageSource packageSource, long minRevision) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<CheckMatrixCell> query = cb
+				.createQuery(CheckMatrixCell.class);
+		Root<CheckMatrixCell> c = query.from(CheckMatrixCell.class);
+
+		// Load results and their rows along with the cells
+		Fetch<CheckMatrixCell, PackageResult> result = c
+				.fetch(CheckMatrixCell_.packageResult);
+		result.fetch(PackageResult_.packageSource);
+
+		query.select(c)
+				.where(cb.equal(c.get(CheckMatrixCell_.packageSource),
+						packageSource),
+						cb.ge(c.get(CheckMatrixCell_.revision), minRevision))
+				.orderBy(cb.desc(c.get(CheckMatrixCell_.checkRevision)),
+						cb.desc(c.get(CheckMatrixCell_.revision)));
+
+		return entityManager.createQuery(query).getResultList();
+	}
+
+	private boolean hasCheckMatrix(PackageSource packageSource) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> query = cb.createQuery(Long.class);
+		Root<CheckMatrixCell> c = query.from(CheckMatrixCell.class);
+		query.select(c.get(CheckMatrixCell_.id)).where(
+				cb.equal(c.get(CheckMatrixCell_.packageSource), packageSource));
+		return !entityManager.createQuery(query).setMaxResults(1)
+				.getResultList().isEmpty();
+	}
+
+	private NavigableMap<Long, PackageResult> getChecks(
+			PackageSource packageSource) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<PackageResult> query = cb
+				.createQuery(PackageResult.class);
+		Root<PackageResult> pr = query.from(PackageResult.class);
+		query.select(pr).where(
+				cb.equal(pr.get(PackageResult_.installationType),
+						PackageResultType.CHECK),
+				cb.equal(pr.get(PackageResult_.packageSource), packageSource));
+
+		NavigableMap<Long, PackageResult> checks = new TreeMap<>();
+		for (PackageResult checkResult : entityManager.createQuery(query)
+				.getResultList()) {
+			checks.put(checkResult.getRevision(), checkResult);
+		}
+		return checks;
+	}
+}
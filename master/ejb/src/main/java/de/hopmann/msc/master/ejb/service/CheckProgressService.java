@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.messages.ProgressMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage.ProgressStep;
+
+/**
+ * Keeps track of the live status of check tasks currently processed by
+ * slaves, as reported by their progress messages.
+ * 
+ */
+@ApplicationScoped
+public class CheckProgressService {
+
+	/**
+	 * Latest known status of a running check task
+	 * 
+	 */
+	public static class TaskStatus {
+
+		private final String taskId;
+		private final Long contextIdRef;
+		private final String packageName;
+		private final String[] starsLevels;
+		private final CMDOutputStatus status;
+		private final int stepCount;
+		private final long lastUpdate;
+
+		TaskStatus(String taskId, Long contextIdRef, String packageName,
+				String[] starsLevels, CMDOutputStatus status, int stepCount,
+				long lastUpdate) {
+			this.taskId = taskId;
+			this.contextIdRef = contextIdRef;
+			this.packageName = packageName;
+			this.starsLevels = starsLevels;
+			this.status = status;
+			this.stepCount = stepCount;
+			this.lastUpdate = lastUpdate;
+		}
+
+		/**
+		 * @return id to cancel the task with, null if unknown
+		 */
+		public String getTaskId() {
+			return taskId;
+		}
+
+		public Long getContextIdRef() {
+			return contextIdRef;
+		}
+
+		public String getPackageName() {
+			return packageName;
+		}
+
+		/**
+		 * @return stars levels of the latest step
+		 */
+		public String[] getStarsLevels() {
+			return starsLevels;
+		}
+
+		public CMDOutputStatus getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return number of steps reported so far
+		 */
+		public int getStepCount() {
+			return stepCount;
+		}
+
+		/**
+		 * @return time in ms the latest step was received
+		 */
+		public long getLastUpdate() {
+			return lastUpdate;
+		}
+	}
+
+	private final ConcurrentMap<String, TaskStatus> runningTasks = new ConcurrentHashMap<>();
+
+	public void addProgress(ProgressMessage progressMessage) {
+		List<ProgressStep> steps = progressMessage.getSteps();
+		if (steps.isEmpty()) {
+			return;
+		}
+		ProgressStep latestStep = steps.get(steps.size() - 1);
+		String key = getKey(progressMessage.getContextIdRef(),
+				progressMessage.getPackageName());
+		// Received time, independent of slave clocks
+		long now = System.currentTimeMillis();
+
+		while (true) {
+			TaskStatus previous = runningTasks.get(key);
+			TaskStatus current = new TaskStatus(progressMessage.getTaskId(),
+					progressMessage.getContextIdRef(),
+					progressMessage.getPackageName(),
+					latestStep.getStarsLevels(), latestStep.getStatus(),
+					(previous != null ? previous.getStepCount() : 0)
+							+ steps.size(), now);
+			if (previous == null ? runningTasks.putIfAbsent(key, current) == null
+					: runningTasks.replace(key, previous, current)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops tracking a check task once its result arrived
+	 */
+	public void completeTask(Long contextIdRef, String packageName) {
+		runningTasks.remove(getKey(contextIdRef, packageName));
+	}
+
+	/**
+	 * Stops tracking a cancelled check task
+	 */
+	public void cancelTask(String taskId) {
+		for (TaskStatus taskStatus : runningTasks.values()) {
+			if (taskId.equals(taskStatus.getTaskId())) {
+				runningTasks.remove(getKey(taskStatus.getContextIdRef(),
+						taskStatus.getPackageName()), taskStatus);
+			}
+		}
+	}
+
+	public Collection<TaskStatus> getRunningTasks() {
+		return new ArrayList<>(runningTasks.values());
+	}
+
+	public TaskStatus getTaskStatus(Long contextIdRef, String packageName) {
+		return runningTasks.get(getKey(contextIdRef, packageName));
+	}
+
+	/**
+	 * @param maxIdleTime
+	 *            time in ms without progress after which a task is considered
+	 *            stalled
+	 * @return running tasks without progress within the given time
+	 */
+	public List<TaskStatus> getStalledTasks(long maxIdleTime) {
+		long threshold = System.currentTimeMillis() - maxIdleTime;
+		List<TaskStatus> stalledTasks = new ArrayList<>();
+		for (TaskStatus taskStatus : runningTasks.values()) {
+			if (taskStatus.getLastUpdate() < threshold) {
+				stalledTasks.add(taskStatus);
+			}
+		}
+		return stalledTasks;
+	}
+
+	private static String getKey(Long contextIdRef, String packageName) {
+		return contextIdRef + "/" + packageName;
+	}
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+import javax.transaction.Transactional;
+
+import de.hopmann.msc.commons.exception.PackageNotFoundException;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.PackageInstallerMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.model.Version;
+import de.hopmann.msc.commons.util.CheckFingerprint;
+import de.hopmann.msc.master.ejb.entity.PackageResult;
+import de.hopmann.msc.master.ejb.entity.PackageResult.PackageResultType;
+import de.hopmann.msc.master.ejb.entity.PackageResult_;
+import de.hopmann.msc.master.ejb.entity.PackageSource;
+import de.hopmann.msc.master.ejb.entity.PackageSource_;
+import de.hopmann.repositories.cran.service.CRANPackageListingService;
+
+/**
+ * Finds check results whose inputs are unchanged, so that the check does not
+ * need to run again. The fingerprint of a check covers the package, the
+ * installations it has been checked with and the installer version, see
+ * {@link CheckFingerprint}. Current versions are taken from the package
+ * listing, checks involving sources not listed there are never reused.
+ * 
+ */
+@ApplicationScoped
+@Transactional
+public class CheckResultCacheService implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String LISTING_SOURCE_TYPE = "CRAN";
+
+	/**
+	 * Maximum number of values within a single IN predicate
+	 */
+	private static final int QUERY_CHUNK_SIZE = 500;
+
+	@Inject
+	private Logger log;
+
+	@PersistenceContext(unitName = "master")
+	private EntityManager entityManager;
+
+	@Inject
+	private Instance<CRANPackageListingService> packageListing;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * @return fingerprint of the check result as stored with the check
+	 */
+	public static String getFingerprint(CheckResultMessage checkResultMessage) {
+		PackageResultMessage checkPackage = checkResultMessage
+				.getPackageDescription();
+		CheckFingerprint fingerprint = new CheckFingerprint(
+				checkPackage.getPackageName(), checkPackage.getSourceType(),
+				checkPackage.getSourceLocation(),
+				checkPackage.getSourceVersion());
+		for (PackageResultMessage dependency : checkResultMessage
+				.getInstallationDependencies()) {
+			fingerprint.addDependency(dependency.getPackageName(),
+					dependency.getSourceType(), dependency.getSourceLocation(),
+					dependency.getSourceVersion());
+		}
+		PackageInstallerMessage installer = checkResultMessage
+				.getPackageInstaller();
+		fingerprint.setInstaller(
+				installer != null ? installer.getVersionString() : null, null,
+				null);
+		return fingerprint.getFingerprint();
+	}
+
+	/**
+	 * @return latest check of the package source if checking it again with
+	 *         the installer would use the same inputs, null otherwise
+	 */
+	public PackageResult getCachedCheck(PackageSource packageSource,
+			String installerVersion) {
+		return getCachedChecks(Collections.singleton(packageSource),
+				installerVersion).get(packageSource.getId());
+	}
+
+	/**
+	 * Looks up the reusable checks of several package sources with as few
+	 * queries as possible
+	 * 
+	 * @return latest checks whose inputs are unchanged by id of their package
+	 *         source, sources to check again are missing
+	 */
+	public Map<Long, PackageResult> getCachedChecks(
+			Collection<PackageSource> packageSources, String installerVersion) {
+		Map<Long, PackageResult> latestChecks = getLatestChecks(packageSources);
+		Map<Long, PackageResult> cachedChecks = new HashMap<>();
+		for (PackageSource packageSource : packageSources) {
+			PackageResult latestCheck = latestChecks.get(packageSource.getId());
+			if (latestCheck != null
+					&& latestCheck.getCheckFingerprint() != null
+					&& latestCheck.getCheckFingerprint().equals(
+							getCurrentFingerprint(latestCheck,
+									installerVersion))) {
+				hitCount.incrementAndGet();
+				cachedChecks.put(packageSource.getId(), latestCheck);
+			} else {
+				missCount.incrementAndGet();
+			}
+		}
+		return cachedChecks;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return fingerprint of the check with the currently listed versions,
+	 *         null if a version is not known
+	 */
+	private String getCurrentFingerprint(PackageResult check,
+			String installerVersion) {
+		if (packageListing.isUnsatisfied() || packageListing.isAmbiguous()) {
+			return null;
+		}
+		CRANPackageListingService listing = packageListing.get();
+		try {
+			PackageSource packageSource = check.getPackageSource();
+			Version sourceVersion = getListedVersion(listing, packageSource);
+			if (sourceVersion == null) {
+				return null;
+			}
+			CheckFingerprint fingerprint = new CheckFingerprint(
+					packageSource.getPackageName(),
+					packageSource.getSourceType(),
+					packageSource.getSourceLocation(), sourceVersion);
+			for (PackageResult dependency : check.getDependencies()) {
+				PackageSource dependencySource = dependency.getPackageSource();
+				Version dependencyVersion = getListedVersion(listing,
+						dependencySource);
+				if (dependencyVersion == null) {
+					return null;
+				}
+				fingerprint.addDependency(dependencySource.getPackageName(),
+						dependencySource.getSourceType(),
+						dependencySource.getSourceLocation(),
+						dependencyVersion);
+			}
+			fingerprint.setInstaller(installerVersion, null, null);
+			return fingerprint.getFingerprint();
+		} catch (PackageNotFoundException e) {
+			return null;
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Package listing not available", e);
+			return null;
+		}
+	}
+
+	private static Version getListedVersion(
+			CRANPackageListingService listing, PackageSource packageSource)
+			throws PackageNotFoundException {
+		if (!LISTING_SOURCE_TYPE.equals(packageSource.getSourceType())) {
+			// Current version unknown
+			return null;
+		}
+		return listing.getPackageLatestPackageVersion(
+				packageSource.getPackageName()).getSourceVersion();
+	}
+
+	/**
+	 * @return latest checks by id of their package source, including their
+	 *         dependencies
+	 */
+	private Map<Long, PackageResult> getLatestChecks(
+			Collection<PackageSource> packageSources) {
+		List<Long> sourceIds = new ArrayList<>();
+		for (PackageSource packageSource : packageSources) {
+			sourceIds.add(packageSource.getId());
+		}
+
+		Map<Long, PackageResult> latestChecks = new HashMap<>();
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		for (int i = 0; i < sourceIds.size(); i += QUERY_CHUNK_SIZE) {
+			CriteriaQuery<PackageResult> query = cb
+					.createQuery(PackageResult.class);
+			Root<PackageResult> pr = query.from(PackageResult.class);
+			Join<PackageResult, PackageSource> ps = pr
+					.join(PackageResult_.packageSource);
+			// Compared with the current versions right after
+			pr.fetch(PackageResult_.dependencies, JoinType.LEFT);
+
+			query.select(pr)
+					.distinct(true)
+					.where(ps.get(PackageSource_.id).in(
+							sourceIds.subList(i,
+									Math.min(i + QUERY_CHUNK_SIZE,
+											sourceIds.size()))),
+							cb.equal(pr.get(PackageResult_.revision),
+									ps.get(PackageSource_.maxRevisionNumber)),
+							cb.equal(pr.get(PackageResult_.installationType),
+									PackageResultType.CHECK));
+
+			for (PackageResult check : entityManager.createQuery(query)
+					.getResultList()) {
+				latestChecks.put(check.getPackageSource().getId(), check);
+			}
+		}
+		return latestChecks;
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.qualifier.Configuration;
+
+/**
+ * Group commit of check results. Results submitted by concurrently running
+ * listeners within a short window are added within a single transaction, so
+ * that they share new context revisions instead of serializing on the
+ * revision number of their context. Submitting threads wait until their
+ * results are committed, so that messages are acknowledged afterwards only.
+ * 
+ */
+@ApplicationScoped
+public class CheckResultGroupCommitter {
+
+	/**
+	 * Results committed together, collected by the first submitting thread
+	 * 
+	 */
+	private static class ResultGroup {
+
+		private final List<CheckResultMessage> results = new ArrayList<>();
+		private boolean completed = false;
+
+		private synchronized void complete() {
+			completed = true;
+			notifyAll();
+		}
+
+		private synchronized void awaitCompletion() {
+			boolean interrupted = false;
+			while (!completed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					// Results are committed anyway
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private PackageService packageService;
+
+	/**
+	 * Time in ms to collect results of concurrent listeners, 0 to add each
+	 * result within its own transaction
+	 */
+	@Inject
+	@Configuration(value = "resultGroupWindow", required = false)
+	private Integer resultGroupWindow;
+
+	/**
+	 * Number of results after which a group is committed without waiting for
+	 * the window to elapse
+	 */
+	@Inject
+	@Configuration(value = "resultGroupSize", required = false)
+	private Integer resultGroupSize;
+
+	private ResultGroup openGroup;
+
+	/**
+	 * Adds the results, returns once they are committed
+	 */
+	public void addCheckResults(List<CheckResultMessage> checkResultMessages) {
+		if (checkResultMessages.isEmpty()) {
+			return;
+		}
+		if (resultGroupWindow == null || resultGroupWindow <= 0) {
+			for (CheckResultMessage checkResultMessage : checkResultMessages) {
+				packageService.addCheckResult(checkResultMessage);
+			}
+			return;
+		}
+
+		ResultGroup group;
+		boolean leader;
+		synchronized (this) {
+			leader = openGroup == null;
+			if (leader) {
+				openGroup = new ResultGroup();
+			}
+			group = openGroup;
+			group.results.addAll(checkResultMessages);
+			if (resultGroupSize != null
+					&& group.results.size() >= resultGroupSize) {
+				// Full, wake up leader
+				openGroup = null;
+				notifyAll();
+			}
+		}
+
+		if (leader) {
+			awaitWindow(group);
+			commit(group);
+		} else {
+			group.awaitCompletion();
+		}
+	}
+
+	/**
+	 * Waits for further results until the window elapsed or the group is full
+	 */
+	private synchronized void awaitWindow(ResultGroup group) {
+		long deadline = System.currentTimeMillis() + resultGroupWindow;
+		long remaining;
+		while (openGroup == group
+				&& (remaining = deadline - System.currentTimeMillis()) > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (openGroup == group) {
+			openGroup = null;
+		}
+	}
+
+	private void commit(ResultGroup group) {
+		try {
+			packageService.addCheckResults(group.results);
+			log.info("Committed group of " + group.results.size()
+					+ " check results");
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Could not commit group of "
+					+ group.results.size()
+					+ " check results, adding them separately", e);
+			for (CheckResultMessage checkResultMessage : group.results) {
+				try {
+					packageService.addCheckResult(checkResultMessage);
+				} catch (RuntimeException e1) {
+					log.log(Level.SEVERE,
+							"Could not add check result for package "
+									+ checkResultMessage
+											.getPackageDescription()
+											.getPackageName(), e1);
+				}
+			}
+		} finally {
+			group.complete();
+		}
+	}
+}
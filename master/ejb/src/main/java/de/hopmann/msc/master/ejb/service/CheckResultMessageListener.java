@@ -15,7 +15,8 @@
  */
 package de.hopmann.msc.master.ejb.service;
 
-import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,12 +25,12 @@ import javax.ejb.MessageDriven;
 import javax.inject.Inject;
 import javax.jms.Message;
 import javax.jms.MessageListener;
-import javax.jms.TextMessage;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
 
 import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.ResultBatchMessage;
 import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.messages.codec.MessageCodecs;
+import de.hopmann.msc.commons.service.MetricsRegistry;
 
 /**
  * Message-Driven Bean implementation to receive package check results
@@ -46,7 +47,25 @@ public class CheckResultMessageListener implements MessageListener {
 	private Logger log;
 
 	@Inject
-	private PackageService packageService;
+	private CheckResultGroupCommitter checkResultGroupCommitter;
+
+	@Inject
+	private CheckProgressService checkProgressService;
+
+	@Inject
+	private OutputBlobService outputBlobService;
+
+	@Inject
+	private RecheckPlannerService recheckPlannerService;
+
+	@Inject
+	private CheckSweepService checkSweepService;
+
+	@Inject
+	private PendingTaskRegistry pendingTaskRegistry;
+
+	@Inject
+	private MetricsRegistry metrics;
 
 	public CheckResultMessageListener() {
 		// TODO Auto-generated constructor stub
@@ -58,29 +77,82 @@ public class CheckResultMessageListener implements MessageListener {
 	public void onMessage(Message message) {
 
 		log.info("Test Result");
-		if (message instanceof TextMessage) {
-			TextMessage textMessage = (TextMessage) message;
+		metrics.counter("msc_jms_messages_consumed_total",
+				"Messages consumed by destination", "destination", "results")
+				.inc();
+		try {
+			Object messageContent = MessageCodecs.readMessage(message);
+
+			List<CheckResultMessage> checkResults = new ArrayList<>();
+			if (messageContent instanceof ResultBatchMessage) {
+				List<ResultMessage> results = ((ResultBatchMessage) messageContent)
+						.getResults();
+				log.info("Received batch of " + results.size() + " results");
+				for (ResultMessage resultMessage : results) {
+					handleResult(resultMessage, checkResults);
+				}
+			} else {
+				handleResult((ResultMessage) messageContent, checkResults);
+			}
 
-			try {
-				log.info(textMessage.getText());
+			// Outputs sent by hash only are resolved before ingestion
+			outputBlobService.storeOutputs(checkResults);
 
-				Unmarshaller unmarshaller = JAXBContext.newInstance(
-						CheckResultMessage.class).createUnmarshaller();
+			// Possibly along with results of concurrent listeners
+			checkResultGroupCommitter.addCheckResults(checkResults);
 
-				ResultMessage resultMessage = (ResultMessage) unmarshaller
-						.unmarshal(new StringReader(textMessage.getText()));
+			for (CheckResultMessage checkResult : checkResults) {
+				// Resolves all requests attached to the task
+				List<String> taskIds = pendingTaskRegistry
+						.complete(checkResult);
+				if (checkResult.getPackageDescription() != null) {
+					recheckPlannerService.completeRecheck(checkResult
+							.getContextIdRef(), checkResult
+							.getPackageDescription().getPackageName());
+				}
+				completeSweepTasks(checkResult, taskIds);
+			}
 
-				if (resultMessage instanceof CheckResultMessage) {
-					packageService
-							.addCheckResult((CheckResultMessage) resultMessage);
-				} else {
+		} catch (Exception e) {
+			log.log(Level.SEVERE, "Error receiving message", e);
+		}
+	}
 
-					// TODO Exception message
-				}
+	/**
+	 * Sweeps may have dispatched a task that has been re-prioritised, so all
+	 * ids of the resolved tasks are completed
+	 */
+	private void completeSweepTasks(ResultMessage resultMessage,
+			List<String> taskIds) {
+		checkSweepService.completeTask(resultMessage.getTaskId());
+		for (String taskId : taskIds) {
+			if (!taskId.equals(resultMessage.getTaskId())) {
+				checkSweepService.completeTask(taskId);
+			}
+		}
+	}
 
-			} catch (Exception e) {
-				log.log(Level.SEVERE, "Error receiving message", e);
+	private void handleResult(ResultMessage resultMessage,
+			List<CheckResultMessage> checkResults) {
+		if (resultMessage.getPackageDescription() != null) {
+			checkProgressService.completeTask(resultMessage.getContextIdRef(),
+					resultMessage.getPackageDescription().getPackageName());
+		}
+		if (resultMessage instanceof CheckResultMessage) {
+			checkResults.add((CheckResultMessage) resultMessage);
+		} else {
+			// Failed checks are not ingested, but end the waiting
+			List<String> taskIds = pendingTaskRegistry
+					.complete(resultMessage);
+			if (resultMessage.getPackageDescription() != null) {
+				// Failed rechecks do not block their dependents either
+				recheckPlannerService.completeRecheck(resultMessage
+						.getContextIdRef(), resultMessage
+						.getPackageDescription().getPackageName());
 			}
+			// Failed tasks do not occupy outstanding slots of sweeps
+			completeSweepTasks(resultMessage, taskIds);
+			// TODO Exception message
 		}
 	}
 
@@ -0,0 +1,548 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage.ProgressStep;
+import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.model.CheckResult;
+import de.hopmann.msc.commons.util.ListenableFuture;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.entity.PackageResult;
+import de.hopmann.msc.master.ejb.service.PendingTaskRegistry.PendingTask;
+
+/**
+ * Tracks check tasks submitted by clients until their result arrived, so
+ * that clients can follow their progress without blocking a thread. Updates
+ * are pushed to registered listeners.
+ * 
+ */
+@ApplicationScoped
+public class CheckSubmissionService {
+
+	/**
+	 * Maximum number of remembered submissions, the oldest are forgotten
+	 * first. Sized to hold many full batches (see BatchResource), so that a
+	 * new batch does not evict the submissions of the previous ones.
+	 */
+	private static final int MAX_SUBMISSIONS = 100000;
+
+	/**
+	 * Maximum number of remembered batches, the oldest are forgotten first
+	 */
+	private static final int MAX_BATCHES = 100;
+
+	public enum SubmissionState {
+		QUEUED, RUNNING, FINISHED, FAILED, CANCELLED
+	}
+
+	/**
+	 * Notified about updates of a submission, possibly on JMS listener
+	 * threads, so implementations must not block
+	 * 
+	 */
+	public interface SubmissionListener {
+
+		/**
+		 * @param submission
+		 *            running submission which reported new steps
+		 */
+		void progress(CheckSubmission submission);
+
+		/**
+		 * @param submission
+		 *            finished, failed or cancelled submission
+		 */
+		void completed(CheckSubmission submission);
+	}
+
+	/**
+	 * Check task submitted by a client
+	 * 
+	 */
+	public static class CheckSubmission {
+
+		private final String taskId;
+		private final Long contextIdRef;
+		private final String packageName;
+		private final String installerVersion;
+		private final long submitTime = System.currentTimeMillis();
+		private final List<SubmissionListener> listeners = new CopyOnWriteArrayList<>();
+
+		private SubmissionState state = SubmissionState.QUEUED;
+		private int stepCount;
+		private String[] starsLevels;
+		private CMDOutputStatus status;
+		private CheckResult checkResult;
+		private long completionTime;
+
+		CheckSubmission(String taskId, Long contextIdRef, String packageName,
+				String installerVersion) {
+			this.taskId = taskId;
+			this.contextIdRef = contextIdRef;
+			this.packageName = packageName;
+			this.installerVersion = installerVersion;
+		}
+
+		public String getTaskId() {
+			return taskId;
+		}
+
+		public Long getContextIdRef() {
+			return contextIdRef;
+		}
+
+		public String getPackageName() {
+			return packageName;
+		}
+
+		public String getInstallerVersion() {
+			return installerVersion;
+		}
+
+		public long getSubmitTime() {
+			return submitTime;
+		}
+
+		public synchronized SubmissionState getState() {
+			return state;
+		}
+
+		public synchronized boolean isCompleted() {
+			return state != SubmissionState.QUEUED
+					&& state != SubmissionState.RUNNING;
+		}
+
+		/**
+		 * @return number of check steps reported so far
+		 */
+		public synchronized int getStepCount() {
+			return stepCount;
+		}
+
+		/**
+		 * @return stars levels of the latest step, null if none reported
+		 */
+		public synchronized String[] getStarsLevels() {
+			return starsLevels;
+		}
+
+		public synchronized CMDOutputStatus getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return result of a finished check, null otherwise
+		 */
+		public synchronized CheckResult getCheckResult() {
+			return checkResult;
+		}
+
+		/**
+		 * @return time in ms the submission completed, 0 if not yet completed
+		 */
+		public synchronized long getCompletionTime() {
+			return completionTime;
+		}
+
+		private boolean addProgress(ProgressMessage progressMessage) {
+			List<ProgressStep> steps = progressMessage.getSteps();
+			synchronized (this) {
+				if (isCompleted() || steps.isEmpty()) {
+					return false;
+				}
+				ProgressStep latestStep = steps.get(steps.size() - 1);
+				state = SubmissionState.RUNNING;
+				stepCount += steps.size();
+				starsLevels = latestStep.getStarsLevels();
+				status = latestStep.getStatus();
+			}
+			for (SubmissionListener listener : listeners) {
+				listener.progress(this);
+			}
+			return true;
+		}
+
+		private void complete(SubmissionState completedState,
+				CheckResult completedResult) {
+			synchronized (this) {
+				if (isCompleted()) {
+					return;
+				}
+				state = completedState;
+				checkResult = completedResult;
+				completionTime = System.currentTimeMillis();
+			}
+			for (SubmissionListener listener : listeners) {
+				// Removed first, so that each listener is notified once
+				if (listeners.remove(listener)) {
+					listener.completed(this);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks of several packages submitted by a client at once
+	 * 
+	 */
+	public static class CheckBatch {
+
+		private final String batchId = UUID.randomUUID().toString();
+		private final Long contextIdRef;
+		private final String installerVersion;
+		private final long submitTime = System.currentTimeMillis();
+		private final Map<String, CheckSubmission> submissions = new LinkedHashMap<>();
+		private final List<String> notQueued = new ArrayList<>();
+
+		CheckBatch(Long contextIdRef, String installerVersion) {
+			this.contextIdRef = contextIdRef;
+			this.installerVersion = installerVersion;
+		}
+
+		public String getBatchId() {
+			return batchId;
+		}
+
+		public Long getContextIdRef() {
+			return contextIdRef;
+		}
+
+		public String getInstallerVersion() {
+			return installerVersion;
+		}
+
+		public long getSubmitTime() {
+			return submitTime;
+		}
+
+		/**
+		 * @return submissions by package name in submitted order
+		 */
+		public Map<String, CheckSubmission> getSubmissions() {
+			return Collections.unmodifiableMap(submissions);
+		}
+
+		/**
+		 * @return names of packages whose check could not be queued
+		 */
+		public List<String> getNotQueued() {
+			return Collections.unmodifiableList(notQueued);
+		}
+
+		/**
+		 * @return number of submissions of each state
+		 */
+		public Map<SubmissionState, Integer> getStateCounts() {
+			Map<SubmissionState, Integer> stateCounts = new EnumMap<>(
+					SubmissionState.class);
+			for (SubmissionState state : SubmissionState.values()) {
+				stateCounts.put(state, 0);
+			}
+			for (CheckSubmission submission : submissions.values()) {
+				SubmissionState state = submission.getState();
+				stateCounts.put(state, stateCounts.get(state) + 1);
+			}
+			return stateCounts;
+		}
+
+		public boolean isCompleted() {
+			for (CheckSubmission submission : submissions.values()) {
+				if (!submission.isCompleted()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private CheckTaskService checkTaskService;
+
+	@Inject
+	private PendingTaskRegistry pendingTaskRegistry;
+
+	@Inject
+	private PackageService packageService;
+
+	private final Map<String, CheckSubmission> submissions = new LinkedHashMap<String, CheckSubmission>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, CheckSubmission> eldest) {
+			return size() > MAX_SUBMISSIONS;
+		}
+	};
+
+	private final Map<String, CheckBatch> batches = new LinkedHashMap<String, CheckBatch>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CheckBatch> eldest) {
+			return size() > MAX_BATCHES;
+		}
+	};
+
+	/**
+	 * Queues a check of the package and tracks it until its result arrived.
+	 * Submissions of a check identical to a pending one share its task.
+	 * 
+	 * @param installerVersion
+	 *            null for the default installer
+	 * @return submission, null if the check could not be queued
+	 * @throws IllegalArgumentException
+	 *             if the context does not exist
+	 */
+	public CheckSubmission submit(Long contextId, String packageName,
+			String installerVersion, int priority) {
+		PackageContext packageContext = getPackageContext(contextId);
+		if (installerVersion == null) {
+			installerVersion = CheckTaskService.DEFAULT_INSTALLER_VERSION;
+		}
+
+		String taskId = checkTaskService.queueCheck(packageName,
+				packageContext, priority, installerVersion);
+		if (taskId == null) {
+			return null;
+		}
+		return track(taskId, contextId, packageName, installerVersion);
+	}
+
+	/**
+	 * Queues checks of several packages of a context at once and tracks each
+	 * of them like a single submission.
+	 * 
+	 * @param installerVersion
+	 *            null for the default installer
+	 * @return batch referring to the submission of each package
+	 * @throws IllegalArgumentException
+	 *             if the context does not exist
+	 */
+	public CheckBatch submitBatch(Long contextId, List<String> packageNames,
+			String installerVersion, int priority) {
+		PackageContext packageContext = getPackageContext(contextId);
+		if (installerVersion == null) {
+			installerVersion = CheckTaskService.DEFAULT_INSTALLER_VERSION;
+		}
+
+		Map<String, String> taskIds = checkTaskService.queueChecks(
+				packageNames, packageContext, priority, installerVersion);
+
+		CheckBatch batch = new CheckBatch(contextId, installerVersion);
+		for (Map.Entry<String, String> taskId : taskIds.entrySet()) {
+			if (taskId.getValue() == null) {
+				batch.notQueued.add(taskId.getKey());
+			} else {
+				batch.submissions.put(
+						taskId.getKey(),
+						track(taskId.getValue(), contextId, taskId.getKey(),
+								installerVersion));
+			}
+		}
+		synchronized (batches) {
+			batches.put(batch.getBatchId(), batch);
+		}
+		log.info("Submitted batch " + batch.getBatchId() + " of "
+				+ taskIds.size() + " packages");
+		return batch;
+	}
+
+	/**
+	 * @return batch with the given id, null if unknown or forgotten
+	 */
+	public CheckBatch getBatch(String batchId) {
+		synchronized (batches) {
+			return batches.get(batchId);
+		}
+	}
+
+	private PackageContext getPackageContext(Long contextId) {
+		PackageContext packageContext = packageService
+				.getPackageRepositoryById(contextId);
+		if (packageContext == null) {
+			throw new IllegalArgumentException("Context " + contextId
+					+ " not found");
+		}
+		return packageContext;
+	}
+
+	/**
+	 * Tracks the queued check task until its result arrived
+	 */
+	CheckSubmission track(String taskId, Long contextId,
+			String packageName, String installerVersion) {
+		CheckSubmission submission;
+		synchronized (submissions) {
+			submission = submissions.get(taskId);
+			if (submission != null) {
+				// Attached to a task submitted before
+				return submission;
+			}
+			submission = new CheckSubmission(taskId, contextId, packageName,
+					installerVersion);
+			submissions.put(taskId, submission);
+		}
+
+		if (CheckTaskService.isCachedResult(taskId)) {
+			// Inputs unchanged, answered by the existing result
+			PackageResult cachedCheck = packageService
+					.getPackageResult(CheckTaskService.getCachedResultId(taskId));
+			submission.complete(SubmissionState.FINISHED,
+					cachedCheck != null ? cachedCheck.getCheckResult() : null);
+			return submission;
+		}
+
+		PendingTask pendingTask = pendingTaskRegistry.getPendingTask(taskId);
+		if (pendingTask != null) {
+			awaitResult(submission, pendingTask.getResult());
+		} else {
+			log.warning("Check task " + taskId + " not pending anymore");
+		}
+		return submission;
+	}
+
+	/**
+	 * @return submission with the given task id, null if unknown or
+	 *         forgotten
+	 */
+	public CheckSubmission getSubmission(String taskId) {
+		synchronized (submissions) {
+			return submissions.get(taskId);
+		}
+	}
+
+	/**
+	 * Registers a listener for updates of the submission. A listener
+	 * registered on a completed submission is notified immediately by the
+	 * calling thread.
+	 * 
+	 * @return false if the submission is unknown
+	 */
+	public boolean addListener(String taskId, SubmissionListener listener) {
+		CheckSubmission submission = getSubmission(taskId);
+		if (submission == null) {
+			return false;
+		}
+		submission.listeners.add(listener);
+		if (submission.isCompleted()
+				&& submission.listeners.remove(listener)) {
+			// Completed meanwhile, not notified yet
+			listener.completed(submission);
+		}
+		return true;
+	}
+
+	public void removeListener(String taskId, SubmissionListener listener) {
+		CheckSubmission submission = getSubmission(taskId);
+		if (submission != null) {
+			submission.listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Withdraws one request of the submitted check. The check is cancelled
+	 * once no other requests remain, otherwise the shared submission keeps
+	 * running for the other requesters.
+	 * 
+	 * @return false if the submission is unknown or already completed
+	 */
+	public boolean cancel(String taskId) {
+		CheckSubmission submission = getSubmission(taskId);
+		if (submission == null || submission.isCompleted()) {
+			return false;
+		}
+		try {
+			if (!checkTaskService.cancelCheck(taskId)) {
+				return true;
+			}
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Could not cancel check task " + taskId, e);
+			return false;
+		}
+		submission.complete(SubmissionState.CANCELLED, null);
+		return true;
+	}
+
+	/**
+	 * Passes reported check steps to the submission of the task
+	 */
+	public void addProgress(ProgressMessage progressMessage) {
+		if (progressMessage.getTaskId() == null) {
+			return;
+		}
+		// Submissions of tasks re-prioritised to the reported one as well
+		PendingTask pendingTask = pendingTaskRegistry
+				.getPendingTask(progressMessage.getTaskId());
+		List<String> taskIds = pendingTask != null ? pendingTask.getTaskIds()
+				: Collections.singletonList(progressMessage.getTaskId());
+		for (String taskId : taskIds) {
+			CheckSubmission submission = getSubmission(taskId);
+			if (submission != null) {
+				submission.addProgress(progressMessage);
+			}
+		}
+	}
+
+	private void awaitResult(final CheckSubmission submission,
+			final ListenableFuture<ResultMessage> result) {
+		result.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (result.isCancelled()) {
+					submission.complete(SubmissionState.CANCELLED, null);
+					return;
+				}
+				ResultMessage resultMessage;
+				try {
+					resultMessage = result.get();
+				} catch (InterruptedException | ExecutionException e) {
+					submission.complete(SubmissionState.FAILED, null);
+					return;
+				}
+				if (resultMessage instanceof CheckResultMessage
+						&& ((CheckResultMessage) resultMessage)
+								.getCheckResult() != null) {
+					submission.complete(SubmissionState.FINISHED,
+							((CheckResultMessage) resultMessage)
+									.getCheckResult());
+				} else {
+					submission.complete(SubmissionState.FAILED, null);
+				}
+			}
+		});
+	}
+}
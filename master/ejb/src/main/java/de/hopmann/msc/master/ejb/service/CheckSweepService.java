@@ -0,0 +1,449 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.qualifier.Configuration;
+import de.hopmann.msc.master.ejb.entity.CheckSweep;
+import de.hopmann.msc.master.ejb.entity.CheckSweep.SweepState;
+import de.hopmann.msc.master.ejb.entity.CheckSweep_;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+
+/**
+ * Checks all listed packages within a context, in topological order with the
+ * most depended-on packages first. Tasks are dispatched with low priority and
+ * the number of outstanding tasks is bounded by the observed completion rate:
+ * enough tasks to keep the slaves busy, with a short queue of
+ * {@link #QUEUE_TIME} in addition. Progress is checkpointed with each
+ * dispatch, running sweeps resume after a restart.
+ * 
+ */
+@Singleton
+public class CheckSweepService {
+
+	/**
+	 * Time in ms of completions the outstanding tasks may exceed the tasks
+	 * being processed by
+	 */
+	private static final long QUEUE_TIME = 2 * 60 * 1000;
+
+	/**
+	 * Time in ms of completions throughput is determined from
+	 */
+	private static final long THROUGHPUT_WINDOW = 10 * 60 * 1000;
+
+	/**
+	 * Time in ms after which a task without result is no longer outstanding
+	 */
+	private static final long OUTSTANDING_TIMEOUT = 2 * 60 * 60 * 1000;
+
+	private static final int MIN_OUTSTANDING = 5;
+
+	/**
+	 * Number of dispatches a package is tried to be queued in before it is
+	 * skipped as failed
+	 */
+	static final int MAX_QUEUE_ATTEMPTS = 3;
+
+	/**
+	 * Progress of a sweep
+	 * 
+	 */
+	public static class SweepStatus {
+
+		private final Long sweepId;
+		private final String contextName;
+		private final String installerVersion;
+		private final SweepState state;
+		private final int packageCount;
+		private final int dispatchedCount;
+		private final int completedCount;
+		private final int failedCount;
+		private final int outstandingCount;
+		private final int outstandingLimit;
+		private final double throughput;
+		private final long eta;
+
+		SweepStatus(CheckSweep sweep, int completedCount,
+				int outstandingCount, int outstandingLimit,
+				double throughput, long eta) {
+			this.sweepId = sweep.getId();
+			this.contextName = sweep.getPackageContext().getName();
+			this.installerVersion = sweep.getInstallerVersion();
+			this.state = sweep.getState();
+			this.packageCount = sweep.getPackageCount();
+			this.dispatchedCount = sweep.getPosition();
+			this.completedCount = completedCount;
+			this.failedCount = sweep.getFailedPackages().size();
+			this.outstandingCount = outstandingCount;
+			this.outstandingLimit = outstandingLimit;
+			this.throughput = throughput;
+			this.eta = eta;
+		}
+
+		public Long getSweepId() {
+			return sweepId;
+		}
+
+		public String getContextName() {
+			return contextName;
+		}
+
+		public String getInstallerVersion() {
+			return installerVersion;
+		}
+
+		public SweepState getState() {
+			return state;
+		}
+
+		public int getPackageCount() {
+			return packageCount;
+		}
+
+		public int getDispatchedCount() {
+			return dispatchedCount;
+		}
+
+		public int getCompletedCount() {
+			return completedCount;
+		}
+
+		/**
+		 * @return number of packages skipped since they could not be queued
+		 */
+		public int getFailedCount() {
+			return failedCount;
+		}
+
+		public int getOutstandingCount() {
+			return outstandingCount;
+		}
+
+		/**
+		 * @return current bound of outstanding tasks
+		 */
+		public int getOutstandingLimit() {
+			return outstandingLimit;
+		}
+
+		/**
+		 * @return completed tasks per hour
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		/**
+		 * @return estimated time in ms until all tasks are completed, -1 if
+		 *         unknown
+		 */
+		public long getEta() {
+			return eta;
+		}
+	}
+
+	private static class OutstandingTask {
+		private final long dispatchTime;
+		private final String taskId;
+
+		public OutstandingTask(long dispatchTime, String taskId) {
+			this.dispatchTime = dispatchTime;
+			this.taskId = taskId;
+		}
+	}
+
+	/**
+	 * Runtime state of a running sweep, not checkpointed
+	 * 
+	 */
+	private static class SweepRun {
+		private final long startTime = System.currentTimeMillis();
+		/**
+		 * Outstanding tasks by task id
+		 */
+		private final Map<String, OutstandingTask> outstanding = new LinkedHashMap<>();
+		/**
+		 * Completion time and latency of completed tasks
+		 */
+		private final Deque<long[]> completions = new ArrayDeque<>();
+		private long minLatency = Long.MAX_VALUE;
+		private int uncheckpointedCount;
+		/**
+		 * Failed attempts to queue the package at the current position
+		 */
+		private int failedAttempts;
+
+		/**
+		 * @return completed tasks per ms within the throughput window
+		 */
+		public double getRate(long now) {
+			while (!completions.isEmpty()
+					&& now - completions.peekFirst()[0] > THROUGHPUT_WINDOW) {
+				completions.pollFirst();
+			}
+			long window = Math.min(THROUGHPUT_WINDOW, now - startTime);
+			return window > 0 ? (double) completions.size() / window : 0;
+		}
+
+		public int getOutstandingLimit(long now, int maxOutstanding) {
+			double rate = getRate(now);
+			if (rate == 0 || minLatency == Long.MAX_VALUE) {
+				return Math.min(MIN_OUTSTANDING, maxOutstanding);
+			}
+			// Tasks being processed at the observed rate, plus a short queue
+			long limit = (long) Math.ceil(rate * (minLatency + QUEUE_TIME));
+			return (int) Math.min(maxOutstanding,
+					Math.max(MIN_OUTSTANDING, limit));
+		}
+	}
+
+	@Inject
+	private Logger log;
+
+	@PersistenceContext(unitName = "master")
+	private EntityManager entityManager;
+
+	@Inject
+	private CheckTaskService checkTaskService;
+
+	@Inject
+	private DependencyGraphService dependencyGraphService;
+
+	/**
+	 * Upper bound of outstanding tasks per sweep, defaults to 200
+	 */
+	@Inject
+	@Configuration(value = "sweepMaxOutstanding", required = false)
+	private Integer sweepMaxOutstanding;
+
+	private final Map<Long, SweepRun> sweepRuns = new HashMap<>();
+
+	/**
+	 * Starts checking all listed packages within the context
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the installer version is not valid, see
+	 *             {@link CheckTaskService#isValidInstallerVersion(String)}
+	 */
+	public CheckSweep startSweep(PackageContext packageContext,
+			String installerVersion) {
+		if (!CheckTaskService.isValidInstallerVersion(installerVersion)) {
+			throw new IllegalArgumentException("invalid installerVersion "
+					+ installerVersion);
+		}
+		List<String> packageNames = dependencyGraphService.getDependencyGraph(
+				packageContext).getSweepOrder(
+				dependencyGraphService.getPackageNames());
+
+		CheckSweep sweep = new CheckSweep(entityManager.merge(packageContext),
+				installerVersion, packageNames);
+		entityManager.persist(sweep);
+		log.info("Started sweep of " + packageNames.size()
+				+ " packages in context " + packageContext.getName()
+				+ " with installer " + installerVersion);
+		return sweep;
+	}
+
+	/**
+	 * Stops dispatching tasks of the sweep and cancels its outstanding tasks
+	 * 
+	 * @return false if the sweep is unknown or not running
+	 */
+	public boolean cancelSweep(Long sweepId) {
+		CheckSweep sweep = entityManager.find(CheckSweep.class, sweepId);
+		if (sweep == null || sweep.getState() != SweepState.RUNNING) {
+			return false;
+		}
+		sweep.setState(SweepState.CANCELLED);
+		SweepRun run = sweepRuns.remove(sweepId);
+		if (run != null) {
+			sweep.setCompletedCount(sweep.getCompletedCount()
+					+ run.uncheckpointedCount);
+			for (OutstandingTask task : run.outstanding.values()) {
+				try {
+					checkTaskService.cancelCheck(task.taskId);
+				} catch (Exception e) {
+					log.log(Level.WARNING, "Could not cancel task "
+							+ task.taskId, e);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Accounts the result of a check task, successful or failed, if it
+	 * belongs to a running sweep
+	 */
+	public void completeTask(String taskId) {
+		if (taskId == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (SweepRun run : sweepRuns.values()) {
+			OutstandingTask task = run.outstanding.remove(taskId);
+			if (task != null) {
+				long latency = now - task.dispatchTime;
+				run.completions.add(new long[] { now, latency });
+				run.minLatency = Math.min(run.minLatency, latency);
+				run.uncheckpointedCount++;
+			}
+		}
+	}
+
+	/**
+	 * @return status of all sweeps, latest first
+	 */
+	public List<SweepStatus> getSweepStatus() {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<CheckSweep> query = cb.createQuery(CheckSweep.class);
+		Root<CheckSweep> s = query.from(CheckSweep.class);
+		query.orderBy(cb.desc(s.get(CheckSweep_.id)));
+
+		long now = System.currentTimeMillis();
+		List<SweepStatus> result = new ArrayList<>();
+		for (CheckSweep sweep : entityManager.createQuery(query)
+				.getResultList()) {
+			result.add(getSweepStatus(sweep, now));
+		}
+		return result;
+	}
+
+	/**
+	 * @return status of the sweep, null if unknown
+	 */
+	public SweepStatus getSweepStatus(Long sweepId) {
+		CheckSweep sweep = entityManager.find(CheckSweep.class, sweepId);
+		return sweep != null ? getSweepStatus(sweep,
+				System.currentTimeMillis()) : null;
+	}
+
+	private SweepStatus getSweepStatus(CheckSweep sweep, long now) {
+		SweepRun run = sweepRuns.get(sweep.getId());
+		if (run == null) {
+			return new SweepStatus(sweep, sweep.getCompletedCount(), 0, 0, 0,
+					-1);
+		}
+		double rate = run.getRate(now);
+		int remaining = sweep.getPackageCount() - sweep.getPosition()
+				+ run.outstanding.size();
+		return new SweepStatus(sweep, sweep.getCompletedCount()
+				+ run.uncheckpointedCount, run.outstanding.size(),
+				run.getOutstandingLimit(now, getMaxOutstanding()),
+				rate * 60 * 60 * 1000, rate > 0 ? (long) (remaining / rate)
+						: -1);
+	}
+
+	@Schedule(hour = "*", minute = "*", second = "*/15", persistent = false)
+	public void dispatchTasks() {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<CheckSweep> query = cb.createQuery(CheckSweep.class);
+		Root<CheckSweep> s = query.from(CheckSweep.class);
+		query.where(cb.equal(s.get(CheckSweep_.state), SweepState.RUNNING));
+
+		for (CheckSweep sweep : entityManager.createQuery(query)
+				.getResultList()) {
+			dispatchTasks(sweep);
+		}
+	}
+
+	/**
+	 * Dispatches tasks of a running sweep up to its outstanding limit and
+	 * checkpoints its progress
+	 */
+	void dispatchTasks(CheckSweep sweep) {
+		SweepRun run = sweepRuns.get(sweep.getId());
+		if (run == null) {
+			// Started or resumed after a restart
+			run = new SweepRun();
+			sweepRuns.put(sweep.getId(), run);
+		}
+
+		long now = System.currentTimeMillis();
+		for (Iterator<OutstandingTask> it = run.outstanding.values()
+				.iterator(); it.hasNext();) {
+			if (now - it.next().dispatchTime > OUTSTANDING_TIMEOUT) {
+				it.remove();
+			}
+		}
+
+		int limit = run.getOutstandingLimit(now, getMaxOutstanding());
+		List<String> packageNames = sweep.getPackageNames();
+		int position = sweep.getPosition();
+		while (run.outstanding.size() < limit
+				&& position < packageNames.size()) {
+			String packageName = packageNames.get(position);
+			String taskId = checkTaskService.queueCheck(packageName,
+					sweep.getPackageContext(), CheckTaskMessage.PRIORITY_LOW,
+					sweep.getInstallerVersion());
+			if (taskId == null) {
+				if (++run.failedAttempts < MAX_QUEUE_ATTEMPTS) {
+					// Retried with the next dispatch
+					break;
+				}
+				log.warning("Skipping package " + packageName + " of sweep "
+						+ sweep.getId() + ", could not be queued");
+				sweep.addFailedPackage(packageName);
+				run.failedAttempts = 0;
+				position++;
+				continue;
+			}
+			run.failedAttempts = 0;
+			if (CheckTaskService.isCachedResult(taskId)) {
+				run.uncheckpointedCount++;
+			} else {
+				run.outstanding.put(taskId, new OutstandingTask(now, taskId));
+			}
+			position++;
+		}
+
+		// Checkpoint
+		sweep.setPosition(position);
+		sweep.setCompletedCount(sweep.getCompletedCount()
+				+ run.uncheckpointedCount);
+		run.uncheckpointedCount = 0;
+		if (position >= packageNames.size() && run.outstanding.isEmpty()) {
+			sweep.setState(SweepState.FINISHED);
+			sweepRuns.remove(sweep.getId());
+			log.info("Finished sweep " + sweep.getId());
+		}
+	}
+
+	private int getMaxOutstanding() {
+		return sweepMaxOutstanding != null ? sweepMaxOutstanding : 200;
+	}
+}
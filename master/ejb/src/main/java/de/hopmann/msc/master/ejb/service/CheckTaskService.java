@@ -15,28 +15,46 @@
  */
 package de.hopmann.msc.master.ejb.service;
 
-import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
 import javax.jms.JMSContext;
 import javax.jms.JMSException;
 import javax.jms.JMSProducer;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.Queue;
-import javax.jms.TextMessage;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
+import javax.jms.Session;
+import javax.jms.Topic;
 
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.exception.VersionFormatException;
+import de.hopmann.msc.commons.messages.CancelTaskMessage;
 import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.MessageProperties;
 import de.hopmann.msc.commons.messages.PackageInstallerMessage;
 import de.hopmann.msc.commons.messages.PackageMessage;
+import de.hopmann.msc.commons.messages.codec.MessageCodecs;
 import de.hopmann.msc.commons.model.SourceIdentifier;
+import de.hopmann.msc.commons.qualifier.Configuration;
 import de.hopmann.msc.commons.qualifier.JMSDestination;
 import de.hopmann.msc.commons.qualifier.JMSDestination.DestinationType;
+import de.hopmann.msc.commons.util.VersionHelper;
 import de.hopmann.msc.master.ejb.entity.PackageSource;
 import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.entity.PackageResult;
+import de.hopmann.msc.master.ejb.service.PendingTaskRegistry.PendingTask;
 
 /**
  * Interacts with worker agents.
@@ -45,6 +63,16 @@ import de.hopmann.msc.master.ejb.entity.PackageContext;
 @ApplicationScoped
 public class CheckTaskService {
 
+	/**
+	 * Installer version of check tasks not requesting a specific one
+	 */
+	public static final String DEFAULT_INSTALLER_VERSION = "3.0.2"; // TODO !
+
+	/**
+	 * Prefix of ids returned for checks answered by an existing result
+	 */
+	private static final String CACHED_TASK_ID_PREFIX = "cached:";
+
 	@Inject
 	private Logger log;
 
@@ -54,64 +82,440 @@ public class CheckTaskService {
 	@Inject
 	private JMSContext jmsContext;
 
+	@Inject
+	private Instance<Connection> jmsConnectionInstance;
+
 	@Inject
 	@JMSDestination(DestinationType.SLAVE)
 	private Queue buildQueue;
 
-	private void sendOrder(CheckTaskMessage checkTask) throws JAXBException,
-			JMSException {
+	@Inject
+	@JMSDestination(DestinationType.CONTROL)
+	private Topic controlTopic;
+
+	@Inject
+	private CheckProgressService checkProgressService;
+
+	@Inject
+	private PendingTaskRegistry pendingTaskRegistry;
+
+	@Inject
+	private CheckResultCacheService checkResultCacheService;
+
+	/**
+	 * Encoding of check task messages, slaves decode all supported encodings
+	 */
+	@Inject
+	@Configuration(value = "messageEncoding", required = false)
+	private String messageEncoding;
+
+	/**
+	 * Number of check tasks sent within one transaction on bulk submission
+	 */
+	@Inject
+	@Configuration(value = "submissionBatchSize", required = false)
+	private Integer submissionBatchSize;
+
+	/**
+	 * @return id of the sent task, or of an identical pending task the check
+	 *         task has been attached to
+	 */
+	private String sendOrder(CheckTaskMessage checkTask)
+			throws MessageCodecException, JMSException, VersionFormatException {
+		if (checkTask.getTaskId() == null) {
+			checkTask.setTaskId(UUID.randomUUID().toString());
+		}
+
+		PendingTask pendingTask = pendingTaskRegistry.reserve(checkTask);
+		if (!pendingTask.getTaskId().equals(checkTask.getTaskId())) {
+			log.info("Attaching to pending check task "
+					+ pendingTask.getTaskId());
+			return pendingTask.getTaskId();
+		}
+
 		log.info("Sending build task");
+		try {
+			send(checkTask);
+		} catch (MessageCodecException | JMSException
+				| VersionFormatException | RuntimeException e) {
+			pendingTaskRegistry.release(checkTask.getTaskId());
+			throw e;
+		}
+		cancelSuperseded(checkTask.getTaskId());
+		return checkTask.getTaskId();
+	}
 
-		JMSProducer producer = jmsContext.createProducer();
+	/**
+	 * Cancels the lower priority task the sent task has been re-prioritised
+	 * from, if any
+	 */
+	private void cancelSuperseded(String taskId) {
+		String supersededTaskId = pendingTaskRegistry.confirmSent(taskId);
+		if (supersededTaskId == null) {
+			return;
+		}
+		log.info("Check task " + supersededTaskId + " superseded by "
+				+ taskId);
+		try {
+			sendCancel(supersededTaskId);
+		} catch (MessageCodecException | JMSException | RuntimeException e) {
+			// Both tasks are checked, either result resolves the requests
+			log.log(Level.WARNING, "Could not cancel superseded check task "
+					+ supersededTaskId, e);
+		}
+	}
 
-		TextMessage message = jmsContext.createTextMessage();
+	private void send(CheckTaskMessage checkTask)
+			throws MessageCodecException, JMSException, VersionFormatException {
 
-		JAXBContext newInstance = JAXBContext
-				.newInstance(CheckTaskMessage.class);
-		StringWriter stringWriter = new StringWriter();
-		newInstance.createMarshaller().marshal(checkTask, stringWriter);
+		// Brokers deliver higher priority tasks first
+		JMSProducer producer = jmsContext.createProducer().setPriority(
+				checkTask.getPriority());
 
-		message.setText(stringWriter.toString());
+		Message message = MessageCodecs.createMessage(jmsContext, checkTask,
+				messageEncoding);
+		setTaskProperties(message, checkTask);
 
 		producer.send(buildQueue, message);
+	}
+
+	private void setTaskProperties(Message message, CheckTaskMessage checkTask)
+			throws JMSException, VersionFormatException {
+		// Results may be returned in any encoding known here
+		message.setStringProperty(MessageProperties.ACCEPT_ENCODING,
+				MessageCodecs.getSupportedEncodings());
+		// Route to slaves providing the requested installer
+		MessageProperties.setInstallerProperties(message,
+				checkTask.getPackageInstaller());
+	}
+
+	/**
+	 * Sends check tasks within transacted sessions, so that each batch is
+	 * queued completely or not at all. Tasks of failed batches are released.
+	 * 
+	 * @return check tasks which could not be sent
+	 */
+	private List<CheckTaskMessage> sendBatches(List<CheckTaskMessage> checkTasks) {
+		int batchSize = submissionBatchSize != null ? submissionBatchSize
+				: 100;
+		List<CheckTaskMessage> failedTasks = new ArrayList<>();
+
+		Connection connection = jmsConnectionInstance.get();
+		try {
+			Session session = connection.createSession(true,
+					Session.SESSION_TRANSACTED);
+			MessageProducer producer = session.createProducer(buildQueue);
+
+			for (int i = 0; i < checkTasks.size(); i += batchSize) {
+				List<CheckTaskMessage> batch = checkTasks.subList(i,
+						Math.min(i + batchSize, checkTasks.size()));
+				try {
+					for (CheckTaskMessage checkTask : batch) {
+						Message message = MessageCodecs.createMessage(session,
+								checkTask, messageEncoding);
+						setTaskProperties(message, checkTask);
+						// Brokers deliver higher priority tasks first
+						producer.send(message, DeliveryMode.PERSISTENT,
+								checkTask.getPriority(),
+								Message.DEFAULT_TIME_TO_LIVE);
+					}
+					session.commit();
+					for (CheckTaskMessage checkTask : batch) {
+						cancelSuperseded(checkTask.getTaskId());
+					}
+				} catch (MessageCodecException | JMSException
+						| VersionFormatException | RuntimeException e) {
+					log.log(Level.WARNING, "Could not send batch of "
+							+ batch.size() + " check tasks", e);
+					try {
+						session.rollback();
+					} catch (JMSException e1) {
+						log.log(Level.WARNING, "Could not roll back batch", e1);
+					}
+					failedTasks.addAll(batch);
+				}
+			}
+		} catch (JMSException e) {
+			log.log(Level.WARNING, "Could not set-up batch producer", e);
+			List<CheckTaskMessage> unsentTasks = new ArrayList<>(checkTasks);
+			unsentTasks.removeAll(failedTasks);
+			failedTasks.addAll(unsentTasks);
+		} finally {
+			jmsConnectionInstance.destroy(connection);
+		}
+
+		for (CheckTaskMessage checkTask : failedTasks) {
+			pendingTaskRegistry.release(checkTask.getTaskId());
+		}
+		return failedTasks;
+	}
+
+	/**
+	 * Requests slaves to stop a check task. Running checks are terminated and
+	 * report no result, pending and still queued tasks are skipped. Tasks
+	 * requested several times are only stopped once all requests have been
+	 * cancelled.
+	 * 
+	 * @param taskId
+	 *            as returned when queueing the check
+	 * @return true if the task has been cancelled, false if it is still
+	 *         requested otherwise
+	 */
+	public boolean cancelCheck(String taskId) throws MessageCodecException,
+			JMSException {
+		if (isCachedResult(taskId)) {
+			return false;
+		}
+		// Possibly re-prioritised to another task meanwhile
+		PendingTask pendingTask = pendingTaskRegistry.getPendingTask(taskId);
+		String currentTaskId = pendingTask != null ? pendingTask.getTaskId()
+				: taskId;
+		if (!pendingTaskRegistry.detach(taskId)) {
+			log.info("Check task " + taskId + " still requested otherwise");
+			return false;
+		}
+		log.info("Cancelling check task " + currentTaskId);
+		sendCancel(currentTaskId);
+		return true;
+	}
+
+	private void sendCancel(String taskId) throws MessageCodecException,
+			JMSException {
+		// Published to all slaves, since the processing slave is unknown
+		Message message = MessageCodecs.createMessage(jmsContext,
+				new CancelTaskMessage(taskId), messageEncoding);
+		jmsContext.createProducer().send(controlTopic, message);
+
+		checkProgressService.cancelTask(taskId);
+	}
+
+	/**
+	 * @return id of the check task, null if it could not be queued
+	 */
+	public String queueCheck(String packageName, PackageContext packageContext) {
+		return queueCheck(packageName, packageContext,
+				CheckTaskMessage.PRIORITY_NORMAL);
+	}
 
+	/**
+	 * @param priority
+	 *            priority of the check task, see
+	 *            {@link CheckTaskMessage#PRIORITY_HIGH}
+	 * @return id of the check task, null if it could not be queued
+	 */
+	public String queueCheck(String packageName,
+			PackageContext packageContext, int priority) {
+		return queueCheck(packageName, packageContext, priority,
+				DEFAULT_INSTALLER_VERSION);
 	}
 
-	public void queueCheck(String packageName, PackageContext packageContext) {
+	/**
+	 * @param installerVersion
+	 *            version of the installer to check the package with
+	 * @return id of the check task, null if it could not be queued
+	 */
+	public String queueCheck(String packageName,
+			PackageContext packageContext, int priority,
+			String installerVersion) {
 		PackageSource packageSource = packageService.getPackageSource(
 				packageName, packageContext);
 		if (packageSource != null) {
 			// package is known
-			queueCheck(packageSource);
+			return queueCheck(packageSource, priority, installerVersion);
 		} else {
 
-			// Check task for new package, dependencies unknown, // TODO probing
+			CheckTaskMessage checkTaskMessage = createCheckTask(packageName,
+					packageContext, priority, installerVersion);
+
+			return queueTask(checkTaskMessage);
+		}
+	}
+
+	/**
+	 * @return id of the check task, null if it could not be queued
+	 */
+	public String queueCheck(PackageSource packageSource) {
+		return queueCheck(packageSource, CheckTaskMessage.PRIORITY_NORMAL);
+	}
+
+	/**
+	 * @return id of the check task, null if it could not be queued
+	 */
+	public String queueCheck(PackageSource packageSource, int priority) {
+		return queueCheck(packageSource, priority, DEFAULT_INSTALLER_VERSION);
+	}
 
-			CheckTaskMessage checkTaskMessage = new CheckTaskMessage();
+	/**
+	 * @param installerVersion
+	 *            version of the installer to check the package with
+	 * @return id of the check task, null if it could not be queued
+	 */
+	public String queueCheck(PackageSource packageSource, int priority,
+			String installerVersion) {
+
+		PackageResult cachedCheck = checkResultCacheService.getCachedCheck(
+				packageSource, installerVersion);
+		if (cachedCheck != null) {
+			log.info("Inputs of package " + packageSource.getPackageName()
+					+ " unchanged since check " + cachedCheck.getId());
+			return CACHED_TASK_ID_PREFIX + cachedCheck.getId();
+		}
 
-			checkTaskMessage.setContextIdRef(packageContext.getId());
-			SourceIdentifier.SourceRepositoryIdentifier defaultRepository = new SourceIdentifier.SourceRepositoryIdentifier(
-					"CRAN");
-			checkTaskMessage.setDefaultRepository(defaultRepository);
-			checkTaskMessage.setPackage(toPackageMessage(packageName));
-			checkTaskMessage.setPackageInstaller(new PackageInstallerMessage(
-					"3.0.2")); // TODO !
+		CheckTaskMessage checkTaskMessage = createCheckTask(packageSource,
+				priority, installerVersion,
+				packageService.getLatestDependencies(packageSource));
 
-			try {
-				sendOrder(checkTaskMessage);
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		return queueTask(checkTaskMessage);
+	}
+
+	/**
+	 * Sends the check task, its reservation is released by
+	 * {@link #sendOrder(CheckTaskMessage)} if it could not be sent
+	 * 
+	 * @return id of the check task, null if it could not be queued
+	 */
+	private String queueTask(CheckTaskMessage checkTaskMessage) {
+		try {
+			return sendOrder(checkTaskMessage);
+		} catch (MessageCodecException | JMSException | VersionFormatException
+				| RuntimeException e) {
+			log.log(Level.WARNING, "Could not queue check of package "
+					+ checkTaskMessage.getPackageDescription().getName(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Queues checks of several packages of a context at once. Package sources,
+	 * reusable results and latest dependencies are looked up with set-based
+	 * queries and the check tasks are sent in transacted batches.
+	 * 
+	 * @param installerVersion
+	 *            version of the installer to check the packages with
+	 * @return ids of the check tasks by package name in the given order, null
+	 *         for packages which could not be queued
+	 */
+	public Map<String, String> queueChecks(List<String> packageNames,
+			PackageContext packageContext, int priority,
+			String installerVersion) {
+		Map<String, PackageSource> packageSources = packageService
+				.getPackageSourcesByName(packageNames, packageContext);
+		Map<Long, PackageResult> cachedChecks = checkResultCacheService
+				.getCachedChecks(packageSources.values(), installerVersion);
+
+		List<PackageSource> uncheckedSources = new ArrayList<>();
+		for (PackageSource packageSource : packageSources.values()) {
+			if (!cachedChecks.containsKey(packageSource.getId())) {
+				uncheckedSources.add(packageSource);
 			}
+		}
+		Map<Long, List<PackageSource>> latestDependencies = packageService
+				.getLatestDependencies(uncheckedSources);
 
+		Map<String, String> taskIds = new LinkedHashMap<>();
+		Map<String, CheckTaskMessage> checkTasks = new LinkedHashMap<>();
+		try {
+			reserveChecks(packageNames, packageContext, priority,
+					installerVersion, packageSources, cachedChecks,
+					latestDependencies, taskIds, checkTasks);
+		} catch (RuntimeException e) {
+			// Tasks reserved so far are never sent
+			for (CheckTaskMessage checkTask : checkTasks.values()) {
+				pendingTaskRegistry.release(checkTask.getTaskId());
+			}
+			throw e;
+		}
+
+		log.info("Sending " + checkTasks.size() + " of " + taskIds.size()
+				+ " build tasks");
+		List<CheckTaskMessage> failedTasks = sendBatches(new ArrayList<>(
+				checkTasks.values()));
+		for (Map.Entry<String, CheckTaskMessage> checkTask : checkTasks
+				.entrySet()) {
+			if (failedTasks.contains(checkTask.getValue())) {
+				taskIds.put(checkTask.getKey(), null);
+			}
 		}
+		return taskIds;
 	}
 
-	public void queueCheck(PackageSource packageSource) {
+	/**
+	 * Creates and reserves the check tasks of
+	 * {@link #queueChecks(List, PackageContext, int, String)}
+	 * 
+	 * @param taskIds
+	 *            receives the task id of each package
+	 * @param checkTasks
+	 *            receives the reserved tasks to be sent by package name,
+	 *            without tasks attached to pending ones
+	 */
+	private void reserveChecks(List<String> packageNames,
+			PackageContext packageContext, int priority,
+			String installerVersion, Map<String, PackageSource> packageSources,
+			Map<Long, PackageResult> cachedChecks,
+			Map<Long, List<PackageSource>> latestDependencies,
+			Map<String, String> taskIds,
+			Map<String, CheckTaskMessage> checkTasks) {
+		for (String packageName : packageNames) {
+			if (taskIds.containsKey(packageName)) {
+				continue;
+			}
+
+			CheckTaskMessage checkTaskMessage;
+			PackageSource packageSource = packageSources.get(packageName);
+			if (packageSource == null) {
+				checkTaskMessage = createCheckTask(packageName,
+						packageContext, priority, installerVersion);
+			} else if (cachedChecks.containsKey(packageSource.getId())) {
+				taskIds.put(packageName, CACHED_TASK_ID_PREFIX
+						+ cachedChecks.get(packageSource.getId()).getId());
+				continue;
+			} else {
+				List<PackageSource> dependencies = latestDependencies
+						.get(packageSource.getId());
+				checkTaskMessage = createCheckTask(packageSource, priority,
+						installerVersion,
+						dependencies != null ? dependencies
+								: Collections.<PackageSource> emptyList());
+			}
+			checkTaskMessage.setTaskId(UUID.randomUUID().toString());
+
+			PendingTask pendingTask = pendingTaskRegistry
+					.reserve(checkTaskMessage);
+			taskIds.put(packageName, pendingTask.getTaskId());
+			if (pendingTask.getTaskId().equals(checkTaskMessage.getTaskId())) {
+				checkTasks.put(packageName, checkTaskMessage);
+			}
+		}
+	}
+
+	/**
+	 * Check task for new package, dependencies unknown
+	 */
+	private CheckTaskMessage createCheckTask(String packageName,
+			PackageContext packageContext, int priority,
+			String installerVersion) {
+		// TODO probing
+		CheckTaskMessage checkTaskMessage = new CheckTaskMessage();
+
+		checkTaskMessage.setContextIdRef(packageContext.getId());
+		checkTaskMessage.setPriority(priority);
+		SourceIdentifier.SourceRepositoryIdentifier defaultRepository = new SourceIdentifier.SourceRepositoryIdentifier(
+				"CRAN");
+		checkTaskMessage.setDefaultRepository(defaultRepository);
+		checkTaskMessage.setPackage(toPackageMessage(packageName));
+		checkTaskMessage.setPackageInstaller(new PackageInstallerMessage(
+				installerVersion));
+		return checkTaskMessage;
+	}
 
+	private CheckTaskMessage createCheckTask(PackageSource packageSource,
+			int priority, String installerVersion,
+			List<PackageSource> latestDependencies) {
 		CheckTaskMessage checkTaskMessage = new CheckTaskMessage();
 
 		checkTaskMessage.setContextIdRef(packageSource.getRepository().getId());
+		checkTaskMessage.setPriority(priority);
 
 		SourceIdentifier.SourceRepositoryIdentifier defaultRepository = new SourceIdentifier.SourceRepositoryIdentifier(
 				"CRAN");
@@ -120,10 +524,7 @@ public class CheckTaskService {
 		checkTaskMessage.setPackage(toPackageMessage(packageSource));
 
 		checkTaskMessage.setPackageInstaller(new PackageInstallerMessage(
-				"3.0.2")); // TODO !
-
-		List<PackageSource> latestDependencies = packageService
-				.getLatestDependencies(packageSource);
+				installerVersion));
 
 		for (PackageSource depPackageSource : latestDependencies) {
 			checkTaskMessage.addDependency(toPackageMessage(depPackageSource));
@@ -142,13 +543,39 @@ public class CheckTaskService {
 		checkTaskMessage.addDependency(pkgMatrix);
 		//
 
+		return checkTaskMessage;
+	}
+
+	/**
+	 * @return true if tasks can be routed to slaves with the installer
+	 *         version, which has to be a valid version number
+	 */
+	public static boolean isValidInstallerVersion(String installerVersion) {
 		try {
-			sendOrder(checkTaskMessage);
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			return VersionHelper.getVersionNumber(installerVersion) != null;
+		} catch (VersionFormatException e) {
+			return false;
 		}
+	}
 
+	/**
+	 * @return true if the id has been returned for a check whose inputs are
+	 *         unchanged since an existing result, so that no task has been
+	 *         sent
+	 */
+	public static boolean isCachedResult(String taskId) {
+		return taskId != null && taskId.startsWith(CACHED_TASK_ID_PREFIX);
+	}
+
+	/**
+	 * @return id of the existing check result the id has been returned for
+	 * @see #isCachedResult(String)
+	 */
+	public static Long getCachedResultId(String taskId) {
+		if (!isCachedResult(taskId)) {
+			throw new IllegalArgumentException("No cached result " + taskId);
+		}
+		return Long.valueOf(taskId.substring(CACHED_TASK_ID_PREFIX.length()));
 	}
 
 	private PackageMessage toPackageMessage(PackageSource packageSource) {
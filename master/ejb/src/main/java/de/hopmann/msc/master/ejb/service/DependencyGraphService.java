@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import de.hopmann.msc.commons.util.ReverseDependencyGraph;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.repositories.cran.service.CRANPackageListingService;
+
+/**
+ * Provides the dependency graph of packages according to the package listing
+ * and to the latest results of a context. Falls back to the results if the
+ * package listing is not available.
+ * 
+ */
+@ApplicationScoped
+public class DependencyGraphService {
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private PackageService packageService;
+
+	@Inject
+	private Instance<CRANPackageListingService> packageListing;
+
+	public ReverseDependencyGraph<String> getDependencyGraph(
+			PackageContext packageContext) {
+		ReverseDependencyGraph<String> graph = new ReverseDependencyGraph<>();
+		CRANPackageListingService listing = getPackageListing();
+		if (listing != null) {
+			try {
+				graph.addDependencies(listing.getDependencyMap());
+			} catch (RuntimeException e) {
+				log.log(Level.WARNING, "Package listing not available", e);
+			}
+		}
+		graph.addDependencies(packageService
+				.getLatestDependencyMap(packageContext));
+		return graph;
+	}
+
+	/**
+	 * @return names of all listed packages, of all managed packages if the
+	 *         package listing is not available
+	 */
+	public List<String> getPackageNames() {
+		CRANPackageListingService listing = getPackageListing();
+		if (listing != null) {
+			try {
+				return listing.getPackageNames();
+			} catch (RuntimeException e) {
+				log.log(Level.WARNING, "Package listing not available", e);
+			}
+		}
+		return new ArrayList<>(new LinkedHashSet<>(
+				packageService.getAllManagedPackages()));
+	}
+
+	private CRANPackageListingService getPackageListing() {
+		if (packageListing.isUnsatisfied() || packageListing.isAmbiguous()) {
+			return null;
+		}
+		return packageListing.get();
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Topic;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.OutputStatusMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.messages.codec.MessageCodecs;
+import de.hopmann.msc.commons.qualifier.Configuration;
+import de.hopmann.msc.commons.qualifier.JMSDestination;
+import de.hopmann.msc.commons.qualifier.JMSDestination.DestinationType;
+import de.hopmann.msc.commons.util.OutputBlobStore;
+
+/**
+ * Stores the outputs of received results content-addressed, so that results
+ * reference outputs by hash and slaves may send the hash of an output only,
+ * once its storage has been confirmed.
+ * 
+ */
+@ApplicationScoped
+public class OutputBlobService {
+
+	@Inject
+	private Logger log;
+
+	/**
+	 * Directory of the output blobs, must persist across restarts since
+	 * results reference their outputs by hash only
+	 */
+	@Inject
+	@Configuration(value = "outputBlobDirectory", required = true)
+	private String outputBlobDirectory;
+
+	@Inject
+	private JMSContext jmsContext;
+
+	@Inject
+	@JMSDestination(DestinationType.CONTROL)
+	private Topic controlTopic;
+
+	@Inject
+	@Configuration(value = "messageEncoding", required = false)
+	private String messageEncoding;
+
+	private OutputBlobStore outputBlobStore;
+
+	@PostConstruct
+	private void init() {
+		File directory = new File(outputBlobDirectory);
+		try {
+			outputBlobStore = new OutputBlobStore(directory);
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Could not open output blob store in "
+					+ directory, e);
+		}
+	}
+
+	/**
+	 * Stores all outputs contained in the results and sets their hashes.
+	 * Outputs sent by hash only are restored afterwards, so that they may be
+	 * referenced by other results of the same batch. Slaves are told which
+	 * outputs are stored and which are missing, so that they send missing
+	 * outputs in full with later results. Slaves do not keep outputs of results
+	 * already sent, so a result referencing a missing output keeps its hash
+	 * but its output is lost, unless a later result sends the same output.
+	 */
+	public void storeOutputs(List<CheckResultMessage> checkResults) {
+		if (outputBlobStore == null) {
+			return;
+		}
+		OutputStatusMessage outputStatus = new OutputStatusMessage();
+		for (CheckResultMessage checkResult : checkResults) {
+			checkResult.setOutputHash(store(checkResult.getOutputMessages(),
+					checkResult.getOutputHash(), outputStatus));
+			for (PackageResultMessage packageResult : getPackageResults(checkResult)) {
+				packageResult.setOutputHash(store(
+						packageResult.getOutputMessages(),
+						packageResult.getOutputHash(), outputStatus));
+			}
+		}
+		for (CheckResultMessage checkResult : checkResults) {
+			if (checkResult.getOutputMessages() == null) {
+				checkResult.setOutputMessages(restore(
+						checkResult.getOutputHash(), outputStatus));
+			}
+			for (PackageResultMessage packageResult : getPackageResults(checkResult)) {
+				if (packageResult.getOutputMessages() == null) {
+					packageResult.setOutputMessages(restore(
+							packageResult.getOutputHash(), outputStatus));
+				}
+			}
+		}
+		publish(outputStatus);
+	}
+
+	private void publish(OutputStatusMessage outputStatus) {
+		if (outputStatus.isEmpty()) {
+			return;
+		}
+		try {
+			// Published to all slaves, since outputs are shared among them
+			Message message = MessageCodecs.createMessage(jmsContext,
+					outputStatus, messageEncoding);
+			jmsContext.createProducer().send(controlTopic, message);
+		} catch (MessageCodecException | JMSException | RuntimeException e) {
+			log.log(Level.WARNING, "Could not publish status of "
+					+ outputStatus.getStoredHashes().size() + " stored and "
+					+ outputStatus.getMissingHashes().size()
+					+ " missing outputs", e);
+		}
+	}
+
+	/**
+	 * @return stored output, null if unknown or lost
+	 */
+	public List<CMDOutputMessage> getOutputMessages(String hash)
+			throws IOException {
+		if (outputBlobStore == null || hash == null) {
+			return null;
+		}
+		return outputBlobStore.get(hash);
+	}
+
+	private String store(List<CMDOutputMessage> outputMessages, String hash,
+			OutputStatusMessage outputStatus) {
+		if (outputMessages == null || outputMessages.isEmpty()) {
+			return hash;
+		}
+		try {
+			String storedHash = outputBlobStore.put(outputMessages);
+			if (!outputStatus.getStoredHashes().contains(storedHash)) {
+				outputStatus.getStoredHashes().add(storedHash);
+			}
+			return storedHash;
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not store output", e);
+			return null;
+		}
+	}
+
+	private List<CMDOutputMessage> restore(String hash,
+			OutputStatusMessage outputStatus) {
+		if (hash == null) {
+			return null;
+		}
+		List<CMDOutputMessage> outputMessages = null;
+		try {
+			outputMessages = outputBlobStore.get(hash);
+			if (outputMessages == null) {
+				log.warning("Output " + hash
+						+ " referenced but not stored, requesting it again");
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not read output " + hash, e);
+		}
+		if (outputMessages == null
+				&& !outputStatus.getMissingHashes().contains(hash)) {
+			outputStatus.getMissingHashes().add(hash);
+		}
+		return outputMessages;
+	}
+
+	private static List<PackageResultMessage> getPackageResults(
+			ResultMessage result) {
+		List<PackageResultMessage> packageResults = new ArrayList<>();
+		if (result.getPackageDescription() != null) {
+			packageResults.add(result.getPackageDescription());
+		}
+		if (result instanceof CheckResultMessage) {
+			addAll(packageResults,
+					((CheckResultMessage) result).getInstallationDependencies());
+			addAll(packageResults,
+					((CheckResultMessage) result).getCheckDependencies());
+		}
+		return packageResults;
+	}
+
+	private static void addAll(List<PackageResultMessage> packageResults,
+			Set<PackageResultMessage> additional) {
+		if (additional != null) {
+			packageResults.addAll(additional);
+		}
+	}
+}
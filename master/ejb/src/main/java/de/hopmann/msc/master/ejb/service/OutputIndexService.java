@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.qualifier.Configuration;
+import de.hopmann.msc.commons.util.OutputIndex;
+import de.hopmann.msc.commons.util.OutputIndex.IndexedOutput;
+import de.hopmann.msc.commons.util.OutputIndex.OutputQuery;
+
+/**
+ * Full-text search over the R CMD output of ingested check results. Outputs
+ * are indexed once the transaction adding their result committed.
+ * 
+ */
+@ApplicationScoped
+public class OutputIndexService {
+
+	public static final String KIND_CHECK = "check";
+	public static final String KIND_INSTALLATION = "installation";
+
+	@Inject
+	private Logger log;
+
+	@Resource
+	private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	/**
+	 * Directory of the index, must persist across restarts since outputs are
+	 * indexed once only
+	 */
+	@Inject
+	@Configuration(value = "outputIndexDirectory", required = true)
+	private String outputIndexDirectory;
+
+	private OutputIndex outputIndex;
+
+	@PostConstruct
+	private void init() {
+		File directory = new File(outputIndexDirectory);
+		try {
+			outputIndex = new OutputIndex(directory);
+			log.info("Opened output index in " + directory + " with "
+					+ outputIndex.getDocumentCount() + " outputs");
+		} catch (IOException e) {
+			log.log(Level.SEVERE, "Could not open output index in "
+					+ directory + ", outputs will not be searchable", e);
+		}
+	}
+
+	@PreDestroy
+	private void destroy() {
+		if (outputIndex != null) {
+			try {
+				outputIndex.close();
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Could not close output index", e);
+			}
+		}
+	}
+
+	/**
+	 * Indexes the check output of a result and the outputs of the given
+	 * installations as soon as the current transaction committed
+	 * 
+	 * @param revision
+	 *            revision the result has been added at
+	 * @param installations
+	 *            packages of the result whose installations have been added
+	 *            at the same revision, installations reused from earlier
+	 *            revisions are already indexed
+	 */
+	public void indexAfterCommit(final CheckResultMessage checkResultMessage,
+			final long revision,
+			final Collection<PackageResultMessage> installations) {
+		if (outputIndex == null) {
+			return;
+		}
+		if (transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+			index(checkResultMessage, revision, installations);
+			return;
+		}
+		transactionSynchronizationRegistry
+				.registerInterposedSynchronization(new Synchronization() {
+					@Override
+					public void beforeCompletion() {
+
+					}
+
+					@Override
+					public void afterCompletion(int status) {
+						if (status == Status.STATUS_COMMITTED) {
+							index(checkResultMessage, revision,
+									installations);
+						}
+					}
+				});
+	}
+
+	/**
+	 * @return matching outputs, newest first, empty if the index is not
+	 *         available
+	 */
+	public List<IndexedOutput> search(OutputQuery query) throws IOException {
+		if (outputIndex == null) {
+			return new ArrayList<>();
+		}
+		return outputIndex.search(query);
+	}
+
+	/**
+	 * @return number of indexed outputs
+	 */
+	public int getOutputCount() {
+		return outputIndex != null ? outputIndex.getDocumentCount() : 0;
+	}
+
+	private void index(CheckResultMessage checkResultMessage, long revision,
+			Collection<PackageResultMessage> installations) {
+		long contextId = checkResultMessage.getContextIdRef();
+		PackageResultMessage checkPackage = checkResultMessage
+				.getPackageDescription();
+		try {
+			add(contextId, checkPackage.getPackageName(), revision,
+					KIND_CHECK, checkResultMessage.getOutputMessages());
+			for (PackageResultMessage installation : installations) {
+				add(contextId, installation.getPackageName(), revision,
+						KIND_INSTALLATION, installation.getOutputMessages());
+			}
+			outputIndex.commit();
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not index output of package "
+					+ checkPackage.getPackageName(), e);
+		}
+	}
+
+	private void add(long contextId, String packageName, long revision,
+			String kind, List<CMDOutputMessage> outputMessages)
+			throws IOException {
+		if (outputMessages == null) {
+			return;
+		}
+		for (CMDOutputMessage outputMessage : outputMessages) {
+			outputIndex.add(contextId, packageName, revision, kind,
+					outputMessage);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import de.hopmann.msc.commons.qualifier.Configuration;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.entity.PackageSource;
+
+/**
+ * Shared index of package contexts and sources, which are looked up on every
+ * page render and queued check, but rarely change. Entries are detached
+ * entities. Changed entries are removed immediately and once the changing
+ * transaction completed, so that they are read again from the database.
+ * 
+ */
+@ApplicationScoped
+public class PackageIndexService {
+
+	@Resource
+	private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	/**
+	 * Set to false to look up all contexts and sources in the database
+	 */
+	@Inject
+	@Configuration(value = "packageIndexEnabled", required = false)
+	private String packageIndexEnabled;
+
+	private volatile boolean enabled = true;
+
+	private final ConcurrentMap<Long, PackageContext> contextsById = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, PackageContext> contextsByName = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, PackageSource> sourcesByName = new ConcurrentHashMap<>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Incremented on each invalidation, guarded by this
+	 */
+	private long generation = 0;
+
+	@PostConstruct
+	private void init() {
+		enabled = !"false".equalsIgnoreCase(packageIndexEnabled);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Switches between index and database lookups, clears the index
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		clear();
+	}
+
+	/**
+	 * @return number of lookups answered by the index
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of lookups which had to query the database
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * To be obtained before reading an entity from the database
+	 * 
+	 * @return generation to pass when adding the read entity
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return indexed context, null if unknown or disabled
+	 */
+	public PackageContext getContext(Long id) {
+		return lookup(contextsById, id);
+	}
+
+	/**
+	 * @return indexed context, null if unknown or disabled
+	 */
+	public PackageContext getContext(String name) {
+		return lookup(contextsByName, name);
+	}
+
+	/**
+	 * @return indexed source, null if unknown or disabled
+	 */
+	public PackageSource getSource(Long contextId, String packageName) {
+		return lookup(sourcesByName, getSourceKey(contextId, packageName));
+	}
+
+	/**
+	 * Adds a context read from the database, unless it has been changed since
+	 * 
+	 * @param generation
+	 *            as obtained before reading
+	 */
+	public synchronized void putContext(PackageContext contextEntity,
+			long generation) {
+		if (enabled && generation == this.generation) {
+			contextsById.put(contextEntity.getId(), contextEntity);
+			contextsByName.put(contextEntity.getName(), contextEntity);
+		}
+	}
+
+	/**
+	 * Adds a source read from the database, unless it has been changed since
+	 * 
+	 * @param generation
+	 *            as obtained before reading
+	 */
+	public synchronized void putSource(PackageSource sourceEntity,
+			long generation) {
+		if (enabled && generation == this.generation) {
+			sourcesByName.put(
+					getSourceKey(sourceEntity.getRepository().getId(),
+							sourceEntity.getPackageName()), sourceEntity);
+		}
+	}
+
+	/**
+	 * Removes the context, e.g. on revision updates
+	 */
+	public void invalidate(PackageContext contextEntity) {
+		final Long id = contextEntity.getId();
+		final String name = contextEntity.getName();
+		afterCompletion(new Runnable() {
+			@Override
+			public void run() {
+				remove(contextsById, id);
+				remove(contextsByName, name);
+			}
+		});
+	}
+
+	/**
+	 * Removes the source, e.g. on insert or maximum revision updates
+	 */
+	public void invalidate(PackageSource sourceEntity) {
+		final String key = getSourceKey(sourceEntity.getRepository().getId(),
+				sourceEntity.getPackageName());
+		afterCompletion(new Runnable() {
+			@Override
+			public void run() {
+				remove(sourcesByName, key);
+			}
+		});
+	}
+
+	public synchronized void clear() {
+		generation++;
+		contextsById.clear();
+		contextsByName.clear();
+		sourcesByName.clear();
+	}
+
+	private <K, V> V lookup(ConcurrentMap<K, V> index, K key) {
+		if (!enabled || key == null) {
+			return null;
+		}
+		V value = index.get(key);
+		if (value != null) {
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+		}
+		return value;
+	}
+
+	private synchronized <K> void remove(ConcurrentMap<K, ?> index, K key) {
+		generation++;
+		if (key != null) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Runs the invalidation now, so that the transaction does not read stale
+	 * entries, and after completion, so that others do not keep entries read
+	 * meanwhile
+	 */
+	private void afterCompletion(final Runnable invalidation) {
+		invalidation.run();
+		if (transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+			return;
+		}
+		transactionSynchronizationRegistry
+				.registerInterposedSynchronization(new Synchronization() {
+					@Override
+					public void beforeCompletion() {
+
+					}
+
+					@Override
+					public void afterCompletion(int status) {
+						invalidation.run();
+					}
+				});
+	}
+
+	private static String getSourceKey(Long contextId, String packageName) {
+		return contextId + "/" + packageName;
+	}
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.Resource;
+import javax.enterprise.context.ApplicationScoped;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.ListJoin;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transactional;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import de.hopmann.msc.commons.model.CheckResult;
+import de.hopmann.msc.master.ejb.entity.PackageResult;
+import de.hopmann.msc.master.ejb.entity.PackageResult.PackageResultType;
+import de.hopmann.msc.master.ejb.entity.PackageResult_;
+import de.hopmann.msc.master.ejb.entity.PackageSource;
+import de.hopmann.msc.master.ejb.entity.PackageSource_;
+
+/**
+ * Lists distinct package names along with the status of their current check
+ * results in pages ordered by name. Pages are cached until results are
+ * ingested.
+ * 
+ */
+@ApplicationScoped
+@Transactional
+public class PackageListingService implements Serializable {
+
+	/**
+	 * Status of a package name aggregated over all contexts. Only check
+	 * results at the latest revision of a package source are considered.
+	 * 
+	 */
+	public static class PackageSummary implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String packageName;
+		private final long sourceCount;
+		private final long maxRevision;
+		private final long checkCount;
+		private final long errorCount;
+		private final long warningCount;
+
+		public PackageSummary(String packageName, Long sourceCount,
+				Long maxRevision, Long checkCount, Long errorCount,
+				Long warningCount) {
+			this.packageName = packageName;
+			this.sourceCount = valueOf(sourceCount);
+			this.maxRevision = valueOf(maxRevision);
+			this.checkCount = valueOf(checkCount);
+			this.errorCount = valueOf(errorCount);
+			this.warningCount = valueOf(warningCount);
+		}
+
+		private static long valueOf(Long value) {
+			return value != null ? value : 0;
+		}
+
+		public String getPackageName() {
+			return packageName;
+		}
+
+		/**
+		 * @return number of contexts containing the package
+		 */
+		public long getSourceCount() {
+			return sourceCount;
+		}
+
+		public long getMaxRevision() {
+			return maxRevision;
+		}
+
+		/**
+		 * @return number of sources checked at their latest revision
+		 */
+		public long getCheckCount() {
+			return checkCount;
+		}
+
+		public long getErrorCount() {
+			return errorCount;
+		}
+
+		public long getWarningCount() {
+			return warningCount;
+		}
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int MAX_CACHED_PAGES = 256;
+
+	@PersistenceContext(unitName = "master")
+	private EntityManager entityManager;
+
+	@Resource
+	private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+	/**
+	 * Least recently used pages, guarded by this
+	 */
+	private final Map<String, List<PackageSummary>> pageCache = new LinkedHashMap<String, List<PackageSummary>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Entry<String, List<PackageSummary>> eldest) {
+			return size() > MAX_CACHED_PAGES;
+		}
+	};
+
+	/**
+	 * Incremented on each invalidation, guarded by this
+	 */
+	private long generation = 0;
+
+	/**
+	 * @param prefix
+	 *            prefix of package names, null or empty for all packages
+	 * @param afterPackageName
+	 *            last package name of the previous page, null for the first
+	 *            page
+	 * @param limit
+	 *            maximum number of packages
+	 * @return packages ordered by name
+	 */
+	public List<PackageSummary> getPackages(String prefix,
+			String afterPackageName, int limit) {
+		String pageKey = prefix + "\u0000" + afterPackageName + "\u0000"
+				+ limit;
+
+		long pageGeneration;
+		synchronized (this) {
+			List<PackageSummary> page = pageCache.get(pageKey);
+			if (page != null) {
+				return page;
+			}
+			pageGeneration = generation;
+		}
+
+		List<PackageSummary> page = Collections
+				.unmodifiableList(new ArrayList<>(queryPackages(prefix,
+						afterPackageName, limit)));
+
+		synchronized (this) {
+			if (pageGeneration == generation) {
+				pageCache.put(pageKey, page);
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Discards cached pages now and once the current transaction completed.
+	 * Within a transaction, completion is only registered once.
+	 */
+	public void invalidate() {
+		clear();
+		if (transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_NO_TRANSACTION
+				|| transactionSynchronizationRegistry
+						.getResource(PackageListingService.class) != null) {
+			return;
+		}
+		transactionSynchronizationRegistry.putResource(
+				PackageListingService.class, Boolean.TRUE);
+		transactionSynchronizationRegistry
+				.registerInterposedSynchronization(new Synchronization() {
+					@Override
+					public void beforeCompletion() {
+
+					}
+
+					@Override
+					public void afterCompletion(int status) {
+						clear();
+					}
+				});
+	}
+
+	private synchronized void clear() {
+		generation++;
+		pageCache.clear();
+	}
+
+	private List<PackageSummary> queryPackages(String prefix,
+			String afterPackageName, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<PackageSummary> query = cb
+				.createQuery(PackageSummary.class);
+
+		Root<PackageSource> ps = query.from(PackageSource.class);
+		Path<String> packageName = ps.get(PackageSource_.packageName);
+
+		// Check results at the latest revision of each source
+		ListJoin<PackageSource, PackageResult> pr = ps.join(
+				PackageSource_.packageResults, JoinType.LEFT);
+		pr.on(cb.equal(pr.get(PackageResult_.revision),
+				ps.get(PackageSource_.maxRevisionNumber)), cb.equal(
+				pr.get(PackageResult_.installationType),
+				PackageResultType.CHECK));
+		Path<CheckResult> checkResult = pr.get(PackageResult_.checkResult);
+		Expression<Integer> errorCount = checkResult.get("errorCount");
+		Expression<Integer> warningCount = checkResult.get("warningCount");
+
+		List<Predicate> predicates = new ArrayList<>();
+		if (prefix != null && !prefix.isEmpty()) {
+			predicates.add(cb.like(packageName, escapeLike(prefix) + "%",
+					'\\'));
+		}
+		if (afterPackageName != null) {
+			// Keyset pagination
+			predicates.add(cb.greaterThan(packageName, afterPackageName));
+		}
+
+		query.select(
+				cb.construct(PackageSummary.class, packageName,
+						cb.countDistinct(ps),
+						cb.max(ps.get(PackageSource_.maxRevisionNumber)),
+						cb.count(pr), cb.sumAsLong(errorCount),
+						cb.sumAsLong(warningCount)))
+				.where(predicates.toArray(new Predicate[0]))
+				.groupBy(packageName).orderBy(cb.asc(packageName));
+
+		return entityManager.createQuery(query).setMaxResults(limit)
+				.getResultList();
+	}
+
+	private static String escapeLike(String value) {
+		return value.replace("\\", "\\\\").replace("%", "\\%")
+				.replace("_", "\\_");
+	}
+}
@@ -17,9 +17,14 @@ package de.hopmann.msc.master.ejb.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.ejb.TransactionAttribute;
@@ -31,15 +36,19 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.SingularAttribute;
 import javax.transaction.Transactional;
+import javax.transaction.Transactional.TxType;
 
 import de.hopmann.msc.commons.messages.CheckResultMessage;
 import de.hopmann.msc.commons.messages.PackageResultMessage;
-import de.hopmann.msc.commons.model.CheckResult;
 import de.hopmann.msc.commons.model.InstallationResult;
+import de.hopmann.msc.commons.service.MetricsRegistry;
+import de.hopmann.msc.master.ejb.entity.CheckMatrixCell;
 import de.hopmann.msc.master.ejb.entity.PackageContext;
 import de.hopmann.msc.master.ejb.entity.PackageContext_;
 import de.hopmann.msc.master.ejb.entity.PackageResult;
@@ -58,18 +67,70 @@ public class PackageService implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Maximum number of values within a single IN predicate
+	 */
+	private static final int QUERY_CHUNK_SIZE = 500;
+
 	@PersistenceContext(unitName = "master")
 	private EntityManager entityManager;
 
 	@Inject
 	private Logger log;
 
+	@Inject
+	private PackageIndexService packageIndex;
+
+	@Inject
+	private CheckMatrixService checkMatrixService;
+
+	@Inject
+	private PackageListingService packageListingService;
+
+	@Inject
+	private OutputIndexService outputIndexService;
+
+	@Inject
+	private MetricsRegistry metrics;
+
 	public PackageService() {
 
 	}
 
 	@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+	@Transactional(TxType.REQUIRES_NEW)
 	public void addCheckResult(CheckResultMessage checkResultMessage) {
+		addCheckResult(checkResultMessage, new HashMap<Long, Long>());
+	}
+
+	/**
+	 * Adds multiple check results within a single transaction. Results
+	 * introducing new versions share a single new context revision as long as
+	 * their installations do not conflict, so that the revision number of a
+	 * context is incremented once per group instead of once per result.
+	 * 
+	 * @param checkResultMessages
+	 *            results of any contexts
+	 */
+	@Transactional(TxType.REQUIRES_NEW)
+	public void addCheckResults(List<CheckResultMessage> checkResultMessages) {
+		// New revision allocated for this group by context id
+		Map<Long, Long> groupRevisions = new HashMap<>();
+		for (CheckResultMessage checkResultMessage : checkResultMessages) {
+			try {
+				addCheckResult(checkResultMessage, groupRevisions);
+			} catch (IllegalStateException e) {
+				// Result rejected, does not affect the other results
+				log.log(Level.SEVERE, "Could not add check result for package "
+						+ checkResultMessage.getPackageDescription()
+								.getPackageName(), e);
+			}
+		}
+	}
+
+	private void addCheckResult(CheckResultMessage checkResultMessage,
+			Map<Long, Long> groupRevisions) {
+		long startTime = System.currentTimeMillis();
 
 		Long contextIdRef = checkResultMessage.getContextIdRef();
 		if (contextIdRef == null) {
@@ -77,7 +138,9 @@ public class PackageService implements Serializable {
 			return;
 		}
 
-		PackageContext contextEntity = getPackageRepositoryById(contextIdRef);
+		// Managed instance, the revision number is updated below
+		PackageContext contextEntity = entityManager.find(
+				PackageContext.class, contextIdRef);
 		if (contextEntity == null) {
 			log.info("Check result referencing non-exisiting context");
 			return;
@@ -96,20 +159,35 @@ public class PackageService implements Serializable {
 				dependencies);
 		checkDependencies.add(checkPackage);
 
+		// Resolve all sources and their latest results at once instead of
+		// querying per dependency
+		Map<String, PackageSource> packageSources = getPackageSources(
+				checkDependencies, contextEntity);
+		Map<Long, PackageResult> maxPackageInstallations = getMaxRevisionInstallations(packageSources
+				.values());
+
 		Set<PackageResult> packageResults = new HashSet<>(dependencies.size());
-		PackageSource packageSource = getPackageSource(checkPackage,
-				contextEntity);
+		PackageSource packageSource = packageSources
+				.get(getSourceKey(checkPackage));
+		if (checkResultMessage.isReplayed()
+				&& isLatestCheck(maxPackageInstallations.get(packageSource
+						.getId()), checkResultMessage)) {
+			// Slave answered from its result cache, already stored
+			log.info("Skipping replayed check result for package "
+					+ checkPackage.getPackageName());
+			return;
+		}
 		PackageResult previousPackageInstallation = null;
 		for (PackageResultMessage dependency : checkDependencies) {
 
-			PackageSource depPackageSource = getPackageSource(dependency,
-					contextEntity);
+			PackageSource depPackageSource = packageSources
+					.get(getSourceKey(dependency));
 
 			long maxRevisionDep = depPackageSource.getMaxRevisionNumber();
 			// TODO source type/location
 
-			PackageResult maxPackageInstallation = getPackageInstallation(
-					depPackageSource, maxRevisionDep);
+			PackageResult maxPackageInstallation = maxPackageInstallations
+					.get(depPackageSource.getId());
 			if (maxRevisionAll == null || maxRevisionDep > maxRevisionAll) {
 				if (maxRevisionAll != null) {
 					newContext = true;
@@ -144,21 +222,47 @@ public class PackageService implements Serializable {
 			// depending installations
 			log.info("New state for package " + checkPackage.getPackageName());
 			packageResults.clear();
-			long newRevision = incrementAndGetContextRevisionNumber(contextEntity);
+			Long groupRevision = groupRevisions.get(contextIdRef);
+			long newRevision;
+			if (groupRevision != null
+					&& canJoinRevision(groupRevision, packageSource,
+							dependencies, packageSources,
+							maxPackageInstallations)) {
+				newRevision = groupRevision;
+			} else {
+				newRevision = incrementAndGetContextRevisionNumber(contextEntity);
+				groupRevisions.put(contextIdRef, newRevision);
+			}
 
+			// Installations added at the new revision, whose output is indexed
+			Set<PackageResultMessage> addedInstallations = new HashSet<>();
+			addedInstallations.add(checkPackage);
 			for (PackageResultMessage newInstallation : dependencies) {
-				// Add all new installations
+				PackageSource depPackageSource = packageSources
+						.get(getSourceKey(newInstallation));
+				PackageResult groupInstallation = maxPackageInstallations
+						.get(depPackageSource.getId());
+				if (groupInstallation != null
+						&& groupInstallation.getRevision() == newRevision) {
+					// Same installation already added by another result of the
+					// group
+					packageResults.add(groupInstallation);
+					continue;
+				}
+				// Add all new installations, inserted in batches on flush
 				PackageResult resultEntity = addPackageInstallation(
-						newInstallation, contextEntity, newRevision);
-				packageResults.add(entityManager.merge(resultEntity));
-				// TODO merge via cascade
+						depPackageSource, newInstallation, newRevision,
+						newInstallation.getInstallationResult());
+				packageResults.add(resultEntity);
+				addedInstallations.add(newInstallation);
 			}
 
 			addPackageCheck(packageSource, checkPackage, packageResults,
-					newRevision, checkResultMessage.getCheckResult());
+					newRevision, checkResultMessage);
+			outputIndexService.indexAfterCommit(checkResultMessage,
+					newRevision, addedInstallations);
 		} else {
 			// Context state not affected by installation results
-
 			if (previousPackageInstallation.getInstallationType() != PackageResultType.CHECK) {
 				// State is up to date, but package was not yet checked
 
@@ -166,7 +270,11 @@ public class PackageService implements Serializable {
 						+ checkPackage.getPackageName());
 
 				promoteToPackageCheck(previousPackageInstallation,
-						packageResults, checkResultMessage.getCheckResult());
+						packageResults, checkResultMessage);
+				// Installations have been indexed when they were added
+				outputIndexService.indexAfterCommit(checkResultMessage,
+						previousPackageInstallation.getRevision(),
+						Collections.<PackageResultMessage> emptySet());
 			} else {
 				// No action, no new information
 				log.info("Check result for package "
@@ -176,28 +284,218 @@ public class PackageService implements Serializable {
 
 		}
 
+		long duration = System.currentTimeMillis() - startTime;
+		metrics.histogram("msc_ingestion_seconds",
+				"Duration of adding a check result",
+				MetricsRegistry.SHORT_DURATION_BUCKETS).observe(
+				duration / 1000.0);
 		log.info("processed package "
-				+ checkResultMessage.getPackageDescription().getPackageName());
+				+ checkResultMessage.getPackageDescription().getPackageName()
+				+ " with " + dependencies.size() + " dependencies in "
+				+ duration + " ms");
+	}
+
+	/**
+	 * @return whether the latest result is a check with the same inputs as
+	 *         the check result, which then adds no information
+	 */
+	private static boolean isLatestCheck(PackageResult latestResult,
+			CheckResultMessage checkResultMessage) {
+		return latestResult != null
+				&& latestResult.getInstallationType() == PackageResultType.CHECK
+				&& latestResult.getCheckFingerprint() != null
+				&& latestResult.getCheckFingerprint().equals(
+						CheckResultCacheService
+								.getFingerprint(checkResultMessage));
+	}
+
+	/**
+	 * Checks whether a result may be added at a revision already allocated for
+	 * another result of the same group. The checked package must not have a
+	 * result at that revision yet, and installations at that revision must
+	 * match the versions of the result.
+	 */
+	private boolean canJoinRevision(long revision, PackageSource packageSource,
+			Set<PackageResultMessage> dependencies,
+			Map<String, PackageSource> packageSources,
+			Map<Long, PackageResult> maxPackageInstallations) {
+		PackageResult packageInstallation = maxPackageInstallations
+				.get(packageSource.getId());
+		if (packageInstallation != null
+				&& packageInstallation.getRevision() == revision) {
+			return false;
+		}
+		for (PackageResultMessage dependency : dependencies) {
+			PackageResult dependencyInstallation = maxPackageInstallations
+					.get(packageSources.get(getSourceKey(dependency)).getId());
+			if (dependencyInstallation != null
+					&& dependencyInstallation.getRevision() == revision
+					&& dependencyInstallation.getSourceVersion().compareTo(
+							dependency.getSourceVersion()) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Resolves the sources of all given packages within a single query, adding
+	 * missing ones. Sources are matched as by
+	 * {@link #getPackageSource(PackageResultMessage, PackageContext)}.
+	 * 
+	 * @return sources by {@link #getSourceKey(PackageResultMessage)}
+	 */
+	private Map<String, PackageSource> getPackageSources(
+			Collection<PackageResultMessage> packageResults,
+			PackageContext contextEntity) {
+		Set<String> packageNames = new HashSet<>();
+		Set<String> sourceLocations = new HashSet<>();
+		for (PackageResultMessage packageResult : packageResults) {
+			if (packageResult.getSourceLocation() != null) {
+				sourceLocations.add(packageResult.getSourceLocation());
+			} else {
+				packageNames.add(packageResult.getPackageName());
+			}
+		}
+
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<PackageSource> query = cb
+				.createQuery(PackageSource.class);
+
+		Root<PackageSource> p = query.from(PackageSource.class);
+
+		List<Predicate> sourcePredicates = new ArrayList<Predicate>();
+		if (!packageNames.isEmpty()) {
+			sourcePredicates.add(p.get(PackageSource_.packageName).in(
+					packageNames));
+		}
+		if (!sourceLocations.isEmpty()) {
+			sourcePredicates.add(p.get(PackageSource_.sourceLocation).in(
+					sourceLocations));
+		}
+
+		Map<String, PackageSource> packageSources = new HashMap<>();
+		if (!sourcePredicates.isEmpty()) {
+			query.select(p).where(
+					cb.equal(p.get(PackageSource_.repositoryEntity),
+							contextEntity),
+					cb.or(sourcePredicates.toArray(new Predicate[0])));
+
+			for (PackageSource sourceEntity : entityManager.createQuery(query)
+					.getResultList()) {
+				addSourceKeys(packageSources, sourceEntity);
+			}
+		}
+
+		for (PackageResultMessage packageResult : packageResults) {
+			if (!packageSources.containsKey(getSourceKey(packageResult))) {
+				addSourceKeys(packageSources,
+						addPackageSource(packageResult, contextEntity));
+			}
+		}
+		return packageSources;
+	}
+
+	/**
+	 * Registers a source by location, if any, and by package name
+	 */
+	private static void addSourceKeys(Map<String, PackageSource> packageSources,
+			PackageSource sourceEntity) {
+		if (sourceEntity.getSourceLocation() != null) {
+			String locationKey = getSourceKey(sourceEntity.getSourceType(),
+					sourceEntity.getSourceLocation(), null);
+			if (!packageSources.containsKey(locationKey)) {
+				packageSources.put(locationKey, sourceEntity);
+			}
+		}
+		String nameKey = getSourceKey(sourceEntity.getSourceType(), null,
+				sourceEntity.getPackageName());
+		if (!packageSources.containsKey(nameKey)) {
+			packageSources.put(nameKey, sourceEntity);
+		}
+	}
+
+	private static String getSourceKey(PackageResultMessage packageResult) {
+		return getSourceKey(packageResult.getSourceType(),
+				packageResult.getSourceLocation(),
+				packageResult.getPackageName());
+	}
+
+	/**
+	 * Sources are identified by their location, otherwise by package name
+	 * within the source repository
+	 */
+	private static String getSourceKey(String sourceType,
+			String sourceLocation, String packageName) {
+		return sourceLocation != null ? sourceType + " location "
+				+ sourceLocation : sourceType + " package " + packageName;
+	}
+
+	/**
+	 * Fetches the results at the maximum revision of all given sources within
+	 * a single query
+	 * 
+	 * @return results by id of their source
+	 */
+	private Map<Long, PackageResult> getMaxRevisionInstallations(
+			Collection<PackageSource> packageSources) {
+		Set<Long> sourceIds = new HashSet<>();
+		for (PackageSource packageSource : packageSources) {
+			if (packageSource.getId() != null) {
+				sourceIds.add(packageSource.getId());
+			}
+		}
+
+		Map<Long, PackageResult> maxInstallations = new HashMap<>();
+		if (sourceIds.isEmpty()) {
+			return maxInstallations;
+		}
+
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<PackageResult> query = cb
+				.createQuery(PackageResult.class);
+
+		Root<PackageResult> pr = query.from(PackageResult.class);
+		Join<PackageResult, PackageSource> ps = pr
+				.join(PackageResult_.packageSource);
+
+		query.select(pr).where(
+				ps.get(PackageSource_.id).in(sourceIds),
+				cb.equal(pr.get(PackageResult_.revision),
+						ps.get(PackageSource_.maxRevisionNumber)));
+
+		for (PackageResult packageResult : entityManager.createQuery(query)
+				.getResultList()) {
+			maxInstallations.put(packageResult.getPackageSource().getId(),
+					packageResult);
+		}
+		return maxInstallations;
 	}
 
 	private void promoteToPackageCheck(PackageResult packageResult,
-			Set<PackageResult> dependencies, CheckResult checkResult) {
+			Set<PackageResult> dependencies,
+			CheckResultMessage checkResultMessage) {
 
 		packageResult.setInstallationType(PackageResultType.CHECK);
 		packageResult.addDependencies(dependencies);
-		packageResult.setCheckResult(checkResult);
+		packageResult.setCheckResult(checkResultMessage.getCheckResult());
+		packageResult.setCheckOutputHash(checkResultMessage.getOutputHash());
+		packageResult.setCheckFingerprint(CheckResultCacheService
+				.getFingerprint(checkResultMessage));
 
 		entityManager.persist(packageResult);
+		checkMatrixService.updateCheckMatrix(packageResult);
+		packageListingService.invalidate();
 	}
 
 	private PackageResult addPackageCheck(PackageSource packageSource,
 			PackageResultMessage packageResult,
 			Set<PackageResult> dependencies, long revision,
-			CheckResult checkResult) {
+			CheckResultMessage checkResultMessage) {
 
 		PackageResult result = addPackageInstallation(packageSource,
 				packageResult, revision, null);
-		promoteToPackageCheck(result, dependencies, checkResult);
+		promoteToPackageCheck(result, dependencies, checkResultMessage);
 
 		entityManager.persist(result);
 
@@ -207,6 +505,7 @@ public class PackageService implements Serializable {
 	public PackageContext addPackageContext(String name) {
 		PackageContext contextEntity = new PackageContext(name);
 		entityManager.persist(contextEntity);
+		packageIndex.invalidate(contextEntity);
 		return contextEntity;
 	}
 
@@ -228,22 +527,17 @@ public class PackageService implements Serializable {
 
 		packageResult.setRevision(revision);
 		packageResult.setInstallationResult(installationResult);
+		packageResult.setInstallationOutputHash(packageResultMessage
+				.getOutputHash());
 
 		entityManager.persist(packageResult);
+		// Maximum revision number may have changed
+		packageIndex.invalidate(packageSource);
+		packageListingService.invalidate();
 
 		return packageResult;
 	}
 
-	private PackageResult addPackageInstallation(
-			PackageResultMessage packageResult, PackageContext contextEntity,
-			long revision) {
-		PackageSource packageSource = getPackageSource(packageResult,
-				contextEntity);
-
-		return addPackageInstallation(packageSource, packageResult, revision,
-				packageResult.getInstallationResult());
-	}
-
 	private PackageSource addPackageSource(PackageResultMessage packageResult,
 			PackageContext contextEntity) {
 
@@ -256,6 +550,8 @@ public class PackageService implements Serializable {
 		packageSource.setRepository(contextEntity);
 
 		entityManager.persist(packageSource);
+		packageIndex.invalidate(packageSource);
+		packageListingService.invalidate();
 
 		return packageSource;
 	}
@@ -274,22 +570,7 @@ public class PackageService implements Serializable {
 
 	public PackageSource getPackageByName(String packageName,
 			PackageContext contextEntity) {
-
-		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-		CriteriaQuery<PackageSource> query = cb
-				.createQuery(PackageSource.class);
-
-		Root<PackageSource> entityRoot = query.from(PackageSource.class);
-
-		query.select(entityRoot).where(
-				cb.and(cb.equal(
-						entityRoot.get(PackageSource_.repositoryEntity),
-						contextEntity),
-						cb.equal(entityRoot.get(PackageSource_.packageName),
-								packageName)));
-
-		return getSingleOrNull(query);
-
+		return getPackageSource(packageName, contextEntity);
 	}
 
 	public PackageResult getPackageInstallation(PackageSource packageEntity,
@@ -315,14 +596,47 @@ public class PackageService implements Serializable {
 
 	}
 
+	/**
+	 * @return context, detached if read from the index
+	 */
 	public PackageContext getPackageRepositoryByName(String name) {
-		return getSingleEntityByAttribute(PackageContext.class,
-				PackageContext_.name, name);
+		PackageContext contextEntity = packageIndex.getContext(name);
+		if (contextEntity == null) {
+			long generation = packageIndex.getGeneration();
+			contextEntity = getSingleEntityByAttribute(PackageContext.class,
+					PackageContext_.name, name);
+			indexContext(contextEntity, generation);
+		}
+		return contextEntity;
 	}
 
+	/**
+	 * @return context, detached if read from the index
+	 */
 	public PackageContext getPackageRepositoryById(Long id) {
-		return getSingleEntityByAttribute(PackageContext.class,
-				PackageContext_.id, id);
+		PackageContext contextEntity = packageIndex.getContext(id);
+		if (contextEntity == null) {
+			long generation = packageIndex.getGeneration();
+			contextEntity = getSingleEntityByAttribute(PackageContext.class,
+					PackageContext_.id, id);
+			indexContext(contextEntity, generation);
+		}
+		return contextEntity;
+	}
+
+	/**
+	 * @return installation or check result, null if not found
+	 */
+	public PackageResult getPackageResult(Long id) {
+		return entityManager.find(PackageResult.class, id);
+	}
+
+	private void indexContext(PackageContext contextEntity, long generation) {
+		if (contextEntity != null && packageIndex.isEnabled()) {
+			// Shared instances must not belong to any persistence context
+			entityManager.detach(contextEntity);
+			packageIndex.putContext(contextEntity, generation);
+		}
 	}
 
 	public PackageSource getPackageSource(PackageResultMessage packageResult,
@@ -361,8 +675,71 @@ public class PackageService implements Serializable {
 		}
 	}
 
+	/**
+	 * @return source, detached if read from the index
+	 */
 	public PackageSource getPackageSource(String packageName,
 			PackageContext repositoryEntity) {
+		PackageSource sourceEntity = packageIndex.getSource(
+				repositoryEntity.getId(), packageName);
+		if (sourceEntity == null) {
+			long generation = packageIndex.getGeneration();
+			sourceEntity = queryPackageSource(packageName, repositoryEntity);
+			if (sourceEntity != null && packageIndex.isEnabled()) {
+				entityManager.detach(sourceEntity);
+				packageIndex.putSource(sourceEntity, generation);
+			}
+		}
+		return sourceEntity;
+	}
+
+	/**
+	 * Looks up the sources of several packages with as few queries as
+	 * possible
+	 * 
+	 * @return sources by package name, unknown packages are missing
+	 */
+	public Map<String, PackageSource> getPackageSourcesByName(
+			Collection<String> packageNames, PackageContext repositoryEntity) {
+		Map<String, PackageSource> sources = new HashMap<>();
+		List<String> missingNames = new ArrayList<>();
+		for (String packageName : new HashSet<>(packageNames)) {
+			PackageSource sourceEntity = packageIndex.getSource(
+					repositoryEntity.getId(), packageName);
+			if (sourceEntity != null) {
+				sources.put(packageName, sourceEntity);
+			} else {
+				missingNames.add(packageName);
+			}
+		}
+
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		for (int i = 0; i < missingNames.size(); i += QUERY_CHUNK_SIZE) {
+			long generation = packageIndex.getGeneration();
+			CriteriaQuery<PackageSource> query = cb
+					.createQuery(PackageSource.class);
+			Root<PackageSource> p = query.from(PackageSource.class);
+			query.select(p).where(
+					cb.equal(p.get(PackageSource_.repositoryEntity),
+							repositoryEntity),
+					p.get(PackageSource_.packageName).in(
+							missingNames.subList(i, Math.min(i
+									+ QUERY_CHUNK_SIZE, missingNames.size()))));
+
+			for (PackageSource sourceEntity : entityManager.createQuery(query)
+					.getResultList()) {
+				if (packageIndex.isEnabled()) {
+					entityManager.detach(sourceEntity);
+					packageIndex.putSource(sourceEntity, generation);
+				}
+				sources.put(sourceEntity.getPackageName(), sourceEntity);
+			}
+		}
+		return sources;
+	}
+
+	private PackageSource queryPackageSource(String packageName,
+			PackageContext repositoryEntity) {
 
 		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 		CriteriaQuery<PackageSource> query = cb
@@ -438,13 +815,32 @@ public class PackageService implements Serializable {
 		return !getAllPackageSources(packageName).isEmpty();
 	}
 
+	/**
+	 * Increments the revision number within the database. Concurrent
+	 * transactions wait for the row lock until this transaction completes
+	 * instead of overwriting each other's revision.
+	 */
 	public long incrementAndGetContextRevisionNumber(
 			PackageContext contextEntity) {
 
-		long newRevision = contextEntity.getRevisionNumber() + 1;
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaUpdate<PackageContext> update = cb
+				.createCriteriaUpdate(PackageContext.class);
+
+		Root<PackageContext> c = update.from(PackageContext.class);
+		update.set(c.get(PackageContext_.revisionNumber),
+				cb.sum(c.get(PackageContext_.revisionNumber), 1L)).where(
+				cb.equal(c.get(PackageContext_.id), contextEntity.getId()));
+		entityManager.createQuery(update).executeUpdate();
+
+		// Read back the incremented value
+		PackageContext managedContext = entityManager.find(
+				PackageContext.class, contextEntity.getId());
+		entityManager.refresh(managedContext);
+		long newRevision = managedContext.getRevisionNumber();
 
 		contextEntity.setRevisionNumber(newRevision);
-		entityManager.merge(contextEntity);
+		packageIndex.invalidate(managedContext);
 		return newRevision;
 	}
 
@@ -494,6 +890,16 @@ public class PackageService implements Serializable {
 		return entityManager.createQuery(query).getResultList();
 	}
 
+	/**
+	 * @return check results of the package source and the installations of
+	 *         their dependencies since the respective previous check, within
+	 *         the latest revisions
+	 */
+	public List<CheckMatrixCell> getCheckMatrix(PackageSource packageSource,
+			int maxRevisions) {
+		return checkMatrixService.getCheckMatrix(packageSource, maxRevisions);
+	}
+
 	public List<PackageResult> getDependencies(PackageResult packageResult) {
 		List<PackageResult> result = entityManager.merge(packageResult)
 				.getDependencies();
@@ -511,33 +917,88 @@ public class PackageService implements Serializable {
 		return entityManager.createQuery(query).getResultList();
 	}
 
-	public List<PackageSource> getLatestDependencies(PackageSource packageSource) {
-
+	/**
+	 * @return names of the dependencies of the latest results of all package
+	 *         sources within the context, by package name
+	 */
+	public Map<String, Set<String>> getLatestDependencyMap(
+			PackageContext packageContext) {
 		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-		CriteriaQuery<PackageResult> query = cb
-				.createQuery(PackageResult.class);
+		CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
 
 		Root<PackageResult> pr = query.from(PackageResult.class);
-		pr.fetch(PackageResult_.packageSource);
+		Join<PackageResult, PackageSource> ps = pr
+				.join(PackageResult_.packageSource);
+		Join<PackageResult, PackageSource> dps = pr.join(
+				PackageResult_.dependencies).join(PackageResult_.packageSource);
+
+		query.multiselect(ps.get(PackageSource_.packageName),
+				dps.get(PackageSource_.packageName)).distinct(true);
+		query.where(cb.equal(ps.get(PackageSource_.repositoryEntity),
+				packageContext), cb.equal(pr.get(PackageResult_.revision),
+				ps.get(PackageSource_.maxRevisionNumber)));
+
+		Map<String, Set<String>> dependencyMap = new HashMap<>();
+		for (Object[] row : entityManager.createQuery(query).getResultList()) {
+			Set<String> dependencies = dependencyMap.get(row[0]);
+			if (dependencies == null) {
+				dependencies = new HashSet<>();
+				dependencyMap.put((String) row[0], dependencies);
+			}
+			dependencies.add((String) row[1]);
+		}
+		return dependencyMap;
+	}
 
-		query.select(pr);
-		query.where(cb.not(cb.isEmpty(pr.get(PackageResult_.dependencies))),
-				cb.equal(pr.get(PackageResult_.packageSource), packageSource));
-		query.orderBy(cb.desc(pr.get(PackageResult_.revision)));
+	/**
+	 * @return the package source if it has a result with dependencies, empty
+	 *         otherwise
+	 */
+	public List<PackageSource> getLatestDependencies(PackageSource packageSource) {
+		List<PackageSource> dependencies = getLatestDependencies(
+				Collections.singleton(packageSource)).get(packageSource.getId());
+		return dependencies != null ? dependencies
+				: new ArrayList<PackageSource>();
+	}
 
-		List<PackageResult> resultList = entityManager.createQuery(query)
-				.getResultList();
-		if (resultList.isEmpty()) {
-			return null;
-		} else {
-			List<PackageSource> result = new ArrayList<>();
+	/**
+	 * Bulk variant of {@link #getLatestDependencies(PackageSource)} with as
+	 * few queries as possible
+	 * 
+	 * @return package sources with a result with dependencies by their id,
+	 *         other sources are missing
+	 */
+	public Map<Long, List<PackageSource>> getLatestDependencies(
+			Collection<PackageSource> packageSources) {
+		Map<Long, PackageSource> sourcesById = new HashMap<>();
+		for (PackageSource packageSource : packageSources) {
+			sourcesById.put(packageSource.getId(), packageSource);
+		}
+		List<Long> sourceIds = new ArrayList<>(sourcesById.keySet());
 
-			for (PackageResult packageResult : resultList) {
-				result.add(packageResult.getPackageSource());
+		Map<Long, List<PackageSource>> dependencyMap = new HashMap<>();
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		for (int i = 0; i < sourceIds.size(); i += QUERY_CHUNK_SIZE) {
+			CriteriaQuery<Long> query = cb.createQuery(Long.class);
+			Root<PackageResult> pr = query.from(PackageResult.class);
+			Join<PackageResult, PackageSource> ps = pr
+					.join(PackageResult_.packageSource);
+
+			query.select(ps.get(PackageSource_.id)).distinct(true);
+			query.where(
+					ps.get(PackageSource_.id).in(
+							sourceIds.subList(i,
+									Math.min(i + QUERY_CHUNK_SIZE,
+											sourceIds.size()))),
+					cb.isNotEmpty(pr.get(PackageResult_.dependencies)));
+
+			for (Long sourceId : entityManager.createQuery(query)
+					.getResultList()) {
+				dependencyMap.put(sourceId,
+						Collections.singletonList(sourcesById.get(sourceId)));
 			}
-
-			return result;
 		}
+		return dependencyMap;
 	}
 
 }
@@ -0,0 +1,391 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.PackageInstallerMessage;
+import de.hopmann.msc.commons.messages.PackageMessage;
+import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.model.SourceIdentifier;
+import de.hopmann.msc.commons.util.ListenableFuture;
+import de.hopmann.msc.commons.util.SettableFuture;
+
+/**
+ * Registry of sent check tasks awaiting their result. Requests for a check
+ * identical to a pending one, i.e. of the same package within the same
+ * context with the same installer and dependencies, attach to the pending
+ * task instead of sending another one. Requests of higher priority than the
+ * pending task re-prioritise it: the task is sent again with a new id and
+ * the higher priority, and the previous task is cancelled once the new one
+ * has been sent. Both ids refer to the same pending task.
+ * 
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class PendingTaskRegistry {
+
+	/**
+	 * Time in ms after which a task without result is no longer attached to
+	 */
+	private static final long PENDING_TASK_TIMEOUT = 2 * 60 * 60 * 1000;
+
+	/**
+	 * Sent check task awaiting its result
+	 * 
+	 */
+	public static class PendingTask {
+
+		private final String key;
+		private String taskId;
+		private int priority;
+		/**
+		 * Ids of the task sent before with lower priority, resolved along
+		 * with the current id
+		 */
+		private final List<String> taskIds = new ArrayList<>(1);
+		/**
+		 * Previous id and priority while the re-prioritised task is being
+		 * sent, restored if it could not be sent
+		 */
+		private String previousTaskId;
+		private int previousPriority;
+		private final Long contextIdRef;
+		private final String packageName;
+		private final String installerVersion;
+		private final long dispatchTime = System.currentTimeMillis();
+		private final SettableFuture<ResultMessage> result = new SettableFuture<>();
+		private int subscriberCount = 1;
+
+		PendingTask(String key, CheckTaskMessage checkTask) {
+			this.key = key;
+			this.taskId = checkTask.getTaskId();
+			this.priority = checkTask.getPriority();
+			this.taskIds.add(taskId);
+			this.contextIdRef = checkTask.getContextIdRef();
+			this.packageName = checkTask.getPackageDescription().getName();
+			this.installerVersion = toInstallerVersion(checkTask
+					.getPackageInstaller());
+		}
+
+		/**
+		 * @return id of the task sent last, with the highest priority
+		 *         requested
+		 */
+		public synchronized String getTaskId() {
+			return taskId;
+		}
+
+		/**
+		 * @return ids of all tasks sent for this pending task, including
+		 *         those superseded by re-prioritisation
+		 */
+		public synchronized List<String> getTaskIds() {
+			return new ArrayList<>(taskIds);
+		}
+
+		public synchronized int getPriority() {
+			return priority;
+		}
+
+		public Long getContextIdRef() {
+			return contextIdRef;
+		}
+
+		public String getPackageName() {
+			return packageName;
+		}
+
+		public String getInstallerVersion() {
+			return installerVersion;
+		}
+
+		public long getDispatchTime() {
+			return dispatchTime;
+		}
+
+		/**
+		 * @return result of the task, completed for all subscribers once it
+		 *         arrived
+		 */
+		public ListenableFuture<ResultMessage> getResult() {
+			return result;
+		}
+	}
+
+	private final Map<String, PendingTask> tasksByKey = new HashMap<>();
+	private final Map<String, PendingTask> tasksById = new HashMap<>();
+
+	private long coalescedCount;
+
+	/**
+	 * Registers the check task, unless an identical task of the same or
+	 * higher priority is pending
+	 * 
+	 * @return the pending task the check task is attached to, a new or
+	 *         re-prioritised one with the id of the given task if it has to be
+	 *         sent, see {@link #confirmSent(String)}
+	 */
+	public synchronized PendingTask reserve(CheckTaskMessage checkTask) {
+		String key = getKey(checkTask);
+		PendingTask pendingTask = tasksByKey.get(key);
+		if (pendingTask != null
+				&& System.currentTimeMillis() - pendingTask.dispatchTime > PENDING_TASK_TIMEOUT) {
+			// Result presumably lost
+			remove(pendingTask);
+			pendingTask.result.cancel(false);
+			pendingTask = null;
+		}
+		if (pendingTask != null) {
+			synchronized (pendingTask) {
+				if (checkTask.getPriority() > pendingTask.priority
+						&& pendingTask.previousTaskId == null) {
+					// Sent again with higher priority
+					pendingTask.previousTaskId = pendingTask.taskId;
+					pendingTask.previousPriority = pendingTask.priority;
+					pendingTask.taskId = checkTask.getTaskId();
+					pendingTask.priority = checkTask.getPriority();
+					pendingTask.taskIds.add(pendingTask.taskId);
+					tasksById.put(pendingTask.taskId, pendingTask);
+				}
+			}
+			pendingTask.subscriberCount++;
+			coalescedCount++;
+			return pendingTask;
+		}
+		pendingTask = new PendingTask(key, checkTask);
+		tasksByKey.put(key, pendingTask);
+		tasksById.put(pendingTask.taskId, pendingTask);
+		return pendingTask;
+	}
+
+	/**
+	 * Confirms that the reserved task has been sent
+	 * 
+	 * @return id of the task superseded by the sent one, which is to be
+	 *         cancelled, null if the task has not been re-prioritised
+	 */
+	public synchronized String confirmSent(String taskId) {
+		PendingTask pendingTask = tasksById.get(taskId);
+		if (pendingTask == null) {
+			return null;
+		}
+		synchronized (pendingTask) {
+			if (!taskId.equals(pendingTask.taskId)) {
+				return null;
+			}
+			String previousTaskId = pendingTask.previousTaskId;
+			pendingTask.previousTaskId = null;
+			return previousTaskId;
+		}
+	}
+
+	/**
+	 * Removes a task that could not be sent. A re-prioritised task falls
+	 * back to the task sent before.
+	 */
+	public synchronized void release(String taskId) {
+		PendingTask pendingTask = tasksById.get(taskId);
+		if (pendingTask == null) {
+			return;
+		}
+		synchronized (pendingTask) {
+			if (taskId.equals(pendingTask.taskId)
+					&& pendingTask.previousTaskId != null) {
+				tasksById.remove(taskId);
+				pendingTask.taskIds.remove(taskId);
+				pendingTask.taskId = pendingTask.previousTaskId;
+				pendingTask.priority = pendingTask.previousPriority;
+				pendingTask.previousTaskId = null;
+				pendingTask.subscriberCount--;
+				return;
+			}
+		}
+		remove(pendingTask);
+		pendingTask.result.cancel(false);
+	}
+
+	/**
+	 * Detaches a subscriber from the task
+	 * 
+	 * @return true if no subscribers remain, so that the task can be
+	 *         cancelled
+	 */
+	public synchronized boolean detach(String taskId) {
+		PendingTask pendingTask = tasksById.get(taskId);
+		if (pendingTask == null) {
+			return true;
+		}
+		if (--pendingTask.subscriberCount > 0) {
+			return false;
+		}
+		remove(pendingTask);
+		pendingTask.result.cancel(false);
+		return true;
+	}
+
+	/**
+	 * Resolves the pending task the result has been reported for. Results
+	 * without task id resolve all pending tasks of their package, context and
+	 * installer.
+	 * 
+	 * @return ids of the resolved tasks, including ids superseded by
+	 *         re-prioritisation
+	 */
+	public List<String> complete(ResultMessage resultMessage) {
+		List<PendingTask> completed = new ArrayList<>();
+		synchronized (this) {
+			if (resultMessage.getTaskId() != null) {
+				PendingTask pendingTask = tasksById.get(resultMessage
+						.getTaskId());
+				if (pendingTask != null) {
+					remove(pendingTask);
+					completed.add(pendingTask);
+				}
+			} else if (resultMessage.getPackageDescription() != null) {
+				String packageName = resultMessage.getPackageDescription()
+						.getPackageName();
+				String installerVersion = toInstallerVersion(resultMessage
+						.getPackageInstaller());
+				for (PendingTask pendingTask : tasksByKey.values()) {
+					if (packageName.equals(pendingTask.packageName)
+							&& equals(resultMessage.getContextIdRef(),
+									pendingTask.contextIdRef)
+							&& (installerVersion == null || installerVersion
+									.equals(pendingTask.installerVersion))) {
+						completed.add(pendingTask);
+					}
+				}
+				for (PendingTask pendingTask : completed) {
+					remove(pendingTask);
+				}
+			}
+		}
+		// Listeners run outside of the lock
+		List<String> taskIds = new ArrayList<>();
+		for (PendingTask pendingTask : completed) {
+			taskIds.addAll(pendingTask.getTaskIds());
+			pendingTask.result.set(resultMessage);
+		}
+		return taskIds;
+	}
+
+	/**
+	 * Removes tasks whose result is presumably lost, so that identical
+	 * requests send a new task. Their result futures are cancelled.
+	 */
+	@Schedule(hour = "*", minute = "*/5", persistent = false)
+	public void expireTasks() {
+		long now = System.currentTimeMillis();
+		List<PendingTask> expired = new ArrayList<>();
+		synchronized (this) {
+			for (PendingTask pendingTask : tasksByKey.values()) {
+				if (now - pendingTask.dispatchTime > PENDING_TASK_TIMEOUT) {
+					expired.add(pendingTask);
+				}
+			}
+			for (PendingTask pendingTask : expired) {
+				remove(pendingTask);
+			}
+		}
+		for (PendingTask pendingTask : expired) {
+			pendingTask.result.cancel(false);
+		}
+	}
+
+	/**
+	 * @return pending task with the given id, null if unknown or completed
+	 */
+	public synchronized PendingTask getPendingTask(String taskId) {
+		return tasksById.get(taskId);
+	}
+
+	public synchronized int getPendingCount() {
+		return tasksByKey.size();
+	}
+
+	/**
+	 * @return number of requests attached to a pending task instead of being
+	 *         sent
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	private void remove(PendingTask pendingTask) {
+		tasksByKey.remove(pendingTask.key);
+		for (String taskId : pendingTask.getTaskIds()) {
+			tasksById.remove(taskId);
+		}
+	}
+
+	private static String getKey(CheckTaskMessage checkTask) {
+		StringBuilder key = new StringBuilder();
+		// Priority is not part of the key, see reserve
+		key.append(checkTask.getContextIdRef()).append('|')
+				.append(checkTask.getPackageDescription().getName())
+				.append('|');
+		PackageInstallerMessage installer = checkTask.getPackageInstaller();
+		if (installer != null) {
+			key.append(installer.getVersionString()).append('/')
+					.append(installer.getFlavor()).append('/')
+					.append(installer.getArchitecture());
+		}
+		List<String> dependencies = new ArrayList<>();
+		for (PackageMessage dependency : checkTask.getDependencies()) {
+			dependencies.add(getKey(dependency));
+		}
+		// Independent of the iteration order of the set
+		Collections.sort(dependencies);
+		for (String dependency : dependencies) {
+			key.append('|').append(dependency);
+		}
+		return key.toString();
+	}
+
+	private static String getKey(PackageMessage packageMessage) {
+		StringBuilder key = new StringBuilder(packageMessage.getName());
+		if (packageMessage.getPackageVersion() != null) {
+			key.append(' ').append(
+					packageMessage.getPackageVersion().getVersionString());
+		}
+		SourceIdentifier source = packageMessage.getSourceDescription();
+		if (source != null) {
+			key.append(' ').append(source.getSourceType()).append(' ')
+					.append(source.getSourceLocation());
+		}
+		return key.toString();
+	}
+
+	private static String toInstallerVersion(
+			PackageInstallerMessage installer) {
+		return installer != null ? installer.getVersionString() : null;
+	}
+
+	private static boolean equals(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+}
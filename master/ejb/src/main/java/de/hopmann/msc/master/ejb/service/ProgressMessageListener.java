@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.inject.Inject;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import de.hopmann.msc.commons.messages.ProgressBatchMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage;
+import de.hopmann.msc.commons.messages.codec.MessageCodecs;
+import de.hopmann.msc.commons.service.MetricsRegistry;
+
+/**
+ * Message-Driven Bean implementation to receive the progress of running check
+ * tasks. Progress is transient, so the subscription is not durable.
+ */
+@MessageDriven(activationConfig = {
+		@ActivationConfigProperty(propertyName = "destinationType", propertyValue = "javax.jms.Topic"),
+		@ActivationConfigProperty(propertyName = "destinationLookup", propertyValue = "jms/ProgressTopic"),
+		@ActivationConfigProperty(propertyName = "subscriptionDurability", propertyValue = "NonDurable"),
+		@ActivationConfigProperty(propertyName = "acknowledgeMode", propertyValue = "Auto-acknowledge") })
+public class ProgressMessageListener implements MessageListener {
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private CheckProgressService checkProgressService;
+
+	@Inject
+	private CheckSubmissionService checkSubmissionService;
+
+	@Inject
+	private MetricsRegistry metrics;
+
+	/**
+	 * @see MessageListener#onMessage(Message)
+	 */
+	public void onMessage(Message message) {
+		metrics.counter("msc_jms_messages_consumed_total",
+				"Messages consumed by destination", "destination", "progress")
+				.inc();
+		try {
+			ProgressBatchMessage progressBatch = (ProgressBatchMessage) MessageCodecs
+					.readMessage(message);
+			for (ProgressMessage progressMessage : progressBatch.getProgress()) {
+				checkProgressService.addProgress(progressMessage);
+				checkSubmissionService.addProgress(progressMessage);
+			}
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Error receiving progress message", e);
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+
+import de.hopmann.msc.commons.qualifier.Configuration;
+import de.hopmann.msc.commons.util.ReverseDependencyGraph;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+
+/**
+ * Plans rechecks of the packages affected by changed packages, i.e. of their
+ * direct and indirect reverse dependencies according to the package listing
+ * and to the latest results of the context. Planned rechecks are queued in
+ * topological order and dispatched throttled, a package only after the
+ * rechecks of the affected packages it depends on have completed.
+ * 
+ */
+@Singleton
+public class RecheckPlannerService {
+
+	/**
+	 * Time in ms after which a dispatched recheck without result no longer
+	 * blocks its dependents
+	 */
+	private static final long IN_FLIGHT_TIMEOUT = 60 * 60 * 1000;
+
+	/**
+	 * Number of dispatches a recheck is tried to be queued in before it is
+	 * dropped
+	 */
+	static final int MAX_QUEUE_ATTEMPTS = 3;
+
+	private static class PlannedRecheck {
+		private final Long contextId;
+		private final String packageName;
+		private final Set<String> dependencyKeys = new HashSet<>();
+		private int failedAttempts;
+
+		public PlannedRecheck(Long contextId, String packageName) {
+			this.contextId = contextId;
+			this.packageName = packageName;
+		}
+	}
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private PackageService packageService;
+
+	@Inject
+	private CheckTaskService checkTaskService;
+
+	@Inject
+	private DependencyGraphService dependencyGraphService;
+
+	/**
+	 * Maximum number of dispatched rechecks without result, defaults to 10
+	 */
+	@Inject
+	@Configuration(value = "recheckMaxInFlight", required = false)
+	private Integer recheckMaxInFlight;
+
+	/**
+	 * Queued rechecks in topological order
+	 */
+	private final Map<String, PlannedRecheck> pendingRechecks = new LinkedHashMap<>();
+
+	/**
+	 * Dispatch time of rechecks without result
+	 */
+	private final Map<String, Long> inFlightRechecks = new HashMap<>();
+
+	/**
+	 * @return changed and affected packages, each following the affected
+	 *         packages it depends on
+	 */
+	public List<String> planRechecks(PackageContext packageContext,
+			Collection<String> changedPackages) {
+		return dependencyGraphService.getDependencyGraph(packageContext)
+				.getRecheckOrder(changedPackages);
+	}
+
+	/**
+	 * Plans and queues the rechecks of the changed and affected packages.
+	 * Packages already queued are not queued again.
+	 * 
+	 * @return planned rechecks, see
+	 *         {@link #planRechecks(PackageContext, Collection)}
+	 */
+	public List<String> queueRechecks(PackageContext packageContext,
+			Collection<String> changedPackages) {
+		ReverseDependencyGraph<String> graph = dependencyGraphService
+				.getDependencyGraph(packageContext);
+		List<String> plan = graph.getRecheckOrder(changedPackages);
+		Map<String, Integer> planIndex = new HashMap<>();
+		for (String packageName : plan) {
+			planIndex.put(packageName, planIndex.size());
+		}
+
+		for (String packageName : plan) {
+			String key = getKey(packageContext.getId(), packageName);
+			PlannedRecheck recheck = pendingRechecks.get(key);
+			if (recheck == null) {
+				recheck = new PlannedRecheck(packageContext.getId(),
+						packageName);
+				pendingRechecks.put(key, recheck);
+			}
+			for (String dependency : graph.getDependencies(packageName)) {
+				// Dependencies planned later are cycle partners, the order
+				// already broke the cycle
+				Integer dependencyIndex = planIndex.get(dependency);
+				if (dependencyIndex != null
+						&& dependencyIndex < planIndex.get(packageName)) {
+					recheck.dependencyKeys.add(getKey(packageContext.getId(),
+							dependency));
+				}
+			}
+		}
+		log.info("Queued rechecks of " + plan.size()
+				+ " packages affected by " + changedPackages);
+		return plan;
+	}
+
+	/**
+	 * @return number of queued rechecks not yet dispatched
+	 */
+	public int getPendingRecheckCount() {
+		return pendingRechecks.size();
+	}
+
+	/**
+	 * Releases the dependents of a recheck once its result arrived, or its
+	 * check failed
+	 */
+	public void completeRecheck(Long contextId, String packageName) {
+		inFlightRechecks.remove(getKey(contextId, packageName));
+	}
+
+	@Schedule(hour = "*", minute = "*", second = "*/15", persistent = false)
+	public void dispatchRechecks() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Long> it = inFlightRechecks.values().iterator(); it
+				.hasNext();) {
+			if (now - it.next() > IN_FLIGHT_TIMEOUT) {
+				it.remove();
+			}
+		}
+
+		int maxInFlight = recheckMaxInFlight != null ? recheckMaxInFlight : 10;
+		// Bounds the attempts while checks cannot be queued at all
+		int failures = 0;
+		Iterator<Map.Entry<String, PlannedRecheck>> it = pendingRechecks
+				.entrySet().iterator();
+		while (inFlightRechecks.size() < maxInFlight && failures < maxInFlight
+				&& it.hasNext()) {
+			Map.Entry<String, PlannedRecheck> entry = it.next();
+			PlannedRecheck recheck = entry.getValue();
+			if (isBlocked(recheck)) {
+				continue;
+			}
+			PackageContext packageContext = packageService
+					.getPackageRepositoryById(recheck.contextId);
+			if (packageContext == null) {
+				it.remove();
+				continue;
+			}
+			String taskId = checkTaskService.queueCheck(recheck.packageName,
+					packageContext);
+			if (taskId == null) {
+				failures++;
+				if (++recheck.failedAttempts >= MAX_QUEUE_ATTEMPTS) {
+					// Dependents are released, as for failed checks
+					log.warning("Dropping recheck of package "
+							+ recheck.packageName + ", could not be queued");
+					it.remove();
+				}
+				// Otherwise retried with the next dispatch
+				continue;
+			}
+			it.remove();
+			if (!CheckTaskService.isCachedResult(taskId)) {
+				inFlightRechecks.put(entry.getKey(), now);
+			}
+		}
+	}
+
+	private boolean isBlocked(PlannedRecheck recheck) {
+		for (String dependencyKey : recheck.dependencyKeys) {
+			if (pendingRechecks.containsKey(dependencyKey)
+					|| inFlightRechecks.containsKey(dependencyKey)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String getKey(Long contextId, String packageName) {
+		return contextId + "/" + packageName;
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static de.hopmann.msc.master.ejb.service.ServiceTestSupport.inject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.ExceptionResultMessage;
+import de.hopmann.msc.commons.messages.PackageInstallerMessage;
+import de.hopmann.msc.commons.messages.PackageMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.CheckSubmission;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.SubmissionListener;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.SubmissionState;
+
+public class CheckSubmissionServiceTest {
+
+	private final PendingTaskRegistry pendingTaskRegistry = new PendingTaskRegistry();
+	private final CheckSubmissionService checkSubmissionService = new CheckSubmissionService();
+	private final List<CheckSubmission> completed = new ArrayList<>();
+
+	@Before
+	public void setUp() throws ReflectiveOperationException {
+		inject(checkSubmissionService, "pendingTaskRegistry",
+				pendingTaskRegistry);
+		inject(checkSubmissionService, "log",
+				Logger.getLogger(CheckSubmissionServiceTest.class.getName()));
+	}
+
+	@Test
+	public void testExceptionResultFailsSubmission() {
+		CheckSubmission submission = submit("task-1", "lme4");
+
+		ExceptionResultMessage exceptionResult = new ExceptionResultMessage();
+		exceptionResult.setTaskId("task-1");
+		exceptionResult.setContextIdRef(7L);
+		exceptionResult.setPackage(createPackageResult("lme4"));
+		pendingTaskRegistry.complete(exceptionResult);
+
+		assertEquals(SubmissionState.FAILED, submission.getState());
+		assertNull(submission.getCheckResult());
+		assertEquals(1, completed.size());
+		assertSame(submission, completed.get(0));
+		assertNull(pendingTaskRegistry.getPendingTask("task-1"));
+	}
+
+	@Test
+	public void testExceptionResultWithoutTaskId() {
+		CheckSubmission submission = submit("task-1", "lme4");
+		CheckSubmission otherSubmission = submit("task-2", "Matrix");
+
+		// Reported by slaves not returning task ids
+		ExceptionResultMessage exceptionResult = new ExceptionResultMessage();
+		exceptionResult.setContextIdRef(7L);
+		exceptionResult.setPackage(createPackageResult("lme4"));
+		exceptionResult.setPackageInstaller(new PackageInstallerMessage(
+				"3.0.2"));
+		pendingTaskRegistry.complete(exceptionResult);
+
+		assertEquals(SubmissionState.FAILED, submission.getState());
+		assertEquals(SubmissionState.QUEUED, otherSubmission.getState());
+		assertEquals(1, completed.size());
+	}
+
+	@Test
+	public void testCoalescedSubmission() {
+		CheckSubmission submission = submit("task-1", "lme4");
+		// Identical check attaches to the pending task
+		CheckTaskMessage checkTask = createCheckTask("task-2", "lme4");
+		assertEquals("task-1", pendingTaskRegistry.reserve(checkTask)
+				.getTaskId());
+		assertSame(submission, checkSubmissionService.track("task-1", 7L,
+				"lme4", "3.0.2"));
+
+		ExceptionResultMessage exceptionResult = new ExceptionResultMessage();
+		exceptionResult.setTaskId("task-1");
+		exceptionResult.setPackage(createPackageResult("lme4"));
+		pendingTaskRegistry.complete(exceptionResult);
+
+		assertEquals(SubmissionState.FAILED, submission.getState());
+		assertEquals(1, completed.size());
+	}
+
+	private CheckSubmission submit(String taskId, String packageName) {
+		pendingTaskRegistry.reserve(createCheckTask(taskId, packageName));
+		CheckSubmission submission = checkSubmissionService.track(taskId, 7L,
+				packageName, "3.0.2");
+		checkSubmissionService.addListener(taskId, new SubmissionListener() {
+			@Override
+			public void progress(CheckSubmission submission) {
+			}
+
+			@Override
+			public void completed(CheckSubmission submission) {
+				completed.add(submission);
+			}
+		});
+		return submission;
+	}
+
+	private static CheckTaskMessage createCheckTask(String taskId,
+			String packageName) {
+		PackageMessage packageMessage = new PackageMessage();
+		packageMessage.setName(packageName);
+
+		CheckTaskMessage checkTask = new CheckTaskMessage();
+		checkTask.setTaskId(taskId);
+		checkTask.setContextIdRef(7L);
+		checkTask.setPackage(packageMessage);
+		checkTask.setPackageInstaller(new PackageInstallerMessage("3.0.2"));
+		return checkTask;
+	}
+
+	private static PackageResultMessage createPackageResult(String packageName) {
+		PackageResultMessage packageResult = new PackageResultMessage();
+		packageResult.setName(packageName);
+		return packageResult;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import static org.junit.Assert.assertEquals;
+import static de.hopmann.msc.master.ejb.service.ServiceTestSupport.inject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hopmann.msc.master.ejb.entity.CheckSweep;
+import de.hopmann.msc.master.ejb.entity.CheckSweep.SweepState;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.service.ServiceTestSupport.StubCheckTaskService;
+
+public class CheckSweepServiceTest {
+
+	private final CheckSweepService checkSweepService = new CheckSweepService();
+	private final StubCheckTaskService checkTaskService = new StubCheckTaskService();
+
+	@Before
+	public void setUp() throws ReflectiveOperationException {
+		inject(checkSweepService, "log",
+				Logger.getLogger(CheckSweepServiceTest.class.getName()));
+		inject(checkSweepService, "checkTaskService", checkTaskService);
+	}
+
+	@Test
+	public void testCachedResultsCompleteImmediately() {
+		checkTaskService.cached("Rcpp", "Matrix");
+		CheckSweep sweep = createSweep("Rcpp", "Matrix");
+
+		checkSweepService.dispatchTasks(sweep);
+
+		assertEquals(Arrays.asList("Rcpp", "Matrix"),
+				checkTaskService.getQueuedPackages());
+		assertEquals(2, sweep.getPosition());
+		assertEquals(2, sweep.getCompletedCount());
+		assertEquals(SweepState.FINISHED, sweep.getState());
+	}
+
+	@Test
+	public void testCachedAndQueuedResults() {
+		checkTaskService.cached("Rcpp");
+		CheckSweep sweep = createSweep("Rcpp", "lme4");
+
+		checkSweepService.dispatchTasks(sweep);
+
+		// Cached result completed, queued task outstanding
+		assertEquals(2, sweep.getPosition());
+		assertEquals(1, sweep.getCompletedCount());
+		assertEquals(SweepState.RUNNING, sweep.getState());
+
+		checkSweepService.completeTask("task-lme4");
+		checkSweepService.dispatchTasks(sweep);
+
+		assertEquals(2, sweep.getCompletedCount());
+		assertEquals(SweepState.FINISHED, sweep.getState());
+	}
+
+	@Test
+	public void testPackageFailingToQueueIsSkipped() {
+		checkTaskService.cached("Matrix").failing("Rcpp");
+		CheckSweep sweep = createSweep("Rcpp", "Matrix");
+
+		for (int i = 1; i < CheckSweepService.MAX_QUEUE_ATTEMPTS; i++) {
+			checkSweepService.dispatchTasks(sweep);
+			assertEquals(0, sweep.getPosition());
+		}
+		checkSweepService.dispatchTasks(sweep);
+
+		assertEquals(Collections.singletonList("Rcpp"),
+				sweep.getFailedPackages());
+		assertEquals(2, sweep.getPosition());
+		assertEquals(1, sweep.getCompletedCount());
+		assertEquals(SweepState.FINISHED, sweep.getState());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidInstallerVersion() {
+		checkSweepService.startSweep(new PackageContext("test"), "3.x-devel");
+	}
+
+	private static CheckSweep createSweep(String... packageNames) {
+		return new CheckSweep(new PackageContext("test"),
+				CheckTaskService.DEFAULT_INSTALLER_VERSION,
+				Arrays.asList(packageNames));
+	}
+}
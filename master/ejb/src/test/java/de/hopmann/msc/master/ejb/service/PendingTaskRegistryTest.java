@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.PackageInstallerMessage;
+import de.hopmann.msc.commons.messages.PackageMessage;
+import de.hopmann.msc.master.ejb.service.PendingTaskRegistry.PendingTask;
+
+public class PendingTaskRegistryTest {
+
+	private final PendingTaskRegistry pendingTaskRegistry = new PendingTaskRegistry();
+
+	@Test
+	public void testLowerPriorityAttaches() {
+		PendingTask pendingTask = pendingTaskRegistry.reserve(createCheckTask(
+				"task-1", CheckTaskMessage.PRIORITY_NORMAL));
+		PendingTask attached = pendingTaskRegistry.reserve(createCheckTask(
+				"task-2", CheckTaskMessage.PRIORITY_LOW));
+
+		assertSame(pendingTask, attached);
+		assertEquals("task-1", attached.getTaskId());
+		assertEquals(1, pendingTaskRegistry.getCoalescedCount());
+	}
+
+	@Test
+	public void testHigherPriorityReprioritises() throws Exception {
+		// Sweep followed by a recheck of the same package
+		PendingTask pendingTask = pendingTaskRegistry.reserve(createCheckTask(
+				"task-1", CheckTaskMessage.PRIORITY_LOW));
+		PendingTask reprioritised = pendingTaskRegistry
+				.reserve(createCheckTask("task-2",
+						CheckTaskMessage.PRIORITY_NORMAL));
+
+		assertSame(pendingTask, reprioritised);
+		assertEquals("task-2", reprioritised.getTaskId());
+		assertEquals(CheckTaskMessage.PRIORITY_NORMAL,
+				reprioritised.getPriority());
+		assertEquals(1, pendingTaskRegistry.getPendingCount());
+		assertEquals("task-1", pendingTaskRegistry.confirmSent("task-2"));
+		assertSame(pendingTask, pendingTaskRegistry.getPendingTask("task-1"));
+
+		CheckResultMessage result = new CheckResultMessage();
+		result.setTaskId("task-2");
+		assertEquals(Arrays.asList("task-1", "task-2"),
+				pendingTaskRegistry.complete(result));
+		// Subscribers of the superseded task are resolved as well
+		assertSame(result, pendingTask.getResult().get());
+		assertNull(pendingTaskRegistry.getPendingTask("task-1"));
+		assertEquals(0, pendingTaskRegistry.getPendingCount());
+	}
+
+	@Test
+	public void testReprioritisedTaskNotSent() {
+		PendingTask pendingTask = pendingTaskRegistry.reserve(createCheckTask(
+				"task-1", CheckTaskMessage.PRIORITY_LOW));
+		pendingTaskRegistry.reserve(createCheckTask("task-2",
+				CheckTaskMessage.PRIORITY_HIGH));
+
+		pendingTaskRegistry.release("task-2");
+
+		// Falls back to the task sent before
+		assertEquals("task-1", pendingTask.getTaskId());
+		assertEquals(CheckTaskMessage.PRIORITY_LOW, pendingTask.getPriority());
+		assertNull(pendingTaskRegistry.getPendingTask("task-2"));
+		assertFalse(pendingTask.getResult().isDone());
+		assertTrue(pendingTaskRegistry.detach("task-1"));
+	}
+
+	@Test
+	public void testDifferentDependenciesDoNotCoalesce() {
+		PendingTask pendingTask = pendingTaskRegistry.reserve(createCheckTask(
+				"task-1", CheckTaskMessage.PRIORITY_NORMAL));
+		CheckTaskMessage otherTask = createCheckTask("task-2",
+				CheckTaskMessage.PRIORITY_NORMAL);
+		PackageMessage dependency = new PackageMessage();
+		dependency.setName("Matrix");
+		otherTask.addDependency(dependency);
+
+		assertNotSame(pendingTask, pendingTaskRegistry.reserve(otherTask));
+		assertEquals(2, pendingTaskRegistry.getPendingCount());
+	}
+
+	private static CheckTaskMessage createCheckTask(String taskId,
+			int priority) {
+		PackageMessage packageMessage = new PackageMessage();
+		packageMessage.setName("lme4");
+
+		CheckTaskMessage checkTask = new CheckTaskMessage();
+		checkTask.setTaskId(taskId);
+		checkTask.setPriority(priority);
+		checkTask.setContextIdRef(7L);
+		checkTask.setPackage(packageMessage);
+		checkTask.setPackageInstaller(new PackageInstallerMessage("3.0.2"));
+		return checkTask;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static de.hopmann.msc.master.ejb.service.ServiceTestSupport.inject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hopmann.msc.commons.util.ReverseDependencyGraph;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.service.ServiceTestSupport.StubCheckTaskService;
+
+public class RecheckPlannerServiceTest {
+
+	private final PackageContext packageContext = new PackageContext("test");
+	private final RecheckPlannerService recheckPlannerService = new RecheckPlannerService();
+	private final StubCheckTaskService checkTaskService = new StubCheckTaskService();
+
+	@Before
+	public void setUp() throws ReflectiveOperationException {
+		// lme4 depends on Matrix, which depends on lattice
+		final ReverseDependencyGraph<String> graph = new ReverseDependencyGraph<>();
+		graph.addDependency("Matrix", "lattice");
+		graph.addDependency("lme4", "Matrix");
+
+		inject(recheckPlannerService, "log",
+				Logger.getLogger(RecheckPlannerServiceTest.class.getName()));
+		inject(recheckPlannerService, "checkTaskService", checkTaskService);
+		inject(recheckPlannerService, "dependencyGraphService",
+				new DependencyGraphService() {
+					@Override
+					public ReverseDependencyGraph<String> getDependencyGraph(
+							PackageContext packageContext) {
+						return graph;
+					}
+				});
+		inject(recheckPlannerService, "packageService", new PackageService() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public PackageContext getPackageRepositoryById(Long id) {
+				return packageContext;
+			}
+		});
+	}
+
+	@Test
+	public void testCachedResultsDoNotBlockDependents() {
+		checkTaskService.cached("lattice", "Matrix");
+		recheckPlannerService.queueRechecks(packageContext,
+				Collections.singletonList("lattice"));
+
+		recheckPlannerService.dispatchRechecks();
+
+		// Cached results are complete, so all rechecks are dispatched at once
+		assertEquals(Arrays.asList("lattice", "Matrix", "lme4"),
+				checkTaskService.getQueuedPackages());
+		assertEquals(0, recheckPlannerService.getPendingRecheckCount());
+	}
+
+	@Test
+	public void testQueuedRecheckBlocksDependents() {
+		checkTaskService.cached("Matrix");
+		recheckPlannerService.queueRechecks(packageContext,
+				Collections.singletonList("lattice"));
+
+		recheckPlannerService.dispatchRechecks();
+
+		assertEquals(Arrays.asList("lattice"),
+				checkTaskService.getQueuedPackages());
+		assertEquals(2, recheckPlannerService.getPendingRecheckCount());
+
+		recheckPlannerService.completeRecheck(packageContext.getId(),
+				"lattice");
+		recheckPlannerService.dispatchRechecks();
+
+		// Cached result of Matrix releases lme4 within the same dispatch
+		assertEquals(Arrays.asList("lattice", "Matrix", "lme4"),
+				checkTaskService.getQueuedPackages());
+		assertEquals(0, recheckPlannerService.getPendingRecheckCount());
+	}
+
+	@Test
+	public void testRecheckFailingToQueueIsDropped() {
+		checkTaskService.failing("lattice").cached("Matrix", "Rcpp");
+		recheckPlannerService.queueRechecks(packageContext,
+				Arrays.asList("lattice", "Rcpp"));
+
+		recheckPlannerService.dispatchRechecks();
+
+		// Independent rechecks are dispatched past the failing one
+		assertTrue(checkTaskService.getQueuedPackages().contains("Rcpp"));
+		assertEquals(3, recheckPlannerService.getPendingRecheckCount());
+
+		for (int i = 1; i < RecheckPlannerService.MAX_QUEUE_ATTEMPTS; i++) {
+			recheckPlannerService.dispatchRechecks();
+		}
+
+		assertEquals(RecheckPlannerService.MAX_QUEUE_ATTEMPTS,
+				Collections.frequency(checkTaskService.getQueuedPackages(),
+						"lattice"));
+		// Dependents of the dropped recheck are released
+		assertTrue(checkTaskService.getQueuedPackages().contains("lme4"));
+		assertEquals(0, recheckPlannerService.getPendingRecheckCount());
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.ejb.service;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+
+/**
+ * Stubs and injection of services tested without a container
+ * 
+ */
+class ServiceTestSupport {
+
+	/**
+	 * Answers checks of cached packages from the result cache, fails to
+	 * queue checks of failing packages and queues all others
+	 */
+	static class StubCheckTaskService extends CheckTaskService {
+		private final List<String> cachedPackages = new ArrayList<>();
+		private final List<String> failingPackages = new ArrayList<>();
+		private final List<String> queuedPackages = new ArrayList<>();
+
+		public StubCheckTaskService cached(String... packageNames) {
+			cachedPackages.addAll(Arrays.asList(packageNames));
+			return this;
+		}
+
+		public StubCheckTaskService failing(String... packageNames) {
+			failingPackages.addAll(Arrays.asList(packageNames));
+			return this;
+		}
+
+		/**
+		 * @return packages of all queueing attempts in order
+		 */
+		public List<String> getQueuedPackages() {
+			return queuedPackages;
+		}
+
+		@Override
+		public String queueCheck(String packageName,
+				PackageContext packageContext, int priority,
+				String installerVersion) {
+			queuedPackages.add(packageName);
+			if (failingPackages.contains(packageName)) {
+				return null;
+			}
+			return cachedPackages.contains(packageName) ? "cached:1" : "task-"
+					+ packageName;
+		}
+	}
+
+	private ServiceTestSupport() {
+
+	}
+
+	/**
+	 * Sets a field as injected by the container
+	 */
+	static void inject(Object target, String fieldName, Object value)
+			throws ReflectiveOperationException {
+		Field field = target.getClass().getDeclaredField(fieldName);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+}
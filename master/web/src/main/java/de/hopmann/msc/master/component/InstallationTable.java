@@ -16,49 +16,87 @@
 package de.hopmann.msc.master.component;
 
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.RandomAccess;
 
-public class InstallationTable<ColValue, RowValue, CellValue> {
+/**
+ * Table of cells by row and revision. Columns are stored by index in order of
+ * registration, rows keep their cells in arrays indexed by column. Row, column
+ * and cell lists are views created once, so that repeated evaluations during
+ * rendering do not copy.
+ * 
+ */
+public class InstallationTable<RowValue, CellValue> {
 
 	public enum RowType {
 		CHECK, UPSTREAM_INSTALLATION, DOWNSTREAM_INSTALLATION
 	}
 
-	private LinkedHashMap<ColValue, InstallationColumn> columns = new LinkedHashMap<>();
-	private LinkedHashMap<RowValue, InstallationRow> rows = new LinkedHashMap<>();
+	private static final int INITIAL_COLUMNS = 16;
+
+	private final List<InstallationColumn> columns = new ArrayList<>();
+	private final Map<Long, Integer> columnIndices = new HashMap<>();
+
+	private final List<InstallationRow> rows = new ArrayList<>();
+	private final Map<RowValue, InstallationRow> rowsByValue = new HashMap<>();
+
+	private final List<InstallationColumn> columnView = Collections
+			.unmodifiableList(columns);
+	private final List<InstallationRow> rowView = Collections
+			.unmodifiableList(rows);
 
 	public class InstallationColumn {
-		private final ColValue value;
+		private final int index;
+		private final long value;
 
-		public InstallationColumn(ColValue value) {
+		InstallationColumn(int index, long value) {
+			this.index = index;
 			this.value = value;
 		}
 
-		public ColValue getValue() {
-			return value;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			return value.equals(obj);
+		public int getIndex() {
+			return index;
 		}
 
-		@Override
-		public int hashCode() {
-			return value.hashCode();
+		public long getValue() {
+			return value;
 		}
 	}
 
 	public class InstallationRow {
-		private Map<ColValue, CellValue> cells = new HashMap<>();
+		private Object[] cells = new Object[INITIAL_COLUMNS];
 		private RowType rowType;
-		private RowValue rowValue;
+		private final RowValue rowValue;
 
-		public InstallationRow(RowValue rowValue) {
+		private final List<CellValue> cellView = new CellList();
+
+		/**
+		 * Cells in the order of the columns of the table, null where missing
+		 */
+		private class CellList extends AbstractList<CellValue> implements
+				RandomAccess {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public CellValue get(int index) {
+				if (index < 0 || index >= columns.size()) {
+					throw new IndexOutOfBoundsException();
+				}
+				return index < cells.length ? (CellValue) cells[index] : null;
+			}
+
+			@Override
+			public int size() {
+				return columns.size();
+			}
+		}
+
+		InstallationRow(RowValue rowValue) {
 			this.rowValue = rowValue;
 		}
 
@@ -75,61 +113,66 @@ public class InstallationTable<ColValue, RowValue, CellValue> {
 		}
 
 		/**
-		 * Returns a {@link List} of cells ordered according to the columns
-		 * registered in the superior {@link InstallationTable} structure.
-		 * 
-		 * @return {@link List} of cells with fixed ordering according to known
-		 *         columns
+		 * @return unmodifiable cells, ordered according to the columns of the
+		 *         table
 		 */
 		public List<CellValue> getCells() {
-			return new AbstractList<CellValue>() {
-
-				private List<InstallationColumn> columnList = new Vector<InstallationColumn>(
-						columns.values());
-
-				@Override
-				public CellValue get(int index) {
-					return cells.get(columnList.get(index));
-				}
+			return cellView;
+		}
 
-				@Override
-				public int size() {
-					return columns.size();
-				}
-			};
+		public CellValue getCell(long revision) {
+			Integer index = columnIndices.get(revision);
+			return index != null ? cellView.get(index) : null;
 		}
 
-		public void putCell(ColValue col, CellValue cell) {
-			cells.put(col, cell);
-			registerColumn(col);
+		public void putCell(long revision, CellValue cell) {
+			int index = registerColumn(revision);
+			if (index >= cells.length) {
+				cells = Arrays.copyOf(cells,
+						Math.max(index + 1, cells.length * 2));
+			}
+			cells[index] = cell;
 		}
 
 	}
 
-	private void registerColumn(ColValue col) {
-		// Although Set semantics required, JSF needs List implementation
-		if (!columns.containsKey(col)) {
-			columns.put(col, new InstallationColumn(col));
+	private int registerColumn(long revision) {
+		Integer index = columnIndices.get(revision);
+		if (index == null) {
+			index = columns.size();
+			columns.add(new InstallationColumn(index, revision));
+			columnIndices.put(revision, index);
 		}
+		return index;
 	}
 
 	public InstallationRow getRow(RowValue value) {
-		InstallationRow installationRow = rows.get(value);
+		InstallationRow installationRow = rowsByValue.get(value);
 		if (installationRow == null) {
 			installationRow = new InstallationRow(value);
-			rows.put(value, installationRow);
+			rowsByValue.put(value, installationRow);
+			rows.add(installationRow);
 		}
 
 		return installationRow;
 	}
 
+	/**
+	 * @return unmodifiable rows in order of creation
+	 */
 	public List<InstallationRow> getRows() {
-		return new Vector<InstallationRow>(rows.values()); // XXX performance?
+		return rowView;
 	}
 
+	/**
+	 * @return unmodifiable columns in order of registration
+	 */
 	public List<InstallationColumn> getColumns() {
-		return new Vector<InstallationColumn>(columns.values());// XXX
-																// performance?
+		return columnView;
+	}
+
+	public int getColumnCount() {
+		return columns.size();
 	}
 
-}
\ No newline at end of file
+}
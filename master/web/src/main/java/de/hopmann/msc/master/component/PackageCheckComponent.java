@@ -24,17 +24,16 @@ import javax.faces.component.UIInput;
 import javax.faces.context.FacesContext;
 import javax.faces.convert.ConverterException;
 
+import de.hopmann.msc.master.ejb.entity.CheckMatrixCell;
 import de.hopmann.msc.master.ejb.entity.PackageResult;
 import de.hopmann.msc.master.ejb.entity.PackageSource;
-import de.hopmann.msc.master.holder.InstallationRangeHolder;
-import de.hopmann.msc.master.holder.InstallationResultHolder;
 import de.hopmann.msc.master.holder.PackageSourceHolder;
 
 @FacesComponent
 public class PackageCheckComponent extends UIInput implements NamingContainer {
 
 	private class PackageCheckTable extends
-			InstallationTable<Long, PackageSource, PackageResult> {
+			InstallationTable<PackageSource, PackageResult> {
 
 	}
 
@@ -42,8 +41,10 @@ public class PackageCheckComponent extends UIInput implements NamingContainer {
 
 	private PackageSourceHolder packageSourceHolder;
 	private int maxPreviousInstallations;
+	private int maxRevisions;
 
 	private PackageCheckTable installationTable;
+	private boolean truncated;
 
 	@Override
 	public String getFamily() {
@@ -68,6 +69,7 @@ public class PackageCheckComponent extends UIInput implements NamingContainer {
 	public void encodeBegin(FacesContext context) throws IOException {
 		packageSourceHolder = getAttribute("packageSource");
 		maxPreviousInstallations = getAttribute("maxPreviousInstallations", 5);
+		maxRevisions = Math.max(1, getAttribute("maxRevisions", 20));
 
 		createTable();
 		super.encodeBegin(context);
@@ -87,10 +89,17 @@ public class PackageCheckComponent extends UIInput implements NamingContainer {
 		return getAttribute(key, null);
 	}
 
-	public InstallationTable<Long, PackageSource, PackageResult> getInstallationTable() {
+	public InstallationTable<PackageSource, PackageResult> getInstallationTable() {
 		return installationTable;
 	}
 
+	/**
+	 * @return true if older revisions exist than shown
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
 	@Override
 	protected Object getConvertedValue(FacesContext context,
 			Object newSubmittedValue) throws ConverterException {
@@ -119,33 +128,29 @@ public class PackageCheckComponent extends UIInput implements NamingContainer {
 
 		installationTable = new PackageCheckTable();
 
-		List<InstallationResultHolder> checkResults = packageSourceHolder
-				.getCheckResults();
-
-		for (InstallationResultHolder installationResultHolder : checkResults) {
-			// PackageSourceRowMap packageSourceRowMap = new
-			// PackageSourceRowMap();
+		// Precomputed check results and installations since the previous
+		// check, newest first. Only cells of the latest revisions are loaded,
+		// one more to determine whether older ones exist.
+		List<CheckMatrixCell> cells = packageSourceHolder
+				.getCheckMatrix(maxRevisions + 1);
+		if (!cells.isEmpty()) {
+			// Row of the checked package first
+			installationTable.getRow(packageSourceHolder.getPackageSource());
+		}
 
-			// Include main check result
-			PackageResult checkResult = installationResultHolder.getInstallationResult();
-			PackageCheckTable.InstallationRow installationRow = installationTable
-					.getRow(checkResult.getPackageSource());
-			installationRow.putCell(checkResult.getRevision(), checkResult);
-
-			for (InstallationRangeHolder installationRange : installationResultHolder
-					.getDependencies()) {
-				// Add previous installations
-				PackageSource rowId = installationRange.getInstallation()
-						.getPackageSource();
-
-				for (PackageResult installation : installationRange
-						.getPreviousInstallations()) {
-					installationRow = installationTable.getRow(rowId);
-					installationRow.putCell(installation.getRevision(),
-							installation);
-				}
+		truncated = false;
+		for (CheckMatrixCell cell : cells) {
+			if (installationTable.getColumnCount() == maxRevisions
+					&& cell.getRevision() < installationTable.getColumns()
+							.get(maxRevisions - 1).getValue()) {
+				// Cells are ordered by descending revision
+				truncated = true;
+				break;
 			}
-
+			PackageResult packageResult = cell.getPackageResult();
+			PackageCheckTable.InstallationRow installationRow = installationTable
+					.getRow(packageResult.getPackageSource());
+			installationRow.putCell(cell.getRevision(), packageResult);
 		}
 	}
 }
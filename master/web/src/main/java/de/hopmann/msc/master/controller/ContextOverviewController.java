@@ -18,11 +18,13 @@ package de.hopmann.msc.master.controller;
 import java.io.Serializable;
 
 import javax.enterprise.inject.Produces;
+import javax.faces.application.FacesMessage;
 import javax.faces.context.FacesContext;
 import javax.faces.view.ViewScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
 import de.hopmann.msc.master.ejb.entity.PackageContext;
 import de.hopmann.msc.master.ejb.service.CheckTaskService;
 
@@ -61,7 +63,23 @@ public class ContextOverviewController implements Serializable {
 	}
 
 	public void checkPackage() {
-		checkTaskService.queueCheck(packageNameToCheck, currentPackageContext);
+		// Interactive check, takes precedence over bulk checks
+		String taskId = checkTaskService.queueCheck(packageNameToCheck,
+				currentPackageContext, CheckTaskMessage.PRIORITY_HIGH);
+		FacesMessage message;
+		if (taskId == null) {
+			message = new FacesMessage(FacesMessage.SEVERITY_ERROR,
+					"Could not queue check of " + packageNameToCheck, null);
+		} else if (CheckTaskService.isCachedResult(taskId)) {
+			message = new FacesMessage(FacesMessage.SEVERITY_INFO,
+					packageNameToCheck
+							+ " unchanged since its last check, result reused",
+					null);
+		} else {
+			message = new FacesMessage(FacesMessage.SEVERITY_INFO, "Check of "
+					+ packageNameToCheck + " queued", null);
+		}
+		facesContext.addMessage(null, message);
 	}
 
 }
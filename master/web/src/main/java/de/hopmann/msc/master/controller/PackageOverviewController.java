@@ -35,6 +35,8 @@ public class PackageOverviewController implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final int REVISIONS_STEP = 20;
+
 	@Inject
 	private FacesContext facesContext;
 
@@ -45,6 +47,11 @@ public class PackageOverviewController implements Serializable {
 	@Named("currentPackage")
 	private ManagedPackageHolder currentPackage;
 
+	/**
+	 * Number of latest revisions shown per package source
+	 */
+	private int maxRevisions = REVISIONS_STEP;
+
 	public boolean isRegistered() {
 		return packageService.hasPackageSource(currentPackage.getPackageName());
 	}
@@ -64,4 +71,12 @@ public class PackageOverviewController implements Serializable {
 		return results;
 	}
 
+	public int getMaxRevisions() {
+		return maxRevisions;
+	}
+
+	public void showOlderRevisions() {
+		maxRevisions += REVISIONS_STEP;
+	}
+
 }
@@ -16,13 +16,18 @@
 package de.hopmann.msc.master.controller;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 import javax.faces.context.FacesContext;
 import javax.faces.view.ViewScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
+
+import de.hopmann.msc.master.ejb.service.PackageListingService;
+import de.hopmann.msc.master.ejb.service.PackageListingService.PackageSummary;
 import de.hopmann.msc.master.ejb.service.PackageService;
 import de.hopmann.msc.master.holder.ManagedPackageHolder;
 
@@ -32,24 +37,91 @@ public class PackagesController implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final int PAGE_SIZE = 50;
+
 	@Inject
 	private FacesContext facesContext;
 
 	@Inject
 	private PackageService packageService;
 
-	public List<ManagedPackageHolder> getAllManagedPackages() {
-		List<String> allPackageNames = packageService.getAllManagedPackages();
+	@Inject
+	private PackageListingService packageListingService;
+
+	private String prefix;
+
+	/**
+	 * Last package names of the previous pages, null for the first page
+	 */
+	private Deque<String> previousPages = new ArrayDeque<>();
+	private String afterPackageName;
+
+	/**
+	 * Current page, reset on navigation
+	 */
+	private List<ManagedPackageHolder> packages;
+	private boolean hasNextPage;
 
-		List<ManagedPackageHolder> results = new ArrayList<>();
+	public List<ManagedPackageHolder> getManagedPackages() {
+		if (packages == null) {
+			// One more to determine whether a next page exists
+			List<PackageSummary> summaries = packageListingService
+					.getPackages(prefix, afterPackageName, PAGE_SIZE + 1);
+			hasNextPage = summaries.size() > PAGE_SIZE;
 
-		for (String packageName : allPackageNames) {
-			ManagedPackageHolder packageHolder = new ManagedPackageHolder(
-					packageName, packageService);
-			results.add(packageHolder);
+			packages = new ArrayList<>();
+			for (PackageSummary summary : summaries.subList(0,
+					Math.min(PAGE_SIZE, summaries.size()))) {
+				packages.add(new ManagedPackageHolder(summary, packageService));
+			}
 		}
+		return packages;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
 
-		return results;
+	/**
+	 * Applies the prefix, starting at the first page
+	 */
+	public void filter() {
+		previousPages.clear();
+		afterPackageName = null;
+		packages = null;
+	}
+
+	public boolean isNextPage() {
+		getManagedPackages();
+		return hasNextPage;
+	}
+
+	public boolean isPreviousPage() {
+		return !previousPages.isEmpty();
+	}
+
+	public void nextPage() {
+		List<ManagedPackageHolder> currentPackages = getManagedPackages();
+		if (hasNextPage) {
+			// ArrayDeque does not permit null for the first page
+			previousPages.push(afterPackageName != null ? afterPackageName
+					: "");
+			afterPackageName = currentPackages.get(currentPackages.size() - 1)
+					.getPackageName();
+			packages = null;
+		}
+	}
+
+	public void previousPage() {
+		if (!previousPages.isEmpty()) {
+			String previous = previousPages.pop();
+			afterPackageName = previous.isEmpty() ? null : previous;
+			packages = null;
+		}
 	}
 
 }
@@ -17,6 +17,7 @@ package de.hopmann.msc.master.holder;
 
 import java.io.Serializable;
 
+import de.hopmann.msc.master.ejb.service.PackageListingService.PackageSummary;
 import de.hopmann.msc.master.ejb.service.PackageService;
 
 
@@ -24,6 +25,7 @@ public class ManagedPackageHolder implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 	private String packageName;
+	private PackageSummary summary;
 	private PackageService packageService;
 
 	public ManagedPackageHolder(String packageName, PackageService packageService) {
@@ -31,8 +33,21 @@ public class ManagedPackageHolder implements Serializable {
 		this.packageService = packageService;
 	}
 
+	public ManagedPackageHolder(PackageSummary summary,
+			PackageService packageService) {
+		this(summary.getPackageName(), packageService);
+		this.summary = summary;
+	}
+
 	public String getPackageName() {
 		return packageName;
 	}
 
+	/**
+	 * @return aggregated status, null if not listed
+	 */
+	public PackageSummary getSummary() {
+		return summary;
+	}
+
 }
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import de.hopmann.msc.master.ejb.entity.CheckMatrixCell;
 import de.hopmann.msc.master.ejb.entity.PackageResult;
 import de.hopmann.msc.master.ejb.entity.PackageResult.PackageResultType;
 import de.hopmann.msc.master.ejb.entity.PackageSource;
@@ -67,6 +68,10 @@ public class PackageSourceHolder implements Serializable {
 		return results;
 	}
 
+	public List<CheckMatrixCell> getCheckMatrix(int maxRevisions) {
+		return packageService.getCheckMatrix(packageSource, maxRevisions);
+	}
+
 	public PackageContext getRepository() {
 		return packageSource.getRepository();
 	}
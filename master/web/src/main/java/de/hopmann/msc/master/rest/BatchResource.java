@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
+
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.CheckBatch;
+import de.hopmann.msc.master.ejb.service.PackageService;
+
+/**
+ * Bulk submission of package checks. The checks of a batch are tracked
+ * individually at {@code api/checks/<taskId>}, the batch summarizes their
+ * states.
+ * 
+ */
+@Path("batches")
+@RequestScoped
+public class BatchResource {
+
+	/**
+	 * Maximum number of packages within one batch, well below the number of
+	 * submissions remembered by CheckSubmissionService
+	 */
+	private static final int MAX_PACKAGES = 2000;
+
+	@Inject
+	private CheckSubmissionService checkSubmissionService;
+
+	@Inject
+	private PackageService packageService;
+
+	@Context
+	private UriInfo uriInfo;
+
+	/**
+	 * Queues checks of several packages of one context. Expects the package
+	 * names as array {@code packageNames}, further fields as for single
+	 * checks.
+	 */
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response submit(JsonObject request) {
+		JsonArray packageNamesArray = request != null ? request
+				.getJsonArray("packageNames") : null;
+		if (packageNamesArray == null || packageNamesArray.isEmpty()) {
+			return CheckResource.badRequest("packageNames missing");
+		}
+		if (packageNamesArray.size() > MAX_PACKAGES) {
+			return CheckResource.badRequest("at most " + MAX_PACKAGES
+					+ " packageNames allowed");
+		}
+		List<String> packageNames = new ArrayList<>();
+		for (JsonValue packageName : packageNamesArray) {
+			if (!(packageName instanceof JsonString)) {
+				return CheckResource.badRequest("packageNames must be strings");
+			}
+			packageNames.add(((JsonString) packageName).getString());
+		}
+
+		CheckBatch batch;
+		try {
+			batch = checkSubmissionService.submitBatch(
+					SubmissionJson.getContextId(request, packageService),
+					packageNames, request.getString("installerVersion", null),
+					SubmissionJson.getPriority(request));
+		} catch (IllegalArgumentException e) {
+			return CheckResource.badRequest(e.getMessage());
+		}
+
+		return Response
+				.accepted(SubmissionJson.toJson(batch, true))
+				.location(
+						uriInfo.getAbsolutePathBuilder()
+								.path(batch.getBatchId()).build()).build();
+	}
+
+	/**
+	 * Returns the number of checks of the batch in each state, with
+	 * {@code tasks} set also the task id of each package
+	 */
+	@GET
+	@Path("{batchId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response get(@PathParam("batchId") String batchId,
+			@QueryParam("tasks") @DefaultValue("false") boolean withTasks) {
+		CheckBatch batch = checkSubmissionService.getBatch(batchId);
+		if (batch == null) {
+			return Response.status(Status.NOT_FOUND)
+					.entity(SubmissionJson.error("batch not found")).build();
+		}
+		return Response.ok(SubmissionJson.toJson(batch, withTasks)).build();
+	}
+}
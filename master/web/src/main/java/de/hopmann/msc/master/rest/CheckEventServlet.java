@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.CheckSubmission;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.SubmissionListener;
+
+/**
+ * Streams updates of a submitted check as server-sent events at
+ * {@code api/events/<taskId>}: the current state as {@code status} event,
+ * each reported progress as {@code progress} event and finally the
+ * {@code result} event, after which the stream ends. Requests are handled
+ * asynchronously, so no thread is held while waiting for updates.
+ * 
+ */
+@WebServlet(urlPatterns = "/api/events/*", asyncSupported = true)
+public class CheckEventServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Time in ms after which a stream is closed, clients reconnect
+	 */
+	private static final long STREAM_TIMEOUT = 30 * 60 * 1000;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private CheckSubmissionService checkSubmissionService;
+
+	/**
+	 * Event stream of a single client. Events are written by container
+	 * threads in the order of the updates, never by the threads reporting
+	 * them.
+	 * 
+	 */
+	private class EventStream implements SubmissionListener, AsyncListener,
+			Runnable {
+
+		private final String taskId;
+		private final AsyncContext asyncContext;
+		private final Queue<String> events = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean writing = new AtomicBoolean(false);
+		private volatile boolean finished = false;
+		private volatile boolean closed = false;
+
+		public EventStream(String taskId, AsyncContext asyncContext) {
+			this.taskId = taskId;
+			this.asyncContext = asyncContext;
+		}
+
+		@Override
+		public void progress(CheckSubmission submission) {
+			send("progress", submission, false);
+		}
+
+		@Override
+		public void completed(CheckSubmission submission) {
+			send("result", submission, true);
+		}
+
+		private void send(String event, CheckSubmission submission,
+				boolean last) {
+			events.add("event: " + event + "\ndata: "
+					+ SubmissionJson.toJson(submission) + "\n\n");
+			if (last) {
+				// Set after adding, so that the event is written before
+				finished = true;
+			}
+			if (writing.compareAndSet(false, true)) {
+				asyncContext.start(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				do {
+					String event;
+					while (!closed && (event = events.poll()) != null) {
+						PrintWriter writer = asyncContext.getResponse()
+								.getWriter();
+						writer.write(event);
+						writer.flush();
+					}
+					if (finished && events.isEmpty() && !closed) {
+						close();
+						asyncContext.complete();
+						return;
+					}
+					writing.set(false);
+					// Events added while releasing are written here
+				} while (!closed && !events.isEmpty()
+						&& writing.compareAndSet(false, true));
+			} catch (IOException | IllegalStateException e) {
+				// Client gone
+				close();
+			}
+		}
+
+		private void close() {
+			closed = true;
+			checkSubmissionService.removeListener(taskId, this);
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			close();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			close();
+			event.getAsyncContext().complete();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			log.log(Level.FINE, "Event stream of check task " + taskId
+					+ " failed", event.getThrowable());
+			close();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+
+		}
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException,
+			IOException {
+		String taskId = request.getPathInfo() != null ? request.getPathInfo()
+				.substring(1) : "";
+		CheckSubmission submission = checkSubmissionService
+				.getSubmission(taskId);
+		if (submission == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND,
+					"Task not found");
+			return;
+		}
+
+		response.setContentType("text/event-stream");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+
+		AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(STREAM_TIMEOUT);
+		EventStream stream = new EventStream(taskId, asyncContext);
+		asyncContext.addListener(stream);
+
+		stream.send("status", submission, false);
+		// Notified immediately if completed meanwhile
+		checkSubmissionService.addListener(taskId, stream);
+	}
+}
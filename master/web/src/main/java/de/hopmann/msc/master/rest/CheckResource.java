@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.json.JsonObject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
+
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.CheckSubmission;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.SubmissionListener;
+import de.hopmann.msc.master.ejb.service.PackageService;
+
+/**
+ * Submission of package checks. Submitting returns the task id immediately,
+ * clients then long-poll the task or subscribe to its events at
+ * {@code api/events/<taskId>}.
+ * 
+ */
+@Path("checks")
+@RequestScoped
+public class CheckResource {
+
+	/**
+	 * Maximum time in seconds a poll waits for an update
+	 */
+	private static final int MAX_WAIT = 300;
+
+	@Inject
+	private CheckSubmissionService checkSubmissionService;
+
+	@Inject
+	private PackageService packageService;
+
+	@Context
+	private UriInfo uriInfo;
+
+	/**
+	 * Queues a check. Expects the package name as {@code packageName} and the
+	 * context either as {@code contextId} or by name as {@code context}.
+	 * Optional are {@code installerVersion} and {@code priority}, one of
+	 * {@code low}, {@code normal} and {@code high}.
+	 */
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response submit(JsonObject request) {
+		if (request == null || request.getString("packageName", null) == null) {
+			return badRequest("packageName missing");
+		}
+
+		CheckSubmission submission;
+		try {
+			submission = checkSubmissionService.submit(
+					SubmissionJson.getContextId(request, packageService),
+					request.getString("packageName"),
+					request.getString("installerVersion", null),
+					SubmissionJson.getPriority(request));
+		} catch (IllegalArgumentException e) {
+			return badRequest(e.getMessage());
+		}
+		if (submission == null) {
+			return Response.status(Status.SERVICE_UNAVAILABLE)
+					.entity(SubmissionJson.error("check could not be queued"))
+					.build();
+		}
+
+		return Response
+				.accepted(SubmissionJson.toJson(submission))
+				.location(
+						uriInfo.getAbsolutePathBuilder()
+								.path(submission.getTaskId()).build()).build();
+	}
+
+	/**
+	 * Returns the state of the submission. With {@code wait} set, the request
+	 * is suspended until the submission completed or, if {@code steps} is
+	 * given, reported more than this number of steps, at most for the given
+	 * number of seconds. No thread is held while suspended.
+	 */
+	@GET
+	@Path("{taskId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void poll(@PathParam("taskId") final String taskId,
+			@QueryParam("wait") @DefaultValue("0") int wait,
+			@QueryParam("steps") @DefaultValue("-1") final int steps,
+			@Suspended final AsyncResponse asyncResponse) {
+		final CheckSubmission submission = checkSubmissionService
+				.getSubmission(taskId);
+		if (submission == null) {
+			asyncResponse.resume(notFound());
+			return;
+		}
+		if (wait <= 0 || isUpdated(submission, steps)) {
+			asyncResponse.resume(SubmissionJson.toJson(submission));
+			return;
+		}
+
+		final SubmissionListener listener = new SubmissionListener() {
+			@Override
+			public void progress(CheckSubmission submission) {
+				if (isUpdated(submission, steps)) {
+					resume(submission);
+				}
+			}
+
+			@Override
+			public void completed(CheckSubmission submission) {
+				resume(submission);
+			}
+
+			private void resume(CheckSubmission submission) {
+				checkSubmissionService.removeListener(taskId, this);
+				asyncResponse.resume(SubmissionJson.toJson(submission));
+			}
+		};
+		asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+			@Override
+			public void handleTimeout(AsyncResponse asyncResponse) {
+				checkSubmissionService.removeListener(taskId, listener);
+				asyncResponse.resume(SubmissionJson.toJson(submission));
+			}
+		});
+		asyncResponse.setTimeout(Math.min(wait, MAX_WAIT), TimeUnit.SECONDS);
+		checkSubmissionService.addListener(taskId, listener);
+		if (isUpdated(submission, steps)) {
+			// Updated before the listener was registered
+			listener.progress(submission);
+		}
+	}
+
+	/**
+	 * Cancels the submitted check, unless requested otherwise
+	 */
+	@DELETE
+	@Path("{taskId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response cancel(@PathParam("taskId") String taskId) {
+		CheckSubmission submission = checkSubmissionService
+				.getSubmission(taskId);
+		if (submission == null) {
+			return notFound();
+		}
+		if (!checkSubmissionService.cancel(taskId)) {
+			return Response.status(Status.CONFLICT)
+					.entity(SubmissionJson.toJson(submission)).build();
+		}
+		return Response.ok(SubmissionJson.toJson(submission)).build();
+	}
+
+	private static boolean isUpdated(CheckSubmission submission, int steps) {
+		return submission.isCompleted()
+				|| (steps >= 0 && submission.getStepCount() > steps);
+	}
+
+	static Response badRequest(String message) {
+		return Response.status(Status.BAD_REQUEST)
+				.entity(SubmissionJson.error(message)).build();
+	}
+
+	private static Response notFound() {
+		return Response.status(Status.NOT_FOUND)
+				.entity(SubmissionJson.error("task not found")).build();
+	}
+}
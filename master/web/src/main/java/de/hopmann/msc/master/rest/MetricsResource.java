@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import de.hopmann.msc.commons.service.MetricsRegistry;
+import de.hopmann.msc.commons.service.MetricsRegistry.Gauge;
+import de.hopmann.msc.master.ejb.service.CheckProgressService;
+import de.hopmann.msc.master.ejb.service.CheckResultCacheService;
+import de.hopmann.msc.master.ejb.service.CheckSweepService;
+import de.hopmann.msc.master.ejb.service.CheckSweepService.SweepStatus;
+import de.hopmann.msc.master.ejb.service.OutputIndexService;
+import de.hopmann.msc.master.ejb.service.PackageIndexService;
+import de.hopmann.msc.master.ejb.service.PendingTaskRegistry;
+import de.hopmann.msc.master.ejb.service.RecheckPlannerService;
+
+/**
+ * Scrape endpoint of the master metrics. Figures held by the services are
+ * registered as gauges on each scrape, counters and latencies are recorded
+ * where they occur.
+ * 
+ */
+@Path("metrics")
+@RequestScoped
+public class MetricsResource {
+
+	@Inject
+	private MetricsRegistry metrics;
+
+	@Inject
+	private PendingTaskRegistry pendingTaskRegistry;
+
+	@Inject
+	private CheckProgressService checkProgressService;
+
+	@Inject
+	private CheckResultCacheService checkResultCacheService;
+
+	@Inject
+	private PackageIndexService packageIndexService;
+
+	@Inject
+	private OutputIndexService outputIndexService;
+
+	@Inject
+	private RecheckPlannerService recheckPlannerService;
+
+	@Inject
+	private CheckSweepService checkSweepService;
+
+	@GET
+	@Produces(MetricsRegistry.CONTENT_TYPE)
+	public String getMetrics() {
+		registerGauges();
+		return metrics.scrape();
+	}
+
+	private void registerGauges() {
+		metrics.gauge("msc_tasks_pending",
+				"Check tasks sent and awaiting their result", new Gauge() {
+					@Override
+					public double getValue() {
+						return pendingTaskRegistry.getPendingCount();
+					}
+				});
+		metrics.counter("msc_tasks_coalesced_total",
+				"Check requests attached to an identical pending task",
+				new Gauge() {
+					@Override
+					public double getValue() {
+						return pendingTaskRegistry.getCoalescedCount();
+					}
+				});
+		metrics.gauge("msc_tasks_in_flight",
+				"Check tasks currently reporting progress", new Gauge() {
+					@Override
+					public double getValue() {
+						return checkProgressService.getRunningTasks().size();
+					}
+				});
+		metrics.gauge("msc_rechecks_pending",
+				"Planned rechecks not yet dispatched", new Gauge() {
+					@Override
+					public double getValue() {
+						return recheckPlannerService.getPendingRecheckCount();
+					}
+				});
+		metrics.gauge("msc_sweep_tasks_outstanding",
+				"Check tasks of running sweeps awaiting their result",
+				new Gauge() {
+					@Override
+					public double getValue() {
+						int outstanding = 0;
+						for (SweepStatus status : checkSweepService
+								.getSweepStatus()) {
+							outstanding += status.getOutstandingCount();
+						}
+						return outstanding;
+					}
+				});
+		metrics.gauge("msc_output_index_size", "Indexed check outputs",
+				new Gauge() {
+					@Override
+					public double getValue() {
+						return outputIndexService.getOutputCount();
+					}
+				});
+
+		metrics.counter("msc_check_result_cache_requests_total",
+				"Check result cache lookups by result", new Gauge() {
+					@Override
+					public double getValue() {
+						return checkResultCacheService.getHitCount();
+					}
+				}, "result", "hit");
+		metrics.counter("msc_check_result_cache_requests_total",
+				"Check result cache lookups by result", new Gauge() {
+					@Override
+					public double getValue() {
+						return checkResultCacheService.getMissCount();
+					}
+				}, "result", "miss");
+		metrics.counter("msc_package_index_requests_total",
+				"Package index lookups by result", new Gauge() {
+					@Override
+					public double getValue() {
+						return packageIndexService.getHitCount();
+					}
+				}, "result", "hit");
+		metrics.counter("msc_package_index_requests_total",
+				"Package index lookups by result", new Gauge() {
+					@Override
+					public double getValue() {
+						return packageIndexService.getMissCount();
+					}
+				}, "result", "miss");
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.util.OutputBlobStore;
+import de.hopmann.msc.commons.util.OutputIndex.IndexedOutput;
+import de.hopmann.msc.commons.util.OutputIndex.OutputQuery;
+import de.hopmann.msc.master.ejb.service.OutputBlobService;
+import de.hopmann.msc.master.ejb.service.OutputIndexService;
+
+/**
+ * Full-text search over the R CMD output of ingested check results and access
+ * to stored outputs by hash
+ * 
+ */
+@Path("outputs")
+@RequestScoped
+public class OutputSearchResource {
+
+	/**
+	 * Maximum number of outputs returned by one search
+	 */
+	private static final int MAX_LIMIT = 1000;
+
+	@Inject
+	private Logger log;
+
+	@Inject
+	private OutputIndexService outputIndexService;
+
+	@Inject
+	private OutputBlobService outputBlobService;
+
+	/**
+	 * Searches outputs matching all given criteria, newest first. The text
+	 * {@code q} is matched against message lines ignoring case, {@code step}
+	 * against the words of the stars level.
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response search(@QueryParam("q") String text,
+			@QueryParam("step") String step,
+			@QueryParam("status") String status,
+			@QueryParam("kind") String kind,
+			@QueryParam("contextId") Long contextId,
+			@QueryParam("package") String packageName,
+			@QueryParam("latestRevisions") @DefaultValue("0") int latestRevisions,
+			@QueryParam("limit") @DefaultValue("100") int limit) {
+		if (limit < 1 || limit > MAX_LIMIT) {
+			return CheckResource.badRequest("limit must be between 1 and "
+					+ MAX_LIMIT);
+		}
+		if (latestRevisions < 0) {
+			return CheckResource
+					.badRequest("latestRevisions must not be negative");
+		}
+		OutputQuery query = new OutputQuery();
+		query.setText(text);
+		query.setStep(step);
+		if (status != null) {
+			try {
+				query.setStatus(CMDOutputStatus.valueOf(status));
+			} catch (IllegalArgumentException e) {
+				return CheckResource.badRequest("unknown status " + status);
+			}
+		}
+		query.setKind(kind);
+		query.setContextId(contextId);
+		query.setPackageName(packageName);
+		query.setLatestRevisions(latestRevisions);
+		query.setMaxHits(limit);
+
+		List<IndexedOutput> outputs;
+		try {
+			outputs = outputIndexService.search(query);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not search outputs", e);
+			return Response.status(Status.SERVICE_UNAVAILABLE)
+					.entity(SubmissionJson.error("output index not available"))
+					.build();
+		}
+
+		JsonArrayBuilder outputsArray = Json.createArrayBuilder();
+		for (IndexedOutput output : outputs) {
+			outputsArray.add(toJson(output));
+		}
+		return Response.ok(
+				Json.createObjectBuilder().add("outputs", outputsArray)
+						.build()).build();
+	}
+
+	/**
+	 * Returns the stored output with the given hash, as referenced by check
+	 * and installation results
+	 */
+	@GET
+	@Path("{hash}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getOutput(@PathParam("hash") String hash) {
+		if (!OutputBlobStore.isValidHash(hash)) {
+			return CheckResource.badRequest("invalid output hash " + hash);
+		}
+		List<CMDOutputMessage> outputMessages;
+		try {
+			outputMessages = outputBlobService.getOutputMessages(hash);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not read output " + hash, e);
+			return Response.status(Status.SERVICE_UNAVAILABLE)
+					.entity(SubmissionJson.error("output store not available"))
+					.build();
+		}
+		if (outputMessages == null) {
+			return Response.status(Status.NOT_FOUND)
+					.entity(SubmissionJson.error("unknown output " + hash))
+					.build();
+		}
+
+		JsonArrayBuilder outputsArray = Json.createArrayBuilder();
+		for (CMDOutputMessage outputMessage : outputMessages) {
+			outputsArray.add(toJson(outputMessage));
+		}
+		return Response.ok(
+				Json.createObjectBuilder().add("hash", hash)
+						.add("outputs", outputsArray).build()).build();
+	}
+
+	private static JsonObjectBuilder toJson(CMDOutputMessage outputMessage) {
+		JsonArrayBuilder starsLevels = Json.createArrayBuilder();
+		for (String starsLevel : outputMessage.getStarsLevels()) {
+			starsLevels.add(starsLevel);
+		}
+		JsonArrayBuilder messages = Json.createArrayBuilder();
+		for (String message : outputMessage.getMessages()) {
+			messages.add(message);
+		}
+		JsonObjectBuilder outputObject = Json.createObjectBuilder()
+				.add("starsLevels", starsLevels).add("messages", messages);
+		if (outputMessage.getStatus() != null) {
+			outputObject.add("status", outputMessage.getStatus().name());
+		}
+		return outputObject;
+	}
+
+	private static JsonObjectBuilder toJson(IndexedOutput output) {
+		JsonArrayBuilder starsLevels = Json.createArrayBuilder();
+		for (String starsLevel : output.getStarsLevels()) {
+			starsLevels.add(starsLevel);
+		}
+		JsonArrayBuilder messages = Json.createArrayBuilder();
+		for (String message : output.getMessages()) {
+			messages.add(message);
+		}
+		JsonObjectBuilder outputObject = Json.createObjectBuilder()
+				.add("contextId", output.getContextId())
+				.add("packageName", output.getPackageName())
+				.add("revision", output.getRevision())
+				.add("kind", output.getKind())
+				.add("starsLevels", starsLevels).add("messages", messages);
+		if (output.getStatus() != null) {
+			outputObject.add("status", output.getStatus().name());
+		}
+		return outputObject;
+	}
+}
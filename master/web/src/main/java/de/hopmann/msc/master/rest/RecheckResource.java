@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.service.PackageService;
+import de.hopmann.msc.master.ejb.service.RecheckPlannerService;
+
+/**
+ * Rechecks of packages affected by changed packages. Planning only returns
+ * the order the affected packages would be rechecked in, queueing also
+ * dispatches the rechecks.
+ * 
+ */
+@Path("rechecks")
+@RequestScoped
+public class RecheckResource {
+
+	@Inject
+	private RecheckPlannerService recheckPlannerService;
+
+	@Inject
+	private PackageService packageService;
+
+	/**
+	 * @return number of queued rechecks not yet dispatched
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public JsonObject getStatus() {
+		return Json
+				.createObjectBuilder()
+				.add("pending", recheckPlannerService.getPendingRecheckCount())
+				.build();
+	}
+
+	/**
+	 * Plans the rechecks of the changed packages given as repeated
+	 * {@code package} parameter within the context {@code contextId} without
+	 * queueing them
+	 */
+	@GET
+	@Path("plan")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response plan(@QueryParam("contextId") Long contextId,
+			@QueryParam("package") List<String> changedPackages) {
+		if (contextId == null || changedPackages.isEmpty()) {
+			return CheckResource.badRequest("contextId or package missing");
+		}
+		PackageContext packageContext = packageService
+				.getPackageRepositoryById(contextId);
+		if (packageContext == null) {
+			return CheckResource.badRequest("context not found");
+		}
+		return Response.ok(
+				toJson(recheckPlannerService.planRechecks(packageContext,
+						changedPackages))).build();
+	}
+
+	/**
+	 * Queues the rechecks of changed packages. Expects the package names as
+	 * array {@code changedPackages} and the context either as
+	 * {@code contextId} or by name as {@code context}.
+	 */
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response queue(JsonObject request) {
+		JsonArray changedArray = request != null ? request
+				.getJsonArray("changedPackages") : null;
+		if (changedArray == null || changedArray.isEmpty()) {
+			return CheckResource.badRequest("changedPackages missing");
+		}
+		List<String> changedPackages = new ArrayList<>();
+		for (JsonValue packageName : changedArray) {
+			if (!(packageName instanceof JsonString)) {
+				return CheckResource
+						.badRequest("changedPackages must be strings");
+			}
+			changedPackages.add(((JsonString) packageName).getString());
+		}
+
+		PackageContext packageContext;
+		try {
+			packageContext = packageService
+					.getPackageRepositoryById(SubmissionJson.getContextId(
+							request, packageService));
+		} catch (IllegalArgumentException e) {
+			return CheckResource.badRequest(e.getMessage());
+		}
+		if (packageContext == null) {
+			return CheckResource.badRequest("context not found");
+		}
+		return Response.accepted(
+				toJson(recheckPlannerService.queueRechecks(packageContext,
+						changedPackages))).build();
+	}
+
+	private static JsonObject toJson(List<String> plan) {
+		JsonArrayBuilder packages = Json.createArrayBuilder();
+		for (String packageName : plan) {
+			packages.add(packageName);
+		}
+		return Json.createObjectBuilder().add("rechecks", packages).build();
+	}
+}
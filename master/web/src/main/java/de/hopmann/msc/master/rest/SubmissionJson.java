@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.model.CheckResult;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.CheckBatch;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.CheckSubmission;
+import de.hopmann.msc.master.ejb.service.CheckSubmissionService.SubmissionState;
+import de.hopmann.msc.master.ejb.service.PackageService;
+
+/**
+ * JSON representation of check submissions and batches, shared by the REST
+ * resources and the event stream.
+ * 
+ */
+final class SubmissionJson {
+
+	private SubmissionJson() {
+
+	}
+
+	public static JsonObject toJson(CheckSubmission submission) {
+		JsonObjectBuilder json = Json.createObjectBuilder()
+				.add("taskId", submission.getTaskId())
+				.add("contextId", submission.getContextIdRef())
+				.add("packageName", submission.getPackageName())
+				.add("installerVersion", submission.getInstallerVersion())
+				.add("state", submission.getState().name())
+				.add("submitTime", submission.getSubmitTime())
+				.add("stepCount", submission.getStepCount());
+
+		String[] starsLevels = submission.getStarsLevels();
+		if (starsLevels != null) {
+			JsonArrayBuilder levels = Json.createArrayBuilder();
+			for (String level : starsLevels) {
+				levels.add(level);
+			}
+			json.add("step", levels);
+		}
+		if (submission.getStatus() != null) {
+			json.add("status", submission.getStatus().name());
+		}
+		if (submission.isCompleted()) {
+			json.add("completionTime", submission.getCompletionTime());
+		}
+
+		CheckResult checkResult = submission.getCheckResult();
+		if (checkResult != null) {
+			json.add(
+					"result",
+					Json.createObjectBuilder()
+							.add("errors", checkResult.getCheckErrorCount())
+							.add("warnings",
+									checkResult.getCheckWarningCount())
+							.add("notes", checkResult.getCheckNoteCount())
+							.add("skipped",
+									checkResult.getCheckSkippedCount()));
+		}
+		return json.build();
+	}
+
+	public static JsonObject toJson(CheckBatch batch, boolean withTasks) {
+		JsonObjectBuilder states = Json.createObjectBuilder();
+		for (Map.Entry<SubmissionState, Integer> stateCount : batch
+				.getStateCounts().entrySet()) {
+			states.add(stateCount.getKey().name(), stateCount.getValue());
+		}
+		JsonArrayBuilder notQueued = Json.createArrayBuilder();
+		for (String packageName : batch.getNotQueued()) {
+			notQueued.add(packageName);
+		}
+
+		JsonObjectBuilder json = Json.createObjectBuilder()
+				.add("batchId", batch.getBatchId())
+				.add("contextId", batch.getContextIdRef())
+				.add("installerVersion", batch.getInstallerVersion())
+				.add("submitTime", batch.getSubmitTime())
+				.add("completed", batch.isCompleted())
+				.add("queued", batch.getSubmissions().size())
+				.add("states", states).add("notQueued", notQueued);
+
+		if (withTasks) {
+			JsonObjectBuilder tasks = Json.createObjectBuilder();
+			for (Map.Entry<String, CheckSubmission> submission : batch
+					.getSubmissions().entrySet()) {
+				tasks.add(submission.getKey(), submission.getValue()
+						.getTaskId());
+			}
+			json.add("tasks", tasks);
+		}
+		return json.build();
+	}
+
+	public static JsonObject error(String message) {
+		return Json.createObjectBuilder().add("error", message).build();
+	}
+
+	/**
+	 * @return context given either as {@code contextId} or by name as
+	 *         {@code context}
+	 * @throws IllegalArgumentException
+	 *             if missing or not found
+	 */
+	static Long getContextId(JsonObject request, PackageService packageService) {
+		JsonNumber contextIdNumber = request.getJsonNumber("contextId");
+		if (contextIdNumber != null) {
+			return contextIdNumber.longValue();
+		}
+		if (request.getString("context", null) == null) {
+			throw new IllegalArgumentException("contextId or context missing");
+		}
+		PackageContext packageContext = packageService
+				.getPackageRepositoryByName(request.getString("context"));
+		if (packageContext == null) {
+			throw new IllegalArgumentException("context not found");
+		}
+		return packageContext.getId();
+	}
+
+	/**
+	 * @return priority given as {@code priority}, one of {@code low},
+	 *         {@code normal} and {@code high}, normal by default
+	 * @throws IllegalArgumentException
+	 *             if unknown
+	 */
+	static int getPriority(JsonObject request) {
+		switch (request.getString("priority", "normal")) {
+		case "low":
+			return CheckTaskMessage.PRIORITY_LOW;
+		case "normal":
+			return CheckTaskMessage.PRIORITY_NORMAL;
+		case "high":
+			return CheckTaskMessage.PRIORITY_HIGH;
+		default:
+			throw new IllegalArgumentException(
+					"priority must be low, normal or high");
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.master.rest;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriInfo;
+
+import de.hopmann.msc.master.ejb.entity.CheckSweep;
+import de.hopmann.msc.master.ejb.entity.PackageContext;
+import de.hopmann.msc.master.ejb.service.CheckSweepService;
+import de.hopmann.msc.master.ejb.service.CheckSweepService.SweepStatus;
+import de.hopmann.msc.master.ejb.service.CheckTaskService;
+import de.hopmann.msc.master.ejb.service.PackageService;
+
+/**
+ * Sweeps checking all listed packages within a context
+ * 
+ */
+@Path("sweeps")
+@RequestScoped
+public class SweepResource {
+
+	@Inject
+	private CheckSweepService checkSweepService;
+
+	@Inject
+	private PackageService packageService;
+
+	@Context
+	private UriInfo uriInfo;
+
+	/**
+	 * @return status of all sweeps, latest first
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public JsonObject list() {
+		JsonArrayBuilder sweeps = Json.createArrayBuilder();
+		for (SweepStatus status : checkSweepService.getSweepStatus()) {
+			sweeps.add(toJson(status));
+		}
+		return Json.createObjectBuilder().add("sweeps", sweeps).build();
+	}
+
+	/**
+	 * Starts a sweep. Expects the context either as {@code contextId} or by
+	 * name as {@code context}, optionally the {@code installerVersion}.
+	 */
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response start(JsonObject request) {
+		if (request == null) {
+			return CheckResource.badRequest("context missing");
+		}
+		PackageContext packageContext;
+		try {
+			packageContext = packageService
+					.getPackageRepositoryById(SubmissionJson.getContextId(
+							request, packageService));
+		} catch (IllegalArgumentException e) {
+			return CheckResource.badRequest(e.getMessage());
+		}
+		if (packageContext == null) {
+			return CheckResource.badRequest("context not found");
+		}
+
+		String installerVersion = request.getString("installerVersion",
+				CheckTaskService.DEFAULT_INSTALLER_VERSION);
+		if (!CheckTaskService.isValidInstallerVersion(installerVersion)) {
+			return CheckResource.badRequest("invalid installerVersion "
+					+ installerVersion);
+		}
+
+		CheckSweep sweep = checkSweepService.startSweep(packageContext,
+				installerVersion);
+		SweepStatus status = checkSweepService.getSweepStatus(sweep.getId());
+		return Response
+				.accepted(toJson(status))
+				.location(
+						uriInfo.getAbsolutePathBuilder()
+								.path(String.valueOf(sweep.getId())).build())
+				.build();
+	}
+
+	@GET
+	@Path("{sweepId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response get(@PathParam("sweepId") Long sweepId) {
+		SweepStatus status = checkSweepService.getSweepStatus(sweepId);
+		if (status == null) {
+			return notFound();
+		}
+		return Response.ok(toJson(status)).build();
+	}
+
+	/**
+	 * Stops the sweep and cancels its outstanding tasks
+	 */
+	@DELETE
+	@Path("{sweepId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response cancel(@PathParam("sweepId") Long sweepId) {
+		if (checkSweepService.getSweepStatus(sweepId) == null) {
+			return notFound();
+		}
+		boolean cancelled = checkSweepService.cancelSweep(sweepId);
+		JsonObject status = toJson(checkSweepService.getSweepStatus(sweepId));
+		return cancelled ? Response.ok(status).build() : Response
+				.status(Status.CONFLICT).entity(status).build();
+	}
+
+	private static JsonObject toJson(SweepStatus status) {
+		return Json.createObjectBuilder()
+				.add("sweepId", status.getSweepId())
+				.add("context", status.getContextName())
+				.add("installerVersion", status.getInstallerVersion())
+				.add("state", status.getState().name())
+				.add("packageCount", status.getPackageCount())
+				.add("dispatchedCount", status.getDispatchedCount())
+				.add("completedCount", status.getCompletedCount())
+				.add("failedCount", status.getFailedCount())
+				.add("outstandingCount", status.getOutstandingCount())
+				.add("outstandingLimit", status.getOutstandingLimit())
+				.add("throughput", status.getThroughput())
+				.add("eta", status.getEta()).build();
+	}
+
+	private static Response notFound() {
+		return Response.status(Status.NOT_FOUND)
+				.entity(SubmissionJson.error("sweep not found")).build();
+	}
+}
@@ -15,7 +15,11 @@
  */
 package de.hopmann.repositories.commons.service;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
@@ -23,6 +27,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Root;
 import javax.transaction.Transactional;
 
@@ -31,6 +36,7 @@ import de.hopmann.msc.commons.model.PackageSource.PackageAccessor;
 import de.hopmann.msc.commons.model.Version;
 import de.hopmann.msc.commons.model.Version_;
 import de.hopmann.repositories.commons.entity.DependencyEntity;
+import de.hopmann.repositories.commons.entity.DependencyEntity_;
 import de.hopmann.repositories.commons.entity.PackageEntity;
 import de.hopmann.repositories.commons.entity.PackageEntity_;
 
@@ -147,6 +153,41 @@ public abstract class PackageCacheService<T extends PackageEntity> {
 		return packageEntity.getDependencies();
 	}
 
+	/**
+	 * @return names of all listed packages
+	 */
+	public List<String> getPackageNames() {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<String> query = cb.createQuery(String.class);
+		Root<T> p = query.from(packageEntityClass);
+		query.select(p.get(PackageEntity_.name)).distinct(true);
+		return entityManager.createQuery(query).getResultList();
+	}
+
+	/**
+	 * @return names of the declared dependencies of all listed packages, by
+	 *         package name
+	 */
+	public Map<String, Set<String>> getDependencyMap() {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+		Root<T> p = query.from(packageEntityClass);
+		Join<T, DependencyEntity> d = p.join(PackageEntity_.dependencies);
+		query.multiselect(p.get(PackageEntity_.name),
+				d.get(DependencyEntity_.dependingPackageName)).distinct(true);
+
+		Map<String, Set<String>> dependencyMap = new HashMap<String, Set<String>>();
+		for (Object[] row : entityManager.createQuery(query).getResultList()) {
+			Set<String> dependencies = dependencyMap.get(row[0]);
+			if (dependencies == null) {
+				dependencies = new HashSet<String>();
+				dependencyMap.put((String) row[0], dependencies);
+			}
+			dependencies.add((String) row[1]);
+		}
+		return dependencyMap;
+	}
+
 	// public boolean isAvailable(String packageName, Version sourceVersion) {
 	// CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 	// CriteriaQuery<PackageEntity> query = cb
@@ -21,11 +21,14 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -59,7 +62,9 @@ import de.hopmann.msc.commons.model.PackageSource;
 import de.hopmann.msc.commons.model.Version;
 import de.hopmann.msc.commons.qualifier.CRAN;
 import de.hopmann.msc.commons.qualifier.Configuration;
-import de.hopmann.msc.commons.util.DispatchingExecutor;
+import de.hopmann.msc.commons.service.MetricsRegistry;
+import de.hopmann.msc.commons.service.MetricsRegistry.Gauge;
+import de.hopmann.msc.commons.util.SingleFlightExecutor;
 import de.hopmann.repositories.commons.entity.DependencyEntity;
 import de.hopmann.repositories.cran.service.CRANPackageListingService;
 
@@ -75,15 +80,16 @@ public class CRANRepository extends PackageRepository {
 	private class SourceCacheItem {
 		private Path path;
 
-		private Set<SourcePathHolder> lockHolder = new HashSet<>(0);
+		private Set<SourcePathHolder> lockHolder = Collections
+				.newSetFromMap(new ConcurrentHashMap<SourcePathHolder, Boolean>());
 
 		// TODO use for cleanup and to release unused sources
 	}
 
 	private class SourceExecutor extends
-			DispatchingExecutor<PackageAccessor, SourceCacheItem, PathHolder> {
+			SingleFlightExecutor<PackageAccessor, SourceCacheItem, PathHolder> {
 
-		private Map<PackageAccessor, SourceCacheItem> sourceCacheMap = new HashMap<>();
+		private ConcurrentMap<PackageAccessor, SourceCacheItem> sourceCacheMap = new ConcurrentHashMap<>();
 
 		private CloseableHttpClient httpclient = HttpClients.createDefault();
 		private String SOURCE_EXTENSION = ".tar.gz";
@@ -140,7 +146,9 @@ public class CRANRepository extends PackageRepository {
 		protected SourceCacheItem load(PackageAccessor accessor)
 				throws IOException {
 			SourceCacheItem cacheItem = sourceCacheMap.get(accessor);
-			if (cacheItem == null) {
+			if (cacheItem != null) {
+				countSourceRequest("memory");
+			} else {
 				cacheItem = new SourceCacheItem();
 
 				Path sourcePath = Paths.get(sourceCacheDirectory,
@@ -157,6 +165,7 @@ public class CRANRepository extends PackageRepository {
 					} catch (PackageNotFoundException e1) {
 						// Not found, maybe new, so use default
 					}
+					countSourceRequest("download");
 					if (!archive) {
 						try {
 							log.info("CRAN: Downloading package " + accessor);
@@ -181,12 +190,17 @@ public class CRANRepository extends PackageRepository {
 						}
 					}
 				} else {
+					countSourceRequest("disk");
 					log.info("CRAN: Package source exists " + accessor);
 				}
 
 				cacheItem.path = sourcePath;
 
-				sourceCacheMap.put(accessor, cacheItem);
+				SourceCacheItem existingCacheItem = sourceCacheMap.putIfAbsent(
+						accessor, cacheItem);
+				if (existingCacheItem != null) {
+					cacheItem = existingCacheItem;
+				}
 			}
 
 			return cacheItem;
@@ -350,6 +364,9 @@ public class CRANRepository extends PackageRepository {
 	@Inject
 	private Logger log;
 
+	@Inject
+	private MetricsRegistry metrics;
+
 	@Configuration(value = "sourceCacheDirectory", required = true)
 	@Inject
 	private String sourceCacheDirectory;
@@ -378,9 +395,22 @@ public class CRANRepository extends PackageRepository {
 
 	@PostConstruct
 	private void init() {
-		sourceExecutor = new SourceExecutor(
-				(ThreadPoolExecutor) Executors.newFixedThreadPool(2,
-						managedThreadFactory));
+		final ThreadPoolExecutor sourceThreadPool = (ThreadPoolExecutor) Executors
+				.newFixedThreadPool(2, managedThreadFactory);
+		sourceExecutor = new SourceExecutor(sourceThreadPool);
+		metrics.gauge("msc_executor_queue_length",
+				"Tasks waiting for a thread of an executor", new Gauge() {
+					@Override
+					public double getValue() {
+						return sourceThreadPool.getQueue().size();
+					}
+				}, "executor", "sources");
+	}
+
+	private void countSourceRequest(String result) {
+		metrics.counter("msc_source_cache_requests_total",
+				"Package sources requested by where they were found",
+				"result", result).inc();
 	}
 
 	@Override
@@ -16,6 +16,7 @@
 package de.hopmann.msc.slave.installer;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,6 +25,8 @@ import java.util.Set;
 import de.hopmann.msc.commons.messages.CMDOutputMessage;
 import de.hopmann.msc.commons.model.CheckResult;
 import de.hopmann.msc.commons.model.InstallationResult;
+import de.hopmann.msc.commons.util.RCMDOutputReader.ProgressListener;
+import de.hopmann.msc.slave.util.CancellationHandle;
 
 public interface PackageInstaller {
 
@@ -73,8 +76,18 @@ public interface PackageInstaller {
 
 	List<String> getCorePackageNames();
 
+	/**
+	 * @param progressListener
+	 *            notified about each check step while checking, may be null
+	 * @param cancellation
+	 *            terminates the check when cancelled, may be null
+	 * @throws InterruptedIOException
+	 *             if the check was cancelled
+	 */
 	InstallerResult<CheckResult> checkPackage(Path sourceDirectoryPath,
 			Path installationLibraryPath, Path installationLogPath,
-			Path logOutputPath, Set<Path> libPath) throws IOException;
+			Path logOutputPath, Set<Path> libPath,
+			ProgressListener progressListener, CancellationHandle cancellation)
+			throws IOException;
 
 }
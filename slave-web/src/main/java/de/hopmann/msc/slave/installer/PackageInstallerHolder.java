@@ -19,6 +19,7 @@ import java.math.BigInteger;
 import java.util.List;
 
 import de.hopmann.msc.commons.exception.VersionFormatException;
+import de.hopmann.msc.commons.messages.MessageProperties;
 import de.hopmann.msc.commons.util.VersionHelper;
 
 /**
@@ -97,4 +98,30 @@ public class PackageInstallerHolder {
 	public String getOsType() {
 		return osType;
 	}
+
+	/**
+	 * @param versionNumber
+	 *            requested version
+	 * @param flavor
+	 *            requested flavor, null for any
+	 * @param architecture
+	 *            requested architecture, null for any
+	 * @return whether this installer satisfies the requested installer
+	 */
+	public boolean matches(BigInteger versionNumber, String flavor,
+			String architecture) {
+		return version.equals(versionNumber)
+				&& (flavor == null || flavor.equals(this.flavor))
+				&& (architecture == null || architecture
+						.equals(this.architecture));
+	}
+
+	/**
+	 * @return JMS message selector for check tasks this installer can process,
+	 *         consistent with {@link #matches(BigInteger, String, String)}
+	 */
+	public String getMessageSelector() {
+		return MessageProperties.createInstallerSelector(version, flavor,
+				architecture);
+	}
 }
@@ -16,6 +16,7 @@
 package de.hopmann.msc.slave.installer;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -33,6 +34,8 @@ import de.hopmann.msc.commons.model.CheckResult;
 import de.hopmann.msc.commons.model.InstallationResult;
 import de.hopmann.msc.commons.qualifier.Configuration;
 import de.hopmann.msc.commons.util.RCMDOutputReader;
+import de.hopmann.msc.commons.util.RCMDOutputReader.ProgressListener;
+import de.hopmann.msc.slave.util.CancellationHandle;
 import de.hopmann.msc.slave.util.RCheckBuilder;
 import de.hopmann.msc.slave.util.RInstallBuilder;
 
@@ -106,26 +109,50 @@ public class R302PackageInstaller implements PackageInstaller {
 	@Override
 	public InstallerResult<CheckResult> checkPackage(Path sourceDirectory,
 			Path installationLibraryPath, Path installationLogPath,
-			Path logOutputPath, Set<Path> libPath) throws IOException {
+			Path logOutputPath, Set<Path> libPath,
+			ProgressListener progressListener, CancellationHandle cancellation)
+			throws IOException {
 		log.info("Checking package from directory " + sourceDirectory);
 
-		RCMDOutputReader outputReader = new RCheckBuilder(sourceDirectory,
+		final RCMDOutputReader outputReader = new RCheckBuilder(sourceDirectory,
 				workingDirectoryBasePath).setRExecutablePath(rExecuteablePath)
 				.setInstallationLogPath(installationLogPath)
 				.setTargetLibraryPath(installationLibraryPath)
 				.setSourceLibraries(libPath)
 				.setLogPrintStream(new PrintStream(logOutputPath.toFile()))
 				.start();
+		outputReader.setProgressListener(progressListener);
+
+		// Kills the R process, so that reading output ends
+		AutoCloseable abortAction = new AutoCloseable() {
+			@Override
+			public void close() {
+				outputReader.abort();
+			}
+		};
+		if (cancellation != null) {
+			cancellation.register(abortAction);
+		}
 
 		InstallerResult<CheckResult> result = new InstallerResult<>();
 
-		CMDOutputMessage cMDOutputMessage = null;
-		while ((cMDOutputMessage = outputReader.readMessage()) != null) {
-			result.addOutputMessage(cMDOutputMessage);
+		try {
+			CMDOutputMessage cMDOutputMessage = null;
+			while ((cMDOutputMessage = outputReader.readMessage()) != null) {
+				result.addOutputMessage(cMDOutputMessage);
+			}
+			// TODO return code
+		} finally {
+			if (cancellation != null) {
+				cancellation.unregister(abortAction);
+			}
+			outputReader.close();
 		}
-		// TODO return code
 
-		outputReader.close();
+		if (cancellation != null && cancellation.isCancelled()) {
+			throw new InterruptedIOException("Check of package in "
+					+ sourceDirectory + " cancelled");
+		}
 
 		CheckResult checkResult = new CheckResult();
 		checkResult.setErrorCount(outputReader
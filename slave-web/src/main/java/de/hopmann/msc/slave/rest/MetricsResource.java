@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.rest;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import de.hopmann.msc.commons.service.MetricsRegistry;
+import de.hopmann.msc.commons.service.MetricsRegistry.Gauge;
+import de.hopmann.msc.slave.service.MessageReceiverBean;
+import de.hopmann.msc.slave.service.PackageCheckService;
+import de.hopmann.msc.slave.service.PackageInstallationBean;
+import de.hopmann.msc.slave.util.RCMDBuilder;
+
+/**
+ * Scrape endpoint of the slave metrics. Figures held by the services are
+ * registered as gauges on each scrape, counters and latencies are recorded
+ * where they occur.
+ * 
+ */
+@Path("metrics")
+@RequestScoped
+public class MetricsResource {
+
+	@Inject
+	private MetricsRegistry metrics;
+
+	@Inject
+	private MessageReceiverBean messageReceiverBean;
+
+	@Inject
+	private PackageCheckService packageCheckService;
+
+	@Inject
+	private PackageInstallationBean packageInstallationBean;
+
+	@GET
+	@Produces(MetricsRegistry.CONTENT_TYPE)
+	public String getMetrics() {
+		registerGauges();
+		return metrics.scrape();
+	}
+
+	private void registerGauges() {
+		metrics.gauge("msc_jms_queue_depth",
+				"Messages queued at the broker for this slave, as last sampled", new Gauge() {
+					@Override
+					public double getValue() {
+						int depth = messageReceiverBean.getQueueDepth();
+						return depth >= 0 ? depth : Double.NaN;
+					}
+				}, "queue", "tasks");
+
+		metrics.gauge("msc_executor_queue_length",
+				"Tasks waiting for a thread of an executor", new Gauge() {
+					@Override
+					public double getValue() {
+						return messageReceiverBean.getTasksPending();
+					}
+				}, "executor", "tasks");
+		metrics.gauge("msc_executor_queue_length",
+				"Tasks waiting for a thread of an executor", new Gauge() {
+					@Override
+					public double getValue() {
+						return packageInstallationBean
+								.getInstallationQueueLength();
+					}
+				}, "executor", "installations");
+		metrics.gauge("msc_executor_queue_length",
+				"Tasks waiting for a thread of an executor", new Gauge() {
+					@Override
+					public double getValue() {
+						return messageReceiverBean.getResultsPending();
+					}
+				}, "executor", "results");
+
+		metrics.gauge("msc_tasks_in_flight",
+				"Check tasks currently processed", new Gauge() {
+					@Override
+					public double getValue() {
+						return messageReceiverBean.getTasksInFlight();
+					}
+				});
+		metrics.gauge("msc_concurrency_limit",
+				"Limit of concurrently processed check tasks", new Gauge() {
+					@Override
+					public double getValue() {
+						return messageReceiverBean.getConcurrencyLimit();
+					}
+				});
+		metrics.gauge("msc_r_processes_active", "Running R CMD processes",
+				new Gauge() {
+					@Override
+					public double getValue() {
+						return RCMDBuilder.getActiveProcessCount();
+					}
+				});
+		metrics.gauge("msc_installation_reuse_ratio",
+				"Fraction of requested installations reusing existing ones",
+				new Gauge() {
+					@Override
+					public double getValue() {
+						return messageReceiverBean.getInstallationReuseRatio();
+					}
+				});
+
+		metrics.counter("msc_check_result_cache_requests_total",
+				"Check result cache lookups by result", new Gauge() {
+					@Override
+					public double getValue() {
+						return packageCheckService.getCheckResultCache()
+								.getHitCount();
+					}
+				}, "result", "hit");
+		metrics.counter("msc_check_result_cache_requests_total",
+				"Check result cache lookups by result", new Gauge() {
+					@Override
+					public double getValue() {
+						return packageCheckService.getCheckResultCache()
+								.getMissCount();
+					}
+				}, "result", "miss");
+	}
+}
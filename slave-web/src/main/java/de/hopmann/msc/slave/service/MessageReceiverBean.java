@@ -15,16 +15,25 @@
  */
 package de.hopmann.msc.slave.service;
 
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.Resource;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
 import javax.ejb.Schedule;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
@@ -32,23 +41,41 @@ import javax.ejb.Timer;
 import javax.enterprise.concurrent.ManagedThreadFactory;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.Queue;
+import javax.jms.QueueBrowser;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 import javax.jms.Topic;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.CancelTaskMessage;
 import de.hopmann.msc.commons.messages.CheckTaskMessage;
+import de.hopmann.msc.commons.messages.ExceptionResultMessage;
+import de.hopmann.msc.commons.messages.OutputStatusMessage;
+import de.hopmann.msc.commons.messages.MessageProperties;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.messages.ProgressBatchMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage;
+import de.hopmann.msc.commons.messages.ResultBatchMessage;
 import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.messages.codec.MessageCodecs;
+import de.hopmann.msc.commons.qualifier.Configuration;
 import de.hopmann.msc.commons.qualifier.JMSDestination;
 import de.hopmann.msc.commons.qualifier.JMSDestination.DestinationType;
+import de.hopmann.msc.commons.service.MetricsRegistry;
 import de.hopmann.msc.slave.installer.PackageInstallerHolder;
+import de.hopmann.msc.slave.service.ResolverBean.CheckTaskHolder;
+import de.hopmann.msc.slave.util.AdaptiveConcurrencyController;
+import de.hopmann.msc.slave.util.CancellationHandle;
+import de.hopmann.msc.slave.util.InstallationIndex;
+import de.hopmann.msc.slave.util.PriorityTaskScheduler;
+import de.hopmann.msc.slave.util.SentOutputCache;
+import de.hopmann.msc.slave.util.TaskProgress;
 
 /**
  * Class handles the receiving of checking task messages. Core purpose is to
@@ -60,12 +87,34 @@ import de.hopmann.msc.slave.installer.PackageInstallerHolder;
 @Startup
 public class MessageReceiverBean {
 
+	/**
+	 * Maximum number of steps per task and progress message
+	 */
+	private static final int MAX_PROGRESS_STEPS = 50;
+
+	/**
+	 * Maximum number of remembered cancellations of tasks not yet received
+	 */
+	private static final int MAX_CANCELLED_TASK_IDS = 1000;
+
+	/**
+	 * Maximum number of queued check tasks counted when sampling the queue
+	 * depth
+	 */
+	private static final int MAX_BROWSED_MESSAGES = 10000;
+
 	@Inject
 	private Logger log;
 
+	@Inject
+	private MetricsRegistry metrics;
+
 	@Inject
 	private Instance<Session> jmsSessionInstance;
 
+	@Inject
+	private Instance<Connection> jmsConnectionInstance;
+
 	@Inject
 	@JMSDestination(DestinationType.SLAVE)
 	private Queue slaveQueue;
@@ -74,20 +123,135 @@ public class MessageReceiverBean {
 	@JMSDestination(DestinationType.MASTER)
 	private Topic masterTopic;
 
+	@Inject
+	@JMSDestination(DestinationType.PROGRESS)
+	private Instance<Topic> progressTopicInstance;
+
+	@Inject
+	@JMSDestination(DestinationType.CONTROL)
+	private Instance<Topic> controlTopicInstance;
+
 	@Inject
 	private PackageInstallerBean packageInstallerBean;
 
 	@Inject
 	private PackageCheckService checkProvider;
 
+	@Inject
+	private PackageInstallationBean packageInstallationBean;
+
+	@Inject
+	@Configuration(value = "workerConcurrencyMin", required = false)
+	private Integer workerConcurrencyMin;
+
+	@Inject
+	@Configuration(value = "workerConcurrencyMax", required = false)
+	private Integer workerConcurrencyMax;
+
+	/**
+	 * Memory in MB to keep available when adding workers
+	 */
+	@Inject
+	@Configuration(value = "workerMemoryReserve", required = false)
+	private Integer workerMemoryReserve;
+
+	/**
+	 * Waiting time in seconds after which a check task gains one priority
+	 * level
+	 */
+	@Inject
+	@Configuration(value = "taskAgingInterval", required = false)
+	private Integer taskAgingInterval;
+
+	/**
+	 * Number of received check tasks to choose the next task from, defaults
+	 * to twice the maximum concurrency
+	 */
+	@Inject
+	@Configuration(value = "taskWindowSize", required = false)
+	private Integer taskWindowSize;
+
+	/**
+	 * Maximum number of check results published within a single message
+	 */
+	@Inject
+	@Configuration(value = "resultBatchSize", required = false)
+	private Integer resultBatchSize;
+
+	/**
+	 * Time in ms to wait for further check results to publish along
+	 */
+	@Inject
+	@Configuration(value = "resultBatchDelay", required = false)
+	private Integer resultBatchDelay;
+
+	/**
+	 * Number of output hashes published before to remember, whose outputs are
+	 * then sent by hash only, 0 to always send outputs
+	 */
+	@Inject
+	@Configuration(value = "sentOutputCacheSize", required = false)
+	private Integer sentOutputCacheSize;
+
+	/**
+	 * Interval in ms to publish progress of running check tasks, 0 to disable
+	 */
+	@Inject
+	@Configuration(value = "progressInterval", required = false)
+	private Integer progressInterval;
+
+	/**
+	 * Preferred encoding of published results, used if accepted by the master
+	 */
+	@Inject
+	@Configuration(value = "messageEncoding", required = false)
+	private String messageEncoding;
+
+	/**
+	 * Result encodings accepted by the master, as announced with the latest
+	 * check task
+	 */
+	private volatile String acceptedResultEncodings;
+
+	/**
+	 * Number of check tasks queued at the broker for the installers of this
+	 * slave as last sampled, -1 if not yet sampled
+	 */
+	private volatile int queueDepth = -1;
+
 	private ExecutorService processMessageExecutor;
-	private Semaphore processBoundSemaphore;
+	private volatile AdaptiveConcurrencyController concurrencyController;
+
+	private SentOutputCache sentOutputCache;
+	private volatile PriorityTaskScheduler taskScheduler;
 
 	@Resource
 	private ManagedThreadFactory managedThreadFactory;
 
-	private ArrayBlockingQueue<ResultMessage> resultMessageQueue = new ArrayBlockingQueue<>(
-			10, true);
+	private volatile ArrayBlockingQueue<ResultMessage> resultMessageQueue;
+
+	private final Set<TaskProgress> runningTasks = Collections
+			.newSetFromMap(new ConcurrentHashMap<TaskProgress, Boolean>());
+
+	/**
+	 * Received check tasks by task id, from receiving until finished
+	 */
+	private final ConcurrentMap<String, CheckTaskMessageProcessor> tasksById = new ConcurrentHashMap<>();
+
+	/**
+	 * Ids of cancelled tasks which may still be queued at the broker, guards
+	 * registration of tasks
+	 */
+	private final Set<String> cancelledTaskIds = Collections
+			.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, Boolean> eldest) {
+					return size() > MAX_CANCELLED_TASK_IDS;
+				}
+			});
 
 	public MessageReceiverBean() {
 
@@ -109,8 +273,9 @@ public class MessageReceiverBean {
 
 		private void setupConsumer() throws JMSException {
 			this.session = jmsSessionInstance.get();
-			this.consumer = session.createConsumer(slaveQueue);
-			// TODO selector
+			// Only receive tasks this installer is able to process
+			this.consumer = session.createConsumer(slaveQueue,
+					installerHolder.getMessageSelector());
 		}
 
 		@Override
@@ -132,7 +297,7 @@ public class MessageReceiverBean {
 							+ packageInstallerBean + " closed", e);
 					break;
 				} catch (Exception e) {
-					// TODO return error
+					// Not a readable check task, no result can be correlated
 					log.log(Level.SEVERE, "Message contains error", e);
 				}
 			}
@@ -151,34 +316,53 @@ public class MessageReceiverBean {
 			if (message == null) {
 				throw new InterruptedException("Consumer closed");
 			}
+			countConsumed("tasks");
 
-			if (message instanceof TextMessage) {
-				TextMessage textMessage = (TextMessage) message;
-
-				CheckTaskMessage taskMessage;
-				try {
-					Unmarshaller unmarshaller = JAXBContext.newInstance(
-							CheckTaskMessage.class).createUnmarshaller();
-
-					taskMessage = (CheckTaskMessage) unmarshaller
-							.unmarshal(new StringReader(textMessage.getText()));
+			CheckTaskMessage taskMessage;
+			try {
+				taskMessage = (CheckTaskMessage) MessageCodecs
+						.readMessage(message);
+			} catch (MessageCodecException | ClassCastException e) {
+				// TODO
+				throw new IllegalArgumentException(
+						"Message contains no valid check task representation",
+						e);
+			}
 
-				} catch (JAXBException e) {
-					// TODO
-					throw new IllegalArgumentException(
-							"Message contains no valid check task representation",
-							e);
-				}
+			String acceptEncoding = message
+					.getStringProperty(MessageProperties.ACCEPT_ENCODING);
+			if (acceptEncoding != null) {
+				acceptedResultEncodings = acceptEncoding;
+			}
 
-				processBoundSemaphore.acquire();
+			CheckTaskMessageProcessor processor = new CheckTaskMessageProcessor(
+					taskMessage);
+			// Registered in advance, so that cancellation is not missed
+			if (!registerTask(processor)) {
+				log.info("Skipping cancelled check task "
+						+ taskMessage.getTaskId());
+				return;
+			}
+			try {
+				// Resolve in advance to prefer tasks reusing installations
+				processor.resolve();
+			} catch (RuntimeException e) {
+				// E.g. unknown package or source, the master awaits a result
+				log.log(Level.WARNING, "Could not resolve check task "
+						+ taskMessage.getTaskId(), e);
 				try {
-					processMessageExecutor
-							.submit(new CheckTaskMessageProcessor(taskMessage,
-									installerHolder));
-				} catch (Exception e) {
-					// TODO log
-					processBoundSemaphore.release();
+					returnException(taskMessage);
+				} finally {
+					unregisterTask(processor);
 				}
+				return;
+			}
+			try {
+				// Blocks while the window of pending tasks is full
+				taskScheduler.submit(processor, taskMessage.getPriority());
+			} catch (InterruptedException | RuntimeException e) {
+				unregisterTask(processor);
+				throw e;
 			}
 
 		}
@@ -191,38 +375,243 @@ public class MessageReceiverBean {
 
 	}
 
+	/**
+	 * Reports a check task as failed which did not produce a result, so that
+	 * the master does not wait for it
+	 */
+	private void returnException(CheckTaskMessage taskMessage)
+			throws InterruptedException {
+		ExceptionResultMessage exceptionResultMessage = new ExceptionResultMessage();
+		PackageResultMessage packageMessage = new PackageResultMessage();
+		if (taskMessage.getPackageDescription() != null) {
+			packageMessage.setName(taskMessage.getPackageDescription()
+					.getName());
+			packageMessage.setPackageVersion(taskMessage
+					.getPackageDescription().getPackageVersion());
+		}
+		exceptionResultMessage.setPackage(packageMessage);
+		exceptionResultMessage.setPackageInstaller(taskMessage
+				.getPackageInstaller());
+		exceptionResultMessage.setContextIdRef(taskMessage.getContextIdRef());
+		exceptionResultMessage.setTaskId(taskMessage.getTaskId());
+		resultMessageQueue.put(exceptionResultMessage);
+	}
+
 	/**
 	 * Represents the actual execution of a checking task. Implementation makes
 	 * sure that resulting message is produced on the main thread, while
 	 * executing checking tasks in parallel.
 	 * 
 	 */
-	private class CheckTaskMessageProcessor implements Runnable {
+	private class CheckTaskMessageProcessor implements Runnable,
+			PriorityTaskScheduler.Affinity {
 
 		private CheckTaskMessage taskMessage;
-		private PackageInstallerHolder installerHolder;
+		private CheckTaskHolder checkTaskHolder;
+		private Set<String> installationKeys;
+		private final CancellationHandle cancellation = new CancellationHandle();
 
-		public CheckTaskMessageProcessor(CheckTaskMessage taskMessage,
-				PackageInstallerHolder installerHolder) {
+		public CheckTaskMessageProcessor(CheckTaskMessage taskMessage) {
 			this.taskMessage = taskMessage;
-			this.installerHolder = installerHolder;
+		}
+
+		/**
+		 * Resolves the check task and its required installations
+		 */
+		public void resolve() {
+			checkTaskHolder = checkProvider.resolveTask(taskMessage);
+			installationKeys = checkProvider
+					.getInstallationKeys(checkTaskHolder);
+		}
+
+		/**
+		 * @return fraction of required installations which are already
+		 *         installed or being installed
+		 */
+		@Override
+		public double getAffinity() {
+			return packageInstallationBean.getInstallationIndex()
+					.getReuseScore(installationKeys);
 		}
 
 		@Override
 		public void run() {
+			if (cancellation.isCancelled()) {
+				// Cancelled while being resolved
+				unregisterTask(this);
+				return;
+			}
+			TaskProgress progress = null;
+			if (progressInterval > 0) {
+				progress = new TaskProgress(taskMessage.getContextIdRef(),
+						taskMessage.getPackageDescription().getName(),
+						MAX_PROGRESS_STEPS);
+				progress.setTaskId(taskMessage.getTaskId());
+				runningTasks.add(progress);
+			}
 			try {
 				ResultMessage checkResult = checkProvider.checkTask(
-						taskMessage, installerHolder);
+						checkTaskHolder, progress, cancellation);
+				if (cancellation.isCancelled()) {
+					log.info("Cancelled check task "
+							+ taskMessage.getTaskId());
+					return;
+				}
 				checkResult.setContextIdRef(taskMessage.getContextIdRef());// To
 																			// correlate
 																			// contexts
+				checkResult.setTaskId(taskMessage.getTaskId());
 				resultMessageQueue.put(checkResult);
+
+				InstallationIndex installationIndex = packageInstallationBean
+						.getInstallationIndex();
+				log.info("Installation reuse ratio "
+						+ installationIndex.getReuseRatio() + " ("
+						+ installationIndex.getBuiltCount() + " of "
+						+ installationIndex.getRequestedCount()
+						+ " requested installations built)");
 			} catch (InterruptedException e) {
 
 			} catch (Exception e) {
 				log.log(Level.SEVERE, "Error while checking package", e);
+				if (!cancellation.isCancelled()) {
+					try {
+						returnException(taskMessage);
+					} catch (InterruptedException e1) {
+
+					}
+				}
 			} finally {
-				processBoundSemaphore.release();
+				if (progress != null) {
+					if (cancellation.isCancelled()) {
+						// Not reported anymore
+						progress.drain();
+					}
+					progress.finish();
+				}
+				unregisterTask(this);
+			}
+		}
+	}
+
+	/**
+	 * Receives control messages of the integrating layer, which are published
+	 * to all slaves.
+	 * 
+	 */
+	private class ControlMessageReceiver implements Runnable {
+
+		private Session session;
+		private MessageConsumer consumer;
+
+		private void setupConsumer() throws JMSException {
+			this.session = jmsSessionInstance.get();
+			this.consumer = session.createConsumer(controlTopicInstance.get());
+		}
+
+		@Override
+		public void run() {
+			try {
+				setupConsumer();
+			} catch (JMSException | RuntimeException e) {
+				log.log(Level.SEVERE,
+						"Could not set-up message consumer for control messages",
+						e);
+				return;
+			}
+
+			while (true) {
+				Object content;
+				try {
+					Message message = consumer.receive();
+					if (message == null) {
+						// Consumer closed
+						return;
+					}
+					countConsumed("control");
+					content = MessageCodecs.readMessage(message);
+				} catch (JMSException e) {
+					log.log(Level.WARNING, "Control message receiver closed", e);
+					return;
+				} catch (MessageCodecException e) {
+					log.log(Level.WARNING, "Could not read control message", e);
+					continue;
+				}
+
+				if (content instanceof CancelTaskMessage) {
+					cancelTask(((CancelTaskMessage) content).getTaskId());
+				} else if (content instanceof OutputStatusMessage) {
+					OutputStatusMessage outputStatus = (OutputStatusMessage) content;
+					sentOutputCache.markSent(outputStatus.getStoredHashes());
+					sentOutputCache.forget(outputStatus.getMissingHashes());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Periodically publishes the steps running check tasks passed, so that the
+	 * integrating layer can follow their progress. Progress messages are not
+	 * persistent and expire if not consumed in time.
+	 * 
+	 */
+	private class ProgressMessageSender implements Runnable {
+
+		private final long interval;
+		private Session session;
+		private MessageProducer producer;
+
+		public ProgressMessageSender(long interval) {
+			this.interval = interval;
+		}
+
+		private void setupProducer() throws JMSException {
+			this.session = jmsSessionInstance.get();
+			this.producer = session.createProducer(progressTopicInstance.get());
+			producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+			producer.setTimeToLive(10 * interval);
+		}
+
+		@Override
+		public void run() {
+			try {
+				setupProducer();
+			} catch (JMSException | RuntimeException e) {
+				log.log(Level.SEVERE,
+						"Could not set-up message producer for check task progress",
+						e);
+				return;
+			}
+
+			while (true) {
+				try {
+					Thread.sleep(interval);
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				ProgressBatchMessage batch = new ProgressBatchMessage();
+				for (TaskProgress progress : runningTasks) {
+					if (progress.isFinished()) {
+						runningTasks.remove(progress);
+					}
+					ProgressMessage progressMessage = progress.drain();
+					if (progressMessage != null) {
+						batch.addProgress(progressMessage);
+					}
+				}
+				if (batch.getProgress().isEmpty()) {
+					continue;
+				}
+
+				try {
+					producer.send(MessageCodecs.createMessage(session, batch,
+							MessageCodecs.selectEncoding(messageEncoding,
+									acceptedResultEncodings)));
+				} catch (MessageCodecException | JMSException e) {
+					log.log(Level.WARNING, "Could not publish progress of "
+							+ batch.getProgress().size() + " check tasks", e);
+				}
 			}
 		}
 	}
@@ -230,16 +619,33 @@ public class MessageReceiverBean {
 	/**
 	 * Unit to post checking results back to the integrating layer. Messages may
 	 * be sent only on a single thread, requiring to introduce a shared result
-	 * message queue.
+	 * message queue. Results arriving within a short period are published
+	 * together as {@link ResultBatchMessage}.
 	 * 
 	 */
 	private class CheckResultMessageSender implements Runnable {
 
+		/**
+		 * Delay in ms before publishing a failed batch again, doubled with
+		 * each further failure up to {@link #MAX_RETRY_DELAY}
+		 */
+		private static final long MIN_RETRY_DELAY = 1000;
+		private static final long MAX_RETRY_DELAY = 60 * 1000;
+
+		private final int batchSize;
+		private final long batchDelay;
 		private Session session;
 		private MessageProducer producer;
 
+		public CheckResultMessageSender(int batchSize, long batchDelay) {
+			this.batchSize = Math.max(1, batchSize);
+			this.batchDelay = batchDelay;
+		}
+
 		private void setupProducer() throws JMSException {
-			this.session = jmsSessionInstance.get();
+			// Transacted to publish a batch completely or not at all
+			this.session = jmsConnectionInstance.get().createSession(true,
+					Session.SESSION_TRANSACTED);
 			this.producer = session.createProducer(masterTopic);
 		}
 
@@ -254,31 +660,99 @@ public class MessageReceiverBean {
 				return;
 			}
 
+			// Failed batch to be published again before taking further results
+			List<ResultMessage> batch = null;
+			long retryDelay = MIN_RETRY_DELAY;
 			while (true) {
 				try {
-					ResultMessage checkResultMessage = resultMessageQueue
-							.take();
-					TextMessage message = session.createTextMessage();
-					JAXBContext newInstance = JAXBContext
-							.newInstance(ResultMessage.class);
-					StringWriter stringWriter = new StringWriter();
-					newInstance.createMarshaller().marshal(checkResultMessage,
-							stringWriter);
-
-					message.setText(stringWriter.toString());
-
-					producer.send(message);
+					if (batch == null) {
+						batch = takeBatch();
+					}
 				} catch (InterruptedException e) {
 					return;
-				} catch (JAXBException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (JMSException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+				}
+
+				try {
+					publish(batch);
+					batch = null;
+					retryDelay = MIN_RETRY_DELAY;
+				} catch (MessageCodecException | JMSException e) {
+					log.log(Level.SEVERE, "Could not publish " + batch.size()
+							+ " check results, retrying in " + retryDelay
+							+ " ms", e);
+					rollback();
+					try {
+						Thread.sleep(retryDelay);
+					} catch (InterruptedException e1) {
+						return;
+					}
+					retryDelay = Math.min(2 * retryDelay, MAX_RETRY_DELAY);
+				}
+			}
+
+		}
+
+		/**
+		 * Discards the failed batch from the session, which is set up again if
+		 * it is not usable anymore
+		 */
+		private void rollback() {
+			try {
+				session.rollback();
+			} catch (JMSException e) {
+				log.log(Level.WARNING, "Could not roll back result publishing",
+						e);
+				try {
+					session.close();
+				} catch (JMSException e1) {
+					// Closed anyway
+				}
+				try {
+					setupProducer();
+				} catch (JMSException e1) {
+					log.log(Level.WARNING,
+							"Could not set-up message producer again", e1);
 				}
 			}
+		}
 
+		/**
+		 * Waits for the next result and collects further ones until the batch
+		 * is full or the batch delay elapsed
+		 */
+		private List<ResultMessage> takeBatch() throws InterruptedException {
+			List<ResultMessage> batch = new ArrayList<>(batchSize);
+			batch.add(resultMessageQueue.take());
+
+			long deadline = System.currentTimeMillis() + batchDelay;
+			while (batch.size() < batchSize) {
+				long remaining = deadline - System.currentTimeMillis();
+				ResultMessage resultMessage = remaining > 0 ? resultMessageQueue
+						.poll(remaining, TimeUnit.MILLISECONDS)
+						: resultMessageQueue.poll();
+				if (resultMessage == null) {
+					break;
+				}
+				batch.add(resultMessage);
+			}
+			return batch;
+		}
+
+		private void publish(List<ResultMessage> batch)
+				throws MessageCodecException, JMSException {
+			// Outputs the master already stores are sent by hash only
+			sentOutputCache.replaceSentOutputs(batch);
+			Object content = batch.size() == 1 ? batch.get(0)
+					: new ResultBatchMessage(batch);
+			String encoding = MessageCodecs.selectEncoding(messageEncoding,
+					acceptedResultEncodings);
+
+			Message message = MessageCodecs.createMessage(session, content,
+					encoding);
+			producer.send(message);
+			session.commit();
+
+			log.info("Published " + batch.size() + " check results");
 		}
 
 	}
@@ -295,9 +769,39 @@ public class MessageReceiverBean {
 		log.info("Registering message consumers");
 		// TODO
 
-		processMessageExecutor = Executors.newFixedThreadPool(4,
-				managedThreadFactory);
-		processBoundSemaphore = new Semaphore(4, true);
+		concurrencyController = new AdaptiveConcurrencyController(
+				workerConcurrencyMin != null ? workerConcurrencyMin : 1,
+				workerConcurrencyMax != null ? workerConcurrencyMax : Runtime
+						.getRuntime().availableProcessors(),
+				(workerMemoryReserve != null ? workerMemoryReserve : 1024)
+						* 1024L * 1024L);
+		log.info("Processing up to " + concurrencyController.getLimit()
+				+ " check tasks concurrently");
+
+		sentOutputCache = new SentOutputCache(
+				sentOutputCacheSize != null ? sentOutputCacheSize : 10000);
+
+		if (resultBatchSize == null) {
+			resultBatchSize = 1;
+		}
+		if (resultBatchDelay == null) {
+			resultBatchDelay = 0;
+		}
+		if (progressInterval == null) {
+			progressInterval = 0;
+		}
+		// Room for a full batch while the previous one is published
+		resultMessageQueue = new ArrayBlockingQueue<>(Math.max(10,
+				2 * resultBatchSize), true);
+
+		// Concurrency is bounded by the controller
+		processMessageExecutor = Executors.newFixedThreadPool(
+				concurrencyController.getMaxLimit(), managedThreadFactory);
+		taskScheduler = new PriorityTaskScheduler(concurrencyController,
+				processMessageExecutor, (taskAgingInterval != null ? taskAgingInterval
+						: 60) * 1000L, taskWindowSize != null ? taskWindowSize
+						: 2 * concurrencyController.getMaxLimit());
+		managedThreadFactory.newThread(taskScheduler).start();
 
 		for (PackageInstallerHolder packageInstaller : packageInstallerBean
 				.getAvailableInstaller()) {
@@ -311,7 +815,202 @@ public class MessageReceiverBean {
 			}
 		}
 
-		managedThreadFactory.newThread(new CheckResultMessageSender()).start();
+		managedThreadFactory.newThread(
+				new CheckResultMessageSender(resultBatchSize,
+						resultBatchDelay)).start();
+
+		managedThreadFactory.newThread(new ControlMessageReceiver()).start();
+
+		if (progressInterval > 0) {
+			managedThreadFactory.newThread(
+					new ProgressMessageSender(progressInterval)).start();
+		}
+	}
+
+	/**
+	 * @return false if the task has already been cancelled
+	 */
+	private boolean registerTask(CheckTaskMessageProcessor processor) {
+		String taskId = processor.taskMessage.getTaskId();
+		if (taskId == null) {
+			return true;
+		}
+		synchronized (cancelledTaskIds) {
+			if (cancelledTaskIds.remove(taskId)) {
+				return false;
+			}
+			tasksById.put(taskId, processor);
+			return true;
+		}
+	}
+
+	private void unregisterTask(CheckTaskMessageProcessor processor) {
+		String taskId = processor.taskMessage.getTaskId();
+		if (taskId != null) {
+			tasksById.remove(taskId, processor);
+		}
+	}
+
+	/**
+	 * Stops a received check task. Pending tasks are dropped, running tasks
+	 * stop waiting for installations and terminate their R processes, which
+	 * frees their slot and releases their installations. No result is
+	 * published for cancelled tasks. Tasks received later are skipped.
+	 * 
+	 * @return whether the task was received by this slave
+	 */
+	public boolean cancelTask(String taskId) {
+		CheckTaskMessageProcessor processor;
+		synchronized (cancelledTaskIds) {
+			processor = tasksById.get(taskId);
+			if (processor == null) {
+				// Still queued, processed by another slave or already
+				// finished
+				cancelledTaskIds.add(taskId);
+				return false;
+			}
+		}
+		processor.cancellation.cancel();
+		if (taskScheduler != null && taskScheduler.remove(processor)) {
+			unregisterTask(processor);
+			log.info("Removed pending check task " + taskId);
+		} else {
+			log.info("Cancelling check task " + taskId);
+		}
+		return true;
+	}
+
+	/**
+	 * Periodically adapts the number of concurrently processed check tasks to
+	 * the observed system resources.
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*/15", persistent = false)
+	private void adjustConcurrency() {
+		if (concurrencyController == null) {
+			return;
+		}
+		int previousLimit = concurrencyController.getLimit();
+		int limit = concurrencyController.adjust();
+		if (limit != previousLimit) {
+			log.info("Adjusted concurrent check tasks from " + previousLimit
+					+ " to " + limit + " (load "
+					+ concurrencyController.getCpuLoad() + ", available memory "
+					+ concurrencyController.getAvailableMemory()
+					+ ", R process memory "
+					+ concurrencyController.getProcessMemory() + ")");
+		}
+	}
+
+	/**
+	 * Periodically counts the check tasks queued at the broker which the
+	 * installers of this slave are able to process, up to
+	 * {@link #MAX_BROWSED_MESSAGES}. Does not block the metric getters while
+	 * browsing.
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*/15", persistent = false)
+	@Lock(LockType.READ)
+	private void sampleQueueDepth() {
+		String messageSelector = getInstallerSelector();
+		if (messageSelector == null) {
+			return;
+		}
+		Session session = null;
+		try {
+			session = jmsSessionInstance.get();
+			QueueBrowser browser = session.createBrowser(slaveQueue,
+					messageSelector);
+			int depth = 0;
+			Enumeration<?> messages = browser.getEnumeration();
+			while (messages.hasMoreElements() && depth < MAX_BROWSED_MESSAGES) {
+				messages.nextElement();
+				depth++;
+			}
+			browser.close();
+			queueDepth = depth;
+		} catch (JMSException | RuntimeException e) {
+			log.log(Level.FINE, "Could not browse check task queue", e);
+		} finally {
+			if (session != null) {
+				jmsSessionInstance.destroy(session);
+			}
+		}
+	}
+
+	/**
+	 * @return selector matching the check tasks of any available installer,
+	 *         null if no installer is available
+	 */
+	private String getInstallerSelector() {
+		StringBuilder messageSelector = new StringBuilder();
+		for (PackageInstallerHolder packageInstaller : packageInstallerBean
+				.getAvailableInstaller()) {
+			if (messageSelector.length() > 0) {
+				messageSelector.append(" OR ");
+			}
+			messageSelector.append('(')
+					.append(packageInstaller.getMessageSelector()).append(')');
+		}
+		return messageSelector.length() > 0 ? messageSelector.toString()
+				: null;
+	}
+
+	private void countConsumed(String destination) {
+		metrics.counter("msc_jms_messages_consumed_total",
+				"Messages consumed by destination", "destination",
+				destination).inc();
+	}
+
+	/**
+	 * @return number of check tasks queued at the broker for the installers of
+	 *         this slave as last sampled, -1 if not yet sampled
+	 */
+	@Lock(LockType.READ)
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @return number of check results waiting to be published
+	 */
+	@Lock(LockType.READ)
+	public int getResultsPending() {
+		return resultMessageQueue != null ? resultMessageQueue.size() : 0;
+	}
+
+	/**
+	 * @return current limit of concurrently processed check tasks, 0 if not
+	 *         yet set up
+	 */
+	@Lock(LockType.READ)
+	public int getConcurrencyLimit() {
+		return concurrencyController != null ? concurrencyController
+				.getLimit() : 0;
+	}
+
+	/**
+	 * @return number of received check tasks waiting to be processed
+	 */
+	@Lock(LockType.READ)
+	public int getTasksPending() {
+		return taskScheduler != null ? taskScheduler.getPendingCount() : 0;
+	}
+
+	/**
+	 * @return fraction of installations requested by check tasks which could
+	 *         reuse existing installations
+	 */
+	@Lock(LockType.READ)
+	public double getInstallationReuseRatio() {
+		return packageInstallationBean.getInstallationIndex().getReuseRatio();
+	}
+
+	/**
+	 * @return number of check tasks currently processed
+	 */
+	@Lock(LockType.READ)
+	public int getTasksInFlight() {
+		return concurrencyController != null ? concurrencyController
+				.getInFlight() : 0;
 	}
 
 }
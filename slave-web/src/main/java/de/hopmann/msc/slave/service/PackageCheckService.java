@@ -22,28 +22,40 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import de.hopmann.msc.commons.exception.PackageNotFoundException;
+import de.hopmann.msc.commons.exception.PackageResolvingException;
 import de.hopmann.msc.commons.messages.CheckResultMessage;
 import de.hopmann.msc.commons.messages.CheckTaskMessage;
 import de.hopmann.msc.commons.messages.ExceptionResultMessage;
+import de.hopmann.msc.commons.messages.PackageInstallerMessage;
 import de.hopmann.msc.commons.messages.ResultMessage;
 import de.hopmann.msc.commons.model.CheckResult;
 import de.hopmann.msc.commons.model.DependencyType;
+import de.hopmann.msc.commons.model.PackageSource.PackageAccessor;
 import de.hopmann.msc.commons.model.PackageSource.PathHolder;
+import de.hopmann.msc.commons.qualifier.Configuration;
+import de.hopmann.msc.commons.service.MetricsRegistry;
+import de.hopmann.msc.commons.util.CheckFingerprint;
+import de.hopmann.msc.commons.util.RCMDOutputReader.ProgressListener;
 import de.hopmann.msc.slave.entity.PackageInstallationEntity;
 import de.hopmann.msc.slave.installer.PackageInstaller.InstallerResult;
 import de.hopmann.msc.slave.installer.PackageInstallerHolder;
 import de.hopmann.msc.slave.service.PackageInstallationBean.InstallationException;
 import de.hopmann.msc.slave.service.ResolverBean.CheckTaskHolder;
 import de.hopmann.msc.slave.service.ResolverBean.PackageResolved;
+import de.hopmann.msc.slave.util.CancellationHandle;
+import de.hopmann.msc.slave.util.CheckResultCache;
 import de.hopmann.msc.slave.util.InstallationContext;
 
 /**
@@ -53,6 +65,11 @@ import de.hopmann.msc.slave.util.InstallationContext;
 @ApplicationScoped
 public class PackageCheckService {
 
+	private static final String PHASE_RESOLVE = "resolve";
+	private static final String PHASE_DOWNLOAD = "download";
+	private static final String PHASE_INSTALL = "install";
+	private static final String PHASE_CHECK = "check";
+
 	private PackageInstallationBean packageInstallationService;
 	private ResolverBean resolverBean;
 
@@ -70,19 +87,210 @@ public class PackageCheckService {
 	@Inject
 	private Logger log;
 
+	@Inject
+	private MetricsRegistry metrics;
+
+	/**
+	 * Number of check results kept by fingerprint of their inputs, defaults
+	 * to 1000
+	 */
+	@Inject
+	@Configuration(value = "checkResultCacheSize", required = false)
+	private Integer checkResultCacheSize;
+
+	private CheckResultCache checkResultCache;
+
+	@PostConstruct
+	private void init() {
+		checkResultCache = new CheckResultCache(
+				checkResultCacheSize != null ? checkResultCacheSize : 1000);
+	}
+
+	public CheckResultCache getCheckResultCache() {
+		return checkResultCache;
+	}
+
 	public ResultMessage checkTask(final CheckTaskMessage checkTaskMessage,
 			PackageInstallerHolder installerHolder) {
+		return checkTask(checkTaskMessage, installerHolder, null);
+	}
+
+	/**
+	 * @param progressListener
+	 *            notified about the preparation phases and each R CMD check
+	 *            step, may be null
+	 */
+	public ResultMessage checkTask(final CheckTaskMessage checkTaskMessage,
+			PackageInstallerHolder installerHolder,
+			ProgressListener progressListener) {
 		// TODO installerHolder
 
+		return checkTask(resolveTask(checkTaskMessage), progressListener);
+	}
+
+	public CheckTaskHolder resolveTask(CheckTaskMessage checkTaskMessage) {
+		long startTime = System.nanoTime();
 		CheckTaskHolder checkTaskHolder = resolverBean
 				.resolveDescription(checkTaskMessage);
+		observePhase(PHASE_RESOLVE, System.nanoTime() - startTime);
+		return checkTaskHolder;
+	}
+
+	/**
+	 * Records the time a check spent in a phase, being the time waited for
+	 * sources and installations respectively
+	 */
+	private void observePhase(String phase, long nanos) {
+		metrics.histogram("msc_check_phase_seconds",
+				"Duration of check task phases", "phase", phase).observe(
+				nanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
 
+	/**
+	 * Determines the installations a check task requires, being the
+	 * installation of the package itself and of its check dependencies.
+	 * 
+	 * @return keys of the required installations, empty if dependencies could
+	 *         not be resolved
+	 */
+	public Set<String> getInstallationKeys(CheckTaskHolder checkTaskHolder) {
 		try {
-			return checkPackage(checkTaskHolder.getPackageModel(),
+			PackageResolved packageResolved = checkTaskHolder.getPackageModel();
+			List<PackageResolved> packages = new ArrayList<>();
+			packages.add(packageResolved);
+			packages.addAll(packageResolved.getDependencies().getDependencies(
+					DependencyType.CMD_CHECK));
+			return packageInstallationService.getInstallationKeys(packages,
 					checkTaskHolder.getPackageInstallerHolder());
+		} catch (RuntimeException e) {
+			log.log(Level.INFO, "Could not determine installations of task", e);
+			return new HashSet<>();
+		}
+	}
+
+	/**
+	 * @param checkTaskHolder
+	 *            check task as returned by
+	 *            {@link #resolveTask(CheckTaskMessage)}
+	 * @param progressListener
+	 *            may be null
+	 */
+	public ResultMessage checkTask(CheckTaskHolder checkTaskHolder,
+			ProgressListener progressListener) {
+		return checkTask(checkTaskHolder, progressListener, null);
+	}
+
+	/**
+	 * @param checkTaskHolder
+	 *            check task as returned by
+	 *            {@link #resolveTask(CheckTaskMessage)}
+	 * @param progressListener
+	 *            may be null
+	 * @param cancellation
+	 *            stops waiting for installations and terminates R when
+	 *            cancelled, the result is meaningless then. May be null.
+	 */
+	public ResultMessage checkTask(CheckTaskHolder checkTaskHolder,
+			ProgressListener progressListener, CancellationHandle cancellation) {
+		// Inputs unchanged since a previous check, no install or check needed
+		String fingerprint = getFingerprint(checkTaskHolder.getPackageModel(),
+				checkTaskHolder.getPackageInstallerHolder());
+		if (fingerprint != null) {
+			CheckResultMessage cachedResult = checkResultCache
+					.get(fingerprint);
+			if (cachedResult != null) {
+				log.info("Using cached result of package "
+						+ checkTaskHolder.getPackageModel().getPackageName());
+				cachedResult.setReplayed(true);
+				return cachedResult;
+			}
+		}
+
+		ResultMessage result;
+		try {
+			result = checkPackage(checkTaskHolder.getPackageModel(),
+					checkTaskHolder.getPackageInstallerHolder(),
+					progressListener, cancellation);
 		} catch (PackageNotFoundException e) {
 			return null;// TODO
 		}
+
+		if (fingerprint != null && result instanceof CheckResultMessage
+				&& ((CheckResultMessage) result).getCheckResult() != null
+				&& (cancellation == null || !cancellation.isCancelled())) {
+			checkResultCache.put(fingerprint, (CheckResultMessage) result);
+		}
+		return result;
+	}
+
+	/**
+	 * Determines the fingerprint of the check inputs before installing
+	 * anything: the package source, the sources of its check dependencies
+	 * including their installation dependencies, and the installer.
+	 * 
+	 * @return fingerprint, null if any source could not be resolved
+	 */
+	public String getFingerprint(PackageResolved packageResolved,
+			PackageInstallerHolder installerHolder) {
+		try {
+			PackageAccessor packageAccessor = packageResolved
+					.getPackageAccessor();
+			CheckFingerprint fingerprint = new CheckFingerprint(
+					packageAccessor.getPackageName(), packageAccessor
+							.getPackageSource().getSourceType(),
+					packageAccessor.getSourceLocation(),
+					packageAccessor.getSourceVersion());
+
+			Set<PackageResolved> closure = new HashSet<>();
+			List<PackageResolved> queue = new ArrayList<>();
+			for (PackageResolved dependency : packageResolved
+					.getDependencies().getDependencies(
+							DependencyType.CMD_CHECK)) {
+				if (!isExcluded(dependency, installerHolder)
+						&& closure.add(dependency)) {
+					queue.add(dependency);
+				}
+			}
+			while (!queue.isEmpty()) {
+				PackageResolved next = queue.remove(queue.size() - 1);
+				PackageAccessor accessor = next.getPackageAccessor();
+				fingerprint.addDependency(accessor.getPackageName(), accessor
+						.getPackageSource().getSourceType(), accessor
+						.getSourceLocation(), accessor.getSourceVersion());
+				for (PackageResolved dependency : next.getDependencies()
+						.getDependencies(DependencyType.CMD_INSTALL)) {
+					if (!isExcluded(dependency, installerHolder)
+							&& closure.add(dependency)) {
+						queue.add(dependency);
+					}
+				}
+			}
+
+			PackageInstallerMessage installer = resolverBean
+					.toMessage(installerHolder);
+			fingerprint.setInstaller(installer.getVersionString(),
+					installer.getFlavor(), installer.getArchitecture());
+			return fingerprint.getFingerprint();
+		} catch (PackageResolvingException | IllegalArgumentException e) {
+			log.log(Level.FINE, "Could not determine check fingerprint", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the dependency is not installed for checks, being a
+	 *         core package provided by the installer and not available in the
+	 *         resolved context, or a package not supported by the installer OS
+	 */
+	private static boolean isExcluded(PackageResolved dependency,
+			PackageInstallerHolder installerHolder) {
+		if (installerHolder.getCorePackageNames().contains(
+				dependency.getPackageName())
+				&& !dependency.getPackageAccessor().isAvailable()) {
+			return true;
+		}
+		String osType = dependency.getOSType();
+		return osType != null && !osType.equals(installerHolder.getOsType());
 	}
 
 	public ResultMessage checkTask(final CheckTaskMessage checkTaskDescription) {
@@ -91,14 +299,16 @@ public class PackageCheckService {
 
 		try {
 			return checkPackage(checkTaskHolder.getPackageModel(),
-					checkTaskHolder.getPackageInstallerHolder());
+					checkTaskHolder.getPackageInstallerHolder(), null, null);
 		} catch (PackageNotFoundException e) {
 			return null;// TODO
 		}
 	}
 
 	private ResultMessage checkPackage(final PackageResolved packageResolved,
-			final PackageInstallerHolder packageInstallerHolder)
+			final PackageInstallerHolder packageInstallerHolder,
+			final ProgressListener progressListener,
+			final CancellationHandle cancellation)
 			throws PackageNotFoundException {
 
 		class CheckHolder {
@@ -109,6 +319,10 @@ public class PackageCheckService {
 			PathHolder sourceDirectory;
 			InstallationContext packageInstallation;
 			InstallerResult<CheckResult> checkResult;
+			// Accessed by cancelling threads
+			private final List<Future<?>> acquiredFutures = new ArrayList<>();
+			private boolean cancelled = false;
+			private boolean closed = false;
 
 			private ResultMessage check() {
 				// TODO implement special Future which allows concurrent access
@@ -118,19 +332,20 @@ public class PackageCheckService {
 
 				log.info("Preparing check of package "
 						+ packageResolved.getPackageName());
+				reportPhase("preparing sources and installations");
 
 				log.info("Acquiring Future source for package "
 						+ packageResolved.getPackageName());
-				sourceFuture = packageResolved.getPackageAccessor()
-						.acquireSource();
+				sourceFuture = track(packageResolved.getPackageAccessor()
+						.acquireSource());
 
 				log.info("Acquiring Future installation for package "
 						+ packageResolved.getPackageName());
 				// Get installation of package
 				try {
-					packageInstallationFuture = packageInstallationService
+					packageInstallationFuture = track(packageInstallationService
 							.acquireInstallation(packageResolved,
-									packageInstallerHolder);
+									packageInstallerHolder));
 				} catch (PackageNotFoundException e) {
 					return returnException(e);
 				}
@@ -144,29 +359,13 @@ public class PackageCheckService {
 				// packages instead of failing
 
 				// Get installations of all check-dependencies
-				List<String> corePackages = packageInstallerHolder
-						.getCorePackageNames();
 				Iterator<PackageResolved> dependenciesIterator = checkDependencies
 						.iterator();
 				while (dependenciesIterator.hasNext()) {
-					// TODO XXX DRY
 					PackageResolved nextDep = dependenciesIterator.next();
-					if (corePackages.contains(nextDep.getPackageName())
-							&& !nextDep.getPackageAccessor().isAvailable()) {
-						// Package is provided and not available in resolved
-						// context -> safe to exclude from check
-						dependenciesIterator.remove();
-						continue;
-					}
-
-					String depOsType = nextDep.getOSType();
-					if (depOsType != null
-							&& !depOsType.equals(packageInstallerHolder
-									.getOsType())) {
-						// package not supported by installer OS
+					if (isExcluded(nextDep, packageInstallerHolder)) {
 						dependenciesIterator.remove();
-						log.info("Dependency ignored because of os type "
-								+ nextDep);
+						log.info("Dependency excluded from check " + nextDep);
 					}
 				}
 				checkDependencyFutures = new ArrayList<>(
@@ -174,9 +373,10 @@ public class PackageCheckService {
 				try {
 					for (PackageResolved dependency : checkDependencies) {
 						// Request all required installations
-						checkDependencyFutures.add(packageInstallationService
-								.acquireInstallation(dependency,
-										packageInstallerHolder));
+						checkDependencyFutures
+								.add(track(packageInstallationService
+										.acquireInstallation(dependency,
+												packageInstallerHolder)));
 					}
 				} catch (PackageNotFoundException e) {
 					return returnException(e);
@@ -184,26 +384,39 @@ public class PackageCheckService {
 
 				log.info(packageResolved.getPackageName()
 						+ " waiting for Future installation of all packages");
+				reportPhase("waiting for installation of "
+						+ checkDependencyFutures.size() + " check dependencies");
 				dependencyInstallations = new ArrayList<>(
 						checkDependencyFutures.size());
+				long installWaitStart = System.nanoTime();
 				try {
 					for (Future<InstallationContext> checkDependencyFuture : checkDependencyFutures) {
 						dependencyInstallations
 								.add(checkDependencyFuture.get());
 					}
-				} catch (ExecutionException | InterruptedException e) {
+				} catch (ExecutionException | InterruptedException
+						| CancellationException e) {
 					return returnException(e);
 				}
+				long installWaitNanos = System.nanoTime() - installWaitStart;
 				log.info("Package " + packageResolved.getPackageName()
 						+ " installations ready");
 
 				log.info("Waiting for Future source and installation of package "
 						+ packageResolved.getPackageName());
+				reportPhase("waiting for source and installation of package");
 
 				try {
+					long waitStart = System.nanoTime();
 					sourceDirectory = sourceFuture.get();
+					observePhase(PHASE_DOWNLOAD, System.nanoTime() - waitStart);
+
+					waitStart = System.nanoTime();
 					packageInstallation = packageInstallationFuture.get();
-				} catch (ExecutionException | InterruptedException e) {
+					observePhase(PHASE_INSTALL, installWaitNanos
+							+ System.nanoTime() - waitStart);
+				} catch (ExecutionException | InterruptedException
+						| CancellationException e) {
 					return returnException(e);
 				}
 
@@ -219,6 +432,8 @@ public class PackageCheckService {
 				}
 
 				// Check package
+				reportPhase("checking package");
+				long checkStart = System.nanoTime();
 				try {
 					this.checkResult = packageInstallerHolder
 							.getPackageInstaller()
@@ -232,11 +447,13 @@ public class PackageCheckService {
 									packageInstallationService
 											.getPackageCheckLogPath(packageInstallation
 													.getInstallation()),
-									checkLibraryLocations);
+									checkLibraryLocations, progressListener,
+									cancellation);
 
 				} catch (IOException e) {
 					return returnException(e);
 				}
+				observePhase(PHASE_CHECK, System.nanoTime() - checkStart);
 
 				log.info("Finished checking of package "
 						+ packageResolved.getPackageName());
@@ -244,7 +461,43 @@ public class PackageCheckService {
 				return returnResult();
 			}
 
+			private void reportPhase(String phase) {
+				if (progressListener != null) {
+					progressListener.progress(new String[] { phase }, null);
+				}
+			}
+
+			/**
+			 * Tracks a future to cancel it on cancellation of the check
+			 */
+			private synchronized <F extends Future<?>> F track(F future) {
+				acquiredFutures.add(future);
+				if (cancelled) {
+					future.cancel(true);
+				}
+				return future;
+			}
+
+			/**
+			 * Cancels all acquisitions so that waiting for them ends, may be
+			 * invoked by any thread
+			 */
+			private void cancel() {
+				List<Future<?>> futures;
+				synchronized (this) {
+					cancelled = true;
+					futures = new ArrayList<>(acquiredFutures);
+				}
+				for (Future<?> future : futures) {
+					future.cancel(true);
+				}
+			}
+
 			private void close() {
+				if (closed) {
+					return;
+				}
+				closed = true;
 				if (sourceFuture != null) {
 					sourceFuture.cancel(true);
 				}
@@ -308,6 +561,10 @@ public class PackageCheckService {
 
 				// TODO maybe wrap check errors as exceptions
 
+				// Identifies the failed task along with package and context
+				exceptionResultMessage.setPackageInstaller(resolverBean
+						.toMessage(packageInstallerHolder));
+
 				return exceptionResultMessage;
 			}
 
@@ -363,6 +620,26 @@ public class PackageCheckService {
 
 		}
 
-		return new CheckHolder().check();
+		final CheckHolder checkHolder = new CheckHolder();
+		if (cancellation == null) {
+			return checkHolder.check();
+		}
+
+		AutoCloseable cancelAction = new AutoCloseable() {
+			@Override
+			public void close() {
+				checkHolder.cancel();
+			}
+		};
+		cancellation.register(cancelAction);
+		try {
+			return checkHolder.check();
+		} finally {
+			cancellation.unregister(cancelAction);
+			if (cancellation.isCancelled()) {
+				// Release installations and sources acquired meanwhile
+				checkHolder.close();
+			}
+		}
 	}
 }
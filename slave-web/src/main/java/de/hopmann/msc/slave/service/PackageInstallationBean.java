@@ -15,21 +15,22 @@
  */
 package de.hopmann.msc.slave.service;
 
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -58,10 +59,14 @@ import de.hopmann.msc.commons.model.DependencyType;
 import de.hopmann.msc.commons.model.InstallationResult;
 import de.hopmann.msc.commons.model.PackageSource.PackageAccessor;
 import de.hopmann.msc.commons.model.PackageSource.PathHolder;
+import de.hopmann.msc.commons.model.Version;
 import de.hopmann.msc.commons.model.Version_;
 import de.hopmann.msc.commons.qualifier.Configuration;
-import de.hopmann.msc.commons.util.DispatchingExecutor.SimpleDispatchingExecutor;
+import de.hopmann.msc.commons.service.MetricsRegistry;
+import de.hopmann.msc.commons.util.DependencyGraphExecutor;
 import de.hopmann.msc.commons.util.FutureHelper;
+import de.hopmann.msc.commons.util.ListenableFuture;
+import de.hopmann.msc.commons.util.SingleFlightExecutor.SimpleSingleFlightExecutor;
 import de.hopmann.msc.slave.entity.PackageInstallationEntity;
 import de.hopmann.msc.slave.entity.PackageInstallationEntity_;
 import de.hopmann.msc.slave.entity.PackageInstallerEntity;
@@ -71,6 +76,7 @@ import de.hopmann.msc.slave.installer.PackageInstaller.InstallerResult;
 import de.hopmann.msc.slave.installer.PackageInstallerHolder;
 import de.hopmann.msc.slave.service.ResolverBean.PackageResolved;
 import de.hopmann.msc.slave.util.InstallationContext;
+import de.hopmann.msc.slave.util.InstallationIndex;
 
 /**
  * Shared component managing package deployments.
@@ -115,7 +121,7 @@ public class PackageInstallationBean {
 			this.packageResolved = packageResolved;
 		}
 
-		public DependencyInstallationException(String string, Exception e,
+		public DependencyInstallationException(String string, Throwable e,
 				PackageResolved packageResolved) {
 			super(string, e);
 			this.packageResolved = packageResolved;
@@ -133,7 +139,7 @@ public class PackageInstallationBean {
 	 */
 	private class InstallationExecutor
 			extends
-			SimpleDispatchingExecutor<InstallationTaskInformation, PackageInstallationEntity> {
+			SimpleSingleFlightExecutor<InstallationTaskInformation, PackageInstallationEntity> {
 
 		public InstallationExecutor(ExecutorService executor) {
 			super(executor);
@@ -162,6 +168,7 @@ public class PackageInstallationBean {
 
 				log.info("Package " + value.packageAccessor.getPackageName()
 						+ " requires rebuild");
+				installationIndex.recordBuilt();
 
 				PathHolder sourceDirectory = value.packageAccessor
 						.acquireSource().get();
@@ -266,18 +273,123 @@ public class PackageInstallationBean {
 		}
 	}
 
+	/**
+	 * Dependency graph of the packages required to install a package, with the
+	 * packages ordered such that dependencies precede their dependents.
+	 * 
+	 */
+	private static class InstallationPlan {
+		private final PackageResolved targetPackage;
+		private final Map<String, PackageResolved> packages = new LinkedHashMap<>();
+		private final Map<PackageResolved, Set<PackageResolved>> dependencies = new HashMap<>();
+		private final Map<PackageResolved, PackageInstallationEntity> installationEntities = new HashMap<>();
+
+		public InstallationPlan(PackageResolved targetPackage) {
+			this.targetPackage = targetPackage;
+		}
+	}
+
+	/**
+	 * Schedules the installations of an {@link InstallationPlan} as soon as
+	 * the installations of their dependencies are finished, so that no
+	 * installation thread waits for another one.
+	 * 
+	 */
+	private class InstallationGraphExecutor extends
+			DependencyGraphExecutor<PackageResolved, PackageInstallationEntity> {
+
+		private final InstallationPlan installationPlan;
+		private final PackageInstallerHolder packageInstallerHolder;
+		private final InstallationContext context;
+
+		public InstallationGraphExecutor(InstallationPlan installationPlan,
+				PackageInstallerHolder packageInstallerHolder,
+				InstallationContext context) {
+			this.installationPlan = installationPlan;
+			this.packageInstallerHolder = packageInstallerHolder;
+			this.context = context;
+		}
+
+		@Override
+		protected ListenableFuture<PackageInstallationEntity> execute(
+				PackageResolved packageModel,
+				Map<PackageResolved, PackageInstallationEntity> dependencyResults) {
+			PackageInstallationEntity installationEntity = installationPlan.installationEntities
+					.get(packageModel);
+
+			if (Boolean.TRUE.equals(installationEntity.isFailed())) {
+				return FutureHelper
+						.createExceptionFuture(new InstallationException(
+								"Installation of package "
+										+ installationEntity.getPackageName()
+										+ " failed previously",
+								installationEntity));
+			}
+
+			log.info("Dependencies of package " + packageModel.getPackageName()
+					+ " are installed, scheduling its installation");
+			// Indexed while in flight, so that tasks using it are preferred
+			final String installationKey = getInstallationKey(packageModel);
+			installationIndex.add(installationKey);
+			installationIndex.recordRequested();
+			final ListenableFuture<PackageInstallationEntity> installationFuture = installationExecutor
+					.submit(new InstallationTaskInformation(packageModel
+							.getPackageAccessor(), packageInstallerHolder,
+							installationEntity, context));
+			installationFuture.addListener(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						installationFuture.get();
+					} catch (InterruptedException | ExecutionException
+							| CancellationException e) {
+						installationIndex.remove(installationKey);
+					}
+				}
+			});
+			return installationFuture;
+		}
+
+		@Override
+		protected void completed(PackageResolved packageModel,
+				PackageInstallationEntity installationEntity) {
+			if (packageModel == installationPlan.targetPackage) {
+				context.setInstallation(installationEntity);
+			} else {
+				context.addLibPackage(installationEntity);
+			}
+		}
+
+		@Override
+		protected Throwable dependencyFailed(PackageResolved packageModel,
+				PackageResolved failedDependency, Throwable cause) {
+			log.log(Level.SEVERE, "Installation of depending package "
+					+ failedDependency.getPackageName() + " failed", cause);
+			return new DependencyInstallationException(
+					"Installation of a dependency failed", cause, packageModel);
+		}
+	}
+
 	@Inject
 	private Logger log;
 
+	@Inject
+	private MetricsRegistry metrics;
+
 	@Resource
 	private ManagedThreadFactory managedThreadFactory;;
 
 	private InstallationExecutor installationExecutor;
+	private ThreadPoolExecutor installationThreadPool;
+
+	private final InstallationIndex installationIndex = new InstallationIndex();
+	private volatile boolean installationIndexLoaded = false;
 
 	@Inject
 	private EntityManager entityManager;
 
 	private java.nio.file.Path libraryDirectoryBasePath;
+	private int installationThreads = 3;
 
 	PackageInstallationBean() {
 
@@ -285,11 +397,15 @@ public class PackageInstallationBean {
 
 	@Inject
 	PackageInstallationBean(
-			@Configuration(value = "libraryDirectoryBase", required = true) String libraryDirectoryBase) {
+			@Configuration(value = "libraryDirectoryBase", required = true) String libraryDirectoryBase,
+			@Configuration(value = "installationThreads", required = false) Integer installationThreads) {
 		this.libraryDirectoryBasePath = Paths.get(libraryDirectoryBase);
+		if (installationThreads != null) {
+			this.installationThreads = installationThreads;
+		}
 	}
 
-	public Future<InstallationContext> acquireInstallation(
+	public ListenableFuture<InstallationContext> acquireInstallation(
 			PackageResolved packageResolved,
 			PackageInstallerHolder packageInstallerHolder)
 			throws PackageNotFoundException {
@@ -297,10 +413,23 @@ public class PackageInstallationBean {
 
 		final InstallationContext context = new InstallationContext();
 
-		final Future<PackageInstallationEntity> installationFuture = acquireInstallation(
-				packageResolved, packageInstallerHolder, context);
+		// Plan within the current transaction, installations are triggered by
+		// completion callbacks without access to the entity manager
+		InstallationPlan installationPlan = new InstallationPlan(
+				packageResolved);
+		try {
+			addToPlan(installationPlan, packageResolved,
+					packageInstallerHolder, new HashSet<String>());
+		} catch (DependencyInstallationException e) {
+			return FutureHelper.createExceptionFuture(e);
+		}
+		resolveInstallationEntities(installationPlan, packageInstallerHolder);
 
-		return new Future<InstallationContext>() {
+		final ListenableFuture<PackageInstallationEntity> installationFuture = new InstallationGraphExecutor(
+				installationPlan, packageInstallerHolder, context).submit(
+				packageResolved, installationPlan.dependencies);
+
+		return new ListenableFuture<InstallationContext>() {
 
 			@Override
 			public boolean cancel(boolean mayInterruptIfRunning) {
@@ -319,7 +448,7 @@ public class PackageInstallationBean {
 			@Override
 			public InstallationContext get() throws InterruptedException,
 					ExecutionException {
-				context.setInstallation(installationFuture.get());
+				installationFuture.get();
 				return context;
 			}
 
@@ -327,7 +456,7 @@ public class PackageInstallationBean {
 			public InstallationContext get(long timeout, TimeUnit unit)
 					throws InterruptedException, ExecutionException,
 					TimeoutException {
-				context.setInstallation(installationFuture.get(timeout, unit));
+				installationFuture.get(timeout, unit);
 				return context;
 			}
 
@@ -340,103 +469,191 @@ public class PackageInstallationBean {
 			public boolean isDone() {
 				return installationFuture.isDone();
 			}
+
+			@Override
+			public void addListener(Runnable listener) {
+				installationFuture.addListener(listener);
+			}
 		};
 
 	}
 
-	public Future<PackageInstallationEntity> acquireInstallation(
-			PackageResolved packageResolved,// final Set<File> libPath,
+	/**
+	 * Adds the package and its installation dependencies to the plan, after
+	 * all of its dependencies have been added.
+	 * 
+	 * @return planned instance of the package
+	 */
+	private PackageResolved addToPlan(InstallationPlan installationPlan,
+			PackageResolved packageResolved,
 			PackageInstallerHolder packageInstallerHolder,
-			InstallationContext context) throws PackageNotFoundException {
-
-		PackageInstallationEntity libraryPackage = context
-				.getLibraryPackage(packageResolved.getPackageName());
-		if (libraryPackage != null) {
-			log.info("Returning package from context library: "
-					+ libraryPackage.getPackageName());
-			return FutureHelper.createImmediateFuture(libraryPackage);
+			Set<String> currentPath) throws DependencyInstallationException {
+
+		String packageName = packageResolved.getPackageName();
+		PackageResolved plannedPackage = installationPlan.packages
+				.get(packageName);
+		if (plannedPackage != null) {
+			return plannedPackage;
+		}
+		if (!currentPath.add(packageName)) {
+			throw new DependencyInstallationException(
+					"Cyclic installation dependency on package " + packageName,
+					packageResolved);
+		}
+
+		Set<PackageResolved> dependencies = new HashSet<>();
+		for (PackageResolved dependency : getInstallationDependencies(
+				packageResolved, packageInstallerHolder)) {
+			dependencies.add(addToPlan(installationPlan, dependency,
+					packageInstallerHolder, currentPath));
 		}
 
-		final Set<PackageResolved> installationDependencies = packageResolved
-				.getDependencies().getDependencies(DependencyType.CMD_INSTALL);
+		currentPath.remove(packageName);
+		installationPlan.dependencies.put(packageResolved, dependencies);
+		installationPlan.packages.put(packageName, packageResolved);
+		return packageResolved;
+	}
 
+	private Set<PackageResolved> getInstallationDependencies(
+			PackageResolved packageResolved,
+			PackageInstallerHolder packageInstallerHolder) {
+		// Filtered copy, the resolved dependencies are cached
+		Set<PackageResolved> installationDependencies = new HashSet<>();
+		for (PackageResolved dependency : packageResolved.getDependencies()
+				.getDependencies(DependencyType.CMD_INSTALL)) {
+			if (isInstallable(dependency, packageInstallerHolder)) {
+				installationDependencies.add(dependency);
+			}
+		}
+		return installationDependencies;
+	}
+
+	private boolean isInstallable(PackageResolved packageResolved,
+			PackageInstallerHolder packageInstallerHolder) {
 		// Exclude missing, but provided packages from dependencies
-		List<String> corePackages = packageInstallerHolder
-				.getCorePackageNames();
-		Iterator<PackageResolved> dependenciesIterator = installationDependencies
-				.iterator();
-		while (dependenciesIterator.hasNext()) {
-			// TODO XXX DRY
-			PackageResolved nextDep = dependenciesIterator.next();
-			if (corePackages.contains(nextDep.getPackageName())
-					&& !nextDep.getPackageAccessor().isAvailable()) {
-				// Package is provided and not available in resolved context ->
-				// safe to exclude
-				dependenciesIterator.remove();
+		if (packageInstallerHolder.getCorePackageNames().contains(
+				packageResolved.getPackageName())
+				&& !packageResolved.getPackageAccessor().isAvailable()) {
+			// Package is provided and not available in resolved context ->
+			// safe to exclude
+			return false;
+		}
+		String osType = packageResolved.getOSType();
+		if (osType != null && !osType.equals(packageInstallerHolder.getOsType())) {
+			// package not supported by installer OS
+			log.info("Dependency ignored because of os type "
+					+ packageResolved);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Determines the installations required for a set of packages, including
+	 * the installations of all their installation dependencies. Resolves the
+	 * dependencies of the packages if not done yet.
+	 * 
+	 * @return keys of the required installations, as used by the
+	 *         {@link #getInstallationIndex()}
+	 */
+	public Set<String> getInstallationKeys(
+			Collection<PackageResolved> packages,
+			PackageInstallerHolder packageInstallerHolder) {
+		loadInstallationIndex();
+
+		Set<String> installationKeys = new HashSet<>();
+		Set<PackageResolved> visited = new HashSet<>();
+		List<PackageResolved> pending = new ArrayList<>(packages);
+		while (!pending.isEmpty()) {
+			PackageResolved packageResolved = pending
+					.remove(pending.size() - 1);
+			if (!visited.add(packageResolved)
+					|| !isInstallable(packageResolved, packageInstallerHolder)) {
 				continue;
 			}
-			String depOsType = nextDep.getOSType();
-			if (depOsType != null
-					&& !depOsType.equals(packageInstallerHolder.getOsType())) {
-				// package not supported by installer OS
-				dependenciesIterator.remove();
-				log.info("Dependency ignored because of os type " + nextDep);
-			}
+			installationKeys.add(getInstallationKey(packageResolved));
+			pending.addAll(getInstallationDependencies(packageResolved,
+					packageInstallerHolder));
 		}
+		return installationKeys;
+	}
 
-		if (installationDependencies.isEmpty()) {
-			// Package has no dependencies, directly return Future of
-			// installation process
-			log.info(packageResolved.getPackageName()
-					+ " has no dependencies and Future of installation is returned");
-			return getInstallation(packageResolved, null,
-					packageInstallerHolder, context);
-		} else {
-			// Package has dependencies, collect instances of them to find
-			// corresponding variant of this package
-
-			Map<PackageResolved, Future<PackageInstallationEntity>> dependencyFutures = new HashMap<>(
-					4); // TODO initial value
-
-			// Trigger retrieval of installation for each dependency
-			for (PackageResolved dependency : installationDependencies) {
-				log.info(packageResolved.getPackageName()
-						+ " acquiring Future installation for depending package "
-						+ dependency.getPackageName());
-				dependencyFutures.put(
-						dependency,
-						acquireInstallation(dependency, packageInstallerHolder,
-								context));
+	/**
+	 * @return index of installed and currently installing package versions,
+	 *         including reuse statistics
+	 */
+	public InstallationIndex getInstallationIndex() {
+		return installationIndex;
+	}
+
+	private String getInstallationKey(PackageResolved packageResolved) {
+		Version sourceVersion = packageResolved.getPackageAccessor()
+				.getSourceVersion();
+		return InstallationIndex.getKey(packageResolved.getPackageName(),
+				sourceVersion != null ? sourceVersion.getVersionNumber() : null);
+	}
+
+	/**
+	 * Initially indexes all installations known from previous runs
+	 */
+	private void loadInstallationIndex() {
+		if (installationIndexLoaded) {
+			return;
+		}
+		synchronized (installationIndex) {
+			if (installationIndexLoaded) {
+				return;
+			}
+			CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+			CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+			Root<PackageInstallationEntity> p = query
+					.from(PackageInstallationEntity.class);
+			query.multiselect(p.get(PackageInstallationEntity_.packageName), p
+					.get(PackageInstallationEntity_.sourceVersion).get(
+							Version_.versionNumber));
+			query.where(cb.or(
+					cb.isNull(p.get(PackageInstallationEntity_.isFailed)),
+					cb.isFalse(p.get(PackageInstallationEntity_.isFailed))));
+
+			for (Object[] row : entityManager.createQuery(query)
+					.getResultList()) {
+				installationIndex.add(InstallationIndex.getKey((String) row[0],
+						(BigInteger) row[1]));
 			}
+			installationIndexLoaded = true;
+		}
+	}
 
-			// Getting results of Future installations
-			Set<PackageInstallationEntity> dependencies = new HashSet<>(
-					dependencyFutures.size());
-			try {
-				for (Entry<PackageResolved, Future<PackageInstallationEntity>> dependencyFutureEntry : dependencyFutures
-						.entrySet()) {
-					log.info(packageResolved.getPackageName()
-							+ " waiting for Future installation result of package "
-							+ dependencyFutureEntry.getKey().getPackageName());
-					PackageInstallationEntity dependencyEntity = dependencyFutureEntry
-							.getValue().get();
-					context.addLibPackage(dependencyEntity);
-
-					dependencies.add(dependencyEntity);
+	/**
+	 * Looks up or creates the installation variant of each planned package in
+	 * dependency order. Packages depending on a previously failed installation
+	 * are left out, as they will fail without being installed.
+	 */
+	private void resolveInstallationEntities(
+			InstallationPlan installationPlan,
+			PackageInstallerHolder packageInstallerHolder) {
+		for (PackageResolved plannedPackage : installationPlan.packages
+				.values()) {
+			Set<PackageInstallationEntity> requiredDependencies = new HashSet<>();
+			for (PackageResolved dependency : installationPlan.dependencies
+					.get(plannedPackage)) {
+				PackageInstallationEntity dependencyEntity = installationPlan.installationEntities
+						.get(dependency);
+				if (dependencyEntity == null
+						|| Boolean.TRUE.equals(dependencyEntity.isFailed())) {
+					requiredDependencies = null;
+					break;
 				}
-			} catch (ExecutionException | InterruptedException e) {
-				log.log(Level.SEVERE,
-						"Installation of depending package failed", e);
-				return FutureHelper
-						.createExceptionFuture(new DependencyInstallationException(
-								"Installation of a dependency failed", e,
-								packageResolved));
+				requiredDependencies.add(dependencyEntity);
 			}
 
-			return getInstallation(packageResolved, dependencies,
-					packageInstallerHolder, context);
+			if (requiredDependencies != null) {
+				installationPlan.installationEntities.put(
+						plannedPackage,
+						getInstallation(plannedPackage, requiredDependencies,
+								packageInstallerHolder));
+			}
 		}
-
 	}
 
 	private PackageInstallationEntity addInstallationEntity(
@@ -465,22 +682,14 @@ public class PackageInstallationBean {
 	 *            Package to install.
 	 * @param requiredDependencies
 	 *            Strong dependencies.
-	 * @param libPath
-	 *            Library path information required to install this package.
-	 *            Contains all installation of transitive dependencies.
 	 * @param packageInstallerHolder
-	 * @throws PackageNotFoundException
+	 * @return cached or newly added installation of the package
 	 */
-	private Future<PackageInstallationEntity> getInstallation(
+	private PackageInstallationEntity getInstallation(
 			final PackageResolved packageModel,
 			Set<PackageInstallationEntity> requiredDependencies,
-			// final Set<File> libPath,
-			PackageInstallerHolder packageInstallerHolder,
-			InstallationContext context) {
+			PackageInstallerHolder packageInstallerHolder) {
 
-		if (requiredDependencies == null) {
-			requiredDependencies = Collections.emptySet();
-		}
 		// TODO find critical dependencies
 
 		PackageInstallationEntity installationEntity = getInstallationEntity(
@@ -491,22 +700,18 @@ public class PackageInstallationBean {
 			installationEntity = addInstallationEntity(
 					packageModel.getPackageAccessor(), requiredDependencies,
 					packageInstallerHolder);
-		}
-
-		if (Boolean.TRUE.equals(installationEntity.isFailed())) {
-			return FutureHelper
-					.createExceptionFuture(new InstallationException(
-							"Installation of package "
-									+ installationEntity.getPackageName()
-									+ " failed previously", installationEntity));
+			countInstallationLookup("added");
 		} else {
-			return installationExecutor.submit(new InstallationTaskInformation(
-					packageModel.getPackageAccessor(), packageInstallerHolder,
-					// libPath,
-					installationEntity, context));
+			countInstallationLookup("reused");
 		}
 
-		// TODO synchronization?
+		return installationEntity;
+	}
+
+	private void countInstallationLookup(String result) {
+		metrics.counter("msc_installation_lookups_total",
+				"Installations looked up for check tasks by result", "result",
+				result).inc();
 	}
 
 	public PackageInstallationEntity getInstallationEntity(
@@ -601,10 +806,17 @@ public class PackageInstallationBean {
 		return PathHolder.ofPath(installationPath);
 	}
 
+	/**
+	 * @return number of package installations waiting for a thread
+	 */
+	public int getInstallationQueueLength() {
+		return installationThreadPool.getQueue().size();
+	}
+
 	@PostConstruct
 	private void init() {
-		installationExecutor = new InstallationExecutor(
-				Executors.newFixedThreadPool(3, managedThreadFactory)); // TODO
-																		// adjust
+		installationThreadPool = (ThreadPoolExecutor) Executors
+				.newFixedThreadPool(installationThreads, managedThreadFactory);
+		installationExecutor = new InstallationExecutor(installationThreadPool);
 	}
 }
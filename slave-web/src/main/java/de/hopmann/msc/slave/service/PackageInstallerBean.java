@@ -72,17 +72,7 @@ public class PackageInstallerBean {
 				.getVersionNumber(versionString);
 
 		for (PackageInstallerHolder packageInstaller : packageInstallerCache) {
-			boolean matches = true;
-
-			matches &= (packageInstaller.getVersion().equals(versionNumber));
-			if (flavor != null) {
-				matches &= packageInstaller.getFlavor().equals(flavor);
-			}
-			if (architecture != null) {
-				matches &= packageInstaller.getArchitecture().equals(flavor);
-			}
-
-			if (matches) {
+			if (packageInstaller.matches(versionNumber, flavor, architecture)) {
 				return packageInstaller;
 			}
 		}
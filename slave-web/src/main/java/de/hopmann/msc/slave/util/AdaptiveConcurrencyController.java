@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Bounds the number of concurrently processed check tasks. The limit is
+ * adjusted between a floor and a ceiling according to the system load, the
+ * available memory and the memory used by R processes started by this
+ * server, so that larger machines are saturated while smaller ones are not
+ * swapping.
+ * 
+ */
+public class AdaptiveConcurrencyController {
+
+	private static final double CPU_LOAD_HIGH = 1.0;
+	private static final double CPU_LOAD_LOW = 0.8;
+	private static final Path PROC_PATH = Paths.get("/proc");
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long memoryReserve;
+
+	private int limit;
+	private int inFlight;
+	private long taskMemoryEstimate;
+
+	private double lastCpuLoad = -1;
+	private long lastAvailableMemory = -1;
+	private long lastProcessMemory = -1;
+
+	/**
+	 * @param minLimit
+	 *            floor of concurrent tasks
+	 * @param maxLimit
+	 *            ceiling of concurrent tasks
+	 * @param memoryReserve
+	 *            memory in bytes to be kept available
+	 */
+	public AdaptiveConcurrencyController(int minLimit, int maxLimit,
+			long memoryReserve) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.memoryReserve = memoryReserve;
+		this.taskMemoryEstimate = memoryReserve;
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, Runtime
+				.getRuntime().availableProcessors() / 2));
+	}
+
+	/**
+	 * Blocks until a further task may be processed
+	 * 
+	 * @throws InterruptedException
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (inFlight >= limit) {
+			wait();
+		}
+		inFlight++;
+	}
+
+	/**
+	 * Signals that a processed task has finished
+	 */
+	public synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * @return system load average per processor of the last adjustment, or a
+	 *         negative value if not available
+	 */
+	public synchronized double getCpuLoad() {
+		return lastCpuLoad;
+	}
+
+	/**
+	 * @return available memory in bytes of the last adjustment, or a negative
+	 *         value if not available
+	 */
+	public synchronized long getAvailableMemory() {
+		return lastAvailableMemory;
+	}
+
+	/**
+	 * @return resident memory in bytes of processes started by this server at
+	 *         the last adjustment, or a negative value if not available
+	 */
+	public synchronized long getProcessMemory() {
+		return lastProcessMemory;
+	}
+
+	/**
+	 * Samples the system resources and adapts the limit by at most one task.
+	 * The limit is decreased on overload or memory shortage, and increased
+	 * if all permitted tasks are running and there are resources for another
+	 * one.
+	 * 
+	 * @return the new limit
+	 */
+	public int adjust() {
+		double cpuLoad = sampleCpuLoad();
+		long availableMemory = sampleAvailableMemory();
+		long processMemory = sampleProcessMemory();
+
+		synchronized (this) {
+			lastCpuLoad = cpuLoad;
+			lastAvailableMemory = availableMemory;
+			lastProcessMemory = processMemory;
+
+			if (processMemory > 0 && inFlight > 0) {
+				// Moving average of the memory required per task
+				taskMemoryEstimate = (taskMemoryEstimate + processMemory
+						/ inFlight) / 2;
+			}
+
+			boolean overloaded = cpuLoad > CPU_LOAD_HIGH
+					|| (availableMemory >= 0 && availableMemory < memoryReserve);
+			boolean saturated = inFlight >= limit;
+			boolean spareResources = (cpuLoad < 0 || cpuLoad < CPU_LOAD_LOW)
+					&& (availableMemory < 0 || availableMemory - memoryReserve > taskMemoryEstimate);
+
+			if (overloaded && limit > minLimit) {
+				limit--;
+			} else if (!overloaded && saturated && spareResources
+					&& limit < maxLimit) {
+				limit++;
+				notifyAll();
+			}
+			return limit;
+		}
+	}
+
+	private double sampleCpuLoad() {
+		OperatingSystemMXBean osBean = ManagementFactory
+				.getOperatingSystemMXBean();
+		double loadAverage = osBean.getSystemLoadAverage();
+		if (loadAverage < 0) {
+			return -1;
+		}
+		return loadAverage / osBean.getAvailableProcessors();
+	}
+
+	private long sampleAvailableMemory() {
+		// Linux: includes reclaimable caches, unlike free memory
+		Path memInfoPath = PROC_PATH.resolve("meminfo");
+		if (Files.isReadable(memInfoPath)) {
+			try {
+				for (String line : Files.readAllLines(memInfoPath,
+						StandardCharsets.US_ASCII)) {
+					if (line.startsWith("MemAvailable:")) {
+						return parseKiloBytes(line);
+					}
+				}
+			} catch (IOException | NumberFormatException e) {
+				// Fall back to management bean
+			}
+		}
+		OperatingSystemMXBean osBean = ManagementFactory
+				.getOperatingSystemMXBean();
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) osBean)
+					.getFreePhysicalMemorySize();
+		}
+		return -1;
+	}
+
+	/**
+	 * Sums up the resident memory of all descendant processes of this server,
+	 * i.e. R processes and the tools they invoke
+	 */
+	private long sampleProcessMemory() {
+		if (!ProcessTree.isSupported()) {
+			return -1;
+		}
+		try {
+			long processMemory = 0;
+			for (String pid : ProcessTree.getDescendantPids(ProcessTree
+					.getOwnPid())) {
+				processMemory += readResidentMemory(PROC_PATH.resolve(pid));
+			}
+			return processMemory;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private long readResidentMemory(Path processDir) {
+		try {
+			for (String line : Files.readAllLines(
+					processDir.resolve("status"), StandardCharsets.US_ASCII)) {
+				if (line.startsWith("VmRSS:")) {
+					return parseKiloBytes(line);
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			// Process terminated meanwhile
+		}
+		return 0;
+	}
+
+	private static long parseKiloBytes(String line) {
+		String[] fields = line.trim().split("\\s+");
+		return Long.parseLong(fields[1]) * 1024;
+	}
+}
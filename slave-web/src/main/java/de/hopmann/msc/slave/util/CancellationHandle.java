@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Allows to stop a check task from another thread. Components of the task
+ * register actions which stop their current work, e.g. terminate an R process,
+ * for the time they are running.
+ * 
+ */
+public class CancellationHandle {
+
+	private static final Logger LOG = Logger.getLogger(CancellationHandle.class
+			.getName());
+
+	private final Set<AutoCloseable> actions = new LinkedHashSet<>();
+	private boolean cancelled = false;
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Marks the task as cancelled and runs all registered actions. Subsequent
+	 * calls have no effect.
+	 */
+	public void cancel() {
+		List<AutoCloseable> cancelActions;
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			cancelActions = new ArrayList<>(actions);
+			actions.clear();
+		}
+		for (AutoCloseable action : cancelActions) {
+			run(action);
+		}
+	}
+
+	/**
+	 * Registers an action to run on cancellation, runs it immediately if
+	 * already cancelled
+	 */
+	public void register(AutoCloseable action) {
+		synchronized (this) {
+			if (!cancelled) {
+				actions.add(action);
+				return;
+			}
+		}
+		run(action);
+	}
+
+	public synchronized void unregister(AutoCloseable action) {
+		actions.remove(action);
+	}
+
+	private static void run(AutoCloseable action) {
+		try {
+			action.close();
+		} catch (Exception e) {
+			LOG.log(Level.WARNING, "Could not cancel " + action, e);
+		}
+	}
+}
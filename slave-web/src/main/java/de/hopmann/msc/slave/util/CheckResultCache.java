@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hopmann.msc.commons.exception.MessageCodecException;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.codec.BinaryMessageCodec;
+
+/**
+ * Results of recent checks by fingerprint of their inputs, see
+ * {@link de.hopmann.msc.commons.util.CheckFingerprint}. Results are kept
+ * encoded, each lookup returns a copy that may be modified by the caller.
+ * 
+ */
+public class CheckResultCache {
+
+	private static final Logger LOG = Logger.getLogger(CheckResultCache.class
+			.getName());
+
+	private final BinaryMessageCodec codec = new BinaryMessageCodec();
+
+	/**
+	 * Least recently used results, guarded by this
+	 */
+	private final Map<String, byte[]> results;
+
+	private long hitCount;
+	private long missCount;
+
+	/**
+	 * @param maxSize
+	 *            number of results to keep, 0 to disable caching
+	 */
+	public CheckResultCache(final int maxSize) {
+		results = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<String, byte[]> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return copy of the cached result, null if not cached
+	 */
+	public CheckResultMessage get(String fingerprint) {
+		byte[] encoded;
+		synchronized (this) {
+			encoded = results.get(fingerprint);
+			if (encoded == null) {
+				missCount++;
+				return null;
+			}
+			hitCount++;
+		}
+		try {
+			return (CheckResultMessage) codec.decode(encoded);
+		} catch (MessageCodecException e) {
+			LOG.log(Level.WARNING, "Could not decode cached result", e);
+			return null;
+		}
+	}
+
+	public void put(String fingerprint, CheckResultMessage result) {
+		byte[] encoded;
+		try {
+			encoded = codec.encode(result);
+		} catch (MessageCodecException e) {
+			LOG.log(Level.WARNING, "Could not encode result", e);
+			return;
+		}
+		synchronized (this) {
+			results.put(fingerprint, encoded);
+		}
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+}
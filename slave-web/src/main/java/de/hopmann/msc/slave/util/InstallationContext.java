@@ -47,11 +47,14 @@ public class InstallationContext implements AutoCloseable {
 	}
 
 	public Set<PackageInstallationEntity> getLibraryPackages() {
-		return new HashSet<PackageInstallationEntity>(libraryPackages.values());
+		synchronized (libraryPackages) {
+			return new HashSet<PackageInstallationEntity>(
+					libraryPackages.values());
+		}
 	}
 
 	public void registerPathHolder(PathHolder holder) {
-		synchronized (holder) {
+		synchronized (fileHolders) {
 			fileHolders.add(holder);
 		}
 	}
@@ -76,11 +79,16 @@ public class InstallationContext implements AutoCloseable {
 	}
 
 	public Set<Path> getLibraryPaths() {
-		return libPath;
+		// Copy, since installations of other packages may add paths meanwhile
+		synchronized (libPath) {
+			return new HashSet<Path>(libPath);
+		}
 	}
 
 	public PackageInstallationEntity getLibraryPackage(String packageName) {
-		return libraryPackages.get(packageName);
+		synchronized (libraryPackages) {
+			return libraryPackages.get(packageName);
+		}
 	}
 
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of package versions which are installed or currently being installed,
+ * used to estimate how much of a check task can reuse existing installations.
+ * Also counts the requested installations which actually had to be built.
+ * 
+ */
+public class InstallationIndex {
+
+	private final Set<String> installations = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final AtomicLong requestedCount = new AtomicLong();
+	private final AtomicLong builtCount = new AtomicLong();
+
+	/**
+	 * @return key identifying the installation of a package version,
+	 *         independent of the installation's dependencies
+	 */
+	public static String getKey(String packageName, BigInteger sourceVersion) {
+		return packageName + "@" + sourceVersion;
+	}
+
+	public void add(String key) {
+		installations.add(key);
+	}
+
+	public void remove(String key) {
+		installations.remove(key);
+	}
+
+	public boolean contains(String key) {
+		return installations.contains(key);
+	}
+
+	/**
+	 * @param keys
+	 *            installations required by a task
+	 * @return fraction of the installations already indexed, 1 if none are
+	 *         required
+	 */
+	public double getReuseScore(Collection<String> keys) {
+		if (keys.isEmpty()) {
+			return 1;
+		}
+		int indexed = 0;
+		for (String key : keys) {
+			if (installations.contains(key)) {
+				indexed++;
+			}
+		}
+		return (double) indexed / keys.size();
+	}
+
+	public void recordRequested() {
+		requestedCount.incrementAndGet();
+	}
+
+	public void recordBuilt() {
+		builtCount.incrementAndGet();
+	}
+
+	public long getRequestedCount() {
+		return requestedCount.get();
+	}
+
+	public long getBuiltCount() {
+		return builtCount.get();
+	}
+
+	/**
+	 * @return fraction of requested installations which did not need to be
+	 *         built, 0 if none were requested
+	 */
+	public double getReuseRatio() {
+		long requested = requestedCount.get();
+		if (requested == 0) {
+			return 0;
+		}
+		return 1 - (double) Math.min(builtCount.get(), requested) / requested;
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts pending tasks in order of priority whenever the
+ * {@link AdaptiveConcurrencyController} admits another task. Waiting tasks
+ * age, gaining one priority level per aging interval, so that low priority
+ * tasks are not starved by a steady stream of higher priority ones. Within a
+ * priority level, tasks implementing {@link Affinity} are preferred according
+ * to their affinity. Tasks of equal effective priority start in order of
+ * submission.
+ * 
+ */
+public class PriorityTaskScheduler implements Runnable {
+
+	/**
+	 * Task which benefits from being started at a specific time, e.g. when it
+	 * can reuse resources already prepared for other tasks
+	 * 
+	 */
+	public interface Affinity {
+
+		/**
+		 * Evaluated whenever the next task is selected, must be cheap
+		 * 
+		 * @return affinity to be started now, between 0 and 1
+		 */
+		double getAffinity();
+	}
+
+	/**
+	 * Priority gain of maximum affinity, less than one level so that affinity
+	 * only reorders tasks of equal priority
+	 */
+	private static final double AFFINITY_WEIGHT = 0.9;
+
+	private static final Logger LOG = Logger
+			.getLogger(PriorityTaskScheduler.class.getName());
+
+	private static class PendingTask {
+		private final Runnable task;
+		private final int priority;
+		private final long submitTime;
+		private final long sequence;
+
+		public PendingTask(Runnable task, int priority, long submitTime,
+				long sequence) {
+			this.task = task;
+			this.priority = priority;
+			this.submitTime = submitTime;
+			this.sequence = sequence;
+		}
+
+		private double getEffectivePriority(long now, long agingInterval) {
+			double effectivePriority = priority + (double) (now - submitTime)
+					/ agingInterval;
+			if (task instanceof Affinity) {
+				double affinity = ((Affinity) task).getAffinity();
+				effectivePriority += AFFINITY_WEIGHT
+						* Math.max(0, Math.min(1, affinity));
+			}
+			return effectivePriority;
+		}
+	}
+
+	private final AdaptiveConcurrencyController concurrencyController;
+	private final Executor executor;
+	private final long agingInterval;
+	private final int capacity;
+	private final List<PendingTask> pendingTasks = new ArrayList<>();
+	private long nextSequence = 0;
+
+	/**
+	 * @param concurrencyController
+	 *            limits the number of concurrently running tasks
+	 * @param executor
+	 *            runs admitted tasks
+	 * @param agingInterval
+	 *            waiting time in ms after which a task gains one priority
+	 *            level
+	 * @param capacity
+	 *            maximum number of pending tasks, being the window of tasks
+	 *            to choose from, further submissions block
+	 */
+	public PriorityTaskScheduler(
+			AdaptiveConcurrencyController concurrencyController,
+			Executor executor, long agingInterval, int capacity) {
+		this.concurrencyController = concurrencyController;
+		this.executor = executor;
+		this.agingInterval = Math.max(1, agingInterval);
+		this.capacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * Adds a task, waiting while the maximum number of pending tasks is
+	 * reached. Keeping few tasks pending leaves the remaining ones to the
+	 * priority ordering of the message broker.
+	 * 
+	 * @param task
+	 * @param priority
+	 *            higher values start first
+	 * @throws InterruptedException
+	 */
+	public synchronized void submit(Runnable task, int priority)
+			throws InterruptedException {
+		while (pendingTasks.size() >= capacity) {
+			wait();
+		}
+		pendingTasks.add(new PendingTask(task, priority, System
+				.currentTimeMillis(), nextSequence++));
+		notifyAll();
+	}
+
+	private synchronized Runnable take() throws InterruptedException {
+		while (pendingTasks.isEmpty()) {
+			wait();
+		}
+
+		long now = System.currentTimeMillis();
+		int selectedIndex = 0;
+		double selectedPriority = pendingTasks.get(0).getEffectivePriority(
+				now, agingInterval);
+		for (int i = 1; i < pendingTasks.size(); i++) {
+			PendingTask pendingTask = pendingTasks.get(i);
+			double effectivePriority = pendingTask.getEffectivePriority(now,
+					agingInterval);
+			if (effectivePriority > selectedPriority
+					|| (effectivePriority == selectedPriority && pendingTask.sequence < pendingTasks
+							.get(selectedIndex).sequence)) {
+				selectedIndex = i;
+				selectedPriority = effectivePriority;
+			}
+		}
+
+		PendingTask selected = pendingTasks.remove(selectedIndex);
+		notifyAll();
+		return selected.task;
+	}
+
+	/**
+	 * Dispatches pending tasks until interrupted
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				concurrencyController.acquire();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			final Runnable task;
+			try {
+				task = take();
+			} catch (InterruptedException e) {
+				concurrencyController.release();
+				return;
+			}
+
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							task.run();
+						} finally {
+							concurrencyController.release();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				LOG.log(Level.SEVERE, "Could not start task", e);
+				concurrencyController.release();
+			}
+		}
+	}
+
+	/**
+	 * Removes a task which has not yet been started
+	 * 
+	 * @return whether the task was pending
+	 */
+	public synchronized boolean remove(Runnable task) {
+		for (int i = 0; i < pendingTasks.size(); i++) {
+			if (pendingTasks.get(i).task == task) {
+				pendingTasks.remove(i);
+				notifyAll();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized int getPendingCount() {
+		return pendingTasks.size();
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.SystemUtils;
+
+/**
+ * Access to the process tree of the operating system. R CMD starts further
+ * processes, e.g. the R interpreter and compilers, which keep running if only
+ * the started process is destroyed.
+ * 
+ */
+public final class ProcessTree {
+
+	private static final Path PROC_PATH = Paths.get("/proc");
+
+	private static final Logger LOG = Logger.getLogger(ProcessTree.class
+			.getName());
+
+	private ProcessTree() {
+
+	}
+
+	/**
+	 * @return whether descendants can be determined, i.e. /proc is available
+	 */
+	public static boolean isSupported() {
+		return Files.isDirectory(PROC_PATH);
+	}
+
+	/**
+	 * @return pid of this server process
+	 * @throws IOException
+	 *             if /proc is not available
+	 */
+	public static String getOwnPid() throws IOException {
+		return Files.readSymbolicLink(PROC_PATH.resolve("self")).getFileName()
+				.toString();
+	}
+
+	/**
+	 * @return pids of all descendants of the given process, parents before
+	 *         their children
+	 * @throws IOException
+	 *             if /proc is not available
+	 */
+	public static List<String> getDescendantPids(String pid)
+			throws IOException {
+		Map<String, List<String>> childrenMap = new HashMap<>();
+		try (DirectoryStream<Path> processDirs = Files.newDirectoryStream(
+				PROC_PATH, "[0-9]*")) {
+			for (Path processDir : processDirs) {
+				String parentPid = readParentPid(processDir);
+				if (parentPid != null) {
+					List<String> children = childrenMap.get(parentPid);
+					if (children == null) {
+						children = new ArrayList<>();
+						childrenMap.put(parentPid, children);
+					}
+					children.add(processDir.getFileName().toString());
+				}
+			}
+		}
+
+		List<String> descendants = new ArrayList<>();
+		Set<String> visited = new HashSet<>();
+		List<String> pending = new ArrayList<>();
+		pending.add(pid);
+		while (!pending.isEmpty()) {
+			List<String> children = childrenMap.get(pending.remove(pending
+					.size() - 1));
+			if (children == null) {
+				continue;
+			}
+			for (String childPid : children) {
+				if (visited.add(childPid)) {
+					descendants.add(childPid);
+					pending.add(childPid);
+				}
+			}
+		}
+		return descendants;
+	}
+
+	/**
+	 * @return pid of the given process, null if it cannot be determined
+	 */
+	public static String getPid(Process process) {
+		try {
+			// Java 9 and later
+			Method pidMethod = Process.class.getMethod("pid");
+			return String.valueOf(pidMethod.invoke(process));
+		} catch (NoSuchMethodException e) {
+			// Unix implementation of earlier versions
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+		try {
+			Field pidField = process.getClass().getDeclaredField("pid");
+			pidField.setAccessible(true);
+			return String.valueOf(pidField.getInt(process));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Forcibly terminates the process along with all of its descendants. Falls
+	 * back to {@link Process#destroy()} if the process tree is not accessible.
+	 */
+	public static void destroy(Process process) {
+		String pid = getPid(process);
+		if (pid == null) {
+			process.destroy();
+			return;
+		}
+
+		List<String> command = new ArrayList<>();
+		if (SystemUtils.IS_OS_WINDOWS) {
+			command.add("taskkill");
+			command.add("/F");
+			command.add("/T");
+			command.add("/PID");
+			command.add(pid);
+		} else if (isSupported()) {
+			// Determine descendants before they are orphaned
+			List<String> descendants;
+			try {
+				descendants = getDescendantPids(pid);
+			} catch (IOException e) {
+				descendants = new ArrayList<>();
+			}
+			process.destroy();
+			if (descendants.isEmpty()) {
+				return;
+			}
+			command.add("kill");
+			command.add("-KILL");
+			command.addAll(descendants);
+		} else {
+			command.add("pkill");
+			command.add("-KILL");
+			command.add("-P");
+			command.add(pid);
+		}
+
+		try {
+			new ProcessBuilder(command).redirectErrorStream(true).start()
+					.waitFor();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Could not terminate process tree of "
+					+ pid, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		process.destroy();
+	}
+
+	private static String readParentPid(Path processDir) {
+		try {
+			List<String> lines = Files.readAllLines(processDir.resolve("stat"),
+					StandardCharsets.US_ASCII);
+			if (lines.isEmpty()) {
+				return null;
+			}
+			// Command name in parentheses may contain spaces
+			String stat = lines.get(0);
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(
+					" ");
+			return fields[1];
+		} catch (IOException | RuntimeException e) {
+			// Process terminated meanwhile
+			return null;
+		}
+	}
+}
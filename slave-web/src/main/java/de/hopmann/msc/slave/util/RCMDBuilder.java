@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.SystemUtils;
@@ -70,6 +71,7 @@ public abstract class RCMDBuilder<T extends RCMDBuilder<T>> {
 	private static final String LC_ALL = "LC_ALL";
 
 	private static final AtomicInteger NEXT_WORKINGDIR_ID = new AtomicInteger(0);
+	private static final AtomicInteger ACTIVE_PROCESSES = new AtomicInteger(0);
 	private static final ThreadLocal<Integer> workingDirectoryId = new ThreadLocal<Integer>() {
 		@Override
 		protected Integer initialValue() {
@@ -142,6 +144,13 @@ public abstract class RCMDBuilder<T extends RCMDBuilder<T>> {
 		return (T) this;
 	}
 
+	/**
+	 * @return number of R processes started and not yet closed
+	 */
+	public static int getActiveProcessCount() {
+		return ACTIVE_PROCESSES.get();
+	}
+
 	public RCMDOutputReader start() throws IOException {
 
 		List<String> commands = new ArrayList<String>();
@@ -187,6 +196,8 @@ public abstract class RCMDBuilder<T extends RCMDBuilder<T>> {
 		processEnvironment(cmdProcessBuilder.environment());
 
 		final Process cmdProcess = cmdProcessBuilder.start();
+		ACTIVE_PROCESSES.incrementAndGet();
+		final AtomicBoolean closed = new AtomicBoolean(false);
 
 		// BufferedReader processOut = new BufferedReader(
 		// new InputStreamReader(installProcess.getInputStream()));
@@ -198,12 +209,22 @@ public abstract class RCMDBuilder<T extends RCMDBuilder<T>> {
 			@Override
 			public void close() throws IOException {
 				try {
-					cmdProcess.waitFor();// XXX or .destroy()?
+					// Terminates soon after output ended or abort
+					cmdProcess.waitFor();
 				} catch (InterruptedException e) {
 
+				}
+				if (closed.compareAndSet(false, true)) {
+					ACTIVE_PROCESSES.decrementAndGet();
 				}
 				super.close();
 			}
+
+			@Override
+			public void abort() {
+				// Output ends as soon as all writing processes are gone
+				ProcessTree.destroy(cmdProcess);
+			}
 		};
 
 	}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage;
+import de.hopmann.msc.commons.messages.CheckResultMessage;
+import de.hopmann.msc.commons.messages.PackageResultMessage;
+import de.hopmann.msc.commons.messages.ResultMessage;
+import de.hopmann.msc.commons.util.OutputBlobStore;
+
+/**
+ * Remembers hashes of outputs the master confirmed to store content-addressed.
+ * Outputs stored before are replaced by their hash, e.g. installation logs of
+ * dependencies reused for many checks. Outputs are sent in full until their
+ * storage has been confirmed.
+ * 
+ */
+public class SentOutputCache {
+
+	/**
+	 * Least recently used hashes, guarded by this
+	 */
+	private final Map<String, Boolean> sentHashes;
+
+	/**
+	 * @param maxSize
+	 *            number of hashes to remember, 0 to always send outputs
+	 */
+	public SentOutputCache(final int maxSize) {
+		sentHashes = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<String, Boolean> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Adds output hashes to the results and omits outputs stored before or
+	 * contained earlier in the same batch. Outputs of failed checks are always
+	 * sent, since the master does not store them.
+	 */
+	public synchronized void replaceSentOutputs(List<ResultMessage> results) {
+		Set<String> batchHashes = new HashSet<>();
+		for (ResultMessage result : results) {
+			if (!(result instanceof CheckResultMessage)) {
+				continue;
+			}
+			String hash = getHash(result.getOutputMessages());
+			if (hash != null) {
+				result.setOutputHash(hash);
+				if (isSent(hash, batchHashes)) {
+					result.setOutputMessages(null);
+				}
+			}
+			replaceSentOutput(result.getPackageDescription(), batchHashes);
+			if (result instanceof CheckResultMessage) {
+				CheckResultMessage checkResult = (CheckResultMessage) result;
+				replaceSentOutputs(checkResult.getInstallationDependencies(),
+						batchHashes);
+				replaceSentOutputs(checkResult.getCheckDependencies(),
+						batchHashes);
+			}
+		}
+	}
+
+	/**
+	 * @param hashes
+	 *            outputs the master confirmed to store
+	 */
+	public synchronized void markSent(Collection<String> hashes) {
+		for (String hash : hashes) {
+			sentHashes.put(hash, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * @param hashes
+	 *            outputs the master misses, sent in full with later results,
+	 *            results already sent are not sent again
+	 */
+	public synchronized void forget(Collection<String> hashes) {
+		for (String hash : hashes) {
+			sentHashes.remove(hash);
+		}
+	}
+
+	private void replaceSentOutputs(Set<PackageResultMessage> packageResults,
+			Set<String> batchHashes) {
+		if (packageResults != null) {
+			for (PackageResultMessage packageResult : packageResults) {
+				replaceSentOutput(packageResult, batchHashes);
+			}
+		}
+	}
+
+	private void replaceSentOutput(PackageResultMessage packageResult,
+			Set<String> batchHashes) {
+		if (packageResult == null) {
+			return;
+		}
+		String hash = getHash(packageResult.getOutputMessages());
+		if (hash != null) {
+			packageResult.setOutputHash(hash);
+			if (isSent(hash, batchHashes)) {
+				packageResult.setOutputMessages(null);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the output can be omitted, otherwise registers it as
+	 *         sent within the batch
+	 */
+	private boolean isSent(String hash, Set<String> batchHashes) {
+		if (sentHashes.containsKey(hash)) {
+			return true;
+		}
+		return !batchHashes.add(hash);
+	}
+
+	private static String getHash(List<CMDOutputMessage> outputMessages) {
+		if (outputMessages == null || outputMessages.isEmpty()) {
+			return null;
+		}
+		return OutputBlobStore.hash(outputMessages);
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2014 Holger Hopmann (h.hopmann@uni-muenster.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hopmann.msc.slave.util;
+
+import java.util.LinkedList;
+
+import de.hopmann.msc.commons.messages.CMDOutputMessage.CMDOutputStatus;
+import de.hopmann.msc.commons.messages.ProgressMessage;
+import de.hopmann.msc.commons.messages.ProgressMessage.ProgressStep;
+import de.hopmann.msc.commons.util.RCMDOutputReader.ProgressListener;
+
+/**
+ * Collects progress steps of a running check task until they are published.
+ * Only the most recent steps are kept if steps arrive faster than they are
+ * published.
+ * 
+ */
+public class TaskProgress implements ProgressListener {
+
+	private final Long contextIdRef;
+	private final String packageName;
+	private volatile String taskId;
+	private final int maxSteps;
+	private final LinkedList<ProgressStep> pendingSteps = new LinkedList<>();
+	private volatile boolean finished = false;
+
+	public TaskProgress(Long contextIdRef, String packageName, int maxSteps) {
+		this.contextIdRef = contextIdRef;
+		this.packageName = packageName;
+		this.maxSteps = Math.max(1, maxSteps);
+	}
+
+	@Override
+	public synchronized void progress(String[] starsLevels,
+			CMDOutputStatus status) {
+		pendingSteps.add(new ProgressStep(System.currentTimeMillis(),
+				starsLevels, status));
+		if (pendingSteps.size() > maxSteps) {
+			pendingSteps.removeFirst();
+		}
+	}
+
+	/**
+	 * @return message containing all steps since the last call, null if there
+	 *         are none
+	 */
+	public synchronized ProgressMessage drain() {
+		if (pendingSteps.isEmpty()) {
+			return null;
+		}
+		ProgressMessage progressMessage = new ProgressMessage(contextIdRef,
+				packageName);
+		progressMessage.setTaskId(taskId);
+		for (ProgressStep step : pendingSteps) {
+			progressMessage.addStep(step);
+		}
+		pendingSteps.clear();
+		return progressMessage;
+	}
+
+	public void finish() {
+		finished = true;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public Long getContextIdRef() {
+		return contextIdRef;
+	}
+
+	public String getPackageName() {
+		return packageName;
+	}
+
+	public String getTaskId() {
+		return taskId;
+	}
+
+	public void setTaskId(String taskId) {
+		this.taskId = taskId;
+	}
+}